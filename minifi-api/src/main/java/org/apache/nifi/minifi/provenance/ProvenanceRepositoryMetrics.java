@@ -0,0 +1,362 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.minifi.provenance;
+
+/**
+ * A point-in-time snapshot of the performance of a Provenance Repository. Counters and totals cover the lifetime of the
+ * repository, while rates are smoothed over roughly the last minute.
+ */
+public class ProvenanceRepositoryMetrics {
+
+    private int journalCount;
+    private int dirtyWriterCount;
+    private int eventFileCount;
+    private long repositorySize;
+    private int queuedMergeCount;
+    private int runningMergeCount;
+    private int failingMergeCount;
+
+    private long eventsWritten;
+    private long bytesWritten;
+    private double eventsPerSecond;
+    private double bytesPerSecond;
+    private double persistLatencyAverageMicros;
+    private long persistLatency99thPercentileMicros;
+    private long persistLatencyMaxMicros;
+    private long lockRetries;
+    private double journalSyncAverageMicros;
+    private long journalSync99thPercentileMicros;
+    private long journalSyncMaxMicros;
+    private double groupCommitAverageBatchSize;
+    private long groupCommitMaxBatchSize;
+
+    private long mergeCount;
+    private double mergeAverageMillis;
+    private long mergeMaxMillis;
+    private double mergeBytesPerSecond;
+    private double compressionRatio;
+
+    private long purgeCount;
+    private double purgeAverageMillis;
+    private long filesPurged;
+    private long backpressureMillis;
+    private long eventsDropped;
+    private long eventsSpilled;
+
+    /**
+     * @return the number of journals that have not yet been merged
+     */
+    public int getJournalCount() {
+        return journalCount;
+    }
+
+    public void setJournalCount(int journalCount) {
+        this.journalCount = journalCount;
+    }
+
+    /**
+     * @return the number of journals that can no longer be written to because a write to them failed
+     */
+    public int getDirtyWriterCount() {
+        return dirtyWriterCount;
+    }
+
+    public void setDirtyWriterCount(int dirtyWriterCount) {
+        this.dirtyWriterCount = dirtyWriterCount;
+    }
+
+    /**
+     * @return the number of merged event files that the repository holds
+     */
+    public int getEventFileCount() {
+        return eventFileCount;
+    }
+
+    public void setEventFileCount(int eventFileCount) {
+        this.eventFileCount = eventFileCount;
+    }
+
+    /**
+     * @return the number of bytes of merged event files that the repository holds
+     */
+    public long getRepositorySize() {
+        return repositorySize;
+    }
+
+    public void setRepositorySize(long repositorySize) {
+        this.repositorySize = repositorySize;
+    }
+
+    /**
+     * @return the number of sets of journals that are waiting for their merge to start
+     */
+    public int getQueuedMergeCount() {
+        return queuedMergeCount;
+    }
+
+    public void setQueuedMergeCount(int queuedMergeCount) {
+        this.queuedMergeCount = queuedMergeCount;
+    }
+
+    /**
+     * @return the number of sets of journals that are being merged
+     */
+    public int getRunningMergeCount() {
+        return runningMergeCount;
+    }
+
+    public void setRunningMergeCount(int runningMergeCount) {
+        this.runningMergeCount = runningMergeCount;
+    }
+
+    /**
+     * @return the number of sets of journals whose last merge attempt failed, and that are waiting to be retried
+     */
+    public int getFailingMergeCount() {
+        return failingMergeCount;
+    }
+
+    public void setFailingMergeCount(int failingMergeCount) {
+        this.failingMergeCount = failingMergeCount;
+    }
+
+    public long getEventsWritten() {
+        return eventsWritten;
+    }
+
+    public void setEventsWritten(long eventsWritten) {
+        this.eventsWritten = eventsWritten;
+    }
+
+    /**
+     * @return the number of bytes written to the journals
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public void setBytesWritten(long bytesWritten) {
+        this.bytesWritten = bytesWritten;
+    }
+
+    public double getEventsPerSecond() {
+        return eventsPerSecond;
+    }
+
+    public void setEventsPerSecond(double eventsPerSecond) {
+        this.eventsPerSecond = eventsPerSecond;
+    }
+
+    public double getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    public void setBytesPerSecond(double bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * @return the average time taken to persist a batch of events, including waiting for a journal and syncing it
+     */
+    public double getPersistLatencyAverageMicros() {
+        return persistLatencyAverageMicros;
+    }
+
+    public void setPersistLatencyAverageMicros(double persistLatencyAverageMicros) {
+        this.persistLatencyAverageMicros = persistLatencyAverageMicros;
+    }
+
+    public long getPersistLatency99thPercentileMicros() {
+        return persistLatency99thPercentileMicros;
+    }
+
+    public void setPersistLatency99thPercentileMicros(long persistLatency99thPercentileMicros) {
+        this.persistLatency99thPercentileMicros = persistLatency99thPercentileMicros;
+    }
+
+    public long getPersistLatencyMaxMicros() {
+        return persistLatencyMaxMicros;
+    }
+
+    public void setPersistLatencyMaxMicros(long persistLatencyMaxMicros) {
+        this.persistLatencyMaxMicros = persistLatencyMaxMicros;
+    }
+
+    /**
+     * @return the number of times that a journal was found to be locked by another thread, so that another had to be tried
+     */
+    public long getLockRetries() {
+        return lockRetries;
+    }
+
+    public void setLockRetries(long lockRetries) {
+        this.lockRetries = lockRetries;
+    }
+
+    /**
+     * @return the average time taken by each fsync of a journal, which is only recorded if the repository always syncs
+     */
+    public double getJournalSyncAverageMicros() {
+        return journalSyncAverageMicros;
+    }
+
+    public void setJournalSyncAverageMicros(double journalSyncAverageMicros) {
+        this.journalSyncAverageMicros = journalSyncAverageMicros;
+    }
+
+    public long getJournalSync99thPercentileMicros() {
+        return journalSync99thPercentileMicros;
+    }
+
+    public void setJournalSync99thPercentileMicros(long journalSync99thPercentileMicros) {
+        this.journalSync99thPercentileMicros = journalSync99thPercentileMicros;
+    }
+
+    public long getJournalSyncMaxMicros() {
+        return journalSyncMaxMicros;
+    }
+
+    public void setJournalSyncMaxMicros(long journalSyncMaxMicros) {
+        this.journalSyncMaxMicros = journalSyncMaxMicros;
+    }
+
+    /**
+     * @return the average number of events made durable by each fsync of a journal, which is more than one when the events
+     * of several producers are committed as a group
+     */
+    public double getGroupCommitAverageBatchSize() {
+        return groupCommitAverageBatchSize;
+    }
+
+    public void setGroupCommitAverageBatchSize(double groupCommitAverageBatchSize) {
+        this.groupCommitAverageBatchSize = groupCommitAverageBatchSize;
+    }
+
+    public long getGroupCommitMaxBatchSize() {
+        return groupCommitMaxBatchSize;
+    }
+
+    public void setGroupCommitMaxBatchSize(long groupCommitMaxBatchSize) {
+        this.groupCommitMaxBatchSize = groupCommitMaxBatchSize;
+    }
+
+    public long getMergeCount() {
+        return mergeCount;
+    }
+
+    public void setMergeCount(long mergeCount) {
+        this.mergeCount = mergeCount;
+    }
+
+    public double getMergeAverageMillis() {
+        return mergeAverageMillis;
+    }
+
+    public void setMergeAverageMillis(double mergeAverageMillis) {
+        this.mergeAverageMillis = mergeAverageMillis;
+    }
+
+    public long getMergeMaxMillis() {
+        return mergeMaxMillis;
+    }
+
+    public void setMergeMaxMillis(long mergeMaxMillis) {
+        this.mergeMaxMillis = mergeMaxMillis;
+    }
+
+    /**
+     * @return the number of bytes of journals merged per second spent merging
+     */
+    public double getMergeBytesPerSecond() {
+        return mergeBytesPerSecond;
+    }
+
+    public void setMergeBytesPerSecond(double mergeBytesPerSecond) {
+        this.mergeBytesPerSecond = mergeBytesPerSecond;
+    }
+
+    /**
+     * @return the size of the journals that have been merged divided by the size of the event files that they were merged into
+     */
+    public double getCompressionRatio() {
+        return compressionRatio;
+    }
+
+    public void setCompressionRatio(double compressionRatio) {
+        this.compressionRatio = compressionRatio;
+    }
+
+    /**
+     * @return the number of times that expired event files were purged
+     */
+    public long getPurgeCount() {
+        return purgeCount;
+    }
+
+    public void setPurgeCount(long purgeCount) {
+        this.purgeCount = purgeCount;
+    }
+
+    public double getPurgeAverageMillis() {
+        return purgeAverageMillis;
+    }
+
+    public void setPurgeAverageMillis(double purgeAverageMillis) {
+        this.purgeAverageMillis = purgeAverageMillis;
+    }
+
+    public long getFilesPurged() {
+        return filesPurged;
+    }
+
+    public void setFilesPurged(long filesPurged) {
+        this.filesPurged = filesPurged;
+    }
+
+    /**
+     * @return the total time for which events could not be registered because backpressure was applied
+     */
+    public long getBackpressureMillis() {
+        return backpressureMillis;
+    }
+
+    public void setBackpressureMillis(long backpressureMillis) {
+        this.backpressureMillis = backpressureMillis;
+    }
+
+    /**
+     * @return the number of asynchronously registered events that were discarded because the repository could not keep up
+     */
+    public long getEventsDropped() {
+        return eventsDropped;
+    }
+
+    public void setEventsDropped(long eventsDropped) {
+        this.eventsDropped = eventsDropped;
+    }
+
+    /**
+     * @return the number of asynchronously registered events that were spilled to disk because the repository could not keep up
+     */
+    public long getEventsSpilled() {
+        return eventsSpilled;
+    }
+
+    public void setEventsSpilled(long eventsSpilled) {
+        this.eventsSpilled = eventsSpilled;
+    }
+}
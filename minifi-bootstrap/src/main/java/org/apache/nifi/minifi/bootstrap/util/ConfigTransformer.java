@@ -34,8 +34,12 @@ import org.apache.nifi.minifi.commons.schema.FunnelSchema;
 import org.apache.nifi.minifi.commons.schema.PortSchema;
 import org.apache.nifi.minifi.commons.schema.ProcessGroupSchema;
 import org.apache.nifi.minifi.commons.schema.ProcessorSchema;
+import org.apache.nifi.minifi.commons.schema.ProvenanceAdmissionSchema;
+import org.apache.nifi.minifi.commons.schema.ProvenanceVolatileRepositorySchema;
 import org.apache.nifi.minifi.commons.schema.ProvenanceReportingSchema;
 import org.apache.nifi.minifi.commons.schema.ProvenanceRepositorySchema;
+import org.apache.nifi.minifi.commons.schema.ProvenanceStorageQuotaSchema;
+import org.apache.nifi.minifi.commons.schema.ProvenanceStorageSchema;
 import org.apache.nifi.minifi.commons.schema.RemoteInputPortSchema;
 import org.apache.nifi.minifi.commons.schema.RemoteProcessGroupSchema;
 import org.apache.nifi.minifi.commons.schema.common.ConvertableSchema;
@@ -73,8 +77,10 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.zip.GZIPOutputStream;
 
@@ -163,6 +169,18 @@ public final class ConfigTransformer {
             SecurityPropertiesSchema securityProperties = configSchema.getSecurityProperties();
             SensitivePropsSchema sensitiveProperties = securityProperties.getSensitiveProps();
             ProvenanceRepositorySchema provenanceRepositorySchema = configSchema.getProvenanceRepositorySchema();
+            ProvenanceAdmissionSchema provenanceAdmissionProperties = provenanceRepositorySchema.getProvenanceAdmissionProperties();
+            if (provenanceAdmissionProperties == null) {
+                provenanceAdmissionProperties = new ProvenanceAdmissionSchema();
+            }
+            ProvenanceVolatileRepositorySchema provenanceVolatileRepositoryProperties = provenanceRepositorySchema.getProvenanceVolatileRepositoryProperties();
+            if (provenanceVolatileRepositoryProperties == null) {
+                provenanceVolatileRepositoryProperties = new ProvenanceVolatileRepositorySchema();
+            }
+            ProvenanceStorageSchema provenanceStorageProperties = provenanceRepositorySchema.getProvenanceStorageProperties();
+            if (provenanceStorageProperties == null) {
+                provenanceStorageProperties = new ProvenanceStorageSchema();
+            }
 
             writer.print(PROPERTIES_FILE_APACHE_2_0_LICENSE);
             writer.println("# Core Properties #");
@@ -223,11 +241,34 @@ public final class ConfigTransformer {
             writer.println("nifi.content.repository.always.sync=" + contentRepoProperties.getAlwaysSync());
             writer.println();
             writer.println("# Provenance Repository Properties");
-            writer.println("nifi.provenance.repository.implementation=org.apache.nifi.provenance.MiNiFiPersistentProvenanceRepository");
+            writer.println("nifi.provenance.repository.implementation=" + provenanceRepositorySchema.getProvenanceRepoImplementation());
             writer.println("nifi.provenance.repository.rollover.time=" + provenanceRepositorySchema.getProvenanceRepoRolloverTimeKey());
+            writer.println("nifi.provenance.repository.admission.allowed.event.types=" + StringUtils.join(provenanceAdmissionProperties.getAllowedEventTypes(), ","));
+            writer.println("nifi.provenance.repository.admission.denied.event.types=" + StringUtils.join(provenanceAdmissionProperties.getDeniedEventTypes(), ","));
+            writer.println("nifi.provenance.repository.admission.allowed.component.ids=" + StringUtils.join(provenanceAdmissionProperties.getAllowedComponentIds(), ","));
+            writer.println("nifi.provenance.repository.admission.denied.component.ids=" + StringUtils.join(provenanceAdmissionProperties.getDeniedComponentIds(), ","));
+            writer.println("nifi.provenance.repository.admission.sampling.percentage=" + provenanceAdmissionProperties.getSamplingPercentage());
+            List<String> archiveDirectories = provenanceStorageProperties.getArchiveDirectories();
+            for (int i = 0; i < archiveDirectories.size(); i++) {
+                writer.println("nifi.provenance.repository.directory.archive" + (i + 1) + "=" + archiveDirectories.get(i));
+            }
+            List<String> journalDirectories = provenanceStorageProperties.getJournalDirectories();
+            for (int i = 0; i < journalDirectories.size(); i++) {
+                writer.println("nifi.provenance.repository.journal.directory.journal" + (i + 1) + "=" + journalDirectories.get(i));
+            }
+            writer.println("nifi.provenance.repository.dictionary.encoding.enabled=" + provenanceStorageProperties.getDictionaryEncoding());
+            for (ProvenanceStorageQuotaSchema quota : provenanceRepositorySchema.getProvenanceStorageQuotas()) {
+                Set<String> componentIds = getProvenanceStorageQuotaComponentIds(quota, configSchema.getProcessGroupSchema());
+                writer.println("nifi.provenance.repository.quota." + quota.getName() + ".component.ids=" + StringUtils.join(componentIds, ","));
+                writer.println("nifi.provenance.repository.quota." + quota.getName() + ".max.storage.size=" + quota.getMaxStorageSize());
+            }
             writer.println();
             writer.println("# Volatile Provenance Respository Properties");
             writer.println("nifi.provenance.repository.buffer.size=10000");
+            writer.println("nifi.provenance.repository.volatile.max.storage.size=" + provenanceVolatileRepositoryProperties.getMaxStorageSize());
+            writer.println("nifi.provenance.repository.volatile.segment.size=" + provenanceVolatileRepositoryProperties.getSegmentSize());
+            writer.println("nifi.provenance.repository.volatile.spill.file=" + provenanceVolatileRepositoryProperties.getSpillFile());
+            writer.println("nifi.provenance.repository.volatile.spill.max.size=" + provenanceVolatileRepositoryProperties.getSpillMaxSize());
             writer.println();
             writer.println("# Component Status Repository");
             writer.println("nifi.components.status.repository.implementation=org.apache.nifi.controller.status.history.VolatileComponentStatusRepository");
@@ -281,6 +322,32 @@ public final class ConfigTransformer {
         }
     }
 
+    /**
+     * Resolves the components that a provenance storage quota covers: the components that it names, along with the
+     * processors, ports, funnels and remote input ports of each process group that it names and of the groups nested within them
+     */
+    protected static Set<String> getProvenanceStorageQuotaComponentIds(ProvenanceStorageQuotaSchema quota, ProcessGroupSchema rootGroup) throws ConfigurationChangeException {
+        Set<String> componentIds = new LinkedHashSet<>(quota.getComponentIds());
+        for (String processGroupId : quota.getProcessGroupIds()) {
+            ProcessGroupSchema processGroup = ConfigSchema.getAllProcessGroups(rootGroup).stream()
+                    .filter(group -> processGroupId.equals(group.getId()))
+                    .findFirst()
+                    .orElseThrow(() -> new ConfigurationChangeException("Provenance storage quota " + quota.getName() + " refers to process group "
+                            + processGroupId + ", which does not exist"));
+
+            for (ProcessGroupSchema group : ConfigSchema.getAllProcessGroups(processGroup)) {
+                group.getProcessors().forEach(processor -> componentIds.add(processor.getId()));
+                group.getInputPortSchemas().forEach(port -> componentIds.add(port.getId()));
+                group.getOutputPortSchemas().forEach(port -> componentIds.add(port.getId()));
+                group.getFunnels().forEach(funnel -> componentIds.add(funnel.getId()));
+                for (RemoteProcessGroupSchema remoteProcessGroup : group.getRemoteProcessGroups()) {
+                    remoteProcessGroup.getInputPorts().forEach(port -> componentIds.add(port.getId()));
+                }
+            }
+        }
+        return componentIds;
+    }
+
     protected static DOMSource createFlowXml(ConfigSchema configSchema) throws IOException, ConfigurationChangeException, ConfigTransformerException{
         try {
             // create a new, empty document
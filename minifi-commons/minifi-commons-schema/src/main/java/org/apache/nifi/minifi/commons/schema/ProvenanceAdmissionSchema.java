@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.nifi.minifi.commons.schema;
+
+import org.apache.nifi.minifi.commons.schema.common.BaseSchema;
+import org.apache.nifi.minifi.commons.schema.common.WritableSchema;
+import org.apache.nifi.provenance.ProvenanceEventType;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.apache.nifi.minifi.commons.schema.common.CommonPropertyKeys.PROVENANCE_ADMISSION_KEY;
+
+/**
+ * Determines which Provenance Events are persisted by the Provenance Repository. An empty list of allowed event types or
+ * component ids allows all of them, and deny lists take precedence over allow lists.
+ */
+public class ProvenanceAdmissionSchema extends BaseSchema implements WritableSchema {
+    public static final String ALLOWED_EVENT_TYPES_KEY = "allowed event types";
+    public static final String DENIED_EVENT_TYPES_KEY = "denied event types";
+    public static final String ALLOWED_COMPONENT_IDS_KEY = "allowed component ids";
+    public static final String DENIED_COMPONENT_IDS_KEY = "denied component ids";
+    public static final String SAMPLING_PERCENTAGE_KEY = "sampling percentage";
+
+    public static final List<String> DEFAULT_LIST = Collections.emptyList();
+    public static final int DEFAULT_SAMPLING_PERCENTAGE = 100;
+
+    private List<String> allowedEventTypes = DEFAULT_LIST;
+    private List<String> deniedEventTypes = DEFAULT_LIST;
+    private List<String> allowedComponentIds = DEFAULT_LIST;
+    private List<String> deniedComponentIds = DEFAULT_LIST;
+    private Number samplingPercentage = DEFAULT_SAMPLING_PERCENTAGE;
+
+    public ProvenanceAdmissionSchema() {
+    }
+
+    public ProvenanceAdmissionSchema(Map map) {
+        allowedEventTypes = getOptionalKeyAsType(map, ALLOWED_EVENT_TYPES_KEY, List.class, PROVENANCE_ADMISSION_KEY, DEFAULT_LIST);
+        validateEventTypes(ALLOWED_EVENT_TYPES_KEY, allowedEventTypes);
+        deniedEventTypes = getOptionalKeyAsType(map, DENIED_EVENT_TYPES_KEY, List.class, PROVENANCE_ADMISSION_KEY, DEFAULT_LIST);
+        validateEventTypes(DENIED_EVENT_TYPES_KEY, deniedEventTypes);
+
+        allowedComponentIds = getOptionalKeyAsType(map, ALLOWED_COMPONENT_IDS_KEY, List.class, PROVENANCE_ADMISSION_KEY, DEFAULT_LIST);
+        deniedComponentIds = getOptionalKeyAsType(map, DENIED_COMPONENT_IDS_KEY, List.class, PROVENANCE_ADMISSION_KEY, DEFAULT_LIST);
+
+        samplingPercentage = getOptionalKeyAsType(map, SAMPLING_PERCENTAGE_KEY, Number.class, PROVENANCE_ADMISSION_KEY, DEFAULT_SAMPLING_PERCENTAGE);
+        if (samplingPercentage != null && (samplingPercentage.doubleValue() < 0 || samplingPercentage.doubleValue() > 100)) {
+            addValidationIssue(SAMPLING_PERCENTAGE_KEY, PROVENANCE_ADMISSION_KEY, "it must be between 0 and 100");
+        }
+    }
+
+    private void validateEventTypes(String key, List<String> eventTypes) {
+        if (eventTypes == null) {
+            return;
+        }
+        for (Object eventType : eventTypes) {
+            try {
+                ProvenanceEventType.valueOf(String.valueOf(eventType).trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                addValidationIssue(key, PROVENANCE_ADMISSION_KEY, "'" + eventType + "' is not a valid provenance event type");
+            }
+        }
+    }
+
+    @Override
+    public Map<String, Object> toMap() {
+        Map<String, Object> result = mapSupplier.get();
+        result.put(ALLOWED_EVENT_TYPES_KEY, allowedEventTypes);
+        result.put(DENIED_EVENT_TYPES_KEY, deniedEventTypes);
+        result.put(ALLOWED_COMPONENT_IDS_KEY, allowedComponentIds);
+        result.put(DENIED_COMPONENT_IDS_KEY, deniedComponentIds);
+        result.put(SAMPLING_PERCENTAGE_KEY, samplingPercentage);
+        return result;
+    }
+
+    public List<String> getAllowedEventTypes() {
+        return allowedEventTypes;
+    }
+
+    public List<String> getDeniedEventTypes() {
+        return deniedEventTypes;
+    }
+
+    public List<String> getAllowedComponentIds() {
+        return allowedComponentIds;
+    }
+
+    public List<String> getDeniedComponentIds() {
+        return deniedComponentIds;
+    }
+
+    public Number getSamplingPercentage() {
+        return samplingPercentage;
+    }
+}
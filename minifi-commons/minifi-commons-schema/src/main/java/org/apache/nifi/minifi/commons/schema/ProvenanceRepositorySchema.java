@@ -20,33 +20,97 @@ package org.apache.nifi.minifi.commons.schema;
 import org.apache.nifi.minifi.commons.schema.common.BaseSchema;
 import org.apache.nifi.minifi.commons.schema.common.WritableSchema;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
+import static org.apache.nifi.minifi.commons.schema.common.CommonPropertyKeys.PROVENANCE_ADMISSION_KEY;
 import static org.apache.nifi.minifi.commons.schema.common.CommonPropertyKeys.PROVENANCE_REPO_KEY;
+import static org.apache.nifi.minifi.commons.schema.common.CommonPropertyKeys.PROVENANCE_STORAGE_KEY;
+import static org.apache.nifi.minifi.commons.schema.common.CommonPropertyKeys.PROVENANCE_STORAGE_QUOTAS_KEY;
+import static org.apache.nifi.minifi.commons.schema.common.CommonPropertyKeys.PROVENANCE_VOLATILE_REPO_KEY;
 
 public class ProvenanceRepositorySchema extends BaseSchema implements WritableSchema {
+    public static final String PROVENANCE_REPO_IMPLEMENTATION_KEY = "implementation";
     public static final String PROVENANCE_REPO_ROLLOVER_TIME_KEY = "provenance rollover time";
 
+    public static final String PERSISTENT_PROVENANCE_REPO_IMPLEMENTATION = "org.apache.nifi.provenance.MiNiFiPersistentProvenanceRepository";
+    public static final String VOLATILE_PROVENANCE_REPO_IMPLEMENTATION = "org.apache.nifi.provenance.MiNiFiVolatileProvenanceRepository";
+    public static final String DEFAULT_PROVENANCE_REPO_IMPLEMENTATION = PERSISTENT_PROVENANCE_REPO_IMPLEMENTATION;
     public static final String DEFAULT_PROVENANCE_ROLLOVER_TIME = "1 min";
+    public static final String FOUND_THE_FOLLOWING_DUPLICATE_STORAGE_QUOTA_NAMES = "Found the following duplicate storage quota names: ";
 
+    private String provenanceRepoImplementation = DEFAULT_PROVENANCE_REPO_IMPLEMENTATION;
     private String provenanceRepoRolloverTime = DEFAULT_PROVENANCE_ROLLOVER_TIME;
+    private ProvenanceAdmissionSchema provenanceAdmissionProperties;
+    private ProvenanceVolatileRepositorySchema provenanceVolatileRepositoryProperties;
+    private ProvenanceStorageSchema provenanceStorageProperties;
+    private List<ProvenanceStorageQuotaSchema> provenanceStorageQuotas = Collections.emptyList();
 
     public ProvenanceRepositorySchema(){
     }
 
     public ProvenanceRepositorySchema(Map map) {
+        provenanceRepoImplementation = getOptionalKeyAsType(map, PROVENANCE_REPO_IMPLEMENTATION_KEY, String.class,
+                PROVENANCE_REPO_KEY, DEFAULT_PROVENANCE_REPO_IMPLEMENTATION);
         provenanceRepoRolloverTime = getOptionalKeyAsType(map, PROVENANCE_REPO_ROLLOVER_TIME_KEY, String.class,
                 PROVENANCE_REPO_KEY, DEFAULT_PROVENANCE_ROLLOVER_TIME);
+
+        provenanceAdmissionProperties = getMapAsType(map, PROVENANCE_ADMISSION_KEY, ProvenanceAdmissionSchema.class, PROVENANCE_REPO_KEY, false, false);
+        addIssuesIfNotNull(provenanceAdmissionProperties);
+
+        provenanceVolatileRepositoryProperties = getMapAsType(map, PROVENANCE_VOLATILE_REPO_KEY, ProvenanceVolatileRepositorySchema.class,
+                PROVENANCE_REPO_KEY, false, false);
+        addIssuesIfNotNull(provenanceVolatileRepositoryProperties);
+
+        provenanceStorageProperties = getMapAsType(map, PROVENANCE_STORAGE_KEY, ProvenanceStorageSchema.class, PROVENANCE_REPO_KEY, false, false);
+        addIssuesIfNotNull(provenanceStorageProperties);
+
+        provenanceStorageQuotas = getOptionalKeyAsList(map, PROVENANCE_STORAGE_QUOTAS_KEY, ProvenanceStorageQuotaSchema::new, PROVENANCE_REPO_KEY);
+        addIssuesIfNotNull(provenanceStorageQuotas);
+        checkForDuplicates(this::addValidationIssue, FOUND_THE_FOLLOWING_DUPLICATE_STORAGE_QUOTA_NAMES,
+                provenanceStorageQuotas.stream().map(ProvenanceStorageQuotaSchema::getName).collect(Collectors.toList()));
     }
 
     @Override
     public Map<String, Object> toMap() {
         Map<String, Object> result = mapSupplier.get();
+        // the implementation is only written when it is not the default, so that existing configurations are written unchanged
+        if (!DEFAULT_PROVENANCE_REPO_IMPLEMENTATION.equals(provenanceRepoImplementation)) {
+            result.put(PROVENANCE_REPO_IMPLEMENTATION_KEY, provenanceRepoImplementation);
+        }
         result.put(PROVENANCE_REPO_ROLLOVER_TIME_KEY, provenanceRepoRolloverTime);
+        putIfNotNull(result, PROVENANCE_ADMISSION_KEY, provenanceAdmissionProperties);
+        putIfNotNull(result, PROVENANCE_VOLATILE_REPO_KEY, provenanceVolatileRepositoryProperties);
+        putIfNotNull(result, PROVENANCE_STORAGE_KEY, provenanceStorageProperties);
+        if (!provenanceStorageQuotas.isEmpty()) {
+            putListIfNotNull(result, PROVENANCE_STORAGE_QUOTAS_KEY, provenanceStorageQuotas);
+        }
         return result;
     }
 
+    public String getProvenanceRepoImplementation() {
+        return provenanceRepoImplementation;
+    }
+
     public String getProvenanceRepoRolloverTimeKey() {
         return provenanceRepoRolloverTime;
     }
+
+    public ProvenanceAdmissionSchema getProvenanceAdmissionProperties() {
+        return provenanceAdmissionProperties;
+    }
+
+    public ProvenanceVolatileRepositorySchema getProvenanceVolatileRepositoryProperties() {
+        return provenanceVolatileRepositoryProperties;
+    }
+
+    public ProvenanceStorageSchema getProvenanceStorageProperties() {
+        return provenanceStorageProperties;
+    }
+
+    public List<ProvenanceStorageQuotaSchema> getProvenanceStorageQuotas() {
+        return provenanceStorageQuotas;
+    }
 }
@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.minifi.commons.schema;
+
+import org.apache.nifi.minifi.commons.schema.common.BaseSchema;
+import org.apache.nifi.minifi.commons.schema.common.WritableSchema;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static org.apache.nifi.minifi.commons.schema.common.CommonPropertyKeys.PROVENANCE_STORAGE_QUOTAS_KEY;
+
+/**
+ * Bounds the storage that the Provenance Events of a set of components may take up in the persistent Provenance Repository.
+ * Once they take up more than the maximum storage size, their oldest event files are aged off ahead of all others, so that
+ * a chatty component cannot push the events of the rest of the flow out of the repository. The components are given by id,
+ * and the components of each of the given process groups, including those of the groups nested within them, are added to them.
+ */
+public class ProvenanceStorageQuotaSchema extends BaseSchema implements WritableSchema {
+    public static final String NAME_KEY = "name";
+    public static final String COMPONENT_IDS_KEY = "component ids";
+    public static final String PROCESS_GROUP_IDS_KEY = "process group ids";
+    public static final String MAX_STORAGE_SIZE_KEY = "max storage size";
+
+    public static final List<String> DEFAULT_LIST = Collections.emptyList();
+
+    // the name is part of the property keys that the quota is written to
+    private static final Pattern VALID_NAME = Pattern.compile("[A-Za-z0-9_-]+");
+
+    private String name;
+    private List<String> componentIds = DEFAULT_LIST;
+    private List<String> processGroupIds = DEFAULT_LIST;
+    private String maxStorageSize;
+
+    public ProvenanceStorageQuotaSchema(Map map) {
+        name = getRequiredKeyAsType(map, NAME_KEY, String.class, PROVENANCE_STORAGE_QUOTAS_KEY);
+        if (name != null && !VALID_NAME.matcher(name).matches()) {
+            addValidationIssue(NAME_KEY, PROVENANCE_STORAGE_QUOTAS_KEY, "'" + name + "' may only contain letters, digits, underscores and hyphens");
+        }
+
+        componentIds = getOptionalKeyAsType(map, COMPONENT_IDS_KEY, List.class, PROVENANCE_STORAGE_QUOTAS_KEY, DEFAULT_LIST);
+        processGroupIds = getOptionalKeyAsType(map, PROCESS_GROUP_IDS_KEY, List.class, PROVENANCE_STORAGE_QUOTAS_KEY, DEFAULT_LIST);
+        if ((componentIds == null || componentIds.isEmpty()) && (processGroupIds == null || processGroupIds.isEmpty())) {
+            addValidationIssue(COMPONENT_IDS_KEY, PROVENANCE_STORAGE_QUOTAS_KEY, "at least one component id or process group id is required");
+        }
+
+        maxStorageSize = getRequiredKeyAsType(map, MAX_STORAGE_SIZE_KEY, String.class, PROVENANCE_STORAGE_QUOTAS_KEY);
+    }
+
+    @Override
+    public Map<String, Object> toMap() {
+        Map<String, Object> result = mapSupplier.get();
+        result.put(NAME_KEY, name);
+        result.put(COMPONENT_IDS_KEY, componentIds);
+        result.put(PROCESS_GROUP_IDS_KEY, processGroupIds);
+        result.put(MAX_STORAGE_SIZE_KEY, maxStorageSize);
+        return result;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<String> getComponentIds() {
+        return componentIds;
+    }
+
+    public List<String> getProcessGroupIds() {
+        return processGroupIds;
+    }
+
+    public String getMaxStorageSize() {
+        return maxStorageSize;
+    }
+}
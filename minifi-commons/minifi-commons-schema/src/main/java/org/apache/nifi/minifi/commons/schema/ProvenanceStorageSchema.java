@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.minifi.commons.schema;
+
+import org.apache.nifi.minifi.commons.schema.common.BaseSchema;
+import org.apache.nifi.minifi.commons.schema.common.WritableSchema;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.apache.nifi.minifi.commons.schema.common.CommonPropertyKeys.PROVENANCE_STORAGE_KEY;
+
+/**
+ * Lays out the persistent Provenance Repository across disks. Journals, which take every write, can be kept on a small, fast
+ * disk while the merged event files, which take most of the space, are archived on a large, slow one. An empty list of
+ * journal directories keeps the journals in the archive directories, and an empty list of archive directories uses the
+ * default ./provenance_repository. Dictionary encoding shrinks the archived event files, but changes their format, so it is
+ * off unless enabled.
+ */
+public class ProvenanceStorageSchema extends BaseSchema implements WritableSchema {
+    public static final String JOURNAL_DIRECTORIES_KEY = "journal directories";
+    public static final String ARCHIVE_DIRECTORIES_KEY = "archive directories";
+    public static final String DICTIONARY_ENCODING_KEY = "dictionary encoding";
+
+    public static final List<String> DEFAULT_LIST = Collections.emptyList();
+    public static final boolean DEFAULT_DICTIONARY_ENCODING = false;
+
+    private List<String> journalDirectories = DEFAULT_LIST;
+    private List<String> archiveDirectories = DEFAULT_LIST;
+    private Boolean dictionaryEncoding = DEFAULT_DICTIONARY_ENCODING;
+
+    public ProvenanceStorageSchema() {
+    }
+
+    public ProvenanceStorageSchema(Map map) {
+        journalDirectories = getOptionalKeyAsType(map, JOURNAL_DIRECTORIES_KEY, List.class, PROVENANCE_STORAGE_KEY, DEFAULT_LIST);
+        validateDirectories(JOURNAL_DIRECTORIES_KEY, journalDirectories);
+        archiveDirectories = getOptionalKeyAsType(map, ARCHIVE_DIRECTORIES_KEY, List.class, PROVENANCE_STORAGE_KEY, DEFAULT_LIST);
+        validateDirectories(ARCHIVE_DIRECTORIES_KEY, archiveDirectories);
+        dictionaryEncoding = getOptionalKeyAsType(map, DICTIONARY_ENCODING_KEY, Boolean.class, PROVENANCE_STORAGE_KEY, DEFAULT_DICTIONARY_ENCODING);
+    }
+
+    private void validateDirectories(String key, List<String> directories) {
+        if (directories == null) {
+            return;
+        }
+        for (Object directory : directories) {
+            if (directory == null || String.valueOf(directory).trim().isEmpty()) {
+                addValidationIssue(key, PROVENANCE_STORAGE_KEY, "it must not contain empty directories");
+                return;
+            }
+        }
+    }
+
+    @Override
+    public Map<String, Object> toMap() {
+        Map<String, Object> result = mapSupplier.get();
+        result.put(JOURNAL_DIRECTORIES_KEY, journalDirectories);
+        result.put(ARCHIVE_DIRECTORIES_KEY, archiveDirectories);
+        result.put(DICTIONARY_ENCODING_KEY, dictionaryEncoding);
+        return result;
+    }
+
+    public List<String> getJournalDirectories() {
+        return journalDirectories;
+    }
+
+    public List<String> getArchiveDirectories() {
+        return archiveDirectories;
+    }
+
+    public boolean getDictionaryEncoding() {
+        return dictionaryEncoding;
+    }
+}
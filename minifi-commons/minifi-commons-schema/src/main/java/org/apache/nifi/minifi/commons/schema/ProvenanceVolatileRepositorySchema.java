@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.nifi.minifi.commons.schema;
+
+import org.apache.nifi.minifi.commons.schema.common.BaseSchema;
+import org.apache.nifi.minifi.commons.schema.common.WritableSchema;
+
+import java.util.Map;
+
+import static org.apache.nifi.minifi.commons.schema.common.CommonPropertyKeys.PROVENANCE_VOLATILE_REPO_KEY;
+
+/**
+ * Bounds the memory used by the volatile Provenance Repository, which holds events outside of the Java heap, and optionally
+ * names a file to spill events to before they are evicted. An empty spill file disables spilling.
+ */
+public class ProvenanceVolatileRepositorySchema extends BaseSchema implements WritableSchema {
+    public static final String MAX_STORAGE_SIZE_KEY = "max storage size";
+    public static final String SEGMENT_SIZE_KEY = "segment size";
+    public static final String SPILL_FILE_KEY = "spill file";
+    public static final String SPILL_MAX_SIZE_KEY = "spill max size";
+
+    public static final String DEFAULT_MAX_STORAGE_SIZE = "16 MB";
+    public static final String DEFAULT_SEGMENT_SIZE = "1 MB";
+    public static final String DEFAULT_SPILL_FILE = "";
+    public static final String DEFAULT_SPILL_MAX_SIZE = "64 MB";
+
+    private String maxStorageSize = DEFAULT_MAX_STORAGE_SIZE;
+    private String segmentSize = DEFAULT_SEGMENT_SIZE;
+    private String spillFile = DEFAULT_SPILL_FILE;
+    private String spillMaxSize = DEFAULT_SPILL_MAX_SIZE;
+
+    public ProvenanceVolatileRepositorySchema() {
+    }
+
+    public ProvenanceVolatileRepositorySchema(Map map) {
+        maxStorageSize = getOptionalKeyAsType(map, MAX_STORAGE_SIZE_KEY, String.class, PROVENANCE_VOLATILE_REPO_KEY, DEFAULT_MAX_STORAGE_SIZE);
+        segmentSize = getOptionalKeyAsType(map, SEGMENT_SIZE_KEY, String.class, PROVENANCE_VOLATILE_REPO_KEY, DEFAULT_SEGMENT_SIZE);
+        spillFile = getOptionalKeyAsType(map, SPILL_FILE_KEY, String.class, PROVENANCE_VOLATILE_REPO_KEY, DEFAULT_SPILL_FILE);
+        spillMaxSize = getOptionalKeyAsType(map, SPILL_MAX_SIZE_KEY, String.class, PROVENANCE_VOLATILE_REPO_KEY, DEFAULT_SPILL_MAX_SIZE);
+    }
+
+    @Override
+    public Map<String, Object> toMap() {
+        Map<String, Object> result = mapSupplier.get();
+        result.put(MAX_STORAGE_SIZE_KEY, maxStorageSize);
+        result.put(SEGMENT_SIZE_KEY, segmentSize);
+        result.put(SPILL_FILE_KEY, spillFile);
+        result.put(SPILL_MAX_SIZE_KEY, spillMaxSize);
+        return result;
+    }
+
+    public String getMaxStorageSize() {
+        return maxStorageSize;
+    }
+
+    public String getSegmentSize() {
+        return segmentSize;
+    }
+
+    public String getSpillFile() {
+        return spillFile;
+    }
+
+    public String getSpillMaxSize() {
+        return spillMaxSize;
+    }
+}
@@ -38,6 +38,10 @@ public class CommonPropertyKeys {
     public static final String CONTROLLER_SERVICES_KEY = "Controller Services";
     public static final String FUNNELS_KEY = "Funnels";
     public static final String PROVENANCE_REPO_KEY = "Provenance Repository";
+    public static final String PROVENANCE_ADMISSION_KEY = "Admission Policy";
+    public static final String PROVENANCE_VOLATILE_REPO_KEY = "Volatile Repository";
+    public static final String PROVENANCE_STORAGE_KEY = "Storage";
+    public static final String PROVENANCE_STORAGE_QUOTAS_KEY = "Storage Quotas";
 
 
     public static final String NAME_KEY = "name";
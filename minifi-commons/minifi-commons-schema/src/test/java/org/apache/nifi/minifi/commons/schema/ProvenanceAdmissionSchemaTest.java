@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.nifi.minifi.commons.schema;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.apache.nifi.minifi.commons.schema.common.CommonPropertyKeys.PROVENANCE_ADMISSION_KEY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ProvenanceAdmissionSchemaTest {
+
+    @Test
+    public void testEmptyMapConstructorValid() {
+        ProvenanceAdmissionSchema schema = new ProvenanceAdmissionSchema(new HashMap());
+        assertTrue(schema.isValid());
+        assertTrue(schema.getAllowedEventTypes().isEmpty());
+        assertTrue(schema.getDeniedComponentIds().isEmpty());
+        assertEquals(ProvenanceAdmissionSchema.DEFAULT_SAMPLING_PERCENTAGE, schema.getSamplingPercentage());
+    }
+
+    @Test
+    public void testInvalidEventTypeAndSamplingPercentage() {
+        Map<String, Object> map = new HashMap<>();
+        map.put(ProvenanceAdmissionSchema.ALLOWED_EVENT_TYPES_KEY, Arrays.asList("RECEIVE", "send", "NOT_A_TYPE"));
+        map.put(ProvenanceAdmissionSchema.SAMPLING_PERCENTAGE_KEY, 150);
+
+        ProvenanceAdmissionSchema schema = new ProvenanceAdmissionSchema(map);
+        assertFalse(schema.isValid());
+        assertEquals(2, schema.getValidationIssues().size());
+    }
+
+    @Test
+    public void testAdmissionPolicyIsOptional() {
+        Map<String, Object> map = new HashMap<>();
+        ProvenanceRepositorySchema repositorySchema = new ProvenanceRepositorySchema(map);
+        assertNull(repositorySchema.getProvenanceAdmissionProperties());
+        assertFalse(repositorySchema.toMap().containsKey(PROVENANCE_ADMISSION_KEY));
+
+        Map<String, Object> admission = new HashMap<>();
+        admission.put(ProvenanceAdmissionSchema.DENIED_EVENT_TYPES_KEY, Arrays.asList("ATTRIBUTES_MODIFIED"));
+        map.put(PROVENANCE_ADMISSION_KEY, admission);
+        repositorySchema = new ProvenanceRepositorySchema(map);
+        assertTrue(repositorySchema.isValid());
+        assertEquals(Arrays.asList("ATTRIBUTES_MODIFIED"), repositorySchema.getProvenanceAdmissionProperties().getDeniedEventTypes());
+        assertEquals(Arrays.asList("ATTRIBUTES_MODIFIED"),
+                ((Map) repositorySchema.toMap().get(PROVENANCE_ADMISSION_KEY)).get(ProvenanceAdmissionSchema.DENIED_EVENT_TYPES_KEY));
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.minifi.commons.schema;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.apache.nifi.minifi.commons.schema.common.CommonPropertyKeys.PROVENANCE_STORAGE_QUOTAS_KEY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ProvenanceStorageQuotaSchemaTest {
+
+    private static Map<String, Object> createQuota(String name) {
+        Map<String, Object> map = new HashMap<>();
+        map.put(ProvenanceStorageQuotaSchema.NAME_KEY, name);
+        map.put(ProvenanceStorageQuotaSchema.COMPONENT_IDS_KEY, Arrays.asList("tail-file"));
+        map.put(ProvenanceStorageQuotaSchema.MAX_STORAGE_SIZE_KEY, "100 MB");
+        return map;
+    }
+
+    @Test
+    public void testValidQuota() {
+        Map<String, Object> map = createQuota("tail-logs");
+        map.put(ProvenanceStorageQuotaSchema.PROCESS_GROUP_IDS_KEY, Arrays.asList("ingest-group"));
+
+        ProvenanceStorageQuotaSchema schema = new ProvenanceStorageQuotaSchema(map);
+        assertTrue(schema.isValid());
+        assertEquals("tail-logs", schema.getName());
+        assertEquals(Arrays.asList("tail-file"), schema.getComponentIds());
+        assertEquals(Arrays.asList("ingest-group"), schema.getProcessGroupIds());
+        assertEquals("100 MB", schema.getMaxStorageSize());
+    }
+
+    @Test
+    public void testQuotaWithoutComponentsIsInvalid() {
+        Map<String, Object> map = createQuota("tail-logs");
+        map.remove(ProvenanceStorageQuotaSchema.COMPONENT_IDS_KEY);
+
+        ProvenanceStorageQuotaSchema schema = new ProvenanceStorageQuotaSchema(map);
+        assertFalse(schema.isValid());
+        assertEquals(1, schema.getValidationIssues().size());
+    }
+
+    @Test
+    public void testQuotaWithoutMaxStorageSizeIsInvalid() {
+        Map<String, Object> map = createQuota("tail-logs");
+        map.remove(ProvenanceStorageQuotaSchema.MAX_STORAGE_SIZE_KEY);
+
+        assertFalse(new ProvenanceStorageQuotaSchema(map).isValid());
+    }
+
+    @Test
+    public void testNameThatIsNotAPropertyKeyIsInvalid() {
+        assertFalse(new ProvenanceStorageQuotaSchema(createQuota("tail logs")).isValid());
+        assertFalse(new ProvenanceStorageQuotaSchema(createQuota("tail=logs")).isValid());
+    }
+
+    @Test
+    public void testStorageQuotasAreOptional() {
+        Map<String, Object> map = new HashMap<>();
+        ProvenanceRepositorySchema repositorySchema = new ProvenanceRepositorySchema(map);
+        assertTrue(repositorySchema.getProvenanceStorageQuotas().isEmpty());
+        assertFalse(repositorySchema.toMap().containsKey(PROVENANCE_STORAGE_QUOTAS_KEY));
+
+        map.put(PROVENANCE_STORAGE_QUOTAS_KEY, Arrays.asList(createQuota("tail-logs"), createQuota("ingest")));
+        repositorySchema = new ProvenanceRepositorySchema(map);
+        assertTrue(repositorySchema.isValid());
+        assertEquals(2, repositorySchema.getProvenanceStorageQuotas().size());
+        assertEquals("ingest", repositorySchema.getProvenanceStorageQuotas().get(1).getName());
+        assertEquals(2, ((List) repositorySchema.toMap().get(PROVENANCE_STORAGE_QUOTAS_KEY)).size());
+    }
+
+    @Test
+    public void testDuplicateNamesAreInvalid() {
+        Map<String, Object> map = new HashMap<>();
+        map.put(PROVENANCE_STORAGE_QUOTAS_KEY, Arrays.asList(createQuota("tail-logs"), createQuota("tail-logs")));
+
+        ProvenanceRepositorySchema repositorySchema = new ProvenanceRepositorySchema(map);
+        assertFalse(repositorySchema.isValid());
+        assertEquals(Collections.singletonList(ProvenanceRepositorySchema.FOUND_THE_FOLLOWING_DUPLICATE_STORAGE_QUOTA_NAMES + "tail-logs"),
+                repositorySchema.getValidationIssues());
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.minifi.commons.schema;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.apache.nifi.minifi.commons.schema.common.CommonPropertyKeys.PROVENANCE_STORAGE_KEY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ProvenanceStorageSchemaTest {
+
+    @Test
+    public void testEmptyMapConstructorValid() {
+        ProvenanceStorageSchema schema = new ProvenanceStorageSchema(new HashMap());
+        assertTrue(schema.isValid());
+        assertTrue(schema.getJournalDirectories().isEmpty());
+        assertTrue(schema.getArchiveDirectories().isEmpty());
+        assertFalse(schema.getDictionaryEncoding());
+    }
+
+    @Test
+    public void testDictionaryEncoding() {
+        Map<String, Object> map = new HashMap<>();
+        map.put(ProvenanceStorageSchema.DICTIONARY_ENCODING_KEY, true);
+
+        ProvenanceStorageSchema schema = new ProvenanceStorageSchema(map);
+        assertTrue(schema.isValid());
+        assertTrue(schema.getDictionaryEncoding());
+        assertEquals(true, schema.toMap().get(ProvenanceStorageSchema.DICTIONARY_ENCODING_KEY));
+    }
+
+    @Test
+    public void testEmptyDirectoryIsInvalid() {
+        Map<String, Object> map = new HashMap<>();
+        map.put(ProvenanceStorageSchema.JOURNAL_DIRECTORIES_KEY, Arrays.asList("/mnt/nvme/provenance", " "));
+
+        ProvenanceStorageSchema schema = new ProvenanceStorageSchema(map);
+        assertFalse(schema.isValid());
+        assertEquals(1, schema.getValidationIssues().size());
+    }
+
+    @Test
+    public void testStorageIsOptional() {
+        Map<String, Object> map = new HashMap<>();
+        ProvenanceRepositorySchema repositorySchema = new ProvenanceRepositorySchema(map);
+        assertNull(repositorySchema.getProvenanceStorageProperties());
+        assertFalse(repositorySchema.toMap().containsKey(PROVENANCE_STORAGE_KEY));
+
+        Map<String, Object> storage = new HashMap<>();
+        storage.put(ProvenanceStorageSchema.JOURNAL_DIRECTORIES_KEY, Arrays.asList("/mnt/nvme/provenance"));
+        storage.put(ProvenanceStorageSchema.ARCHIVE_DIRECTORIES_KEY, Arrays.asList("/mnt/sata1/provenance", "/mnt/sata2/provenance"));
+        map.put(PROVENANCE_STORAGE_KEY, storage);
+        repositorySchema = new ProvenanceRepositorySchema(map);
+        assertTrue(repositorySchema.isValid());
+        assertEquals(Arrays.asList("/mnt/nvme/provenance"), repositorySchema.getProvenanceStorageProperties().getJournalDirectories());
+        assertEquals(Arrays.asList("/mnt/sata1/provenance", "/mnt/sata2/provenance"),
+                ((Map) repositorySchema.toMap().get(PROVENANCE_STORAGE_KEY)).get(ProvenanceStorageSchema.ARCHIVE_DIRECTORIES_KEY));
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.nifi.minifi.commons.schema;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.apache.nifi.minifi.commons.schema.common.CommonPropertyKeys.PROVENANCE_VOLATILE_REPO_KEY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ProvenanceVolatileRepositorySchemaTest {
+
+    @Test
+    public void testEmptyMapConstructorValid() {
+        ProvenanceVolatileRepositorySchema schema = new ProvenanceVolatileRepositorySchema(new HashMap());
+        assertTrue(schema.isValid());
+        assertEquals(ProvenanceVolatileRepositorySchema.DEFAULT_MAX_STORAGE_SIZE, schema.getMaxStorageSize());
+        assertEquals(ProvenanceVolatileRepositorySchema.DEFAULT_SEGMENT_SIZE, schema.getSegmentSize());
+        assertEquals(ProvenanceVolatileRepositorySchema.DEFAULT_SPILL_FILE, schema.getSpillFile());
+        assertEquals(ProvenanceVolatileRepositorySchema.DEFAULT_SPILL_MAX_SIZE, schema.getSpillMaxSize());
+    }
+
+    @Test
+    public void testImplementationOnlyWrittenWhenNotDefault() {
+        Map<String, Object> map = new HashMap<>();
+        ProvenanceRepositorySchema repositorySchema = new ProvenanceRepositorySchema(map);
+        assertEquals(ProvenanceRepositorySchema.PERSISTENT_PROVENANCE_REPO_IMPLEMENTATION, repositorySchema.getProvenanceRepoImplementation());
+        assertNull(repositorySchema.getProvenanceVolatileRepositoryProperties());
+        assertFalse(repositorySchema.toMap().containsKey(ProvenanceRepositorySchema.PROVENANCE_REPO_IMPLEMENTATION_KEY));
+        assertFalse(repositorySchema.toMap().containsKey(PROVENANCE_VOLATILE_REPO_KEY));
+
+        Map<String, Object> volatileRepository = new HashMap<>();
+        volatileRepository.put(ProvenanceVolatileRepositorySchema.MAX_STORAGE_SIZE_KEY, "4 MB");
+        volatileRepository.put(ProvenanceVolatileRepositorySchema.SPILL_FILE_KEY, "./provenance.spill");
+        map.put(ProvenanceRepositorySchema.PROVENANCE_REPO_IMPLEMENTATION_KEY, ProvenanceRepositorySchema.VOLATILE_PROVENANCE_REPO_IMPLEMENTATION);
+        map.put(PROVENANCE_VOLATILE_REPO_KEY, volatileRepository);
+        repositorySchema = new ProvenanceRepositorySchema(map);
+        assertTrue(repositorySchema.isValid());
+        assertEquals("4 MB", repositorySchema.getProvenanceVolatileRepositoryProperties().getMaxStorageSize());
+        assertEquals("./provenance.spill", repositorySchema.getProvenanceVolatileRepositoryProperties().getSpillFile());
+
+        Map<String, Object> written = repositorySchema.toMap();
+        assertEquals(ProvenanceRepositorySchema.VOLATILE_PROVENANCE_REPO_IMPLEMENTATION, written.get(ProvenanceRepositorySchema.PROVENANCE_REPO_IMPLEMENTATION_KEY));
+        assertEquals("4 MB", ((Map) written.get(PROVENANCE_VOLATILE_REPO_KEY)).get(ProvenanceVolatileRepositorySchema.MAX_STORAGE_SIZE_KEY));
+    }
+}
@@ -23,6 +23,7 @@ import org.apache.nifi.minifi.commons.status.connection.ConnectionStatusBean;
 import org.apache.nifi.minifi.commons.status.controllerservice.ControllerServiceStatus;
 import org.apache.nifi.minifi.commons.status.instance.InstanceStatus;
 import org.apache.nifi.minifi.commons.status.processor.ProcessorStatusBean;
+import org.apache.nifi.minifi.commons.status.provenancerepository.ProvenanceRepositoryStatus;
 import org.apache.nifi.minifi.commons.status.reportingTask.ReportingTaskStatus;
 import org.apache.nifi.minifi.commons.status.rpg.RemoteProcessGroupStatusBean;
 import org.apache.nifi.minifi.commons.status.system.SystemDiagnosticsStatus;
@@ -39,6 +40,7 @@ public class FlowStatusReport implements java.io.Serializable {
     private InstanceStatus instanceStatus;
     private SystemDiagnosticsStatus systemDiagnosticsStatus;
     private List<ReportingTaskStatus> reportingTaskStatusList;
+    private ProvenanceRepositoryStatus provenanceRepositoryStatus;
     private List<String> errorsGeneratingReport;
     private static final ObjectMapper objectMapper = new ObjectMapper();
 
@@ -101,6 +103,14 @@ public class FlowStatusReport implements java.io.Serializable {
         this.reportingTaskStatusList = reportingTaskStatusList;
     }
 
+    public ProvenanceRepositoryStatus getProvenanceRepositoryStatus() {
+        return provenanceRepositoryStatus;
+    }
+
+    public void setProvenanceRepositoryStatus(ProvenanceRepositoryStatus provenanceRepositoryStatus) {
+        this.provenanceRepositoryStatus = provenanceRepositoryStatus;
+    }
+
     public List<String> getErrorsGeneratingReport() {
         return errorsGeneratingReport;
     }
@@ -124,6 +134,8 @@ public class FlowStatusReport implements java.io.Serializable {
         if (getInstanceStatus() != null ? !getInstanceStatus().equals(that.getInstanceStatus()) : that.getInstanceStatus() != null) return false;
         if (getSystemDiagnosticsStatus() != null ? !getSystemDiagnosticsStatus().equals(that.getSystemDiagnosticsStatus()) : that.getSystemDiagnosticsStatus() != null) return false;
         if (getReportingTaskStatusList() != null ? !getReportingTaskStatusList().equals(that.getReportingTaskStatusList()) : that.getReportingTaskStatusList() != null) return false;
+        if (getProvenanceRepositoryStatus() != null ? !getProvenanceRepositoryStatus().equals(that.getProvenanceRepositoryStatus()) : that.getProvenanceRepositoryStatus() != null)
+            return false;
         return getErrorsGeneratingReport() != null ? getErrorsGeneratingReport().equals(that.getErrorsGeneratingReport()) : that.getErrorsGeneratingReport() == null;
 
     }
@@ -137,6 +149,7 @@ public class FlowStatusReport implements java.io.Serializable {
         result = 31 * result + (getInstanceStatus() != null ? getInstanceStatus().hashCode() : 0);
         result = 31 * result + (getSystemDiagnosticsStatus() != null ? getSystemDiagnosticsStatus().hashCode() : 0);
         result = 31 * result + (getReportingTaskStatusList() != null ? getReportingTaskStatusList().hashCode() : 0);
+        result = 31 * result + (getProvenanceRepositoryStatus() != null ? getProvenanceRepositoryStatus().hashCode() : 0);
         result = 31 * result + (getErrorsGeneratingReport() != null ? getErrorsGeneratingReport().hashCode() : 0);
         return result;
     }
@@ -154,6 +167,7 @@ public class FlowStatusReport implements java.io.Serializable {
             generator.writeObjectField("instanceStatus", instanceStatus);
             generator.writeObjectField("systemDiagnosticsStatus", systemDiagnosticsStatus);
             generator.writeObjectField("reportingTaskStatusList", reportingTaskStatusList);
+            generator.writeObjectField("provenanceRepositoryStatus", provenanceRepositoryStatus);
             generator.writeObjectField("errorsGeneratingReport", errorsGeneratingReport);
             generator.writeEndObject();
             generator.close();
@@ -168,6 +182,7 @@ public class FlowStatusReport implements java.io.Serializable {
                 ", instanceStatus=" + instanceStatus +
                 ", systemDiagnosticsStatus=" + systemDiagnosticsStatus +
                 ", reportingTaskStatusList=" + reportingTaskStatusList +
+                ", provenanceRepositoryStatus=" + provenanceRepositoryStatus +
                 ", errorsGeneratingReport=" + errorsGeneratingReport +
                 '}';
         }
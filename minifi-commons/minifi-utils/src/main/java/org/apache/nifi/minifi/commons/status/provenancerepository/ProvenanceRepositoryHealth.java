@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.nifi.minifi.commons.status.provenancerepository;
+
+public class ProvenanceRepositoryHealth implements java.io.Serializable {
+    private int journalCount;
+    private int dirtyWriterCount;
+    private int eventFileCount;
+    private long repositorySize;
+    private int queuedMergeCount;
+    private int runningMergeCount;
+    private int failingMergeCount;
+
+    public ProvenanceRepositoryHealth() {
+    }
+
+    public int getJournalCount() {
+        return journalCount;
+    }
+
+    public void setJournalCount(int journalCount) {
+        this.journalCount = journalCount;
+    }
+
+    public int getDirtyWriterCount() {
+        return dirtyWriterCount;
+    }
+
+    public void setDirtyWriterCount(int dirtyWriterCount) {
+        this.dirtyWriterCount = dirtyWriterCount;
+    }
+
+    public int getEventFileCount() {
+        return eventFileCount;
+    }
+
+    public void setEventFileCount(int eventFileCount) {
+        this.eventFileCount = eventFileCount;
+    }
+
+    public long getRepositorySize() {
+        return repositorySize;
+    }
+
+    public void setRepositorySize(long repositorySize) {
+        this.repositorySize = repositorySize;
+    }
+
+    public int getQueuedMergeCount() {
+        return queuedMergeCount;
+    }
+
+    public void setQueuedMergeCount(int queuedMergeCount) {
+        this.queuedMergeCount = queuedMergeCount;
+    }
+
+    public int getRunningMergeCount() {
+        return runningMergeCount;
+    }
+
+    public void setRunningMergeCount(int runningMergeCount) {
+        this.runningMergeCount = runningMergeCount;
+    }
+
+    public int getFailingMergeCount() {
+        return failingMergeCount;
+    }
+
+    public void setFailingMergeCount(int failingMergeCount) {
+        this.failingMergeCount = failingMergeCount;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        ProvenanceRepositoryHealth that = (ProvenanceRepositoryHealth) o;
+
+        if (getJournalCount() != that.getJournalCount()) return false;
+        if (getDirtyWriterCount() != that.getDirtyWriterCount()) return false;
+        if (getEventFileCount() != that.getEventFileCount()) return false;
+        if (getRepositorySize() != that.getRepositorySize()) return false;
+        if (getQueuedMergeCount() != that.getQueuedMergeCount()) return false;
+        if (getRunningMergeCount() != that.getRunningMergeCount()) return false;
+        return getFailingMergeCount() == that.getFailingMergeCount();
+
+    }
+
+    @Override
+    public int hashCode() {
+        int result = getJournalCount();
+        result = 31 * result + getDirtyWriterCount();
+        result = 31 * result + getEventFileCount();
+        result = 31 * result + (int) (getRepositorySize() ^ (getRepositorySize() >>> 32));
+        result = 31 * result + getQueuedMergeCount();
+        result = 31 * result + getRunningMergeCount();
+        result = 31 * result + getFailingMergeCount();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "journalCount=" + journalCount +
+                ", dirtyWriterCount=" + dirtyWriterCount +
+                ", eventFileCount=" + eventFileCount +
+                ", repositorySize=" + repositorySize +
+                ", queuedMergeCount=" + queuedMergeCount +
+                ", runningMergeCount=" + runningMergeCount +
+                ", failingMergeCount=" + failingMergeCount +
+                '}';
+    }
+}
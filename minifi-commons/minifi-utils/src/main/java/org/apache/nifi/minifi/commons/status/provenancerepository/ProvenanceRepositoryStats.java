@@ -0,0 +1,344 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.nifi.minifi.commons.status.provenancerepository;
+
+public class ProvenanceRepositoryStats implements java.io.Serializable {
+    private long eventsWritten;
+    private long bytesWritten;
+    private double eventsPerSecond;
+    private double bytesPerSecond;
+    private double persistLatencyAverageMicros;
+    private long persistLatency99thPercentileMicros;
+    private long persistLatencyMaxMicros;
+    private long lockRetries;
+    private double journalSyncAverageMicros;
+    private long journalSync99thPercentileMicros;
+    private long journalSyncMaxMicros;
+    private double groupCommitAverageBatchSize;
+    private long groupCommitMaxBatchSize;
+    private long mergeCount;
+    private double mergeAverageMillis;
+    private long mergeMaxMillis;
+    private double mergeBytesPerSecond;
+    private double compressionRatio;
+    private long purgeCount;
+    private double purgeAverageMillis;
+    private long filesPurged;
+    private long backpressureMillis;
+    private long eventsDropped;
+    private long eventsSpilled;
+
+    public ProvenanceRepositoryStats() {
+    }
+
+    public long getEventsWritten() {
+        return eventsWritten;
+    }
+
+    public void setEventsWritten(long eventsWritten) {
+        this.eventsWritten = eventsWritten;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public void setBytesWritten(long bytesWritten) {
+        this.bytesWritten = bytesWritten;
+    }
+
+    public double getEventsPerSecond() {
+        return eventsPerSecond;
+    }
+
+    public void setEventsPerSecond(double eventsPerSecond) {
+        this.eventsPerSecond = eventsPerSecond;
+    }
+
+    public double getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    public void setBytesPerSecond(double bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    public double getPersistLatencyAverageMicros() {
+        return persistLatencyAverageMicros;
+    }
+
+    public void setPersistLatencyAverageMicros(double persistLatencyAverageMicros) {
+        this.persistLatencyAverageMicros = persistLatencyAverageMicros;
+    }
+
+    public long getPersistLatency99thPercentileMicros() {
+        return persistLatency99thPercentileMicros;
+    }
+
+    public void setPersistLatency99thPercentileMicros(long persistLatency99thPercentileMicros) {
+        this.persistLatency99thPercentileMicros = persistLatency99thPercentileMicros;
+    }
+
+    public long getPersistLatencyMaxMicros() {
+        return persistLatencyMaxMicros;
+    }
+
+    public void setPersistLatencyMaxMicros(long persistLatencyMaxMicros) {
+        this.persistLatencyMaxMicros = persistLatencyMaxMicros;
+    }
+
+    public long getLockRetries() {
+        return lockRetries;
+    }
+
+    public void setLockRetries(long lockRetries) {
+        this.lockRetries = lockRetries;
+    }
+
+    public double getJournalSyncAverageMicros() {
+        return journalSyncAverageMicros;
+    }
+
+    public void setJournalSyncAverageMicros(double journalSyncAverageMicros) {
+        this.journalSyncAverageMicros = journalSyncAverageMicros;
+    }
+
+    public long getJournalSync99thPercentileMicros() {
+        return journalSync99thPercentileMicros;
+    }
+
+    public void setJournalSync99thPercentileMicros(long journalSync99thPercentileMicros) {
+        this.journalSync99thPercentileMicros = journalSync99thPercentileMicros;
+    }
+
+    public long getJournalSyncMaxMicros() {
+        return journalSyncMaxMicros;
+    }
+
+    public void setJournalSyncMaxMicros(long journalSyncMaxMicros) {
+        this.journalSyncMaxMicros = journalSyncMaxMicros;
+    }
+
+    public double getGroupCommitAverageBatchSize() {
+        return groupCommitAverageBatchSize;
+    }
+
+    public void setGroupCommitAverageBatchSize(double groupCommitAverageBatchSize) {
+        this.groupCommitAverageBatchSize = groupCommitAverageBatchSize;
+    }
+
+    public long getGroupCommitMaxBatchSize() {
+        return groupCommitMaxBatchSize;
+    }
+
+    public void setGroupCommitMaxBatchSize(long groupCommitMaxBatchSize) {
+        this.groupCommitMaxBatchSize = groupCommitMaxBatchSize;
+    }
+
+    public long getMergeCount() {
+        return mergeCount;
+    }
+
+    public void setMergeCount(long mergeCount) {
+        this.mergeCount = mergeCount;
+    }
+
+    public double getMergeAverageMillis() {
+        return mergeAverageMillis;
+    }
+
+    public void setMergeAverageMillis(double mergeAverageMillis) {
+        this.mergeAverageMillis = mergeAverageMillis;
+    }
+
+    public long getMergeMaxMillis() {
+        return mergeMaxMillis;
+    }
+
+    public void setMergeMaxMillis(long mergeMaxMillis) {
+        this.mergeMaxMillis = mergeMaxMillis;
+    }
+
+    public double getMergeBytesPerSecond() {
+        return mergeBytesPerSecond;
+    }
+
+    public void setMergeBytesPerSecond(double mergeBytesPerSecond) {
+        this.mergeBytesPerSecond = mergeBytesPerSecond;
+    }
+
+    public double getCompressionRatio() {
+        return compressionRatio;
+    }
+
+    public void setCompressionRatio(double compressionRatio) {
+        this.compressionRatio = compressionRatio;
+    }
+
+    public long getPurgeCount() {
+        return purgeCount;
+    }
+
+    public void setPurgeCount(long purgeCount) {
+        this.purgeCount = purgeCount;
+    }
+
+    public double getPurgeAverageMillis() {
+        return purgeAverageMillis;
+    }
+
+    public void setPurgeAverageMillis(double purgeAverageMillis) {
+        this.purgeAverageMillis = purgeAverageMillis;
+    }
+
+    public long getFilesPurged() {
+        return filesPurged;
+    }
+
+    public void setFilesPurged(long filesPurged) {
+        this.filesPurged = filesPurged;
+    }
+
+    public long getBackpressureMillis() {
+        return backpressureMillis;
+    }
+
+    public void setBackpressureMillis(long backpressureMillis) {
+        this.backpressureMillis = backpressureMillis;
+    }
+
+    public long getEventsDropped() {
+        return eventsDropped;
+    }
+
+    public void setEventsDropped(long eventsDropped) {
+        this.eventsDropped = eventsDropped;
+    }
+
+    public long getEventsSpilled() {
+        return eventsSpilled;
+    }
+
+    public void setEventsSpilled(long eventsSpilled) {
+        this.eventsSpilled = eventsSpilled;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        ProvenanceRepositoryStats that = (ProvenanceRepositoryStats) o;
+
+        if (getEventsWritten() != that.getEventsWritten()) return false;
+        if (getBytesWritten() != that.getBytesWritten()) return false;
+        if (Double.compare(that.getEventsPerSecond(), getEventsPerSecond()) != 0) return false;
+        if (Double.compare(that.getBytesPerSecond(), getBytesPerSecond()) != 0) return false;
+        if (Double.compare(that.getPersistLatencyAverageMicros(), getPersistLatencyAverageMicros()) != 0) return false;
+        if (getPersistLatency99thPercentileMicros() != that.getPersistLatency99thPercentileMicros()) return false;
+        if (getPersistLatencyMaxMicros() != that.getPersistLatencyMaxMicros()) return false;
+        if (getLockRetries() != that.getLockRetries()) return false;
+        if (Double.compare(that.getJournalSyncAverageMicros(), getJournalSyncAverageMicros()) != 0) return false;
+        if (getJournalSync99thPercentileMicros() != that.getJournalSync99thPercentileMicros()) return false;
+        if (getJournalSyncMaxMicros() != that.getJournalSyncMaxMicros()) return false;
+        if (Double.compare(that.getGroupCommitAverageBatchSize(), getGroupCommitAverageBatchSize()) != 0) return false;
+        if (getGroupCommitMaxBatchSize() != that.getGroupCommitMaxBatchSize()) return false;
+        if (getMergeCount() != that.getMergeCount()) return false;
+        if (Double.compare(that.getMergeAverageMillis(), getMergeAverageMillis()) != 0) return false;
+        if (getMergeMaxMillis() != that.getMergeMaxMillis()) return false;
+        if (Double.compare(that.getMergeBytesPerSecond(), getMergeBytesPerSecond()) != 0) return false;
+        if (Double.compare(that.getCompressionRatio(), getCompressionRatio()) != 0) return false;
+        if (getPurgeCount() != that.getPurgeCount()) return false;
+        if (Double.compare(that.getPurgeAverageMillis(), getPurgeAverageMillis()) != 0) return false;
+        if (getFilesPurged() != that.getFilesPurged()) return false;
+        if (getBackpressureMillis() != that.getBackpressureMillis()) return false;
+        if (getEventsDropped() != that.getEventsDropped()) return false;
+        return getEventsSpilled() == that.getEventsSpilled();
+
+    }
+
+    @Override
+    public int hashCode() {
+        int result;
+        long temp;
+        result = (int) (getEventsWritten() ^ (getEventsWritten() >>> 32));
+        result = 31 * result + (int) (getBytesWritten() ^ (getBytesWritten() >>> 32));
+        temp = Double.doubleToLongBits(getEventsPerSecond());
+        result = 31 * result + (int) (temp ^ (temp >>> 32));
+        temp = Double.doubleToLongBits(getBytesPerSecond());
+        result = 31 * result + (int) (temp ^ (temp >>> 32));
+        temp = Double.doubleToLongBits(getPersistLatencyAverageMicros());
+        result = 31 * result + (int) (temp ^ (temp >>> 32));
+        result = 31 * result + (int) (getPersistLatency99thPercentileMicros() ^ (getPersistLatency99thPercentileMicros() >>> 32));
+        result = 31 * result + (int) (getPersistLatencyMaxMicros() ^ (getPersistLatencyMaxMicros() >>> 32));
+        result = 31 * result + (int) (getLockRetries() ^ (getLockRetries() >>> 32));
+        temp = Double.doubleToLongBits(getJournalSyncAverageMicros());
+        result = 31 * result + (int) (temp ^ (temp >>> 32));
+        result = 31 * result + (int) (getJournalSync99thPercentileMicros() ^ (getJournalSync99thPercentileMicros() >>> 32));
+        result = 31 * result + (int) (getJournalSyncMaxMicros() ^ (getJournalSyncMaxMicros() >>> 32));
+        temp = Double.doubleToLongBits(getGroupCommitAverageBatchSize());
+        result = 31 * result + (int) (temp ^ (temp >>> 32));
+        result = 31 * result + (int) (getGroupCommitMaxBatchSize() ^ (getGroupCommitMaxBatchSize() >>> 32));
+        result = 31 * result + (int) (getMergeCount() ^ (getMergeCount() >>> 32));
+        temp = Double.doubleToLongBits(getMergeAverageMillis());
+        result = 31 * result + (int) (temp ^ (temp >>> 32));
+        result = 31 * result + (int) (getMergeMaxMillis() ^ (getMergeMaxMillis() >>> 32));
+        temp = Double.doubleToLongBits(getMergeBytesPerSecond());
+        result = 31 * result + (int) (temp ^ (temp >>> 32));
+        temp = Double.doubleToLongBits(getCompressionRatio());
+        result = 31 * result + (int) (temp ^ (temp >>> 32));
+        result = 31 * result + (int) (getPurgeCount() ^ (getPurgeCount() >>> 32));
+        temp = Double.doubleToLongBits(getPurgeAverageMillis());
+        result = 31 * result + (int) (temp ^ (temp >>> 32));
+        result = 31 * result + (int) (getFilesPurged() ^ (getFilesPurged() >>> 32));
+        result = 31 * result + (int) (getBackpressureMillis() ^ (getBackpressureMillis() >>> 32));
+        result = 31 * result + (int) (getEventsDropped() ^ (getEventsDropped() >>> 32));
+        result = 31 * result + (int) (getEventsSpilled() ^ (getEventsSpilled() >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "eventsWritten=" + eventsWritten +
+                ", bytesWritten=" + bytesWritten +
+                ", eventsPerSecond=" + eventsPerSecond +
+                ", bytesPerSecond=" + bytesPerSecond +
+                ", persistLatencyAverageMicros=" + persistLatencyAverageMicros +
+                ", persistLatency99thPercentileMicros=" + persistLatency99thPercentileMicros +
+                ", persistLatencyMaxMicros=" + persistLatencyMaxMicros +
+                ", lockRetries=" + lockRetries +
+                ", journalSyncAverageMicros=" + journalSyncAverageMicros +
+                ", journalSync99thPercentileMicros=" + journalSync99thPercentileMicros +
+                ", journalSyncMaxMicros=" + journalSyncMaxMicros +
+                ", groupCommitAverageBatchSize=" + groupCommitAverageBatchSize +
+                ", groupCommitMaxBatchSize=" + groupCommitMaxBatchSize +
+                ", mergeCount=" + mergeCount +
+                ", mergeAverageMillis=" + mergeAverageMillis +
+                ", mergeMaxMillis=" + mergeMaxMillis +
+                ", mergeBytesPerSecond=" + mergeBytesPerSecond +
+                ", compressionRatio=" + compressionRatio +
+                ", purgeCount=" + purgeCount +
+                ", purgeAverageMillis=" + purgeAverageMillis +
+                ", filesPurged=" + filesPurged +
+                ", backpressureMillis=" + backpressureMillis +
+                ", eventsDropped=" + eventsDropped +
+                ", eventsSpilled=" + eventsSpilled +
+                '}';
+    }
+}
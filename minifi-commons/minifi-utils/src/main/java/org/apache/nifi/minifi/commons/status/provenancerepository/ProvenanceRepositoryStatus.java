@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.nifi.minifi.commons.status.provenancerepository;
+
+public class ProvenanceRepositoryStatus implements java.io.Serializable {
+    private ProvenanceRepositoryHealth provenanceRepositoryHealth;
+    private ProvenanceRepositoryStats provenanceRepositoryStats;
+
+    public ProvenanceRepositoryStatus() {
+    }
+
+    public ProvenanceRepositoryHealth getProvenanceRepositoryHealth() {
+        return provenanceRepositoryHealth;
+    }
+
+    public void setProvenanceRepositoryHealth(ProvenanceRepositoryHealth provenanceRepositoryHealth) {
+        this.provenanceRepositoryHealth = provenanceRepositoryHealth;
+    }
+
+    public ProvenanceRepositoryStats getProvenanceRepositoryStats() {
+        return provenanceRepositoryStats;
+    }
+
+    public void setProvenanceRepositoryStats(ProvenanceRepositoryStats provenanceRepositoryStats) {
+        this.provenanceRepositoryStats = provenanceRepositoryStats;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        ProvenanceRepositoryStatus that = (ProvenanceRepositoryStatus) o;
+
+        if (getProvenanceRepositoryHealth() != null ? !getProvenanceRepositoryHealth().equals(that.getProvenanceRepositoryHealth()) : that.getProvenanceRepositoryHealth() != null) return false;
+        return getProvenanceRepositoryStats() != null ? getProvenanceRepositoryStats().equals(that.getProvenanceRepositoryStats()) : that.getProvenanceRepositoryStats() == null;
+
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (getProvenanceRepositoryHealth() != null ? getProvenanceRepositoryHealth().hashCode() : 0);
+        result = 31 * result + (getProvenanceRepositoryStats() != null ? getProvenanceRepositoryStats().hashCode() : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "provenanceRepositoryHealth=" + provenanceRepositoryHealth +
+                ", provenanceRepositoryStats=" + provenanceRepositoryStats +
+                '}';
+    }
+}
@@ -31,6 +31,9 @@ import org.apache.nifi.minifi.commons.status.instance.InstanceStatus;
 import org.apache.nifi.minifi.commons.status.processor.ProcessorHealth;
 import org.apache.nifi.minifi.commons.status.processor.ProcessorStats;
 import org.apache.nifi.minifi.commons.status.processor.ProcessorStatusBean;
+import org.apache.nifi.minifi.commons.status.provenancerepository.ProvenanceRepositoryHealth;
+import org.apache.nifi.minifi.commons.status.provenancerepository.ProvenanceRepositoryStats;
+import org.apache.nifi.minifi.commons.status.provenancerepository.ProvenanceRepositoryStatus;
 import org.apache.nifi.minifi.commons.status.reportingTask.ReportingTaskHealth;
 import org.apache.nifi.minifi.commons.status.reportingTask.ReportingTaskStatus;
 import org.apache.nifi.minifi.commons.status.rpg.InputPortStatus;
@@ -368,4 +371,51 @@ public class StatusReportPopulator {
 
         flowStatusReport.setReportingTaskStatusList(Collections.singletonList(reportingTaskStatus));
     }
+
+    public static void addProvenanceRepositoryStatus(FlowStatusReport flowStatusReport, boolean addHealth, boolean addStats) {
+        ProvenanceRepositoryStatus provenanceRepositoryStatus = new ProvenanceRepositoryStatus();
+
+        if (addHealth) {
+            ProvenanceRepositoryHealth provenanceRepositoryHealth = new ProvenanceRepositoryHealth();
+            provenanceRepositoryHealth.setJournalCount(1);
+            provenanceRepositoryHealth.setDirtyWriterCount(2);
+            provenanceRepositoryHealth.setEventFileCount(3);
+            provenanceRepositoryHealth.setRepositorySize(4L);
+            provenanceRepositoryHealth.setQueuedMergeCount(5);
+            provenanceRepositoryHealth.setRunningMergeCount(6);
+            provenanceRepositoryHealth.setFailingMergeCount(7);
+            provenanceRepositoryStatus.setProvenanceRepositoryHealth(provenanceRepositoryHealth);
+        }
+
+        if (addStats) {
+            ProvenanceRepositoryStats provenanceRepositoryStats = new ProvenanceRepositoryStats();
+            provenanceRepositoryStats.setEventsWritten(1L);
+            provenanceRepositoryStats.setBytesWritten(2L);
+            provenanceRepositoryStats.setEventsPerSecond(3.0);
+            provenanceRepositoryStats.setBytesPerSecond(4.0);
+            provenanceRepositoryStats.setPersistLatencyAverageMicros(5.0);
+            provenanceRepositoryStats.setPersistLatency99thPercentileMicros(6L);
+            provenanceRepositoryStats.setPersistLatencyMaxMicros(7L);
+            provenanceRepositoryStats.setLockRetries(8L);
+            provenanceRepositoryStats.setMergeCount(9L);
+            provenanceRepositoryStats.setMergeAverageMillis(10.0);
+            provenanceRepositoryStats.setMergeMaxMillis(11L);
+            provenanceRepositoryStats.setMergeBytesPerSecond(12.0);
+            provenanceRepositoryStats.setCompressionRatio(13.0);
+            provenanceRepositoryStats.setPurgeCount(14L);
+            provenanceRepositoryStats.setPurgeAverageMillis(15.0);
+            provenanceRepositoryStats.setFilesPurged(16L);
+            provenanceRepositoryStats.setBackpressureMillis(17L);
+            provenanceRepositoryStats.setEventsDropped(18L);
+            provenanceRepositoryStats.setEventsSpilled(19L);
+            provenanceRepositoryStats.setJournalSyncAverageMicros(20.0);
+            provenanceRepositoryStats.setJournalSync99thPercentileMicros(21L);
+            provenanceRepositoryStats.setJournalSyncMaxMicros(22L);
+            provenanceRepositoryStats.setGroupCommitAverageBatchSize(23.0);
+            provenanceRepositoryStats.setGroupCommitMaxBatchSize(24L);
+            provenanceRepositoryStatus.setProvenanceRepositoryStats(provenanceRepositoryStats);
+        }
+
+        flowStatusReport.setProvenanceRepositoryStatus(provenanceRepositoryStatus);
+    }
 }
@@ -31,6 +31,7 @@ import static org.apache.nifi.minifi.commons.status.util.StatusReportPopulator.a
 import static org.apache.nifi.minifi.commons.status.util.StatusReportPopulator.addExpectedRemoteProcessGroupStatus;
 import static org.apache.nifi.minifi.commons.status.util.StatusReportPopulator.addInstanceStatus;
 import static org.apache.nifi.minifi.commons.status.util.StatusReportPopulator.addProcessorStatus;
+import static org.apache.nifi.minifi.commons.status.util.StatusReportPopulator.addProvenanceRepositoryStatus;
 import static org.apache.nifi.minifi.commons.status.util.StatusReportPopulator.addReportingTaskStatus;
 import static org.apache.nifi.minifi.commons.status.util.StatusReportPopulator.addSystemDiagnosticStatus;
 import static org.junit.Assert.assertEquals;
@@ -48,6 +49,7 @@ public class TestStatusReport {
         addConnectionStatus(original, true, true);
         addProcessorStatus(original, true, true, true, true, true);
         addExpectedRemoteProcessGroupStatus(original, true, true, true, true, true);
+        addProvenanceRepositoryStatus(original, true, true);
 
         byte[] byteArrayCopy = serialize(original);
         FlowStatusReport copy = unSerialize(byteArrayCopy, FlowStatusReport.class);
@@ -30,6 +30,7 @@ import org.apache.nifi.minifi.commons.status.connection.ConnectionStatusBean;
 import org.apache.nifi.minifi.commons.status.controllerservice.ControllerServiceStatus;
 import org.apache.nifi.minifi.commons.status.instance.InstanceStatus;
 import org.apache.nifi.minifi.commons.status.processor.ProcessorStatusBean;
+import org.apache.nifi.minifi.commons.status.provenancerepository.ProvenanceRepositoryStatus;
 import org.apache.nifi.minifi.commons.status.reportingTask.ReportingTaskStatus;
 import org.apache.nifi.minifi.commons.status.rpg.RemoteProcessGroupStatusBean;
 import org.apache.nifi.minifi.commons.status.system.SystemDiagnosticsStatus;
@@ -46,6 +47,7 @@ import static org.apache.nifi.minifi.status.StatusRequestParser.parseConnectionS
 import static org.apache.nifi.minifi.status.StatusRequestParser.parseControllerServiceStatusRequest;
 import static org.apache.nifi.minifi.status.StatusRequestParser.parseInstanceRequest;
 import static org.apache.nifi.minifi.status.StatusRequestParser.parseProcessorStatusRequest;
+import static org.apache.nifi.minifi.status.StatusRequestParser.parseProvenanceRepositoryRequest;
 import static org.apache.nifi.minifi.status.StatusRequestParser.parseRemoteProcessGroupStatusRequest;
 import static org.apache.nifi.minifi.status.StatusRequestParser.parseReportingTaskStatusRequest;
 import static org.apache.nifi.minifi.status.StatusRequestParser.parseSystemDiagnosticsRequest;
@@ -124,6 +126,10 @@ public final class StatusConfigReporter {
                         }
                         handleControllerServices(sections, flowController, flowStatusReport.getControllerServiceStatusList(), logger);
                         break;
+                    case "provenancerepository":
+                        ProvenanceRepositoryStatus provenanceRepositoryStatus = parseProvenanceRepositoryRequest(flowController.getProvenanceRepository(), sections[1]);
+                        flowStatusReport.setProvenanceRepositoryStatus(provenanceRepositoryStatus);
+                        break;
                 }
             } catch (Exception e) {
                 logger.error("Hit exception while requesting status for item '" + item + "'", e);
@@ -42,6 +42,9 @@ import org.apache.nifi.minifi.commons.status.instance.InstanceStatus;
 import org.apache.nifi.minifi.commons.status.processor.ProcessorHealth;
 import org.apache.nifi.minifi.commons.status.processor.ProcessorStats;
 import org.apache.nifi.minifi.commons.status.processor.ProcessorStatusBean;
+import org.apache.nifi.minifi.commons.status.provenancerepository.ProvenanceRepositoryHealth;
+import org.apache.nifi.minifi.commons.status.provenancerepository.ProvenanceRepositoryStats;
+import org.apache.nifi.minifi.commons.status.provenancerepository.ProvenanceRepositoryStatus;
 import org.apache.nifi.minifi.commons.status.reportingTask.ReportingTaskHealth;
 import org.apache.nifi.minifi.commons.status.reportingTask.ReportingTaskStatus;
 import org.apache.nifi.minifi.commons.status.rpg.InputPortStatus;
@@ -54,6 +57,9 @@ import org.apache.nifi.minifi.commons.status.system.GarbageCollectionStatus;
 import org.apache.nifi.minifi.commons.status.system.HeapStatus;
 import org.apache.nifi.minifi.commons.status.system.SystemDiagnosticsStatus;
 import org.apache.nifi.minifi.commons.status.system.SystemProcessorStats;
+import org.apache.nifi.minifi.provenance.ProvenanceRepositoryMetrics;
+import org.apache.nifi.minifi.provenance.ProvenanceRepositoryMetricsProvider;
+import org.apache.nifi.provenance.ProvenanceRepository;
 import org.apache.nifi.remote.RemoteGroupPort;
 import org.apache.nifi.reporting.Bulletin;
 import org.apache.nifi.reporting.BulletinQuery;
@@ -340,6 +346,65 @@ public final class StatusRequestParser {
         return systemDiagnosticsStatus;
     }
 
+    static ProvenanceRepositoryStatus parseProvenanceRepositoryRequest(ProvenanceRepository provenanceRepository, String statusTypes) throws StatusRequestException {
+        if (!(provenanceRepository instanceof ProvenanceRepositoryMetricsProvider)) {
+            throw new StatusRequestException("The Provenance Repository does not report any metrics");
+        }
+
+        ProvenanceRepositoryMetrics metrics = ((ProvenanceRepositoryMetricsProvider) provenanceRepository).getMetrics();
+        ProvenanceRepositoryStatus provenanceRepositoryStatus = new ProvenanceRepositoryStatus();
+        String[] statusSplits = statusTypes.split(",");
+
+        for (String statusType : statusSplits) {
+            switch (statusType.toLowerCase().trim()) {
+                case "health":
+                    ProvenanceRepositoryHealth provenanceRepositoryHealth = new ProvenanceRepositoryHealth();
+
+                    provenanceRepositoryHealth.setJournalCount(metrics.getJournalCount());
+                    provenanceRepositoryHealth.setDirtyWriterCount(metrics.getDirtyWriterCount());
+                    provenanceRepositoryHealth.setEventFileCount(metrics.getEventFileCount());
+                    provenanceRepositoryHealth.setRepositorySize(metrics.getRepositorySize());
+                    provenanceRepositoryHealth.setQueuedMergeCount(metrics.getQueuedMergeCount());
+                    provenanceRepositoryHealth.setRunningMergeCount(metrics.getRunningMergeCount());
+                    provenanceRepositoryHealth.setFailingMergeCount(metrics.getFailingMergeCount());
+
+                    provenanceRepositoryStatus.setProvenanceRepositoryHealth(provenanceRepositoryHealth);
+                    break;
+                case "stats":
+                    ProvenanceRepositoryStats provenanceRepositoryStats = new ProvenanceRepositoryStats();
+
+                    provenanceRepositoryStats.setEventsWritten(metrics.getEventsWritten());
+                    provenanceRepositoryStats.setBytesWritten(metrics.getBytesWritten());
+                    provenanceRepositoryStats.setEventsPerSecond(metrics.getEventsPerSecond());
+                    provenanceRepositoryStats.setBytesPerSecond(metrics.getBytesPerSecond());
+                    provenanceRepositoryStats.setPersistLatencyAverageMicros(metrics.getPersistLatencyAverageMicros());
+                    provenanceRepositoryStats.setPersistLatency99thPercentileMicros(metrics.getPersistLatency99thPercentileMicros());
+                    provenanceRepositoryStats.setPersistLatencyMaxMicros(metrics.getPersistLatencyMaxMicros());
+                    provenanceRepositoryStats.setLockRetries(metrics.getLockRetries());
+                    provenanceRepositoryStats.setJournalSyncAverageMicros(metrics.getJournalSyncAverageMicros());
+                    provenanceRepositoryStats.setJournalSync99thPercentileMicros(metrics.getJournalSync99thPercentileMicros());
+                    provenanceRepositoryStats.setJournalSyncMaxMicros(metrics.getJournalSyncMaxMicros());
+                    provenanceRepositoryStats.setGroupCommitAverageBatchSize(metrics.getGroupCommitAverageBatchSize());
+                    provenanceRepositoryStats.setGroupCommitMaxBatchSize(metrics.getGroupCommitMaxBatchSize());
+                    provenanceRepositoryStats.setMergeCount(metrics.getMergeCount());
+                    provenanceRepositoryStats.setMergeAverageMillis(metrics.getMergeAverageMillis());
+                    provenanceRepositoryStats.setMergeMaxMillis(metrics.getMergeMaxMillis());
+                    provenanceRepositoryStats.setMergeBytesPerSecond(metrics.getMergeBytesPerSecond());
+                    provenanceRepositoryStats.setCompressionRatio(metrics.getCompressionRatio());
+                    provenanceRepositoryStats.setPurgeCount(metrics.getPurgeCount());
+                    provenanceRepositoryStats.setPurgeAverageMillis(metrics.getPurgeAverageMillis());
+                    provenanceRepositoryStats.setFilesPurged(metrics.getFilesPurged());
+                    provenanceRepositoryStats.setBackpressureMillis(metrics.getBackpressureMillis());
+                    provenanceRepositoryStats.setEventsDropped(metrics.getEventsDropped());
+                    provenanceRepositoryStats.setEventsSpilled(metrics.getEventsSpilled());
+
+                    provenanceRepositoryStatus.setProvenanceRepositoryStats(provenanceRepositoryStats);
+                    break;
+            }
+        }
+        return provenanceRepositoryStatus;
+    }
+
     static InstanceStatus parseInstanceRequest(String statusTypes, FlowController flowController, ProcessGroupStatus rootGroupStatus) {
         InstanceStatus instanceStatus = new InstanceStatus();
 
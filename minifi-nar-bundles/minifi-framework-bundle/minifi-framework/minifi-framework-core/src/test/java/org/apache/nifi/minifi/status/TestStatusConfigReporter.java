@@ -37,6 +37,9 @@ import org.apache.nifi.diagnostics.SystemDiagnostics;
 import org.apache.nifi.groups.ProcessGroup;
 import org.apache.nifi.groups.RemoteProcessGroup;
 import org.apache.nifi.minifi.commons.status.FlowStatusReport;
+import org.apache.nifi.minifi.provenance.ProvenanceRepositoryMetrics;
+import org.apache.nifi.minifi.provenance.ProvenanceRepositoryMetricsProvider;
+import org.apache.nifi.provenance.ProvenanceRepository;
 import org.apache.nifi.remote.RemoteGroupPort;
 import org.apache.nifi.reporting.Bulletin;
 import org.apache.nifi.reporting.BulletinQuery;
@@ -61,6 +64,7 @@ import static org.apache.nifi.minifi.commons.status.util.StatusReportPopulator.a
 import static org.apache.nifi.minifi.commons.status.util.StatusReportPopulator.addExpectedRemoteProcessGroupStatus;
 import static org.apache.nifi.minifi.commons.status.util.StatusReportPopulator.addInstanceStatus;
 import static org.apache.nifi.minifi.commons.status.util.StatusReportPopulator.addProcessorStatus;
+import static org.apache.nifi.minifi.commons.status.util.StatusReportPopulator.addProvenanceRepositoryStatus;
 import static org.apache.nifi.minifi.commons.status.util.StatusReportPopulator.addReportingTaskStatus;
 import static org.apache.nifi.minifi.commons.status.util.StatusReportPopulator.addSystemDiagnosticStatus;
 import static org.junit.Assert.assertEquals;
@@ -68,6 +72,7 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyObject;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
 
 public class TestStatusConfigReporter {
     private FlowController mockFlowController;
@@ -379,6 +384,47 @@ public class TestStatusConfigReporter {
         assertEquals(expected, actual);
     }
 
+    @Test
+    public void provenanceRepositoryStatusHealth() throws Exception {
+        populateProvenanceRepository();
+
+        String statusRequest = "provenancerepository:health";
+        FlowStatusReport actual = StatusConfigReporter.getStatus(mockFlowController, statusRequest, LoggerFactory.getLogger(TestStatusConfigReporter.class));
+
+        FlowStatusReport expected = new FlowStatusReport();
+        expected.setErrorsGeneratingReport(Collections.EMPTY_LIST);
+
+        addProvenanceRepositoryStatus(expected, true, false);
+
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void provenanceRepositoryStatusAll() throws Exception {
+        populateProvenanceRepository();
+
+        String statusRequest = "provenanceRepository:health, stats";
+        FlowStatusReport actual = StatusConfigReporter.getStatus(mockFlowController, statusRequest, LoggerFactory.getLogger(TestStatusConfigReporter.class));
+
+        FlowStatusReport expected = new FlowStatusReport();
+        expected.setErrorsGeneratingReport(Collections.EMPTY_LIST);
+
+        addProvenanceRepositoryStatus(expected, true, true);
+
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void provenanceRepositoryWithoutMetrics() throws Exception {
+        when(mockFlowController.getProvenanceRepository()).thenReturn(mock(ProvenanceRepository.class));
+
+        String statusRequest = "provenancerepository:health";
+        FlowStatusReport actual = StatusConfigReporter.getStatus(mockFlowController, statusRequest, LoggerFactory.getLogger(TestStatusConfigReporter.class));
+
+        assertEquals(null, actual.getProvenanceRepositoryStatus());
+        assertEquals(1, actual.getErrorsGeneratingReport().size());
+    }
+
     @Test
     public void controllerServiceStatusHealth() throws Exception {
         populateControllerService(false, false);
@@ -574,6 +620,45 @@ public class TestStatusConfigReporter {
         when(mockFlowController.getAllControllerServices()).thenReturn(controllerServiceNodes);
     }
 
+    private void populateProvenanceRepository() {
+        ProvenanceRepositoryMetrics metrics = new ProvenanceRepositoryMetrics();
+        metrics.setJournalCount(1);
+        metrics.setDirtyWriterCount(2);
+        metrics.setEventFileCount(3);
+        metrics.setRepositorySize(4L);
+        metrics.setQueuedMergeCount(5);
+        metrics.setRunningMergeCount(6);
+        metrics.setFailingMergeCount(7);
+        metrics.setEventsWritten(1L);
+        metrics.setBytesWritten(2L);
+        metrics.setEventsPerSecond(3.0);
+        metrics.setBytesPerSecond(4.0);
+        metrics.setPersistLatencyAverageMicros(5.0);
+        metrics.setPersistLatency99thPercentileMicros(6L);
+        metrics.setPersistLatencyMaxMicros(7L);
+        metrics.setLockRetries(8L);
+        metrics.setMergeCount(9L);
+        metrics.setMergeAverageMillis(10.0);
+        metrics.setMergeMaxMillis(11L);
+        metrics.setMergeBytesPerSecond(12.0);
+        metrics.setCompressionRatio(13.0);
+        metrics.setPurgeCount(14L);
+        metrics.setPurgeAverageMillis(15.0);
+        metrics.setFilesPurged(16L);
+        metrics.setBackpressureMillis(17L);
+        metrics.setEventsDropped(18L);
+        metrics.setEventsSpilled(19L);
+        metrics.setJournalSyncAverageMicros(20.0);
+        metrics.setJournalSync99thPercentileMicros(21L);
+        metrics.setJournalSyncMaxMicros(22L);
+        metrics.setGroupCommitAverageBatchSize(23.0);
+        metrics.setGroupCommitMaxBatchSize(24L);
+
+        ProvenanceRepository provenanceRepository = mock(ProvenanceRepository.class, withSettings().extraInterfaces(ProvenanceRepositoryMetricsProvider.class));
+        when(((ProvenanceRepositoryMetricsProvider) provenanceRepository).getMetrics()).thenReturn(metrics);
+        when(mockFlowController.getProvenanceRepository()).thenReturn(provenanceRepository);
+    }
+
     private void populateInstance(boolean addBulletins) {
         setRootGroupStatusVariables();
         if (addBulletins) {
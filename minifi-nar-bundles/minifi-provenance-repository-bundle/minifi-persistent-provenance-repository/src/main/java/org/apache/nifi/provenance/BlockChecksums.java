@@ -0,0 +1,420 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import org.apache.nifi.provenance.toc.TocUtil;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * <p>
+ * The checksums of the blocks of a Provenance journal or Provenance Event Log File. For each block, the checksum file holds
+ * the offset at which the block ends, the number of events in the block and the {@link Crc32c} of the bytes of the block.
+ * Blocks are contiguous, so each block starts where the previous one ends, and the first starts at the beginning of the file.
+ * </p>
+ * <p>
+ * The checksum file starts with the magic bytes "MNFC" and a version byte, followed by one 16-byte entry per block. An entry
+ * is only appended once the bytes of its block have been handed to the operating system, so after a crash the entries tell
+ * exactly how much of the file can be trusted, and how many events were lost in the part that cannot. An entry that was
+ * itself torn by the crash is ignored, along with its block.
+ * </p>
+ */
+final class BlockChecksums {
+
+    static final int MAGIC = 0x4D4E4643; // "MNFC"
+    static final int FORMAT_VERSION = 1;
+    static final String FILE_EXTENSION = ".crc";
+    static final int HEADER_LENGTH = 4 + 1;
+    static final int ENTRY_LENGTH = 8 + 4 + 4;
+
+    private final long[] endOffsets;
+    private final int[] eventCounts;
+    private final int[] checksums;
+    private final int blockCount;
+
+    private BlockChecksums(final long[] endOffsets, final int[] eventCounts, final int[] checksums, final int blockCount) {
+        this.endOffsets = endOffsets;
+        this.eventCounts = eventCounts;
+        this.checksums = checksums;
+        this.blockCount = blockCount;
+    }
+
+    /**
+     * @param dataFile a Provenance journal or Provenance Event Log File
+     * @return the file that holds the block checksums of the given file, which is kept in the same directory as its Table of
+     * Contents. The journals of a rollover share a Table of Contents name, so the checksum file is named after the whole name of the file.
+     */
+    static File getChecksumFile(final File dataFile) {
+        return new File(TocUtil.getTocFile(dataFile).getParentFile(), dataFile.getName() + FILE_EXTENSION);
+    }
+
+    /**
+     * Reads the given checksum file, ignoring a partially written entry at its end
+     *
+     * @param file the checksum file
+     * @return the checksums
+     * @throws IOException if the file cannot be read, or is not a valid checksum file
+     */
+    static BlockChecksums read(final File file) throws IOException {
+        final byte[] bytes = Files.readAllBytes(file.toPath());
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (bytes.length < HEADER_LENGTH || buffer.getInt() != MAGIC) {
+            throw new IOException(file + " is not a Provenance Block Checksum File");
+        }
+        if (buffer.get() != FORMAT_VERSION) {
+            throw new IOException(file + " was written with an unsupported version of the Provenance Block Checksum File format");
+        }
+
+        final int blockCount = (bytes.length - HEADER_LENGTH) / ENTRY_LENGTH;
+        final long[] endOffsets = new long[blockCount];
+        final int[] eventCounts = new int[blockCount];
+        final int[] checksums = new int[blockCount];
+        for (int i = 0; i < blockCount; i++) {
+            endOffsets[i] = buffer.getLong();
+            eventCounts[i] = buffer.getInt();
+            checksums[i] = buffer.getInt();
+        }
+        return new BlockChecksums(endOffsets, eventCounts, checksums, blockCount);
+    }
+
+    /**
+     * Removes all but the given number of entries from the given checksum file
+     *
+     * @param file the checksum file
+     * @param blockCount the number of entries to keep
+     * @throws IOException if unable to truncate the file
+     */
+    static void truncate(final File file, final int blockCount) throws IOException {
+        try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(HEADER_LENGTH + (long) blockCount * ENTRY_LENGTH);
+            channel.force(true);
+        }
+    }
+
+    int getBlockCount() {
+        return blockCount;
+    }
+
+    /**
+     * @param blockIndex the index of a block
+     * @return the offset at which the block ends
+     */
+    long getEndOffset(final int blockIndex) {
+        return endOffsets[blockIndex];
+    }
+
+    /**
+     * @param blockIndex the index of a block
+     * @return the number of events in the block
+     */
+    int getEventCount(final int blockIndex) {
+        return eventCounts[blockIndex];
+    }
+
+    /**
+     * @param startOffset the offset at which a block starts
+     * @param endOffset the offset at which the block ends
+     * @return the checksum of the block, or -1 if there is no entry for exactly that block
+     */
+    long getChecksum(final long startOffset, final long endOffset) {
+        final int index = Arrays.binarySearch(endOffsets, 0, blockCount, endOffset);
+        if (index < 0 || (index == 0 ? 0L : endOffsets[index - 1]) != startOffset) {
+            return -1L;
+        }
+        return checksums[index] & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Checks the bytes of a region of a file against the checksums of the blocks that lie entirely within the region. Blocks
+     * that have no entry, such as any that were written after the last entry, are not checked.
+     *
+     * @param data the bytes of the file, starting at index 0
+     * @param startOffset the offset at which the region starts
+     * @param endOffset the offset at which the region ends
+     * @return the index of the first block of the region that does not match its checksum, or -1 if every block matches
+     */
+    int findCorruptBlock(final ByteBuffer data, final long startOffset, final long endOffset) {
+        final Crc32c crc = new Crc32c();
+        byte[] chunk = null;
+        for (int i = getFirstBlockIndex(startOffset); i < blockCount && endOffsets[i] <= endOffset; i++) {
+            final long blockStart = i == 0 ? 0L : endOffsets[i - 1];
+            crc.reset();
+            if (data.hasArray()) {
+                crc.update(data.array(), data.arrayOffset() + (int) blockStart, (int) (endOffsets[i] - blockStart));
+            } else {
+                // mapped files are read a chunk at a time, without moving the position of the shared buffer
+                if (chunk == null) {
+                    chunk = new byte[(int) Math.min(64 * 1024, endOffset - startOffset)];
+                }
+                final ByteBuffer view = data.duplicate();
+                view.limit((int) endOffsets[i]);
+                view.position((int) blockStart);
+                while (view.hasRemaining()) {
+                    final int length = Math.min(chunk.length, view.remaining());
+                    view.get(chunk, 0, length);
+                    crc.update(chunk, 0, length);
+                }
+            }
+
+            if ((int) crc.getValue() != checksums[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the blocks of a Provenance Event Log File that are missing from the file or do not match their checksums. Unlike
+     * {@link #validate(File)}, this carries on past a damaged block, as each block of a merged file can be read on its own.
+     *
+     * @param data the bytes of the file, starting at index 0, or <code>null</code> to only check that every block is present
+     * @param fileLength the length of the file
+     * @return the indices of the damaged blocks
+     */
+    BitSet findDamagedBlocks(final ByteBuffer data, final long fileLength) {
+        final BitSet damagedBlocks = new BitSet();
+        for (int i = 0; i < blockCount; i++) {
+            final long blockStart = i == 0 ? 0L : endOffsets[i - 1];
+            if (endOffsets[i] > fileLength || endOffsets[i] < blockStart || (data != null && findCorruptBlock(data, blockStart, endOffsets[i]) >= 0)) {
+                damagedBlocks.set(i);
+            }
+        }
+        return damagedBlocks;
+    }
+
+    /**
+     * @param startOffset the offset at which a region of the file starts
+     * @param endOffset the offset at which the region ends
+     * @return the number of events in the blocks that lie entirely within the region
+     */
+    int getEventCount(final long startOffset, final long endOffset) {
+        int eventCount = 0;
+        for (int i = getFirstBlockIndex(startOffset); i < blockCount && endOffsets[i] <= endOffset; i++) {
+            eventCount += eventCounts[i];
+        }
+        return eventCount;
+    }
+
+    /**
+     * @return the index of the first block that starts at or after the given offset
+     */
+    private int getFirstBlockIndex(final long offset) {
+        if (offset <= 0L) {
+            return 0;
+        }
+
+        // the block that follows the block ending at the offset, or else the block after the one that spans the offset
+        final int index = Arrays.binarySearch(endOffsets, 0, blockCount, offset);
+        return index >= 0 ? index + 1 : -index;
+    }
+
+    /**
+     * Checks the blocks of the given file against their checksums, in order, stopping at the first block that is missing
+     * from the file or does not match its checksum
+     *
+     * @param dataFile the file that the checksums were written for
+     * @return the outcome of the validation
+     * @throws IOException if unable to read the file
+     */
+    Validation validate(final File dataFile) throws IOException {
+        try (final FileChannel channel = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ)) {
+            final long fileLength = channel.size();
+            final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            final Crc32c crc = new Crc32c();
+
+            int validBlocks = 0;
+            long validLength = 0L;
+            long validEvents = 0L;
+            while (validBlocks < blockCount) {
+                final long endOffset = endOffsets[validBlocks];
+                if (endOffset > fileLength || endOffset < validLength) {
+                    break;
+                }
+
+                crc.reset();
+                long position = validLength;
+                while (position < endOffset) {
+                    buffer.clear();
+                    buffer.limit((int) Math.min(buffer.capacity(), endOffset - position));
+                    final int read = channel.read(buffer, position);
+                    if (read < 0) {
+                        break;
+                    }
+                    crc.update(buffer.array(), 0, read);
+                    position += read;
+                }
+                if (position < endOffset || (int) crc.getValue() != checksums[validBlocks]) {
+                    break;
+                }
+
+                validLength = endOffset;
+                validEvents += eventCounts[validBlocks];
+                validBlocks++;
+            }
+
+            long invalidEvents = 0L;
+            for (int i = validBlocks; i < blockCount; i++) {
+                invalidEvents += eventCounts[i];
+            }
+            final long checkedLength = blockCount == 0 ? 0L : endOffsets[blockCount - 1];
+            return new Validation(fileLength, validLength, validBlocks, validEvents, blockCount - validBlocks, invalidEvents, Math.max(0L, fileLength - checkedLength));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BlockChecksums[blocks=" + blockCount + "]";
+    }
+
+    /**
+     * The outcome of checking a file against the checksums of its blocks
+     */
+    static final class Validation {
+        private final long fileLength;
+        private final long validLength;
+        private final int validBlocks;
+        private final long validEvents;
+        private final int invalidBlocks;
+        private final long invalidEvents;
+        private final long uncheckedBytes;
+
+        Validation(final long fileLength, final long validLength, final int validBlocks, final long validEvents, final int invalidBlocks,
+                   final long invalidEvents, final long uncheckedBytes) {
+            this.fileLength = fileLength;
+            this.validLength = validLength;
+            this.validBlocks = validBlocks;
+            this.validEvents = validEvents;
+            this.invalidBlocks = invalidBlocks;
+            this.invalidEvents = invalidEvents;
+            this.uncheckedBytes = uncheckedBytes;
+        }
+
+        /**
+         * @return whether every byte of the file belongs to a block that matches its checksum
+         */
+        boolean isIntact() {
+            return validLength == fileLength;
+        }
+
+        long getFileLength() {
+            return fileLength;
+        }
+
+        /**
+         * @return the offset at which the last valid block ends, which is where the file has to be truncated
+         */
+        long getValidLength() {
+            return validLength;
+        }
+
+        int getValidBlocks() {
+            return validBlocks;
+        }
+
+        long getValidEvents() {
+            return validEvents;
+        }
+
+        /**
+         * @return the number of blocks that were recorded but are missing from the file, do not match their checksum or
+         * follow a block that does not
+         */
+        int getInvalidBlocks() {
+            return invalidBlocks;
+        }
+
+        /**
+         * @return the number of events in the invalid blocks
+         */
+        long getInvalidEvents() {
+            return invalidEvents;
+        }
+
+        /**
+         * @return the number of bytes at the end of the file that were written after the last recorded block, and so hold
+         * events that were never acknowledged by a checksum
+         */
+        long getUncheckedBytes() {
+            return uncheckedBytes;
+        }
+
+        @Override
+        public String toString() {
+            return "Validation[validBlocks=" + validBlocks + ", validEvents=" + validEvents + ", invalidBlocks=" + invalidBlocks
+                + ", invalidEvents=" + invalidEvents + ", uncheckedBytes=" + uncheckedBytes + "]";
+        }
+    }
+
+    /**
+     * Appends the checksums of the blocks of a file as they are written
+     */
+    static final class Writer implements Closeable {
+        private final FileOutputStream out;
+        private final ByteBuffer entry = ByteBuffer.allocate(ENTRY_LENGTH);
+
+        /**
+         * @param file the checksum file to create, replacing any existing file
+         * @throws IOException if unable to create the file
+         */
+        Writer(final File file) throws IOException {
+            final File directory = file.getParentFile();
+            if (!directory.exists() && !directory.mkdirs() && !directory.exists()) {
+                throw new IOException("Unable to create directory " + directory);
+            }
+
+            out = new FileOutputStream(file);
+            try {
+                out.write(ByteBuffer.allocate(HEADER_LENGTH).putInt(MAGIC).put((byte) FORMAT_VERSION).array());
+            } catch (final IOException ioe) {
+                out.close();
+                throw ioe;
+            }
+        }
+
+        /**
+         * Appends the entry of the next block, which must already have been written to the file
+         *
+         * @param endOffset the offset at which the block ends
+         * @param eventCount the number of events in the block
+         * @param checksum the {@link Crc32c} of the bytes of the block
+         * @throws IOException if unable to write to the checksum file
+         */
+        void append(final long endOffset, final int eventCount, final long checksum) throws IOException {
+            entry.clear();
+            entry.putLong(endOffset).putInt(eventCount).putInt((int) checksum);
+            out.write(entry.array());
+        }
+
+        void sync() throws IOException {
+            out.getFD().sync();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
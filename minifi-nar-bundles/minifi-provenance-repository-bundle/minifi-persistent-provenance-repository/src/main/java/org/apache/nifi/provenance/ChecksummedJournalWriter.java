@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+
+/**
+ * <p>
+ * Writes a Provenance journal exactly as the NiFi schema record writer does, while keeping the {@link BlockChecksums} of
+ * the journal alongside it. The records are handed to the operating system in blocks of about {@link #BLOCK_SIZE} bytes,
+ * each of which ends with a whole record, and the checksum of each block is appended once the block has been written.
+ * </p>
+ * <p>
+ * A crash of the operating system can leave the end of a journal torn if the journal was not synced. On recovery, the
+ * journal is truncated after its last block that matches its checksum, so that only the events of the torn blocks are lost,
+ * and their number is known.
+ * </p>
+ */
+final class ChecksummedJournalWriter extends ByteArraySchemaRecordWriter {
+
+    // half of the buffer of the NiFi writer, so that the buffer is flushed at the end of a block rather than in the middle of a record
+    static final int BLOCK_SIZE = 32 * 1024;
+
+    private final File file;
+    private final FileOutputStream fos;
+    private final ChecksummingOutputStream checksummingOut;
+    private final BlockChecksums.Writer checksumWriter;
+    private long blockBytes = 0L;
+    private int blockEvents = 0;
+
+    /**
+     * @param file the journal to create
+     * @throws IOException if unable to create the journal or its checksum file
+     */
+    ChecksummedJournalWriter(final File file) throws IOException {
+        this(file, new FileOutputStream(file));
+    }
+
+    private ChecksummedJournalWriter(final File file, final FileOutputStream fos) throws IOException {
+        this(file, fos, new ChecksummingOutputStream(fos));
+    }
+
+    private ChecksummedJournalWriter(final File file, final FileOutputStream fos, final ChecksummingOutputStream checksummingOut) throws IOException {
+        super(checksummingOut, null, false, JournalMerger.DEFAULT_BLOCK_SIZE);
+        this.file = file;
+        this.fos = fos;
+        this.checksummingOut = checksummingOut;
+
+        try {
+            this.checksumWriter = new BlockChecksums.Writer(BlockChecksums.getChecksumFile(file));
+        } catch (final IOException ioe) {
+            fos.close();
+            throw ioe;
+        }
+    }
+
+    @Override
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public long writeRecord(final ProvenanceEventRecord record, final long recordIdentifier) throws IOException {
+        final long bytesWritten = super.writeRecord(record, recordIdentifier);
+        blockEvents++;
+        blockBytes += bytesWritten;
+        if (blockBytes >= BLOCK_SIZE) {
+            endBlock();
+        }
+        return bytesWritten;
+    }
+
+    @Override
+    public void sync() throws IOException {
+        if (!isDirty()) {
+            endBlock();
+        }
+        super.sync();
+    }
+
+    @Override
+    protected void syncUnderlyingOutputStream() throws IOException {
+        fos.getFD().sync();
+        checksumWriter.sync();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            // a dirty journal may end with part of a record, which must not be covered by a checksum
+            if (!isClosed() && !isDirty()) {
+                endBlock();
+            }
+            super.close();
+        } finally {
+            checksumWriter.close();
+        }
+    }
+
+    /**
+     * Hands the records written since the end of the previous block to the operating system and appends the checksum of
+     * the block that they form
+     */
+    private void endBlock() throws IOException {
+        flush();
+        if (checksummingOut.getBlockLength() == 0L) {
+            return;
+        }
+
+        checksumWriter.append(checksummingOut.getBytesWritten(), blockEvents, checksummingOut.getBlockChecksum());
+        checksummingOut.startBlock();
+        blockBytes = 0L;
+        blockEvents = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "ChecksummedJournalWriter[file=" + file + "]";
+    }
+
+    /**
+     * Computes the checksum of the bytes written since the start of the current block
+     */
+    private static class ChecksummingOutputStream extends FilterOutputStream {
+        private final Crc32c crc = new Crc32c();
+        private long bytesWritten = 0L;
+        private long blockStart = 0L;
+
+        ChecksummingOutputStream(final FileOutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            out.write(b);
+            crc.update(b);
+            bytesWritten++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            out.write(b, off, len);
+            crc.update(b, off, len);
+            bytesWritten += len;
+        }
+
+        long getBytesWritten() {
+            return bytesWritten;
+        }
+
+        long getBlockLength() {
+            return bytesWritten - blockStart;
+        }
+
+        long getBlockChecksum() {
+            return crc.getValue();
+        }
+
+        void startBlock() {
+            crc.reset();
+            blockStart = bytesWritten;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>
+ * The storage quotas of the components of the flow. Each quota has a name, covers the events of one or more components
+ * and bounds the number of bytes that their events may take up in the repository. A quota that covers all of the components
+ * of a Process Group bounds the storage of the group as a whole. A component may be covered by more than one quota, and
+ * the events of components that no quota covers are only bounded by the capacity of the repository.
+ * </p>
+ * <p>
+ * The bytes of each Provenance Event Log File are charged against the quotas in proportion to the share of the file that
+ * the events of their components take up, as recorded in the {@link ComponentUsage} of the file. Charging is done once per
+ * file, when it is added to the {@link EventFileLedger}, so that the quotas cost nothing per event.
+ * </p>
+ */
+final class ComponentQuotas {
+
+    private static final int[] NO_QUOTAS = new int[0];
+
+    private final String[] names;
+    private final long[] maxBytes;
+    private final Map<String, int[]> quotasByComponent;
+
+    /**
+     * @param componentIds the ids of the components that each quota covers, keyed by the name of the quota
+     * @param maxBytes the number of bytes that the events of the components of each quota may take up, keyed by the name of the quota
+     */
+    ComponentQuotas(final Map<String, Set<String>> componentIds, final Map<String, Long> maxBytes) {
+        final List<String> quotaNames = new ArrayList<>(componentIds.keySet());
+        Collections.sort(quotaNames);
+
+        this.names = new String[quotaNames.size()];
+        this.maxBytes = new long[quotaNames.size()];
+        final Map<String, int[]> quotas = new HashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            final String name = quotaNames.get(i);
+            final Long max = maxBytes.get(name);
+            if (max == null || max < 0L) {
+                throw new IllegalArgumentException("Provenance storage quota " + name + " does not have a valid maximum size");
+            }
+            if (componentIds.get(name).isEmpty()) {
+                throw new IllegalArgumentException("Provenance storage quota " + name + " does not cover any components");
+            }
+
+            names[i] = name;
+            this.maxBytes[i] = max;
+            for (final String componentId : componentIds.get(name)) {
+                final int[] existing = quotas.get(componentId);
+                final int[] updated = existing == null ? new int[1] : Arrays.copyOf(existing, existing.length + 1);
+                updated[updated.length - 1] = i;
+                quotas.put(componentId, updated);
+            }
+        }
+        this.quotasByComponent = quotas;
+    }
+
+    /**
+     * @return quotas that cover no components
+     */
+    static ComponentQuotas none() {
+        return new ComponentQuotas(Collections.<String, Set<String>>emptyMap(), Collections.<String, Long>emptyMap());
+    }
+
+    boolean isEmpty() {
+        return names.length == 0;
+    }
+
+    /**
+     * @return the number of quotas
+     */
+    int size() {
+        return names.length;
+    }
+
+    /**
+     * @param quota the index of a quota
+     * @return the name of the quota
+     */
+    String getName(final int quota) {
+        return names[quota];
+    }
+
+    /**
+     * @return the number of bytes that the events covered by each quota may take up, by the index of the quota
+     */
+    long[] getMaxBytes() {
+        return maxBytes.clone();
+    }
+
+    /**
+     * @param componentId the id of a component
+     * @return the indices of the quotas that cover the given component, which may be empty
+     */
+    int[] getQuotas(final String componentId) {
+        final int[] quotas = quotasByComponent.get(componentId);
+        return quotas == null ? NO_QUOTAS : quotas;
+    }
+
+    /**
+     * Determines how many of the bytes of a Provenance Event Log File are charged against each quota
+     *
+     * @param usage the component usage of the file; may be null
+     * @param fileBytes the size of the file
+     * @return the number of bytes charged against each quota, by the index of the quota, or <code>null</code> if the file holds
+     * no events that any quota covers
+     */
+    long[] charge(final ComponentUsage usage, final long fileBytes) {
+        if (usage == null || isEmpty() || usage.getTotalBytes() <= 0L) {
+            return null;
+        }
+
+        long[] charged = null;
+        for (final Map.Entry<String, Long> entry : usage.getBytesByComponent().entrySet()) {
+            final int[] quotas = getQuotas(entry.getKey());
+            if (quotas.length == 0) {
+                continue;
+            }
+
+            // the usage is counted before compression, so each component is charged its share of the size of the file
+            final long bytes = (long) ((double) fileBytes * entry.getValue() / usage.getTotalBytes());
+            if (charged == null) {
+                charged = new long[names.length];
+            }
+            for (final int quota : quotas) {
+                charged[quota] += bytes;
+            }
+        }
+        return charged;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("ComponentQuotas[");
+        for (int i = 0; i < names.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(names[i]).append('=').append(maxBytes[i]).append(" bytes");
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import org.apache.nifi.provenance.toc.TocUtil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * The number of bytes that the events of each component take up in a single Provenance Event Log File, before the blocks
+ * of the file are compressed. It is used to charge the file against the storage quotas of the components whose events it
+ * holds, so that the events of one chatty component are aged off before those of the rest of the flow.
+ * </p>
+ * <p>
+ * The usage is written alongside the Table of Contents of the file when journals are merged. It starts with the magic bytes
+ * "MNFU", a version byte and the number of components, followed by the id of each component as a UTF string and the number
+ * of bytes of its events as a long.
+ * </p>
+ */
+final class ComponentUsage {
+
+    static final int MAGIC = 0x4D4E4655; // "MNFU"
+    static final int FORMAT_VERSION = 1;
+    static final String FILE_EXTENSION = ".usage";
+
+    private final Map<String, Long> bytesByComponent;
+    private final long totalBytes;
+
+    private ComponentUsage(final Map<String, Long> bytesByComponent) {
+        this.bytesByComponent = Collections.unmodifiableMap(bytesByComponent);
+
+        long total = 0L;
+        for (final Long bytes : bytesByComponent.values()) {
+            total += bytes;
+        }
+        this.totalBytes = total;
+    }
+
+    /**
+     * @param eventFile a Provenance Event Log File
+     * @return the file that holds the component usage of the given event file, which is kept in the same directory as its Table of Contents
+     */
+    static File getUsageFile(final File eventFile) {
+        final File tocFile = TocUtil.getTocFile(eventFile);
+        final String tocName = tocFile.getName();
+        return new File(tocFile.getParentFile(), tocName.substring(0, tocName.lastIndexOf('.')) + FILE_EXTENSION);
+    }
+
+    /**
+     * Reads the given component usage file
+     *
+     * @param file the component usage file
+     * @return the usage
+     * @throws IOException if the file cannot be read, or is not a valid component usage file
+     */
+    static ComponentUsage read(final File file) throws IOException {
+        try (final InputStream fis = new FileInputStream(file);
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(fis))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a Provenance Component Usage File");
+            }
+            if (in.readByte() != FORMAT_VERSION) {
+                throw new IOException(file + " was written with an unsupported version of the Provenance Component Usage File format");
+            }
+
+            final int componentCount = in.readInt();
+            if (componentCount < 0) {
+                throw new IOException(file + " is truncated or corrupt");
+            }
+
+            final Map<String, Long> bytesByComponent = new HashMap<>(componentCount * 2);
+            for (int i = 0; i < componentCount; i++) {
+                bytesByComponent.put(in.readUTF(), in.readLong());
+            }
+            return new ComponentUsage(bytesByComponent);
+        }
+    }
+
+    /**
+     * Writes this usage to the given file
+     *
+     * @param file the file to write
+     * @throws IOException if unable to write the file
+     */
+    void write(final File file) throws IOException {
+        try (final OutputStream fos = new FileOutputStream(file);
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+            out.writeInt(MAGIC);
+            out.writeByte(FORMAT_VERSION);
+            out.writeInt(bytesByComponent.size());
+            for (final Map.Entry<String, Long> entry : bytesByComponent.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * @return the number of bytes that the events of each component take up, keyed by component id
+     */
+    Map<String, Long> getBytesByComponent() {
+        return bytesByComponent;
+    }
+
+    /**
+     * @param componentId the id of a component
+     * @return the number of bytes that the events of the given component take up, or 0 if the file holds none of its events
+     */
+    long getBytes(final String componentId) {
+        final Long bytes = bytesByComponent.get(componentId);
+        return bytes == null ? 0L : bytes;
+    }
+
+    /**
+     * @return the number of bytes that the events of all components take up
+     */
+    long getTotalBytes() {
+        return totalBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "ComponentUsage[components=" + bytesByComponent.size() + ", bytes=" + totalBytes + "]";
+    }
+
+    /**
+     * Adds up the usage of a file as its events are written. Events without a component id are charged to the empty id.
+     */
+    static class Builder {
+        private final Map<String, long[]> bytesByComponent = new HashMap<>();
+        private String lastComponentId;
+        private long[] lastBytes;
+
+        /**
+         * @param componentId the id of the component that generated the event
+         * @param bytes the number of bytes that the event takes up
+         */
+        void add(final String componentId, final long bytes) {
+            final String id = componentId == null ? "" : componentId;
+
+            // consecutive events very often come from the same component, so the last counter is kept at hand
+            if (lastBytes == null || !id.equals(lastComponentId)) {
+                long[] counter = bytesByComponent.get(id);
+                if (counter == null) {
+                    counter = new long[1];
+                    bytesByComponent.put(id, counter);
+                }
+                lastComponentId = id;
+                lastBytes = counter;
+            }
+            lastBytes[0] += bytes;
+        }
+
+        ComponentUsage build() {
+            final Map<String, Long> usage = new HashMap<>(bytesByComponent.size() * 2);
+            for (final Map.Entry<String, long[]> entry : bytesByComponent.entrySet()) {
+                usage.put(entry.getKey(), entry.getValue()[0]);
+            }
+            return new ComponentUsage(usage);
+        }
+    }
+}
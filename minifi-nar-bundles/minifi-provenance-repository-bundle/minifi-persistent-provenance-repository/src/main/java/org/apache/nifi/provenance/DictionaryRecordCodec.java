@@ -0,0 +1,622 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * Encodes the blocks of a merged Provenance Event Log File such that each string that occurs more than once in a block, such
+ * as an attribute key or value, a component id or a FlowFile UUID, is written once, in a dictionary at the start of the
+ * block, and is referred to by its index in the dictionary everywhere else in the block. A block is laid out as follows:
+ * </p>
+ * <pre>
+ * block:      [dictionary size: varint][dictionary entry]...[record length: int][record]...
+ * entry:      [UTF-8 length: varint][UTF-8 bytes]
+ * string:     [0: null] | [1][UTF-8 length: varint][UTF-8 bytes] | [dictionary index + 2: varint]
+ * </pre>
+ * <p>
+ * All integers other than the record length are written as variable-length integers, and signed values are zigzag encoded.
+ * Because each block carries its own dictionary, any record is able to be decoded once the dictionary of its block has been
+ * read, so the blocks remain the unit of random access that the Table of Contents refers to.
+ * </p>
+ * <p>
+ * Records that are stored individually rather than in blocks are encoded by a {@link RecordEncoder}, which writes every
+ * string as a literal, and are decoded with the empty {@link #NO_DICTIONARY}.
+ * </p>
+ */
+final class DictionaryRecordCodec {
+
+    static final String[] NO_DICTIONARY = new String[0];
+
+    private static final int NULL_STRING = 0;
+    private static final int LITERAL_STRING = 1;
+    private static final int FIRST_DICTIONARY_TAG = 2;
+
+    // a rough number of bytes that the schema record writer spends on the fixed-size fields of each record
+    private static final int FIXED_FIELDS_ESTIMATE = 96;
+
+    private DictionaryRecordCodec() {
+    }
+
+    /**
+     * @param record the record to estimate the size of
+     * @return approximately the number of bytes that the NiFi schema record writer would write for the given record, which
+     * is used to decide when a block is full without having to encode its records
+     */
+    static int estimateSize(final ProvenanceEventRecord record) {
+        final SizeEstimator estimator = new SizeEstimator();
+        visit(record, record.getEventId(), estimator);
+        return estimator.getSize();
+    }
+
+    /**
+     * Encodes the given records into a single block
+     *
+     * @param prefix a buffer holding any bytes that the block is to start with, such as the header of the file
+     * @param prefixLength the number of bytes of the prefix
+     * @param records the records of the block, in the order in which they are to be written
+     * @return the encoded block
+     */
+    static byte[] encodeBlock(final byte[] prefix, final int prefixLength, final List<ProvenanceEventRecord> records) {
+        final StringCounter counter = new StringCounter();
+        for (final ProvenanceEventRecord record : records) {
+            visit(record, record.getEventId(), counter);
+        }
+
+        // only strings that repeat are worth a dictionary entry; the most frequent ones get the shortest indices
+        final List<Map.Entry<String, int[]>> repeated = new ArrayList<>();
+        for (final Map.Entry<String, int[]> entry : counter.getCounts().entrySet()) {
+            if (entry.getValue()[0] > 1) {
+                repeated.add(entry);
+            }
+        }
+        Collections.sort(repeated, new Comparator<Map.Entry<String, int[]>>() {
+            @Override
+            public int compare(final Map.Entry<String, int[]> a, final Map.Entry<String, int[]> b) {
+                return Integer.compare(b.getValue()[0], a.getValue()[0]);
+            }
+        });
+
+        final Map<String, Integer> dictionary = new HashMap<>(repeated.size() * 2);
+        final Encoder block = new Encoder(null, Math.max(8192, prefixLength + counter.getSize()));
+        block.writeBytes(prefix, 0, prefixLength);
+        block.writeVarInt(repeated.size());
+        for (final Map.Entry<String, int[]> entry : repeated) {
+            block.writeUtf8(entry.getKey());
+            dictionary.put(entry.getKey(), dictionary.size());
+        }
+
+        final Encoder recordEncoder = new Encoder(dictionary, 256);
+        for (final ProvenanceEventRecord record : records) {
+            recordEncoder.reset();
+            visit(record, record.getEventId(), recordEncoder);
+            block.writeInt(recordEncoder.size());
+            block.writeBytes(recordEncoder.getBuffer(), 0, recordEncoder.size());
+        }
+
+        return block.toByteArray();
+    }
+
+    /**
+     * Walks the fields of a record in the order in which they are encoded
+     */
+    private static void visit(final ProvenanceEventRecord record, final long eventId, final FieldVisitor visitor) {
+        visitor.visitLong(eventId);
+        visitor.visitString(record.getEventType().name());
+        visitor.visitLong(record.getEventTime());
+        visitor.visitLong(record.getFlowFileEntryDate());
+        visitor.visitLong(record.getLineageStartDate());
+        visitor.visitLong(record.getEventDuration());
+        visitor.visitString(record.getComponentId());
+        visitor.visitString(record.getComponentType());
+        visitor.visitString(record.getFlowFileUuid());
+        visitor.visitString(record.getDetails());
+        visitor.visitString(record.getTransitUri());
+        visitor.visitString(record.getSourceSystemFlowFileIdentifier());
+        visitor.visitString(record.getAlternateIdentifierUri());
+        visitor.visitString(record.getRelationship());
+        visitor.visitString(record.getSourceQueueIdentifier());
+        visitStrings(record.getParentUuids(), visitor);
+        visitStrings(record.getChildUuids(), visitor);
+        visitAttributes(record.getPreviousAttributes(), visitor);
+        visitAttributes(record.getUpdatedAttributes(), visitor);
+
+        visitor.visitString(record.getContentClaimContainer());
+        visitor.visitString(record.getContentClaimSection());
+        visitor.visitString(record.getContentClaimIdentifier());
+        visitNullableLong(record.getContentClaimOffset(), visitor);
+        visitor.visitLong(record.getFileSize());
+
+        visitor.visitString(record.getPreviousContentClaimContainer());
+        visitor.visitString(record.getPreviousContentClaimSection());
+        visitor.visitString(record.getPreviousContentClaimIdentifier());
+        visitNullableLong(record.getPreviousContentClaimOffset(), visitor);
+        visitNullableLong(record.getPreviousFileSize(), visitor);
+    }
+
+    private static void visitStrings(final List<String> values, final FieldVisitor visitor) {
+        if (values == null) {
+            visitor.visitCount(0);
+            return;
+        }
+
+        visitor.visitCount(values.size());
+        for (final String value : values) {
+            visitor.visitString(value);
+        }
+    }
+
+    private static void visitAttributes(final Map<String, String> attributes, final FieldVisitor visitor) {
+        if (attributes == null) {
+            visitor.visitCount(0);
+            return;
+        }
+
+        visitor.visitCount(attributes.size());
+        for (final Map.Entry<String, String> entry : attributes.entrySet()) {
+            visitor.visitString(entry.getKey());
+            visitor.visitString(entry.getValue());
+        }
+    }
+
+    private static void visitNullableLong(final Long value, final FieldVisitor visitor) {
+        if (value == null) {
+            visitor.visitCount(0);
+        } else {
+            visitor.visitCount(1);
+            visitor.visitLong(value);
+        }
+    }
+
+    private interface FieldVisitor {
+        void visitLong(long value);
+
+        void visitCount(int count);
+
+        void visitString(String value);
+    }
+
+    private static class SizeEstimator implements FieldVisitor {
+        private int size = FIXED_FIELDS_ESTIMATE;
+
+        @Override
+        public void visitLong(final long value) {
+        }
+
+        @Override
+        public void visitCount(final int count) {
+        }
+
+        @Override
+        public void visitString(final String value) {
+            // the schema record writer writes a length before each string and a presence flag before each optional field
+            size += value == null ? 1 : value.length() + 3;
+        }
+
+        int getSize() {
+            return size;
+        }
+    }
+
+    private static class StringCounter implements FieldVisitor {
+        private final Map<String, int[]> counts = new HashMap<>();
+        private int size = 0;
+
+        @Override
+        public void visitLong(final long value) {
+            size += 4;
+        }
+
+        @Override
+        public void visitCount(final int count) {
+            size += 1;
+        }
+
+        @Override
+        public void visitString(final String value) {
+            if (value == null) {
+                size += 1;
+                return;
+            }
+
+            final int[] count = counts.get(value);
+            if (count == null) {
+                counts.put(value, new int[] {1});
+                size += value.length() + 2;
+            } else {
+                count[0]++;
+                size += 2;
+            }
+        }
+
+        Map<String, int[]> getCounts() {
+            return counts;
+        }
+
+        /**
+         * @return approximately the number of bytes that the block will take up once encoded
+         */
+        int getSize() {
+            return size;
+        }
+    }
+
+    private static class Encoder implements FieldVisitor {
+        private final Map<String, Integer> dictionary;
+        private byte[] buffer;
+        private int size = 0;
+
+        Encoder(final Map<String, Integer> dictionary, final int initialCapacity) {
+            this.dictionary = dictionary;
+            this.buffer = new byte[initialCapacity];
+        }
+
+        @Override
+        public void visitLong(final long value) {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+        @Override
+        public void visitCount(final int count) {
+            writeVarInt(count);
+        }
+
+        @Override
+        public void visitString(final String value) {
+            if (value == null) {
+                writeVarInt(NULL_STRING);
+                return;
+            }
+
+            final Integer index = dictionary.get(value);
+            if (index == null) {
+                writeVarInt(LITERAL_STRING);
+                writeUtf8(value);
+            } else {
+                writeVarInt(index + FIRST_DICTIONARY_TAG);
+            }
+        }
+
+        void writeUtf8(final String value) {
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(bytes.length);
+            writeBytes(bytes, 0, bytes.length);
+        }
+
+        void writeVarInt(final int value) {
+            writeVarLong(value & 0xFFFFFFFFL);
+        }
+
+        void writeVarLong(final long value) {
+            ensureCapacity(10);
+            long remaining = value;
+            while ((remaining & ~0x7FL) != 0L) {
+                buffer[size++] = (byte) ((remaining & 0x7F) | 0x80);
+                remaining >>>= 7;
+            }
+            buffer[size++] = (byte) remaining;
+        }
+
+        void writeInt(final int value) {
+            ensureCapacity(4);
+            buffer[size++] = (byte) (value >>> 24);
+            buffer[size++] = (byte) (value >>> 16);
+            buffer[size++] = (byte) (value >>> 8);
+            buffer[size++] = (byte) value;
+        }
+
+        void writeBytes(final byte[] bytes, final int offset, final int length) {
+            ensureCapacity(length);
+            System.arraycopy(bytes, offset, buffer, size, length);
+            size += length;
+        }
+
+        private void ensureCapacity(final int additional) {
+            if (size + additional > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + additional));
+            }
+        }
+
+        void setInt(final int index, final int value) {
+            buffer[index] = (byte) (value >>> 24);
+            buffer[index + 1] = (byte) (value >>> 16);
+            buffer[index + 2] = (byte) (value >>> 8);
+            buffer[index + 3] = (byte) value;
+        }
+
+        void reset() {
+            size = 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        byte[] getBuffer() {
+            return buffer;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+    }
+
+    /**
+     * Encodes single records, each prefixed with its length, without a dictionary. The buffer is reused from one record to
+     * the next, so an instance must not be shared between threads.
+     */
+    static class RecordEncoder {
+        private final Encoder encoder = new Encoder(Collections.<String, Integer>emptyMap(), 256);
+
+        /**
+         * @param record the record to encode
+         * @param eventId the id of the event
+         * @return the number of bytes of the buffer that hold the encoded record, including the 4 bytes of its length
+         */
+        int encode(final ProvenanceEventRecord record, final long eventId) {
+            encoder.reset();
+            encoder.writeInt(0);
+            visit(record, eventId, encoder);
+            encoder.setInt(0, encoder.size() - 4);
+            return encoder.size();
+        }
+
+        /**
+         * @return the buffer holding the last record that was encoded
+         */
+        byte[] getBuffer() {
+            return encoder.getBuffer();
+        }
+    }
+
+    /**
+     * Decodes the dictionary and records of a single block. The position of the given buffer is never modified, so that the
+     * buffer can be shared between threads.
+     */
+    static class Decoder {
+        private final ByteBuffer data;
+        private int position;
+        private int limit;
+
+        /**
+         * @param data the buffer holding the block
+         * @param position the index at which to start decoding
+         * @param limit the index at which the block ends
+         */
+        Decoder(final ByteBuffer data, final int position, final int limit) {
+            this.data = data;
+            this.position = position;
+            this.limit = limit;
+        }
+
+        /**
+         * @return the index of the next byte to decode
+         */
+        int getPosition() {
+            return position;
+        }
+
+        /**
+         * Reads the dictionary that a block starts with
+         *
+         * @return the strings of the dictionary, by index
+         * @throws IOException if the block does not contain a complete dictionary
+         */
+        String[] readDictionary() throws IOException {
+            final int size = readVarInt();
+            if (size < 0 || size > limit - position) {
+                throw new IOException("Block contains an invalid dictionary of " + size + " entries");
+            }
+
+            final String[] dictionary = new String[size];
+            for (int i = 0; i < size; i++) {
+                dictionary[i] = readUtf8();
+            }
+            return dictionary;
+        }
+
+        /**
+         * Decodes a single record, which must end at the limit of this decoder
+         *
+         * @param dictionary the dictionary of the block that the record belongs to
+         * @param filename the name of the file that the record was read from
+         * @param storageOffset the offset of the record within the file
+         * @param maxAttributeChars the maximum number of characters to retain for any attribute value
+         * @return the decoded record
+         * @throws IOException if the record is truncated or invalid
+         */
+        StandardProvenanceEventRecord readRecord(final String[] dictionary, final String filename, final long storageOffset,
+                                                 final int maxAttributeChars) throws IOException {
+            final StandardProvenanceEventRecord.Builder builder = new StandardProvenanceEventRecord.Builder();
+            builder.setEventId(readLong());
+
+            final String eventType = readString(dictionary);
+            try {
+                builder.setEventType(ProvenanceEventType.valueOf(eventType));
+            } catch (final IllegalArgumentException | NullPointerException e) {
+                throw new IOException("Record at offset " + storageOffset + " has an unknown event type " + eventType);
+            }
+
+            builder.setEventTime(readLong());
+            builder.setFlowFileEntryDate(readLong());
+            builder.setLineageStartDate(readLong());
+            builder.setEventDuration(readLong());
+            builder.setComponentId(readString(dictionary));
+            builder.setComponentType(readString(dictionary));
+            builder.setFlowFileUUID(readString(dictionary));
+            builder.setDetails(readString(dictionary));
+            builder.setTransitUri(readString(dictionary));
+            builder.setSourceSystemFlowFileIdentifier(readString(dictionary));
+            builder.setAlternateIdentifierUri(readString(dictionary));
+            builder.setRelationship(readString(dictionary));
+            builder.setSourceQueueIdentifier(readString(dictionary));
+            builder.setParentUuids(readStrings(dictionary));
+            builder.setChildUuids(readStrings(dictionary));
+
+            final Map<String, String> previousAttributes = readAttributes(dictionary, maxAttributeChars);
+            final Map<String, String> updatedAttributes = readAttributes(dictionary, maxAttributeChars);
+            builder.setAttributes(previousAttributes, updatedAttributes);
+
+            final String container = readString(dictionary);
+            final String section = readString(dictionary);
+            final String identifier = readString(dictionary);
+            final Long offset = readNullableLong();
+            builder.setCurrentContentClaim(container, section, identifier, offset, readLong());
+
+            final String previousContainer = readString(dictionary);
+            final String previousSection = readString(dictionary);
+            final String previousIdentifier = readString(dictionary);
+            final Long previousOffset = readNullableLong();
+            final Long previousSize = readNullableLong();
+            if (previousSize != null) {
+                builder.setPreviousContentClaim(previousContainer, previousSection, previousIdentifier, previousOffset, previousSize);
+            }
+
+            if (position != limit) {
+                throw new IOException("Record at offset " + storageOffset + " has " + (limit - position) + " unexpected trailing bytes");
+            }
+
+            builder.setStorageLocation(filename, storageOffset);
+            return builder.build();
+        }
+
+        /**
+         * Decodes the id of the event that a record starts with, without decoding the rest of the record
+         *
+         * @return the id of the event
+         * @throws IOException if the record is truncated
+         */
+        long readEventId() throws IOException {
+            return readLong();
+        }
+
+        /**
+         * Limits the bytes that are decoded to the given index, such as the end of a record
+         */
+        void setLimit(final int limit) {
+            this.limit = limit;
+        }
+
+        private List<String> readStrings(final String[] dictionary) throws IOException {
+            final int count = readCount();
+            final List<String> values = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                values.add(readString(dictionary));
+            }
+            return values;
+        }
+
+        private Map<String, String> readAttributes(final String[] dictionary, final int maxAttributeChars) throws IOException {
+            final int count = readCount();
+            final Map<String, String> attributes = new HashMap<>(Math.max(4, count * 2));
+            for (int i = 0; i < count; i++) {
+                final String key = readString(dictionary);
+                final String value = readString(dictionary);
+                attributes.put(key, value == null || value.length() <= maxAttributeChars ? value : value.substring(0, maxAttributeChars));
+            }
+            return attributes;
+        }
+
+        private int readCount() throws IOException {
+            final int count = readVarInt();
+            if (count < 0 || count > limit - position) {
+                throw new IOException("Block contains an invalid count of " + count);
+            }
+            return count;
+        }
+
+        private Long readNullableLong() throws IOException {
+            return readVarInt() == 0 ? null : readLong();
+        }
+
+        private long readLong() throws IOException {
+            final long value = readVarLong();
+            return (value >>> 1) ^ -(value & 1L);
+        }
+
+        private String readString(final String[] dictionary) throws IOException {
+            final int tag = readVarInt();
+            if (tag == NULL_STRING) {
+                return null;
+            }
+            if (tag == LITERAL_STRING) {
+                return readUtf8();
+            }
+
+            final int index = tag - FIRST_DICTIONARY_TAG;
+            if (index < 0 || index >= dictionary.length) {
+                throw new IOException("Block refers to dictionary entry " + index + " but its dictionary has only " + dictionary.length + " entries");
+            }
+            return dictionary[index];
+        }
+
+        private String readUtf8() throws IOException {
+            final int length = readVarInt();
+            if (length < 0 || length > limit - position) {
+                throw new EOFException("Block is truncated at index " + position);
+            }
+
+            final String value;
+            if (data.hasArray()) {
+                value = new String(data.array(), data.arrayOffset() + position, length, StandardCharsets.UTF_8);
+            } else {
+                final byte[] bytes = new byte[length];
+                final ByteBuffer view = data.duplicate();
+                view.position(position);
+                view.get(bytes);
+                value = new String(bytes, StandardCharsets.UTF_8);
+            }
+            position += length;
+            return value;
+        }
+
+        private int readVarInt() throws IOException {
+            final long value = readVarLong();
+            if (value > Integer.MAX_VALUE) {
+                throw new IOException("Block contains an invalid value at index " + position);
+            }
+            return (int) value;
+        }
+
+        private long readVarLong() throws IOException {
+            long value = 0L;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (position >= limit) {
+                    throw new EOFException("Block is truncated at index " + position);
+                }
+
+                final byte b = data.get(position++);
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Block contains an invalid variable-length integer at index " + position);
+        }
+    }
+}
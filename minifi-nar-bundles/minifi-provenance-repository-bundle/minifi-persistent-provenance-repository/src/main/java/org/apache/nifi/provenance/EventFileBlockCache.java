@@ -0,0 +1,1110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import org.apache.nifi.events.EventReporter;
+import org.apache.nifi.provenance.compression.EventFileCodec;
+import org.apache.nifi.provenance.compression.EventFileCodecs;
+import org.apache.nifi.provenance.schema.EventRecord;
+import org.apache.nifi.provenance.schema.ProvenanceEventSchema;
+import org.apache.nifi.provenance.toc.StandardTocReader;
+import org.apache.nifi.provenance.toc.TocReader;
+import org.apache.nifi.provenance.toc.TocUtil;
+import org.apache.nifi.repository.schema.Record;
+import org.apache.nifi.repository.schema.RecordSchema;
+import org.apache.nifi.repository.schema.SchemaRecordReader;
+import org.apache.nifi.reporting.Severity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * <p>
+ * Serves reads of merged Provenance Event Log Files from memory-mapped files and a cache of decoded blocks, so that
+ * repeatedly reading the same region of the repository, as the provenance reporting task does, does not require the file
+ * to be opened, decompressed and skipped through each time.
+ * </p>
+ * <p>
+ * Blocks are those recorded in each file's Table of Contents. Decoded blocks are kept in a least-recently-used cache whose
+ * size is bounded by a number of bytes; blocks of uncompressed files are read directly from the mapped file and do not count
+ * against that bound. In addition, the position at which each read ended is remembered, so that a read that starts with the
+ * event following the last one returned continues from there rather than looking up its block again.
+ * </p>
+ * <p>
+ * Streaming readers use {@link #iterate(File, long)} instead, which walks the records of a file without decoding them, so that
+ * records can be skipped or handed out as they are stored.
+ * </p>
+ * <p>
+ * Each block is checked against the {@link BlockChecksums} of its file the first time that it is decoded. A block that does
+ * not match is reported once and skipped, so that the events of the blocks that follow it can still be read. Files that were
+ * merged before checksums were kept are read without being checked.
+ * </p>
+ * <p>
+ * Only files written with the schema-based serialization format are supported. For any other file, or a file without a
+ * Table of Contents, {@link #readEvents(File, long, int, List)} returns <code>false</code> and the caller is expected to
+ * fall back to a {@link org.apache.nifi.provenance.serialization.RecordReader}.
+ * </p>
+ */
+class EventFileBlockCache implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(EventFileBlockCache.class);
+
+    static final int MAX_OPEN_FILES = 32;
+    static final int MAX_CURSORS = 16;
+
+    /**
+     * The byte that the schema record writer writes ahead of every record. No record that is encoded without a dictionary by
+     * {@link DictionaryRecordCodec} starts with it, as those start with the zigzag encoded id of the event, which is never odd
+     * when it fits in a single byte.
+     */
+    static final byte SCHEMA_RECORD_SENTINEL = 1;
+
+    // the length of the GZIP header that the NiFi record writers write, which has none of the optional fields
+    private static final int GZIP_HEADER_LENGTH = 10;
+
+    // the event schema that the repository writes, which is the only one whose records can be handed out as they are stored
+    private static final byte[] CURRENT_SCHEMA = serialize(ProvenanceEventSchema.PROVENANCE_EVENT_SCHEMA_V1);
+
+    private final long maxBytes;
+    private final int maxAttributeChars;
+    private final EventReporter eventReporter;
+
+    private final Map<File, MappedEventFile> openFiles = new LinkedHashMap<>(16, 0.75F, true); // guarded by this
+    private final Map<BlockKey, DecodedBlock> blocks = new LinkedHashMap<>(16, 0.75F, true); // guarded by this
+    private final Map<CursorKey, Cursor> cursors = new LinkedHashMap<CursorKey, Cursor>(MAX_CURSORS * 2, 0.75F, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<CursorKey, Cursor> eldest) {
+            return size() > MAX_CURSORS;
+        }
+    }; // guarded by this
+    private long cachedBytes = 0L; // guarded by this
+
+    private final AtomicLong blockHits = new AtomicLong(0L);
+    private final AtomicLong blockMisses = new AtomicLong(0L);
+    private final AtomicLong cursorHits = new AtomicLong(0L);
+    private final AtomicLong corruptBlocks = new AtomicLong(0L);
+
+    /**
+     * @param maxBytes the maximum number of bytes of decoded blocks to retain
+     * @param maxAttributeChars the maximum number of characters to retain for any attribute value
+     */
+    EventFileBlockCache(final long maxBytes, final int maxAttributeChars) {
+        this(maxBytes, maxAttributeChars, null);
+    }
+
+    /**
+     * @param maxBytes the maximum number of bytes of decoded blocks to retain
+     * @param maxAttributeChars the maximum number of characters to retain for any attribute value
+     * @param eventReporter the reporter to notify of blocks that do not match their checksums, or <code>null</code> if they are only to be logged
+     */
+    EventFileBlockCache(final long maxBytes, final int maxAttributeChars, final EventReporter eventReporter) {
+        this.maxBytes = maxBytes;
+        this.maxAttributeChars = maxAttributeChars;
+        this.eventReporter = eventReporter;
+    }
+
+    /**
+     * Reads the events of the given file whose ids are at least the given id, appending them to the given list until the list
+     * holds the given number of records or the end of the file is reached
+     *
+     * @param file the merged Provenance Event Log File to read
+     * @param firstEventId the id of the first event of interest
+     * @param maxRecords the maximum number of records that the given list should hold
+     * @param records the list to add the events to
+     * @return <code>true</code> if the file was read, <code>false</code> if the file cannot be read through the cache
+     * @throws IOException if unable to read the file
+     */
+    boolean readEvents(final File file, final long firstEventId, final int maxRecords, final List<ProvenanceEventRecord> records) throws IOException {
+        final MappedEventFile eventFile = getEventFile(file);
+        if (eventFile == null) {
+            return false;
+        }
+
+        final RecordIterator itr;
+        final Cursor cursor = takeCursor(file, firstEventId);
+        if (cursor == null) {
+            itr = new RecordIterator(eventFile, getBlockIndex(eventFile, firstEventId), -1);
+        } else {
+            cursorHits.incrementAndGet();
+            itr = new RecordIterator(eventFile, cursor.getBlockIndex(), cursor.getPosition());
+        }
+
+        final int initialSize = records.size();
+        while (records.size() < maxRecords && itr.next()) {
+            // events that precede the first event of interest are skipped without being decoded
+            if (itr.getEventId() >= firstEventId) {
+                records.add(itr.getEvent());
+            }
+        }
+
+        // there is nothing to resume once the last record of the file has been read
+        if (records.size() > initialSize && !itr.isAtEnd()) {
+            final long nextEventId = records.get(records.size() - 1).getEventId() + 1;
+            synchronized (this) {
+                cursors.put(new CursorKey(file, nextEventId), new Cursor(itr.getBlockIndex(), itr.getPosition()));
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Opens an iterator over the records of the given file, starting with the block that holds the event with the given id.
+     * The iterator does not decode a record unless it is asked to, and holds on to no more than one block of the file.
+     *
+     * @param file the merged Provenance Event Log File to read
+     * @param firstEventId the id of the first event of interest
+     * @return the iterator, or <code>null</code> if the file cannot be read through the cache
+     * @throws IOException if unable to read the file
+     */
+    RecordIterator iterate(final File file, final long firstEventId) throws IOException {
+        final MappedEventFile eventFile = getEventFile(file);
+        if (eventFile == null) {
+            return null;
+        }
+        return new RecordIterator(eventFile, getBlockIndex(eventFile, firstEventId), -1);
+    }
+
+    /**
+     * Discards everything that is cached for the given file. This must be called when a file is removed from the repository.
+     *
+     * @param file the file that is no longer part of the repository
+     */
+    synchronized void invalidate(final File file) {
+        closeQuietly(openFiles.remove(file));
+
+        final Iterator<Map.Entry<BlockKey, DecodedBlock>> blockItr = blocks.entrySet().iterator();
+        while (blockItr.hasNext()) {
+            final Map.Entry<BlockKey, DecodedBlock> entry = blockItr.next();
+            if (entry.getKey().getFile().equals(file)) {
+                cachedBytes -= entry.getValue().getSize();
+                blockItr.remove();
+            }
+        }
+
+        final Iterator<CursorKey> cursorItr = cursors.keySet().iterator();
+        while (cursorItr.hasNext()) {
+            if (cursorItr.next().getFile().equals(file)) {
+                cursorItr.remove();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        for (final MappedEventFile eventFile : openFiles.values()) {
+            closeQuietly(eventFile);
+        }
+        openFiles.clear();
+        blocks.clear();
+        cursors.clear();
+        cachedBytes = 0L;
+    }
+
+    /**
+     * @return the number of bytes of decoded blocks currently held by the cache
+     */
+    synchronized long getCachedBytes() {
+        return cachedBytes;
+    }
+
+    /**
+     * @return the number of block reads that were served from the cache
+     */
+    long getBlockHits() {
+        return blockHits.get();
+    }
+
+    /**
+     * @return the number of block reads that required a block to be decoded
+     */
+    long getBlockMisses() {
+        return blockMisses.get();
+    }
+
+    /**
+     * @return the number of reads that continued from where a previous read ended
+     */
+    long getCursorHits() {
+        return cursorHits.get();
+    }
+
+    /**
+     * @return the number of times that a block was skipped because it did not match its checksum
+     */
+    long getCorruptBlocks() {
+        return corruptBlocks.get();
+    }
+
+    private synchronized Cursor takeCursor(final File file, final long nextEventId) {
+        return cursors.remove(new CursorKey(file, nextEventId));
+    }
+
+    private static int getBlockIndex(final MappedEventFile eventFile, final long eventId) {
+        final Integer index = eventFile.getTocReader() == null ? null : eventFile.getTocReader().getBlockIndexForEventId(eventId);
+        return index == null ? 0 : index;
+    }
+
+    private MappedEventFile getEventFile(final File file) throws IOException {
+        synchronized (this) {
+            final MappedEventFile eventFile = openFiles.get(file);
+            if (eventFile != null) {
+                return eventFile;
+            }
+        }
+
+        final MappedEventFile eventFile = MappedEventFile.open(file);
+        if (eventFile == null) {
+            return null;
+        }
+
+        synchronized (this) {
+            final MappedEventFile existing = openFiles.get(file);
+            if (existing != null) {
+                closeQuietly(eventFile);
+                return existing;
+            }
+
+            openFiles.put(file, eventFile);
+            final Iterator<MappedEventFile> itr = openFiles.values().iterator();
+            while (openFiles.size() > MAX_OPEN_FILES && itr.hasNext()) {
+                final MappedEventFile eldest = itr.next();
+                itr.remove();
+                closeQuietly(eldest);
+            }
+        }
+
+        return eventFile;
+    }
+
+    private DecodedBlock getBlock(final MappedEventFile eventFile, final int blockIndex) throws IOException {
+        final BlockKey key = new BlockKey(eventFile.getFile(), blockIndex);
+        synchronized (this) {
+            final DecodedBlock block = blocks.get(key);
+            if (block != null) {
+                blockHits.incrementAndGet();
+                return block;
+            }
+        }
+
+        blockMisses.incrementAndGet();
+        final DecodedBlock block = eventFile.decodeBlock(blockIndex);
+        if (block.getSize() == 0 || block.getSize() > maxBytes) {
+            return block;
+        }
+
+        synchronized (this) {
+            // make sure that the file has not been invalidated while the block was being decoded
+            if (openFiles.get(eventFile.getFile()) != eventFile) {
+                return block;
+            }
+
+            final DecodedBlock previous = blocks.put(key, block);
+            if (previous != null) {
+                cachedBytes -= previous.getSize();
+            }
+            cachedBytes += block.getSize();
+
+            final Iterator<DecodedBlock> itr = blocks.values().iterator();
+            while (cachedBytes > maxBytes && itr.hasNext()) {
+                cachedBytes -= itr.next().getSize();
+                itr.remove();
+            }
+        }
+
+        return block;
+    }
+
+    private void reportCorruptBlock(final CorruptBlockException cbe) {
+        corruptBlocks.incrementAndGet();
+        if (!cbe.isFirstDetection()) {
+            return;
+        }
+
+        final String message = cbe.getMessage() + "; the " + cbe.getEventCount() + " events that it holds will be skipped";
+        logger.warn(message);
+        if (eventReporter != null) {
+            eventReporter.reportEvent(Severity.WARNING, MiNiFiPersistentProvenanceRepository.EVENT_CATEGORY, message);
+        }
+    }
+
+    private static byte[] serialize(final RecordSchema schema) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            schema.writeTo(out);
+        } catch (final IOException ioe) {
+            throw new IllegalStateException("Failed to serialize the Provenance Event schema", ioe);
+        }
+        return out.toByteArray();
+    }
+
+    private static void closeQuietly(final Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+
+        try {
+            closeable.close();
+        } catch (final IOException ioe) {
+            logger.debug("Failed to close {}", closeable, ioe);
+        }
+    }
+
+    /**
+     * Iterates over the records of a single file, one block at a time. The id of each record is read without decoding the rest
+     * of the record, and a record is only decoded if it is asked for. An iterator is not thread-safe.
+     */
+    final class RecordIterator {
+        private final MappedEventFile eventFile;
+        private int blockIndex;
+        private DecodedBlock block;
+        private ByteBuffer view;
+        private int position;
+        private int recordStart = -1;
+        private int recordLength;
+        private long eventId = -1L;
+        private StandardProvenanceEventRecord event;
+        private boolean finished = false;
+
+        /**
+         * @param position the index within the block of the first record to read, or -1 to read from the first record of the block
+         */
+        private RecordIterator(final MappedEventFile eventFile, final int blockIndex, final int position) throws IOException {
+            this.eventFile = eventFile;
+            if (loadBlock(blockIndex)) {
+                this.position = position < 0 || this.blockIndex != blockIndex ? block.getStart() : position;
+            }
+        }
+
+        /**
+         * Advances to the next record of the file
+         *
+         * @return <code>true</code> if the iterator advanced, <code>false</code> if the end of the file has been reached
+         * @throws IOException if the next record cannot be read
+         */
+        boolean next() throws IOException {
+            recordStart = -1;
+            eventId = -1L;
+            event = null;
+            if (finished) {
+                return false;
+            }
+
+            while (position >= block.getLimit()) {
+                if (!loadBlock(blockIndex + 1)) {
+                    return false;
+                }
+                position = block.getStart();
+            }
+
+            final ByteBuffer data = block.getData();
+            final long storageOffset = block.getBaseOffset() + position;
+            if (block.getLimit() - position < 4) {
+                throw new EOFException("Provenance Event Log File " + eventFile.getFile() + " contains a truncated record at offset " + storageOffset);
+            }
+
+            final int length = data.getInt(position);
+            if (length < 0 || length > block.getLimit() - position - 4) {
+                throw new EOFException("Provenance Event Log File " + eventFile.getFile() + " contains a truncated record at offset " + storageOffset);
+            }
+
+            recordStart = position + 4;
+            recordLength = length;
+            position = recordStart + length;
+
+            if (block.getDictionary() != null) {
+                eventId = new DictionaryRecordCodec.Decoder(data, recordStart, position).readEventId();
+            } else if (eventFile.hasCurrentSchema()) {
+                // the schema record writer writes a sentinel ahead of the fields of each record, the first of which is the event id
+                if (length < 9 || data.get(recordStart) != SCHEMA_RECORD_SENTINEL) {
+                    throw new IOException("Provenance Event Log File " + eventFile.getFile() + " contains an invalid record at offset " + storageOffset);
+                }
+                eventId = data.getLong(recordStart + 1);
+            } else {
+                event = decode();
+                if (event == null) {
+                    finished = true;
+                    recordStart = -1;
+                    return false;
+                }
+                eventId = event.getEventId();
+            }
+
+            return true;
+        }
+
+        /**
+         * @return the id of the current event
+         */
+        long getEventId() {
+            return eventId;
+        }
+
+        /**
+         * @return the current event, which is decoded the first time that it is asked for
+         * @throws IOException if the record of the event is invalid
+         */
+        StandardProvenanceEventRecord getEvent() throws IOException {
+            if (event == null && recordStart >= 0) {
+                event = decode();
+            }
+            return event;
+        }
+
+        /**
+         * @return a read-only view of the record of the current event as the NiFi schema record writer wrote it, without its
+         * length, or <code>null</code> if the record was dictionary encoded or written with an older schema. The view is reused
+         * for every record of the same block.
+         */
+        ByteBuffer getSerializedRecord() {
+            if (recordStart < 0 || block.getDictionary() != null || !eventFile.hasCurrentSchema()) {
+                return null;
+            }
+
+            if (view == null) {
+                view = block.getData().asReadOnlyBuffer();
+            }
+            view.limit(recordStart + recordLength);
+            view.position(recordStart);
+            return view;
+        }
+
+        private StandardProvenanceEventRecord decode() throws IOException {
+            final long storageOffset = block.getBaseOffset() + recordStart - 4;
+            if (block.getDictionary() != null) {
+                final DictionaryRecordCodec.Decoder decoder = new DictionaryRecordCodec.Decoder(block.getData(), recordStart, recordStart + recordLength);
+                return decoder.readRecord(block.getDictionary(), eventFile.getFilename(), storageOffset, maxAttributeChars);
+            }
+
+            final Record record = eventFile.getRecordReader().readRecord(new ByteBufferInputStream(block.getData(), recordStart, recordLength));
+            return record == null ? null : EventRecord.getEvent(record, eventFile.getFilename(), storageOffset, maxAttributeChars);
+        }
+
+        /**
+         * Loads the block with the given index or, if it does not match its checksum, the first block after it that does
+         *
+         * @return <code>false</code> if there is no such block
+         */
+        private boolean loadBlock(final int firstBlockIndex) throws IOException {
+            for (int index = firstBlockIndex; index < eventFile.getBlockCount(); index++) {
+                try {
+                    block = getBlock(eventFile, index);
+                    blockIndex = index;
+                    view = null;
+                    return true;
+                } catch (final CorruptBlockException cbe) {
+                    reportCorruptBlock(cbe);
+                }
+            }
+
+            finished = true;
+            return false;
+        }
+
+        private boolean isAtEnd() {
+            return finished || (blockIndex + 1 >= eventFile.getBlockCount() && position >= block.getLimit());
+        }
+
+        private int getBlockIndex() {
+            return blockIndex;
+        }
+
+        private int getPosition() {
+            return position;
+        }
+    }
+
+    private enum Layout {
+        /**
+         * A single stream of records, as written by the NiFi record writers without compression
+         */
+        UNCOMPRESSED,
+
+        /**
+         * One GZIP member per block, as written by the NiFi record writers
+         */
+        GZIP,
+
+        /**
+         * One frame per block, as read by the {@link FramedEventFileReader}
+         */
+        FRAMED,
+
+        /**
+         * One frame per block, each starting with the dictionary of the strings that repeat within the block
+         */
+        DICTIONARY_FRAMED
+    }
+
+    /**
+     * A merged Provenance Event Log File that has been mapped into memory
+     */
+    private static class MappedEventFile implements Closeable {
+        private final File file;
+        private final String filename;
+        private final Layout layout;
+        private final EventFileCodec codec;
+        private final MappedByteBuffer buffer;
+        private final TocReader tocReader;
+        private final long[] blockOffsets;
+        private final BlockChecksums checksums;
+        private final BitSet verifiedBlocks = new BitSet(); // guarded by this
+        private final BitSet corruptBlocks = new BitSet(); // guarded by this
+        private SchemaRecordReader recordReader;
+        private boolean currentSchema;
+        private int headerLength;
+
+        private MappedEventFile(final File file, final Layout layout, final EventFileCodec codec, final MappedByteBuffer buffer,
+                                final TocReader tocReader, final long[] blockOffsets, final BlockChecksums checksums) {
+            this.file = file;
+            this.filename = file.getName();
+            this.layout = layout;
+            this.codec = codec;
+            this.buffer = buffer;
+            this.tocReader = tocReader;
+            this.blockOffsets = blockOffsets;
+            this.checksums = checksums;
+        }
+
+        /**
+         * @return the mapped file, or <code>null</code> if the file cannot be read through the cache
+         */
+        static MappedEventFile open(final File file) throws IOException {
+            final MappedByteBuffer buffer;
+            try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                final long size = channel.size();
+                if (size == 0L || size > Integer.MAX_VALUE) {
+                    return null;
+                }
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0L, size);
+            } catch (final NoSuchFileException nsfe) {
+                // the record readers know how to find a file that has been renamed, such as by an expiration action
+                return null;
+            }
+
+            final Layout layout;
+            EventFileCodec codec = null;
+            if (isFramed(buffer)) {
+                final boolean dictionaryEncoded = buffer.get(FramedEventFileReader.MAGIC.length) >= FramedEventFileReader.DICTIONARY_FORMAT_VERSION;
+                layout = dictionaryEncoded ? Layout.DICTIONARY_FRAMED : Layout.FRAMED;
+                final byte codecId = buffer.get(FramedEventFileReader.MAGIC.length + 1);
+                if (codecId != FramedEventFileReader.UNCOMPRESSED_CODEC_ID) {
+                    codec = EventFileCodecs.forId(codecId);
+                    if (codec == null) {
+                        return null;
+                    }
+                }
+            } else if (file.getName().endsWith(".gz")) {
+                layout = Layout.GZIP;
+            } else {
+                layout = Layout.UNCOMPRESSED;
+            }
+
+            final File tocFile = TocUtil.getTocFile(file);
+            final TocReader tocReader = tocFile.exists() ? new StandardTocReader(tocFile) : null;
+            if (tocReader == null && layout != Layout.UNCOMPRESSED) {
+                return null;
+            }
+
+            final long[] blockOffsets;
+            if (tocReader == null) {
+                blockOffsets = new long[] {0L};
+            } else {
+                final List<Long> offsets = new ArrayList<>();
+                long offset;
+                while ((offset = tocReader.getBlockOffset(offsets.size())) >= 0) {
+                    offsets.add(offset);
+                }
+
+                blockOffsets = new long[offsets.size()];
+                for (int i = 0; i < blockOffsets.length; i++) {
+                    blockOffsets[i] = offsets.get(i);
+                }
+            }
+
+            final MappedEventFile eventFile = new MappedEventFile(file, layout, codec, buffer, tocReader, blockOffsets, readChecksums(file));
+            try {
+                if (blockOffsets.length == 0 || !eventFile.readHeader()) {
+                    eventFile.close();
+                    return null;
+                }
+            } catch (final IOException | RuntimeException e) {
+                eventFile.close();
+                throw e;
+            }
+
+            return eventFile;
+        }
+
+        private static BlockChecksums readChecksums(final File file) {
+            final File checksumFile = BlockChecksums.getChecksumFile(file);
+            if (!checksumFile.exists()) {
+                // the file was merged before checksums were kept
+                return null;
+            }
+
+            try {
+                return BlockChecksums.read(checksumFile);
+            } catch (final IOException ioe) {
+                logger.warn("Failed to read Provenance Block Checksum File {} due to {}; the blocks of {} will not be checked", checksumFile, ioe.toString(), file);
+                return null;
+            }
+        }
+
+        private static boolean isFramed(final ByteBuffer buffer) {
+            if (buffer.limit() < FramedEventFileReader.PREFIX_LENGTH) {
+                return false;
+            }
+            for (int i = 0; i < FramedEventFileReader.MAGIC.length; i++) {
+                if (buffer.get(i) != FramedEventFileReader.MAGIC[i]) {
+                    return false;
+                }
+            }
+            return buffer.get(FramedEventFileReader.MAGIC.length) <= FramedEventFileReader.FORMAT_VERSION;
+        }
+
+        /**
+         * Reads the header from the first block
+         *
+         * @return <code>false</code> if the file was not written with the schema-based serialization format
+         */
+        private boolean readHeader() throws IOException {
+            final DecodedBlock firstBlock = decodeBlock(0, false);
+            final ByteBufferInputStream in = new ByteBufferInputStream(firstBlock.getData(), 0, firstBlock.getLimit());
+            final DataInputStream dis = new DataInputStream(in);
+
+            if (!ByteArraySchemaRecordWriter.SERIALIZATION_NAME.equals(dis.readUTF())) {
+                return false;
+            }
+            if (dis.readInt() > ByteArraySchemaRecordWriter.SERIALIZATION_VERSION) {
+                return false;
+            }
+
+            final int schemaLength = dis.readInt();
+            final RecordSchema schema = RecordSchema.readFrom(new ByteBufferInputStream(firstBlock.getData(), in.getPosition(), schemaLength));
+            recordReader = SchemaRecordReader.fromSchema(schema);
+            currentSchema = isSchema(firstBlock.getData(), in.getPosition(), schemaLength, CURRENT_SCHEMA);
+            headerLength = in.getPosition() + schemaLength;
+            return true;
+        }
+
+        private static boolean isSchema(final ByteBuffer data, final int offset, final int length, final byte[] schema) {
+            if (length != schema.length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (data.get(offset + i) != schema[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        File getFile() {
+            return file;
+        }
+
+        String getFilename() {
+            return filename;
+        }
+
+        TocReader getTocReader() {
+            return tocReader;
+        }
+
+        SchemaRecordReader getRecordReader() {
+            return recordReader;
+        }
+
+        /**
+         * @return whether the records of the file were written with the event schema that the repository writes
+         */
+        boolean hasCurrentSchema() {
+            return currentSchema;
+        }
+
+        int getBlockCount() {
+            return blockOffsets.length;
+        }
+
+        DecodedBlock decodeBlock(final int blockIndex) throws IOException {
+            return decodeBlock(blockIndex, true);
+        }
+
+        /**
+         * @param readDictionary whether to read the dictionary of a dictionary encoded block, which is not possible for the
+         * first block until the header that precedes it has been read
+         */
+        private DecodedBlock decodeBlock(final int blockIndex, final boolean readDictionary) throws IOException {
+            final int start = blockIndex == 0 ? headerLength : 0;
+            final int offset = (int) blockOffsets[blockIndex];
+            final int end = blockIndex + 1 < blockOffsets.length ? (int) blockOffsets[blockIndex + 1] : buffer.limit();
+            verify(blockIndex, offset, end);
+
+            switch (layout) {
+                case UNCOMPRESSED: {
+                    // the mapped file is read as-is, so it does not count against the size of the cache
+                    final ByteBuffer data = buffer.duplicate();
+                    data.limit(end);
+                    return new DecodedBlock(data, 0L, Math.max(start, offset), 0);
+                }
+                case GZIP: {
+                    final ExposedByteArrayOutputStream out = new ExposedByteArrayOutputStream(Math.max(8192, (end - offset) * 4));
+                    try (final InputStream in = new GZIPInputStream(new ByteBufferInputStream(buffer, offset, end - offset))) {
+                        final byte[] chunk = new byte[8192];
+                        int len;
+                        while ((len = in.read(chunk)) > 0) {
+                            out.write(chunk, 0, len);
+                        }
+                    }
+                    // the NiFi readers count the bytes of a block from the end of the GZIP header of the block
+                    return new DecodedBlock(ByteBuffer.wrap(out.getBuffer(), 0, out.size()), offset + GZIP_HEADER_LENGTH, start, out.getBuffer().length);
+                }
+                case FRAMED:
+                case DICTIONARY_FRAMED:
+                default: {
+                    if (end - offset < FramedEventFileReader.FRAME_HEADER_LENGTH) {
+                        throw new EOFException("Provenance Event Log File " + file + " is truncated at offset " + offset);
+                    }
+
+                    final long uncompressedOffset = buffer.getLong(offset);
+                    final int uncompressedLength = buffer.getInt(offset + 8);
+                    final int compressedLength = buffer.getInt(offset + 12);
+                    if (uncompressedLength < 0 || compressedLength < 0 || compressedLength > end - offset - FramedEventFileReader.FRAME_HEADER_LENGTH
+                        || (codec == null && compressedLength != uncompressedLength)) {
+                        throw new EOFException("Provenance Event Log File " + file + " is truncated at offset " + offset);
+                    }
+
+                    final byte[] compressed = new byte[compressedLength];
+                    final ByteBuffer frame = buffer.duplicate();
+                    frame.position(offset + FramedEventFileReader.FRAME_HEADER_LENGTH);
+                    frame.get(compressed);
+
+                    final byte[] uncompressed = codec == null ? compressed : codec.decompress(compressed, 0, compressedLength, uncompressedLength);
+                    final ByteBuffer data = ByteBuffer.wrap(uncompressed);
+                    if (layout != Layout.DICTIONARY_FRAMED || !readDictionary) {
+                        return new DecodedBlock(data, uncompressedOffset, start, uncompressed.length);
+                    }
+
+                    final DictionaryRecordCodec.Decoder decoder = new DictionaryRecordCodec.Decoder(data, start, uncompressed.length);
+                    final String[] dictionary = decoder.readDictionary();
+                    return new DecodedBlock(data, uncompressedOffset, decoder.getPosition(), uncompressed.length, dictionary);
+                }
+            }
+        }
+
+        /**
+         * Checks the bytes of the given block against their checksums, unless the block has been checked before
+         *
+         * @throws CorruptBlockException if the block does not match its checksums
+         */
+        private void verify(final int blockIndex, final int offset, final int end) throws CorruptBlockException {
+            if (checksums == null) {
+                return;
+            }
+
+            // the prefix of a framed file has a checksum of its own, and is checked along with the first block
+            final int checkedOffset = blockIndex == 0 ? 0 : offset;
+            synchronized (this) {
+                if (corruptBlocks.get(blockIndex)) {
+                    throw new CorruptBlockException(file, blockIndex, checksums.getEventCount(checkedOffset, end), false);
+                }
+                if (verifiedBlocks.get(blockIndex)) {
+                    return;
+                }
+            }
+
+            final boolean corrupt = checksums.findCorruptBlock(buffer, checkedOffset, end) >= 0;
+            synchronized (this) {
+                if (!corrupt) {
+                    verifiedBlocks.set(blockIndex);
+                    return;
+                }
+
+                final boolean firstDetection = !corruptBlocks.get(blockIndex);
+                corruptBlocks.set(blockIndex);
+                throw new CorruptBlockException(file, blockIndex, checksums.getEventCount(checkedOffset, end), firstDetection);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (tocReader != null) {
+                tocReader.close();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "MappedEventFile[" + file + ", layout=" + layout + "]";
+        }
+    }
+
+    /**
+     * Thrown when a block of a file does not match the checksums that were recorded for it when the file was merged
+     */
+    private static class CorruptBlockException extends IOException {
+        private final int eventCount;
+        private final boolean firstDetection;
+
+        CorruptBlockException(final File file, final int blockIndex, final int eventCount, final boolean firstDetection) {
+            super("Block " + blockIndex + " of Provenance Event File " + file + " does not match its checksum");
+            this.eventCount = eventCount;
+            this.firstDetection = firstDetection;
+        }
+
+        int getEventCount() {
+            return eventCount;
+        }
+
+        /**
+         * @return whether this is the first time that the block was found not to match its checksum
+         */
+        boolean isFirstDetection() {
+            return firstDetection;
+        }
+    }
+
+    /**
+     * The records of a single block. The data always starts at index 0 of the buffer, and the records start at the given start index.
+     */
+    private static class DecodedBlock {
+        private final ByteBuffer data;
+        private final long baseOffset;
+        private final int start;
+        private final int size;
+        private final String[] dictionary;
+
+        DecodedBlock(final ByteBuffer data, final long baseOffset, final int start, final int size) {
+            this(data, baseOffset, start, size, null);
+        }
+
+        DecodedBlock(final ByteBuffer data, final long baseOffset, final int start, final int size, final String[] dictionary) {
+            this.data = data;
+            this.baseOffset = baseOffset;
+            this.start = start;
+            this.size = size;
+            this.dictionary = dictionary;
+        }
+
+        /**
+         * @return the dictionary that the records of the block refer to, or <code>null</code> if the block is not dictionary encoded
+         */
+        String[] getDictionary() {
+            return dictionary;
+        }
+
+        ByteBuffer getData() {
+            return data;
+        }
+
+        /**
+         * @return the storage offset of index 0 of the data
+         */
+        long getBaseOffset() {
+            return baseOffset;
+        }
+
+        int getStart() {
+            return start;
+        }
+
+        int getLimit() {
+            return data.limit();
+        }
+
+        /**
+         * @return the number of bytes that the block counts against the size of the cache
+         */
+        int getSize() {
+            return size;
+        }
+    }
+
+    private static class BlockKey {
+        private final File file;
+        private final int blockIndex;
+
+        BlockKey(final File file, final int blockIndex) {
+            this.file = file;
+            this.blockIndex = blockIndex;
+        }
+
+        File getFile() {
+            return file;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof BlockKey)) {
+                return false;
+            }
+            final BlockKey other = (BlockKey) obj;
+            return blockIndex == other.blockIndex && file.equals(other.file);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * file.hashCode() + blockIndex;
+        }
+    }
+
+    private static class CursorKey {
+        private final File file;
+        private final long nextEventId;
+
+        CursorKey(final File file, final long nextEventId) {
+            this.file = file;
+            this.nextEventId = nextEventId;
+        }
+
+        File getFile() {
+            return file;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof CursorKey)) {
+                return false;
+            }
+            final CursorKey other = (CursorKey) obj;
+            return nextEventId == other.nextEventId && file.equals(other.file);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * file.hashCode() + Long.hashCode(nextEventId);
+        }
+    }
+
+    /**
+     * The position immediately following the last record returned by a read
+     */
+    private static class Cursor {
+        private final int blockIndex;
+        private final int position;
+
+        Cursor(final int blockIndex, final int position) {
+            this.blockIndex = blockIndex;
+            this.position = position;
+        }
+
+        int getBlockIndex() {
+            return blockIndex;
+        }
+
+        int getPosition() {
+            return position;
+        }
+    }
+
+    private static class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+        ExposedByteArrayOutputStream(final int initialSize) {
+            super(initialSize);
+        }
+
+        byte[] getBuffer() {
+            return buf;
+        }
+    }
+
+    /**
+     * Reads a region of a buffer without modifying the buffer's position, so that the buffer can be shared between threads
+     */
+    static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+        private final int limit;
+        private int position;
+
+        ByteBufferInputStream(final ByteBuffer buffer, final int offset, final int length) {
+            this.buffer = buffer;
+            this.position = offset;
+            this.limit = offset + length;
+        }
+
+        int getPosition() {
+            return position;
+        }
+
+        @Override
+        public int read() {
+            if (position >= limit) {
+                return -1;
+            }
+            return buffer.get(position++) & 0xFF;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= limit) {
+                return -1;
+            }
+
+            final int toRead = Math.min(len, limit - position);
+            if (buffer.hasArray()) {
+                System.arraycopy(buffer.array(), buffer.arrayOffset() + position, b, off, toRead);
+            } else {
+                final ByteBuffer view = buffer.duplicate();
+                view.position(position);
+                view.get(b, off, toRead);
+            }
+            position += toRead;
+            return toRead;
+        }
+
+        @Override
+        public long skip(final long n) {
+            final int toSkip = (int) Math.max(0L, Math.min(n, limit - position));
+            position += toSkip;
+            return toSkip;
+        }
+
+        @Override
+        public int available() {
+            return limit - position;
+        }
+    }
+}
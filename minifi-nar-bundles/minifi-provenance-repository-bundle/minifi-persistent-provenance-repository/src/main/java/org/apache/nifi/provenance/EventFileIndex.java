@@ -0,0 +1,338 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * <p>
+ * An immutable index of the Provenance Event Log Files of the repository, ordered by the id of the first event in each file.
+ * The ids are held in a primitive array that is searched with a binary search, alongside an array of the paths of the files.
+ * </p>
+ * <p>
+ * Each update returns a new index and leaves the index that it was called on unchanged, so that readers never need to lock.
+ * To keep updates cheap, indices share their arrays: appending a file with a greater id than any other writes to spare
+ * capacity at the end of the arrays when no other index has already done so, and removing the oldest files only narrows
+ * the window of the arrays that the new index sees. Only updates in the middle of the index copy the arrays.
+ * </p>
+ */
+final class EventFileIndex {
+
+    // has no spare capacity, so that indices built from it never share its arrays
+    static final EventFileIndex EMPTY = new EventFileIndex(new Storage(0), 0, 0);
+
+    private final Storage storage;
+    private final int offset;
+    private final int size;
+
+    private EventFileIndex(final Storage storage, final int offset, final int size) {
+        this.storage = storage;
+        this.offset = offset;
+        this.size = size;
+    }
+
+    /**
+     * @param pathMap the paths of the files, keyed by the id of the first event in each file
+     * @return an index of the given files
+     */
+    static EventFileIndex of(final SortedMap<Long, Path> pathMap) {
+        final Storage storage = new Storage(Math.max(8, pathMap.size()));
+        int index = 0;
+        for (final Map.Entry<Long, Path> entry : pathMap.entrySet()) {
+            storage.startIds[index] = entry.getKey();
+            storage.paths[index] = entry.getValue();
+            index++;
+        }
+        storage.used.set(index);
+        return new EventFileIndex(storage, 0, index);
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @param index the position of a file in the index
+     * @return the id of the first event in the file at the given position
+     */
+    long getStartId(final int index) {
+        checkIndex(index);
+        return storage.startIds[offset + index];
+    }
+
+    /**
+     * @param index the position of a file in the index
+     * @return the path of the file at the given position
+     */
+    Path getPath(final int index) {
+        checkIndex(index);
+        return storage.paths[offset + index];
+    }
+
+    /**
+     * @return the paths of all of the files, in order of their first event ids
+     */
+    List<Path> getPaths() {
+        return new PathList(0, size);
+    }
+
+    /**
+     * Adds the given file to the index, replacing any file that starts with the same event id
+     *
+     * @param startId the id of the first event in the file
+     * @param path the path of the file
+     * @return an index that contains the given file as well as all of the files of this index
+     */
+    EventFileIndex add(final long startId, final Path path) {
+        final int position = lowerBound(startId);
+        if (position < size && storage.startIds[offset + position] == startId) {
+            // replacing a file is rare enough that it simply copies the arrays
+            final Storage copy = copy(size * 2);
+            copy.paths[position] = path;
+            copy.used.set(size);
+            return new EventFileIndex(copy, 0, size);
+        }
+
+        if (position == size) {
+            // an append to the end of the arrays that no other index has appended to yet can be done in place, unless the
+            // arrays are full or are mostly made up of files that have already been removed
+            final int end = offset + size;
+            if (end < storage.startIds.length && offset <= storage.startIds.length / 2 && storage.used.compareAndSet(end, end + 1)) {
+                storage.startIds[end] = startId;
+                storage.paths[end] = path;
+                return new EventFileIndex(storage, offset, size + 1);
+            }
+        }
+
+        final Storage copy = new Storage(Math.max(8, (size + 1) * 2));
+        System.arraycopy(storage.startIds, offset, copy.startIds, 0, position);
+        System.arraycopy(storage.paths, offset, copy.paths, 0, position);
+        copy.startIds[position] = startId;
+        copy.paths[position] = path;
+        System.arraycopy(storage.startIds, offset + position, copy.startIds, position + 1, size - position);
+        System.arraycopy(storage.paths, offset + position, copy.paths, position + 1, size - position);
+        copy.used.set(size + 1);
+        return new EventFileIndex(copy, 0, size + 1);
+    }
+
+    /**
+     * Removes all of the files whose path matches the given filter
+     *
+     * @param filter the filter that determines which files to remove
+     * @return an index that contains all of the files of this index that do not match the given filter
+     */
+    EventFileIndex remove(final Predicate<Path> filter) {
+        final boolean[] removed = new boolean[size];
+        int removedCount = 0;
+        int prefixLength = 0;
+        for (int i = 0; i < size; i++) {
+            if (filter.test(storage.paths[offset + i])) {
+                removed[i] = true;
+                removedCount++;
+                if (prefixLength == i) {
+                    prefixLength++;
+                }
+            }
+        }
+
+        if (removedCount == 0) {
+            return this;
+        }
+
+        // files are nearly always aged off oldest first, in which case the arrays are shared
+        if (removedCount == prefixLength) {
+            return new EventFileIndex(storage, offset + prefixLength, size - prefixLength);
+        }
+
+        final int newSize = size - removedCount;
+        final Storage copy = new Storage(Math.max(8, newSize * 2));
+        int index = 0;
+        for (int i = 0; i < size; i++) {
+            if (!removed[i]) {
+                copy.startIds[index] = storage.startIds[offset + i];
+                copy.paths[index] = storage.paths[offset + i];
+                index++;
+            }
+        }
+        copy.used.set(newSize);
+        return new EventFileIndex(copy, 0, newSize);
+    }
+
+    /**
+     * @param startId the id of the first event in a file
+     * @return the path of the file that starts with the given event id, or <code>null</code> if the index holds no such file
+     */
+    Path getPathForStartId(final long startId) {
+        final int position = lowerBound(startId);
+        if (position >= size || storage.startIds[offset + position] != startId) {
+            return null;
+        }
+        return storage.paths[offset + position];
+    }
+
+    /**
+     * Determines which files may hold the event with the given id, or events that follow it. As the index does not know the
+     * last event id of each file, this includes the last file that starts before the given id.
+     *
+     * @param id the event id
+     * @return the paths of the files that may contain the given event or any later event, in order
+     */
+    List<Path> getPathsForId(final long id) {
+        if (size == 0) {
+            return Collections.emptyList();
+        }
+
+        // find the first file, other than the first file in the index, that starts at or after the given id
+        final int position = Math.max(1, lowerBound(id));
+        if (position >= size) {
+            return new PathList(size - 1, size);
+        }
+        return new PathList(position - 1, size);
+    }
+
+    /**
+     * Determines which files may hold events whose ids fall within the given range
+     *
+     * @param minId the smallest event id of the range, inclusive
+     * @param maxId the greatest event id of the range, inclusive
+     * @return the paths of the files whose events may overlap the given range, in order
+     */
+    List<Path> getPathsForRange(final long minId, final long maxId) {
+        if (size == 0 || maxId < minId) {
+            return Collections.emptyList();
+        }
+
+        // from the last file that starts at or before minId, up to the last file that starts at or before maxId
+        final int first = Math.max(0, upperBound(minId) - 1);
+        final int end = upperBound(maxId);
+        if (end <= first) {
+            return Collections.emptyList();
+        }
+        return new PathList(first, end);
+    }
+
+    /**
+     * @return the position of the first file whose first event id is at least the given id, or the number of files if there is none
+     */
+    private int lowerBound(final long id) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (storage.startIds[offset + mid] < id) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the position of the first file whose first event id is greater than the given id, or the number of files if there is none
+     */
+    private int upperBound(final long id) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (storage.startIds[offset + mid] <= id) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private Storage copy(final int capacity) {
+        final Storage copy = new Storage(Math.max(8, capacity));
+        System.arraycopy(storage.startIds, offset, copy.startIds, 0, size);
+        System.arraycopy(storage.paths, offset, copy.paths, 0, size);
+        return copy;
+    }
+
+    private void checkIndex(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("EventFileIndex[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(storage.startIds[offset + i]).append('=').append(storage.paths[offset + i]);
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     * The arrays that are shared by indices. Slots below <code>used</code> have been claimed by some index and must never be
+     * written again.
+     */
+    private static class Storage {
+        private final long[] startIds;
+        private final Path[] paths;
+        private final AtomicInteger used = new AtomicInteger(0);
+
+        Storage(final int capacity) {
+            this.startIds = new long[capacity];
+            this.paths = new Path[capacity];
+        }
+    }
+
+    /**
+     * A read-only view of a range of the paths of this index
+     */
+    private class PathList extends AbstractList<Path> {
+        private final int from;
+        private final int to;
+
+        PathList(final int from, final int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public Path get(final int index) {
+            if (index < 0 || index >= to - from) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + (to - from));
+            }
+            return storage.paths[offset + from + index];
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+    }
+}
@@ -0,0 +1,415 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * <p>
+ * Keeps a running account of the Provenance Event Log Files in each storage directory: how many bytes they hold and when
+ * each was last written to. The ledger is built once during recovery and then kept up to date as files are rolled over and
+ * aged off, so that the repository never needs to list or stat its files to decide what to purge.
+ * </p>
+ * <p>
+ * Because event ids increase over time, the files of each directory are kept in order of their first event id, and the
+ * oldest files are always found at the head of each directory. All methods are thread-safe.
+ * </p>
+ * <p>
+ * The ledger also keeps the number of bytes of each file that are charged against each of the {@link ComponentQuotas}, so
+ * that the files holding the events of a component that exceeds its quota can be aged off ahead of the rest.
+ * </p>
+ */
+final class EventFileLedger {
+
+    private final Map<File, DirectoryLedger> directories = new LinkedHashMap<>();
+    private final long[] quotaBytes;
+    private long totalBytes = 0L;
+    private int fileCount = 0;
+
+    EventFileLedger() {
+        this(0);
+    }
+
+    /**
+     * @param quotaCount the number of component quotas that files are charged against
+     */
+    EventFileLedger(final int quotaCount) {
+        this.quotaBytes = new long[quotaCount];
+    }
+
+    /**
+     * Adds the given file to the ledger, using its current size and last modified time
+     *
+     * @param firstEventId the id of the first event in the file
+     * @param file the Provenance Event Log File
+     */
+    void add(final long firstEventId, final File file) {
+        add(firstEventId, file, file.length(), file.lastModified());
+    }
+
+    /**
+     * Adds the given file to the ledger, replacing any file in the same directory that starts with the same event id
+     *
+     * @param firstEventId the id of the first event in the file
+     * @param file the Provenance Event Log File
+     * @param bytes the size of the file
+     * @param lastModified the time at which the file was last written to, or 0 if unknown
+     */
+    void add(final long firstEventId, final File file, final long bytes, final long lastModified) {
+        add(firstEventId, file, bytes, lastModified, null);
+    }
+
+    /**
+     * Adds the given file to the ledger, replacing any file in the same directory that starts with the same event id
+     *
+     * @param firstEventId the id of the first event in the file
+     * @param file the Provenance Event Log File
+     * @param bytes the size of the file
+     * @param lastModified the time at which the file was last written to, or 0 if unknown
+     * @param charged the number of bytes of the file that are charged against each quota, as determined by
+     * {@link ComponentQuotas#charge(ComponentUsage, long)}; may be null if none are
+     */
+    synchronized void add(final long firstEventId, final File file, final long bytes, final long lastModified, final long[] charged) {
+        final File directory = file.getAbsoluteFile().getParentFile();
+        DirectoryLedger ledger = directories.get(directory);
+        if (ledger == null) {
+            ledger = new DirectoryLedger();
+            directories.put(directory, ledger);
+        }
+
+        final Entry entry = new Entry(firstEventId, file, bytes, lastModified, charged);
+        final Entry replaced = ledger.entries.put(firstEventId, entry);
+        if (replaced != null) {
+            ledger.bytes -= replaced.bytes;
+            totalBytes -= replaced.bytes;
+            fileCount--;
+            charge(replaced, -1L);
+        }
+
+        ledger.bytes += bytes;
+        totalBytes += bytes;
+        fileCount++;
+        charge(entry, 1L);
+    }
+
+    // guarded by this
+    private void charge(final Entry entry, final long sign) {
+        if (entry.charged == null) {
+            return;
+        }
+        for (int i = 0; i < quotaBytes.length && i < entry.charged.length; i++) {
+            quotaBytes[i] += sign * entry.charged[i];
+        }
+    }
+
+    /**
+     * Removes the given file from the ledger, if it is present
+     *
+     * @param file the Provenance Event Log File
+     * @return <code>true</code> if the file was removed, <code>false</code> if the ledger did not contain it
+     */
+    synchronized boolean remove(final File file) {
+        final DirectoryLedger ledger = directories.get(file.getAbsoluteFile().getParentFile());
+        final Long firstEventId = getFirstEventId(file);
+        if (ledger == null || firstEventId == null) {
+            return false;
+        }
+
+        final Entry entry = ledger.entries.get(firstEventId);
+        if (entry == null || !entry.file.equals(file)) {
+            return false;
+        }
+
+        ledger.entries.remove(firstEventId);
+        ledger.bytes -= entry.bytes;
+        totalBytes -= entry.bytes;
+        fileCount--;
+        charge(entry, -1L);
+        return true;
+    }
+
+    /**
+     * @return the number of bytes held by all of the files in the ledger
+     */
+    synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * @return the number of files in the ledger
+     */
+    synchronized int getFileCount() {
+        return fileCount;
+    }
+
+    /**
+     * @param quota the index of a component quota
+     * @return the number of bytes of all of the files in the ledger that are charged against the given quota
+     */
+    synchronized long getQuotaBytes(final int quota) {
+        return quotaBytes[quota];
+    }
+
+    /**
+     * @param storageDirectory a storage directory of the repository
+     * @return the number of bytes held by the files in the given directory
+     */
+    synchronized long getBytes(final File storageDirectory) {
+        final DirectoryLedger ledger = directories.get(storageDirectory.getAbsoluteFile());
+        return ledger == null ? 0L : ledger.bytes;
+    }
+
+    /**
+     * @param storageDirectory a storage directory of the repository
+     * @return the last modified time of the oldest file in the given directory, or 0 if the directory holds no files
+     */
+    synchronized long getOldestTimestamp(final File storageDirectory) {
+        final DirectoryLedger ledger = directories.get(storageDirectory.getAbsoluteFile());
+        return ledger == null || ledger.entries.isEmpty() ? 0L : ledger.entries.firstEntry().getValue().lastModified;
+    }
+
+    /**
+     * <p>
+     * Determines which files should be aged off. A file is selected if it was last written to before the given cutoff. Then,
+     * if the files that remain hold more than 90% of the given capacity, the oldest of them are selected as well until they
+     * hold less than the capacity.
+     * </p>
+     * <p>
+     * Files are not removed from the ledger until {@link #remove(File)} is called, so that files that cannot be aged off
+     * are considered again the next time.
+     * </p>
+     *
+     * @param timeCutoff files last modified before this time are selected
+     * @param maxCapacity the maximum number of bytes that the files should hold
+     * @return the selected files, in order of their first event ids
+     */
+    List<File> selectFilesToPurge(final long timeCutoff, final long maxCapacity) {
+        return selectFilesToPurge(timeCutoff, maxCapacity, null);
+    }
+
+    /**
+     * <p>
+     * Determines which files should be aged off. A file is selected if it was last written to before the given cutoff. Then,
+     * for each quota that the remaining files exceed, the oldest of the files that are charged against the quota are selected
+     * until they no longer exceed it. Finally, if the files that remain hold more than 90% of the given capacity, the oldest
+     * of them are selected as well until they hold less than the capacity.
+     * </p>
+     * <p>
+     * Files are not removed from the ledger until {@link #remove(File)} is called, so that files that cannot be aged off
+     * are considered again the next time.
+     * </p>
+     *
+     * @param timeCutoff files last modified before this time are selected
+     * @param maxCapacity the maximum number of bytes that the files should hold
+     * @param maxQuotaBytes the maximum number of bytes that may be charged against each quota, by the index of the quota; may be null
+     * @return the selected files, in order of their first event ids
+     */
+    synchronized List<File> selectFilesToPurge(final long timeCutoff, final long maxCapacity, final long[] maxQuotaBytes) {
+        final List<Entry> selected = new ArrayList<>();
+        final Set<Entry> selectedForQuota = new HashSet<>();
+        final List<Iterator<Entry>> remaining = new ArrayList<>(directories.size());
+        final List<Entry> heads = new ArrayList<>(directories.size());
+        long bytesUsed = totalBytes;
+        final long[] quotaBytesUsed = quotaBytes.clone();
+
+        // files expire in order within each directory, so only the expired head of each directory is visited
+        for (final DirectoryLedger ledger : directories.values()) {
+            final Iterator<Entry> itr = ledger.entries.values().iterator();
+            Entry head = null;
+            while (itr.hasNext()) {
+                final Entry entry = itr.next();
+                if (entry.lastModified > 0L && entry.lastModified < timeCutoff) {
+                    selected.add(entry);
+                    bytesUsed -= entry.bytes;
+                    discharge(entry, quotaBytesUsed);
+                } else {
+                    head = entry;
+                    break;
+                }
+            }
+
+            remaining.add(itr);
+            heads.add(head);
+        }
+
+        // the files of a component that exceeds its quota are aged off ahead of everything else, oldest first
+        if (maxQuotaBytes != null) {
+            for (int quota = 0; quota < quotaBytesUsed.length && quota < maxQuotaBytes.length; quota++) {
+                if (quotaBytesUsed[quota] <= maxQuotaBytes[quota]) {
+                    continue;
+                }
+
+                for (final Entry entry : getUnselectedEntriesCharged(quota, heads, selectedForQuota)) {
+                    selected.add(entry);
+                    selectedForQuota.add(entry);
+                    bytesUsed -= entry.bytes;
+                    discharge(entry, quotaBytesUsed);
+                    if (quotaBytesUsed[quota] <= maxQuotaBytes[quota]) {
+                        break;
+                    }
+                }
+            }
+        }
+
+        // If we have too much data (at least 90% of our max capacity), start aging it off, oldest first across all directories
+        if (bytesUsed > maxCapacity * 0.9) {
+            while (true) {
+                int oldest = -1;
+                for (int i = 0; i < heads.size(); i++) {
+                    Entry head = heads.get(i);
+                    while (head != null && selectedForQuota.contains(head)) {
+                        head = remaining.get(i).hasNext() ? remaining.get(i).next() : null;
+                        heads.set(i, head);
+                    }
+                    if (head != null && (oldest < 0 || head.firstEventId < heads.get(oldest).firstEventId)) {
+                        oldest = i;
+                    }
+                }
+
+                if (oldest < 0) {
+                    break;
+                }
+
+                final Entry entry = heads.get(oldest);
+                selected.add(entry);
+                bytesUsed -= entry.bytes;
+
+                final Iterator<Entry> itr = remaining.get(oldest);
+                heads.set(oldest, itr.hasNext() ? itr.next() : null);
+
+                if (bytesUsed < maxCapacity) {
+                    // we've shrunk the repo size down enough to stop
+                    break;
+                }
+            }
+        }
+
+        Collections.sort(selected, ENTRY_COMPARATOR);
+        final List<File> files = new ArrayList<>(selected.size());
+        for (final Entry entry : selected) {
+            files.add(entry.file);
+        }
+        return files;
+    }
+
+    /**
+     * @param timeCutoff the time before which the files were last written to
+     * @return all of the files that were last written to before the given time, in order of their first event ids
+     */
+    synchronized List<File> selectFilesLastModifiedBefore(final long timeCutoff) {
+        final List<Entry> selected = new ArrayList<>();
+        for (final DirectoryLedger ledger : directories.values()) {
+            for (final Entry entry : ledger.entries.values()) {
+                if (entry.lastModified <= 0L || entry.lastModified >= timeCutoff) {
+                    break;
+                }
+                selected.add(entry);
+            }
+        }
+
+        Collections.sort(selected, ENTRY_COMPARATOR);
+        final List<File> files = new ArrayList<>(selected.size());
+        for (final Entry entry : selected) {
+            files.add(entry.file);
+        }
+        return files;
+    }
+
+    // guarded by this
+    private List<Entry> getUnselectedEntriesCharged(final int quota, final List<Entry> heads, final Set<Entry> selectedForQuota) {
+        final List<Entry> entries = new ArrayList<>();
+        int directoryIndex = 0;
+        for (final DirectoryLedger ledger : directories.values()) {
+            final Entry head = heads.get(directoryIndex++);
+            if (head == null) {
+                continue;
+            }
+
+            // the files before the head of each directory have already been selected because of their age
+            for (final Entry entry : ledger.entries.tailMap(head.firstEventId, true).values()) {
+                if (entry.charged != null && quota < entry.charged.length && entry.charged[quota] > 0L && !selectedForQuota.contains(entry)) {
+                    entries.add(entry);
+                }
+            }
+        }
+
+        Collections.sort(entries, ENTRY_COMPARATOR);
+        return entries;
+    }
+
+    private static void discharge(final Entry entry, final long[] quotaBytesUsed) {
+        if (entry.charged == null) {
+            return;
+        }
+        for (int i = 0; i < quotaBytesUsed.length && i < entry.charged.length; i++) {
+            quotaBytesUsed[i] -= entry.charged[i];
+        }
+    }
+
+    private static Long getFirstEventId(final File file) {
+        final String filename = file.getName();
+        final int dotIndex = filename.indexOf('.');
+        try {
+            return Long.parseLong(dotIndex < 0 ? filename : filename.substring(0, dotIndex));
+        } catch (final NumberFormatException nfe) {
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "EventFileLedger[files=" + fileCount + ", bytes=" + totalBytes + "]";
+    }
+
+    private static final Comparator<Entry> ENTRY_COMPARATOR = new Comparator<Entry>() {
+        @Override
+        public int compare(final Entry o1, final Entry o2) {
+            return Long.compare(o1.firstEventId, o2.firstEventId);
+        }
+    };
+
+    private static class DirectoryLedger {
+        private final TreeMap<Long, Entry> entries = new TreeMap<>();
+        private long bytes = 0L;
+    }
+
+    private static class Entry {
+        private final long firstEventId;
+        private final File file;
+        private final long bytes;
+        private final long lastModified;
+        private final long[] charged;
+
+        Entry(final long firstEventId, final File file, final long bytes, final long lastModified, final long[] charged) {
+            this.firstEventId = firstEventId;
+            this.file = file;
+            this.bytes = bytes;
+            this.lastModified = lastModified;
+            this.charged = charged;
+        }
+    }
+}
@@ -0,0 +1,361 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import org.apache.nifi.events.EventReporter;
+import org.apache.nifi.provenance.compression.EventFileCodec;
+import org.apache.nifi.provenance.serialization.RecordReader;
+import org.apache.nifi.provenance.toc.TocUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+/**
+ * <p>
+ * Rewrites aging Provenance Event Log Files so that they take up less space for the rest of their lives. A file that is
+ * older than the recompression age is re-encoded with the archival variant of the tiering codec, and a file that is older
+ * than the compaction age additionally has the attributes of its events stripped down to the retained attributes. Event
+ * ids and times are never changed, and the last modified time of the original file is kept, so that the file ages off
+ * exactly as it would have otherwise. The tier that a file has reached is recorded in its name, such as
+ * <code>1234.compact.prov.zst</code>.
+ * </p>
+ * <p>
+ * A file is rewritten into the {@value #TIERING_DIRECTORY} directory of its storage directory, along with its Table of
+ * Contents and time index, and is then swapped in for the original. Before anything is moved, the names of both files are
+ * recorded in a swap file. The Table of Contents is moved first, so on restart {@link #recover(File)} rolls a swap back if
+ * the staged Table of Contents is still present and forward otherwise, and the original file never outlives its Table of
+ * Contents.
+ * </p>
+ * <p>
+ * The rewriting is charged against an {@link IoThrottle} with the uncompressed size of each event as it is read, so that
+ * tiering never takes more than its share of the disk away from the journals.
+ * </p>
+ */
+final class EventFileTierer {
+
+    private static final Logger logger = LoggerFactory.getLogger(EventFileTierer.class);
+
+    static final String TIERING_DIRECTORY = "tiering";
+    static final String RECOMPRESSED_MARKER = ".archived";
+    static final String COMPACTED_MARKER = ".compact";
+    private static final String PROVENANCE_EXTENSION = ".prov";
+    private static final String SWAP_EXTENSION = ".swap";
+    private static final String FLOWFILE_UUID_ATTRIBUTE = "uuid";
+
+    private static final int TIER_NONE = 0;
+    private static final int TIER_RECOMPRESSED = 1;
+    private static final int TIER_COMPACTED = 2;
+
+    private final JournalMerger journalMerger;
+    private final EventFileCodec codec;
+    private final long recompressAfterMillis;
+    private final long compactAfterMillis;
+    private final Set<String> retainedAttributes;
+    private final IoThrottle ioThrottle;
+    private final int maxAttributeChars;
+
+    /**
+     * @param journalMerger the merger that rewrites the files
+     * @param codec the codec whose archival variant the files are re-encoded with
+     * @param recompressAfterMillis the age at which files are re-encoded, or -1 to only re-encode files when they are compacted
+     * @param compactAfterMillis the age at which files are compacted, or -1 to never compact files
+     * @param retainedAttributes the attributes that are kept when a file is compacted, in addition to 'uuid'
+     * @param ioThrottle the throttle that the rewriting is charged against
+     * @param maxAttributeChars the maximum number of characters to retain for any attribute value
+     */
+    EventFileTierer(final JournalMerger journalMerger, final EventFileCodec codec, final long recompressAfterMillis, final long compactAfterMillis,
+                    final Set<String> retainedAttributes, final IoThrottle ioThrottle, final int maxAttributeChars) {
+        this.journalMerger = journalMerger;
+        this.codec = codec.getArchivalCodec();
+        this.recompressAfterMillis = recompressAfterMillis;
+        this.compactAfterMillis = compactAfterMillis;
+        this.ioThrottle = ioThrottle;
+        this.maxAttributeChars = maxAttributeChars;
+
+        final Set<String> retained = new HashSet<>(retainedAttributes);
+        retained.add(FLOWFILE_UUID_ATTRIBUTE);
+        this.retainedAttributes = Collections.unmodifiableSet(retained);
+    }
+
+    /**
+     * @return the age that a file must reach before it is rewritten at all
+     */
+    long getMinimumAgeMillis() {
+        if (recompressAfterMillis < 0L) {
+            return compactAfterMillis;
+        }
+        if (compactAfterMillis < 0L) {
+            return recompressAfterMillis;
+        }
+        return Math.min(recompressAfterMillis, compactAfterMillis);
+    }
+
+    /**
+     * Determines what the given file should be rewritten as, if anything
+     *
+     * @param file a Provenance Event Log File
+     * @param lastModified the time at which the file was last written to
+     * @param now the current time
+     * @return the name of the file that the given file should be rewritten as, or <code>null</code> if it has already reached its tier
+     */
+    String getTargetName(final File file, final long lastModified, final long now) {
+        final long age = now - lastModified;
+        final int targetTier;
+        if (compactAfterMillis >= 0L && age >= compactAfterMillis) {
+            targetTier = TIER_COMPACTED;
+        } else if (recompressAfterMillis >= 0L && age >= recompressAfterMillis) {
+            targetTier = TIER_RECOMPRESSED;
+        } else {
+            return null;
+        }
+
+        if (getTier(file.getName()) >= targetTier) {
+            return null;
+        }
+
+        final String baseName = getBaseName(file.getName());
+        final String marker = targetTier == TIER_COMPACTED ? COMPACTED_MARKER : RECOMPRESSED_MARKER;
+        return baseName + marker + PROVENANCE_EXTENSION + codec.getFileExtension();
+    }
+
+    /**
+     * Rewrites the given file into the tiering directory of its storage directory, along with its Table of Contents and time
+     * index. The rewritten file is given the same last modified time as the original.
+     *
+     * @param file the Provenance Event Log File to rewrite
+     * @param targetName the name to rewrite the file as, as determined by {@link #getTargetName(File, long, long)}
+     * @param eventReporter the event reporter to report any warnings to; may be null
+     * @return the rewritten file
+     * @throws IOException if unable to read the file or to write the rewritten file
+     */
+    File stage(final File file, final String targetName, final EventReporter eventReporter) throws IOException {
+        final File tieringDirectory = new File(file.getParentFile(), TIERING_DIRECTORY);
+        if (!tieringDirectory.exists() && !tieringDirectory.mkdirs()) {
+            throw new IOException("Unable to create Provenance Event File tiering directory " + tieringDirectory);
+        }
+
+        final File stagedFile = new File(tieringDirectory, targetName);
+        final boolean compacting = targetName.contains(COMPACTED_MARKER + ".");
+        final UnaryOperator<StandardProvenanceEventRecord> transform = new UnaryOperator<StandardProvenanceEventRecord>() {
+            @Override
+            public StandardProvenanceEventRecord apply(final StandardProvenanceEventRecord record) {
+                final StandardProvenanceEventRecord throttled = throttle(record);
+                return compacting ? compact(throttled) : throttled;
+            }
+        };
+
+        final long lastModified = file.lastModified();
+        boolean staged = false;
+        try (final RecordReader reader = MiNiFiRecordReaders.newRecordReader(file, null, maxAttributeChars)) {
+            journalMerger.merge(Collections.singletonList(reader), stagedFile, codec, eventReporter, null, transform);
+            if (!stagedFile.setLastModified(lastModified)) {
+                throw new IOException("Unable to set the last modified time of " + stagedFile);
+            }
+            staged = true;
+        } finally {
+            if (!staged) {
+                discard(stagedFile);
+            }
+        }
+
+        return stagedFile;
+    }
+
+    /**
+     * Swaps the given staged file in for the original file
+     *
+     * @param originalFile the Provenance Event Log File that was rewritten
+     * @param stagedFile the rewritten file, as returned by {@link #stage(File, String, EventReporter)}
+     * @return the rewritten file, in its final location
+     * @throws IOException if unable to swap the files. The swap is completed when the repository is next recovered.
+     */
+    File install(final File originalFile, final File stagedFile) throws IOException {
+        final File targetFile = new File(originalFile.getParentFile(), stagedFile.getName());
+        final File swapFile = getSwapFile(stagedFile);
+        try (final FileOutputStream out = new FileOutputStream(swapFile)) {
+            out.write((originalFile.getName() + "\n" + stagedFile.getName() + "\n").getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        }
+
+        rollForward(originalFile, stagedFile, targetFile);
+        Files.delete(swapFile.toPath());
+        return targetFile;
+    }
+
+    /**
+     * Removes the given staged file, along with its Table of Contents, time index, component usage and block checksums
+     *
+     * @param stagedFile the staged file
+     */
+    void discard(final File stagedFile) {
+        for (final File file : JournalMerger.deleteMergedFile(stagedFile)) {
+            logger.warn("Failed to remove staged Provenance Event File {}; this file should be cleaned up manually", file);
+        }
+    }
+
+    /**
+     * Completes or rolls back any swap that was interrupted in the given storage directory and removes everything else
+     * that was left in its tiering directory. Must be called before the files of the directory are recovered.
+     *
+     * @param storageDirectory a storage directory of the repository
+     * @throws IOException if unable to complete a swap
+     */
+    static void recover(final File storageDirectory) throws IOException {
+        final File tieringDirectory = new File(storageDirectory, TIERING_DIRECTORY);
+        final File[] swapFiles = tieringDirectory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(final File dir, final String name) {
+                return name.endsWith(SWAP_EXTENSION);
+            }
+        });
+        if (swapFiles == null) {
+            return;
+        }
+
+        for (final File swapFile : swapFiles) {
+            final List<String> names = Files.readAllLines(swapFile.toPath(), StandardCharsets.UTF_8);
+            if (names.size() < 2) {
+                // the swap file is written before anything is moved, so nothing has been moved yet
+                continue;
+            }
+
+            final File originalFile = new File(storageDirectory, names.get(0));
+            final File stagedFile = new File(tieringDirectory, names.get(1));
+            if (TocUtil.getTocFile(stagedFile).exists()) {
+                logger.info("Rolling back the interrupted rewrite of Provenance Event File {}", originalFile);
+            } else {
+                logger.info("Completing the interrupted rewrite of Provenance Event File {} as {}", originalFile, stagedFile.getName());
+                rollForward(originalFile, stagedFile, new File(storageDirectory, stagedFile.getName()));
+            }
+        }
+
+        deleteContents(tieringDirectory);
+    }
+
+    private static void rollForward(final File originalFile, final File stagedFile, final File targetFile) throws IOException {
+        // the Table of Contents of the original file is replaced first, which commits the swap
+        move(TocUtil.getTocFile(stagedFile), TocUtil.getTocFile(targetFile));
+        move(EventTimeIndex.getTimeIndexFile(stagedFile), EventTimeIndex.getTimeIndexFile(targetFile));
+        move(ComponentUsage.getUsageFile(stagedFile), ComponentUsage.getUsageFile(targetFile));
+        move(BlockChecksums.getChecksumFile(stagedFile), BlockChecksums.getChecksumFile(targetFile));
+        move(stagedFile, targetFile);
+        if (!originalFile.equals(targetFile)) {
+            Files.deleteIfExists(originalFile.toPath());
+            Files.deleteIfExists(BlockChecksums.getChecksumFile(originalFile).toPath());
+        }
+    }
+
+    private static void move(final File source, final File destination) throws IOException {
+        if (!source.exists()) {
+            return;
+        }
+
+        final File directory = destination.getParentFile();
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Unable to create directory " + directory);
+        }
+        Files.move(source.toPath(), destination.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void deleteContents(final File directory) {
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        for (final File file : files) {
+            if (file.isDirectory()) {
+                deleteContents(file);
+            }
+            if (!file.delete()) {
+                logger.warn("Failed to remove {} from the Provenance Event File tiering directory; this file should be cleaned up manually", file);
+            }
+        }
+    }
+
+    private StandardProvenanceEventRecord throttle(final StandardProvenanceEventRecord record) {
+        try {
+            ioThrottle.acquire(DictionaryRecordCodec.estimateSize(record));
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while rewriting Provenance Event " + record.getEventId(), ie);
+        }
+        return record;
+    }
+
+    private StandardProvenanceEventRecord compact(final StandardProvenanceEventRecord record) {
+        final StandardProvenanceEventRecord compacted = new StandardProvenanceEventRecord.Builder()
+            .fromEvent(record)
+            .setAttributes(retain(record.getPreviousAttributes()), retain(record.getUpdatedAttributes()))
+            .build();
+        compacted.setEventId(record.getEventId());
+        return compacted;
+    }
+
+    private Map<String, String> retain(final Map<String, String> attributes) {
+        final Map<String, String> retained = new HashMap<>();
+        if (attributes == null) {
+            return retained;
+        }
+
+        for (final Map.Entry<String, String> entry : attributes.entrySet()) {
+            if (retainedAttributes.contains(entry.getKey())) {
+                retained.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return retained;
+    }
+
+    private static int getTier(final String filename) {
+        if (filename.contains(COMPACTED_MARKER + ".")) {
+            return TIER_COMPACTED;
+        }
+        if (filename.contains(RECOMPRESSED_MARKER + ".")) {
+            return TIER_RECOMPRESSED;
+        }
+        return TIER_NONE;
+    }
+
+    private static File getSwapFile(final File stagedFile) {
+        return new File(stagedFile.getParentFile(), getBaseName(stagedFile.getName()) + SWAP_EXTENSION);
+    }
+
+    private static String getBaseName(final String filename) {
+        final int dotIndex = filename.indexOf('.');
+        return dotIndex < 0 ? filename : filename.substring(0, dotIndex);
+    }
+
+    @Override
+    public String toString() {
+        return "EventFileTierer[codec=" + codec.getName() + ", recompressAfterMillis=" + recompressAfterMillis + ", compactAfterMillis=" + compactAfterMillis
+            + ", retainedAttributes=" + retainedAttributes + ", " + ioThrottle + "]";
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Manages the {@link EventIndexFile}s of the Provenance Event Log Files of the repository. Each index file lives in the
+ * <code>query-index</code> directory of the storage directory that holds its event file, and is named after the event file's
+ * basename.
+ * </p>
+ * <p>
+ * The index is bounded both on disk and on heap, so that it can be enabled on small devices. When the index files take up
+ * more than their share of disk space, the files of the oldest events are deleted first, leaving those events unindexed.
+ * The postings that are collected while journals are merged are bounded by a heap budget that is shared by all merges.
+ * </p>
+ */
+final class EventIndex {
+
+    static final String INDEX_DIRECTORY = "query-index";
+    static final String INDEX_EXTENSION = ".idx";
+
+    private static final Logger logger = LoggerFactory.getLogger(EventIndex.class);
+    private static final int MAX_OPEN_FILES = 16;
+
+    private final long maxStorageBytes;
+    private final long maxHeapBytes;
+    private final AtomicLong heapBytes = new AtomicLong(0L);
+
+    // guarded by this
+    private final TreeMap<Long, File> indexFiles = new TreeMap<>();
+    private final Map<File, Long> indexFileSizes = new LinkedHashMap<>();
+    private long storageBytes = 0L;
+    private final LinkedHashMap<File, EventIndexFile> openFiles = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * @param maxStorageBytes the maximum number of bytes that all index files may take up on disk
+     * @param maxHeapBytes the maximum number of bytes of postings to hold in memory while merging journals
+     */
+    EventIndex(final long maxStorageBytes, final long maxHeapBytes) {
+        this.maxStorageBytes = maxStorageBytes;
+        this.maxHeapBytes = maxHeapBytes;
+    }
+
+    /**
+     * @param eventFile a Provenance Event Log File
+     * @return the file that holds the index of the given event file
+     */
+    static File getIndexFile(final File eventFile) {
+        final String filename = eventFile.getName();
+        final int dotIndex = filename.indexOf('.');
+        final String basename = dotIndex < 0 ? filename : filename.substring(0, dotIndex);
+        return new File(new File(eventFile.getAbsoluteFile().getParentFile(), INDEX_DIRECTORY), basename + INDEX_EXTENSION);
+    }
+
+    /**
+     * Accounts for the index files that already exist in the given storage directories, deleting any whose event file
+     * no longer exists
+     *
+     * @param storageDirectories the storage directories of the repository
+     * @param eventFileIds the ids of the first events of all of the Provenance Event Log Files of the repository
+     */
+    synchronized void recover(final List<File> storageDirectories, final Set<Long> eventFileIds) {
+        for (final File storageDirectory : storageDirectories) {
+            final File[] files = new File(storageDirectory, INDEX_DIRECTORY).listFiles();
+            if (files == null) {
+                continue;
+            }
+
+            for (final File file : files) {
+                final String filename = file.getName();
+                final String basename = filename.endsWith(INDEX_EXTENSION) ? filename.substring(0, filename.length() - INDEX_EXTENSION.length()) : null;
+                if (basename == null || !MiNiFiPersistentProvenanceRepository.NUMBER_PATTERN.matcher(basename).matches()
+                        || !eventFileIds.contains(Long.parseLong(basename))) {
+                    if (!file.delete() && file.exists()) {
+                        logger.warn("Failed to delete unneeded Provenance Event Index File {}", file);
+                    }
+                    continue;
+                }
+
+                account(Long.parseLong(basename), file.getAbsoluteFile(), file.length());
+            }
+        }
+
+        enforceStorageLimit();
+        logger.info("Recovered {} Provenance Event Index Files holding {} bytes", indexFiles.size(), storageBytes);
+    }
+
+    /**
+     * @return a builder for the index of a Provenance Event Log File that is about to be merged
+     */
+    EventIndexBuilder newBuilder() {
+        return new EventIndexBuilder(this);
+    }
+
+    boolean reserveHeap(final long bytes) {
+        while (true) {
+            final long current = heapBytes.get();
+            if (current + bytes > maxHeapBytes) {
+                return false;
+            }
+            if (heapBytes.compareAndSet(current, current + bytes)) {
+                return true;
+            }
+        }
+    }
+
+    void releaseHeap(final long bytes) {
+        heapBytes.addAndGet(-bytes);
+    }
+
+    /**
+     * Writes the index of the given event file, removing the oldest index files if the index no longer fits on disk
+     *
+     * @param builder the postings of the event file
+     * @param eventFile the Provenance Event Log File that the postings belong to
+     * @throws IOException if unable to write the index file
+     */
+    void write(final EventIndexBuilder builder, final File eventFile) throws IOException {
+        final File indexFile = getIndexFile(eventFile);
+        final File directory = indexFile.getParentFile();
+        if (!directory.exists() && !directory.mkdirs() && !directory.exists()) {
+            throw new IOException("Unable to create directory " + directory);
+        }
+
+        // write to a temporary file so that a partially written index file is never read
+        final File tempFile = new File(directory, indexFile.getName() + ".tmp");
+        try {
+            builder.writeTo(tempFile);
+            Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            if (tempFile.exists() && !tempFile.delete()) {
+                logger.warn("Failed to delete temporary Provenance Event Index File {}", tempFile);
+            }
+        }
+
+        final String basename = indexFile.getName().substring(0, indexFile.getName().length() - INDEX_EXTENSION.length());
+        synchronized (this) {
+            openFiles.remove(indexFile);
+            account(Long.parseLong(basename), indexFile, indexFile.length());
+            enforceStorageLimit();
+        }
+    }
+
+    /**
+     * @param eventFile a Provenance Event Log File
+     * @return the index of the given event file, or <code>null</code> if the file is not indexed
+     * @throws IOException if the index file exists but cannot be read
+     */
+    synchronized EventIndexFile get(final File eventFile) throws IOException {
+        final File indexFile = getIndexFile(eventFile);
+        EventIndexFile file = openFiles.get(indexFile);
+        if (file != null) {
+            return file;
+        }
+
+        if (!indexFileSizes.containsKey(indexFile)) {
+            return null;
+        }
+
+        file = EventIndexFile.open(indexFile);
+        openFiles.put(indexFile, file);
+        if (openFiles.size() > MAX_OPEN_FILES) {
+            final Iterator<File> itr = openFiles.keySet().iterator();
+            itr.next();
+            itr.remove();
+        }
+        return file;
+    }
+
+    /**
+     * Deletes the index of the given event file, if it has one
+     *
+     * @param eventFile a Provenance Event Log File that is being aged off
+     */
+    synchronized void remove(final File eventFile) {
+        final File indexFile = getIndexFile(eventFile);
+        final Long size = indexFileSizes.remove(indexFile);
+        if (size == null) {
+            return;
+        }
+
+        delete(indexFile, size);
+        final String basename = indexFile.getName().substring(0, indexFile.getName().length() - INDEX_EXTENSION.length());
+        indexFiles.remove(Long.parseLong(basename));
+    }
+
+    synchronized long getStorageBytes() {
+        return storageBytes;
+    }
+
+    synchronized int getIndexedFileCount() {
+        return indexFiles.size();
+    }
+
+    long getHeapBytes() {
+        return heapBytes.get();
+    }
+
+    private void account(final long firstEventId, final File indexFile, final long size) {
+        final File replaced = indexFiles.put(firstEventId, indexFile);
+        if (replaced != null) {
+            final Long replacedSize = indexFileSizes.remove(replaced);
+            if (replacedSize != null) {
+                storageBytes -= replacedSize;
+            }
+        }
+
+        indexFileSizes.put(indexFile, size);
+        storageBytes += size;
+    }
+
+    private void enforceStorageLimit() {
+        while (storageBytes > maxStorageBytes && !indexFiles.isEmpty()) {
+            final Map.Entry<Long, File> oldest = indexFiles.pollFirstEntry();
+            final Long size = indexFileSizes.remove(oldest.getValue());
+            delete(oldest.getValue(), size == null ? 0L : size);
+            logger.debug("Deleted Provenance Event Index File {} in order to keep the index within {} bytes", oldest.getValue(), maxStorageBytes);
+        }
+    }
+
+    private void delete(final File indexFile, final long size) {
+        openFiles.remove(indexFile);
+        storageBytes -= size;
+        if (!indexFile.delete() && indexFile.exists()) {
+            logger.warn("Failed to delete Provenance Event Index File {}; this file should be cleaned up manually", indexFile);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import org.apache.nifi.provenance.EventIndexFile.Field;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * <p>
+ * Collects the postings of the events of a single Provenance Event Log File while its journals are merged, so that the
+ * {@link EventIndexFile} of the merged file can be written once the merge completes. The terms of each event are extracted by
+ * the journal read-ahead threads with {@link #getTerms(ProvenanceEventRecord)}, while {@link #add(long, long[])} is called by
+ * the merging thread only.
+ * </p>
+ * <p>
+ * The postings are held in primitive arrays whose memory is reserved from the heap budget of the {@link EventIndex}. If the
+ * budget is exhausted, the builder gives up and releases its memory, and the merged file is left unindexed.
+ * </p>
+ */
+final class EventIndexBuilder {
+
+    private static final int INITIAL_CAPACITY = 256;
+    private static final int FIELD_COUNT = Field.values().length;
+
+    private final EventIndex eventIndex;
+    private long[][] keys = new long[FIELD_COUNT][];
+    private long[][] eventIds = new long[FIELD_COUNT][];
+    private final int[] counts = new int[FIELD_COUNT];
+    private long reservedBytes = 0L;
+    private boolean abandoned = false;
+
+    /**
+     * @param eventIndex the index to reserve memory from, or <code>null</code> to not limit the memory used
+     */
+    EventIndexBuilder(final EventIndex eventIndex) {
+        this.eventIndex = eventIndex;
+    }
+
+    /**
+     * Extracts the keys that the given event is indexed by. The keys are laid out as the event type, the time bucket, the
+     * number of component ids (0 or 1), the component id, if any, and then the FlowFile UUIDs.
+     *
+     * @param event the event
+     * @return the keys of the event
+     */
+    static long[] getTerms(final ProvenanceEventRecord event) {
+        final List<String> parentUuids = event.getParentUuids();
+        final List<String> childUuids = event.getChildUuids();
+        final String componentId = event.getComponentId();
+        final int componentCount = componentId == null ? 0 : 1;
+        final int uuidCount = 1 + (parentUuids == null ? 0 : parentUuids.size()) + (childUuids == null ? 0 : childUuids.size());
+
+        final long[] terms = new long[3 + componentCount + uuidCount];
+        terms[0] = event.getEventType().ordinal();
+        terms[1] = EventIndexFile.timeBucketOf(event.getEventTime());
+        terms[2] = componentCount;
+        int index = 3;
+        if (componentId != null) {
+            terms[index++] = EventIndexFile.keyOf(componentId);
+        }
+
+        terms[index++] = EventIndexFile.keyOf(event.getFlowFileUuid());
+        if (parentUuids != null) {
+            for (final String uuid : parentUuids) {
+                terms[index++] = EventIndexFile.keyOf(uuid);
+            }
+        }
+        if (childUuids != null) {
+            for (final String uuid : childUuids) {
+                terms[index++] = EventIndexFile.keyOf(uuid);
+            }
+        }
+
+        return terms;
+    }
+
+    /**
+     * Adds the postings of the given event
+     *
+     * @param eventId the id of the event
+     * @param terms the keys of the event, as extracted by {@link #getTerms(ProvenanceEventRecord)}
+     */
+    void add(final long eventId, final long[] terms) {
+        if (abandoned || terms == null) {
+            return;
+        }
+
+        addPosting(Field.EVENT_TYPE, terms[0], eventId);
+        addPosting(Field.TIME_BUCKET, terms[1], eventId);
+        int index = 3;
+        if (terms[2] > 0) {
+            addPosting(Field.COMPONENT_ID, terms[index++], eventId);
+        }
+        for (; index < terms.length; index++) {
+            addPosting(Field.FLOWFILE_UUID, terms[index], eventId);
+        }
+    }
+
+    private void addPosting(final Field field, final long key, final long eventId) {
+        if (abandoned) {
+            return;
+        }
+
+        final int section = field.ordinal();
+        final int count = counts[section];
+        if (keys[section] == null || count == keys[section].length) {
+            final int capacity = keys[section] == null ? INITIAL_CAPACITY : count * 2;
+            final long additionalBytes = (long) (capacity - count) * EventIndexFile.POSTING_LENGTH;
+            if (eventIndex != null && !eventIndex.reserveHeap(additionalBytes)) {
+                abandon();
+                return;
+            }
+            reservedBytes += additionalBytes;
+
+            final long[] newKeys = new long[capacity];
+            final long[] newEventIds = new long[capacity];
+            if (keys[section] != null) {
+                System.arraycopy(keys[section], 0, newKeys, 0, count);
+                System.arraycopy(eventIds[section], 0, newEventIds, 0, count);
+            }
+            keys[section] = newKeys;
+            eventIds[section] = newEventIds;
+        }
+
+        // the same key may be added twice for an event, such as for a FlowFile that is its own parent
+        if (count > 0 && keys[section][count - 1] == key && eventIds[section][count - 1] == eventId) {
+            return;
+        }
+
+        keys[section][count] = key;
+        eventIds[section][count] = eventId;
+        counts[section] = count + 1;
+    }
+
+    private void abandon() {
+        abandoned = true;
+        keys = new long[FIELD_COUNT][];
+        eventIds = new long[FIELD_COUNT][];
+        release();
+    }
+
+    /**
+     * @return <code>true</code> if the builder ran out of memory and is no longer collecting postings
+     */
+    boolean isAbandoned() {
+        return abandoned;
+    }
+
+    /**
+     * @return the number of postings that have been collected
+     */
+    long getPostingCount() {
+        long total = 0L;
+        for (final int count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Sorts the postings and writes them to the given file
+     *
+     * @param file the file to write to
+     * @throws IOException if unable to write the file
+     */
+    void writeTo(final File file) throws IOException {
+        if (abandoned) {
+            throw new IllegalStateException("Cannot write an index whose postings were abandoned");
+        }
+
+        for (int i = 0; i < FIELD_COUNT; i++) {
+            if (keys[i] != null) {
+                sort(keys[i], eventIds[i], 0, counts[i] - 1);
+            }
+        }
+        EventIndexFile.write(file, keys, eventIds, counts);
+    }
+
+    /**
+     * Returns the memory held by this builder to the budget of the index. The builder must not be used afterwards.
+     */
+    void release() {
+        keys = new long[FIELD_COUNT][];
+        eventIds = new long[FIELD_COUNT][];
+        if (eventIndex != null && reservedBytes > 0L) {
+            eventIndex.releaseHeap(reservedBytes);
+        }
+        reservedBytes = 0L;
+    }
+
+    /**
+     * Sorts the given parallel arrays, between the given indices inclusive, by key and then by event id
+     */
+    private static void sort(final long[] keys, final long[] eventIds, int low, int high) {
+        while (high - low > 16) {
+            final int mid = (low + high) >>> 1;
+            final long pivotKey = keys[mid];
+            final long pivotId = eventIds[mid];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (compare(keys[i], eventIds[i], pivotKey, pivotId) < 0) {
+                    i++;
+                }
+                while (compare(keys[j], eventIds[j], pivotKey, pivotId) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(keys, eventIds, i++, j--);
+                }
+            }
+
+            // recurse into the smaller partition so that the stack stays shallow
+            if (j - low < high - i) {
+                sort(keys, eventIds, low, j);
+                low = i;
+            } else {
+                sort(keys, eventIds, i, high);
+                high = j;
+            }
+        }
+
+        for (int i = low + 1; i <= high; i++) {
+            for (int j = i; j > low && compare(keys[j], eventIds[j], keys[j - 1], eventIds[j - 1]) < 0; j--) {
+                swap(keys, eventIds, j, j - 1);
+            }
+        }
+    }
+
+    private static int compare(final long key1, final long eventId1, final long key2, final long eventId2) {
+        final int keyComparison = Long.compare(key1, key2);
+        return keyComparison != 0 ? keyComparison : Long.compare(eventId1, eventId2);
+    }
+
+    private static void swap(final long[] keys, final long[] eventIds, final int i, final int j) {
+        final long key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+
+        final long eventId = eventIds[i];
+        eventIds[i] = eventIds[j];
+        eventIds[j] = eventId;
+    }
+}
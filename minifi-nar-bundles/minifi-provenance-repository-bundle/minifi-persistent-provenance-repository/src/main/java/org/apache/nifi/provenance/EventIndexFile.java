@@ -0,0 +1,232 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * The secondary index of a single Provenance Event Log File. For each {@link Field}, the index holds a sorted list of
+ * postings, each made up of a 64-bit key that is derived from the value of the field and the id of an event with that value.
+ * String values are hashed into their keys, so the events that are found through the index must still be checked against
+ * the values that were searched for.
+ * </p>
+ * <p>
+ * The file starts with the magic bytes "MNFI", a version byte, the number of fields, and the number of postings of each
+ * field, followed by the postings of each field in turn as pairs of longs. The file is memory-mapped and searched in place.
+ * </p>
+ */
+final class EventIndexFile {
+
+    static final int MAGIC = 0x4D4E4649; // "MNFI"
+    static final int FORMAT_VERSION = 1;
+    static final int POSTING_LENGTH = 16;
+
+    // events are indexed by the minute in which they occurred
+    static final long TIME_BUCKET_MILLIS = 60000L;
+
+    /**
+     * The fields that events are indexed by
+     */
+    enum Field {
+        /**
+         * The UUID of the FlowFile, as well as the UUIDs of the parents and children of the FlowFile, as lineage is
+         * computed from all of the events that refer to a FlowFile
+         */
+        FLOWFILE_UUID,
+        COMPONENT_ID,
+        EVENT_TYPE,
+        TIME_BUCKET
+    }
+
+    private static final int FIELD_COUNT = Field.values().length;
+    private static final int HEADER_LENGTH = 4 + 1 + 1 + 4 * FIELD_COUNT;
+
+    private final File file;
+    private final ByteBuffer buffer;
+    private final int[] sectionOffsets = new int[FIELD_COUNT];
+    private final int[] postingCounts = new int[FIELD_COUNT];
+
+    private EventIndexFile(final File file, final ByteBuffer buffer) throws IOException {
+        this.file = file;
+        this.buffer = buffer;
+
+        if (buffer.capacity() < HEADER_LENGTH || buffer.getInt(0) != MAGIC) {
+            throw new IOException(file + " is not a Provenance Event Index File");
+        }
+        if (buffer.get(4) != FORMAT_VERSION || buffer.get(5) != FIELD_COUNT) {
+            throw new IOException(file + " was written with an unsupported version of the Provenance Event Index File format");
+        }
+
+        int offset = HEADER_LENGTH;
+        for (int i = 0; i < FIELD_COUNT; i++) {
+            postingCounts[i] = buffer.getInt(6 + 4 * i);
+            sectionOffsets[i] = offset;
+            offset += postingCounts[i] * POSTING_LENGTH;
+        }
+
+        if (offset != buffer.capacity()) {
+            throw new IOException(file + " is truncated or corrupt; expected " + offset + " bytes but found " + buffer.capacity());
+        }
+    }
+
+    /**
+     * Maps the given index file into memory
+     *
+     * @param file the index file
+     * @return the index
+     * @throws IOException if the file cannot be read, or is not a valid index file
+     */
+    static EventIndexFile open(final File file) throws IOException {
+        try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too large to be a Provenance Event Index File");
+            }
+            return new EventIndexFile(file, channel.map(FileChannel.MapMode.READ_ONLY, 0L, size));
+        }
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    int getSize() {
+        return buffer.capacity();
+    }
+
+    /**
+     * @param field the field to search
+     * @param key the key to search for
+     * @return the ids of the events whose field has the given key, in ascending order
+     */
+    long[] getEventIds(final Field field, final long key) {
+        return getEventIds(field, key, key);
+    }
+
+    /**
+     * @param field the field to search
+     * @param minKey the smallest key to search for, inclusive
+     * @param maxKey the greatest key to search for, inclusive
+     * @return the ids of the events whose field has a key within the given range, in ascending order
+     */
+    long[] getEventIds(final Field field, final long minKey, final long maxKey) {
+        if (maxKey < minKey) {
+            return new long[0];
+        }
+
+        final int section = field.ordinal();
+        final int first = lowerBound(section, minKey);
+        int end = first;
+        while (end < postingCounts[section] && getKey(section, end) <= maxKey) {
+            end++;
+        }
+
+        final long[] eventIds = new long[end - first];
+        for (int i = first; i < end; i++) {
+            eventIds[i - first] = buffer.getLong(sectionOffsets[section] + i * POSTING_LENGTH + 8);
+        }
+
+        // postings are ordered by event id only within each key
+        if (minKey != maxKey) {
+            Arrays.sort(eventIds);
+        }
+        return eventIds;
+    }
+
+    private long getKey(final int section, final int posting) {
+        return buffer.getLong(sectionOffsets[section] + posting * POSTING_LENGTH);
+    }
+
+    private int lowerBound(final int section, final long key) {
+        int low = 0;
+        int high = postingCounts[section];
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (getKey(section, mid) < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Writes an index file holding the given postings, each of which must already be sorted by key and then event id
+     *
+     * @param file the file to write
+     * @param keys the keys of the postings of each field
+     * @param eventIds the event ids of the postings of each field
+     * @param counts the number of postings of each field
+     * @throws IOException if unable to write the file
+     */
+    static void write(final File file, final long[][] keys, final long[][] eventIds, final int[] counts) throws IOException {
+        try (final OutputStream fos = new FileOutputStream(file);
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 65536))) {
+            out.writeInt(MAGIC);
+            out.writeByte(FORMAT_VERSION);
+            out.writeByte(FIELD_COUNT);
+            for (int i = 0; i < FIELD_COUNT; i++) {
+                out.writeInt(counts[i]);
+            }
+
+            for (int i = 0; i < FIELD_COUNT; i++) {
+                for (int j = 0; j < counts[i]; j++) {
+                    out.writeLong(keys[i][j]);
+                    out.writeLong(eventIds[i][j]);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param value a string value of an event
+     * @return the key that the value is indexed by
+     */
+    static long keyOf(final String value) {
+        // 64-bit FNV-1a
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * @param eventTime the time of an event
+     * @return the key that the time is indexed by
+     */
+    static long timeBucketOf(final long eventTime) {
+        return Math.floorDiv(eventTime, TIME_BUCKET_MILLIS);
+    }
+
+    @Override
+    public String toString() {
+        return "EventIndexFile[" + file + "]";
+    }
+}
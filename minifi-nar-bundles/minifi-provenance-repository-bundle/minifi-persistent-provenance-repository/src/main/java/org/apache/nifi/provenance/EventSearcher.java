@@ -0,0 +1,318 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import org.apache.nifi.provenance.EventIndexFile.Field;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Finds the events that match a set of {@link Criteria}, looking them up in the {@link EventIndex} for the Provenance Event
+ * Log Files that are indexed and scanning those that are not. Files are searched from the newest to the oldest, so that the
+ * most recent matching events are found first.
+ */
+final class EventSearcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(EventSearcher.class);
+    private static final int SCAN_BATCH_SIZE = 1000;
+
+    /**
+     * The source of the events that are searched
+     */
+    interface EventSource {
+        /**
+         * @return the Provenance Event Log Files of the repository, in order of the ids of their first events
+         */
+        List<Path> getEventFiles();
+
+        /**
+         * Reads up to the given number of events from the given file, starting with the event with the given id
+         */
+        void readEvents(Path path, long firstEventId, int maxEvents, List<ProvenanceEventRecord> events) throws IOException;
+    }
+
+    /**
+     * The criteria that an event must meet in order to be found. All criteria that are set must be met.
+     */
+    static final class Criteria {
+        private Set<String> flowFileUuids = Collections.emptySet();
+        private String componentId;
+        private ProvenanceEventType eventType;
+        private long startTime = Long.MIN_VALUE;
+        private long endTime = Long.MAX_VALUE;
+        private long minFileSize = Long.MIN_VALUE;
+        private long maxFileSize = Long.MAX_VALUE;
+        private int maxResults = Integer.MAX_VALUE;
+
+        /**
+         * @param flowFileUuids the FlowFiles that an event must refer to, as the FlowFile of the event, or as one of its parents
+         * or children. An event that refers to any one of the given FlowFiles is found.
+         */
+        Criteria flowFileUuids(final Collection<String> flowFileUuids) {
+            this.flowFileUuids = new HashSet<>(flowFileUuids);
+            return this;
+        }
+
+        Criteria componentId(final String componentId) {
+            this.componentId = componentId;
+            return this;
+        }
+
+        Criteria eventType(final ProvenanceEventType eventType) {
+            this.eventType = eventType;
+            return this;
+        }
+
+        Criteria timeRange(final long startTime, final long endTime) {
+            this.startTime = startTime;
+            this.endTime = endTime;
+            return this;
+        }
+
+        Criteria fileSizeRange(final long minFileSize, final long maxFileSize) {
+            this.minFileSize = minFileSize;
+            this.maxFileSize = maxFileSize;
+            return this;
+        }
+
+        Criteria maxResults(final int maxResults) {
+            this.maxResults = maxResults;
+            return this;
+        }
+
+        boolean matches(final ProvenanceEventRecord event) {
+            if (componentId != null && !componentId.equals(event.getComponentId())) {
+                return false;
+            }
+            if (eventType != null && eventType != event.getEventType()) {
+                return false;
+            }
+            if (event.getEventTime() < startTime || event.getEventTime() > endTime) {
+                return false;
+            }
+            if (event.getFileSize() < minFileSize || event.getFileSize() > maxFileSize) {
+                return false;
+            }
+            if (!flowFileUuids.isEmpty()) {
+                return flowFileUuids.contains(event.getFlowFileUuid()) || containsAny(event.getParentUuids()) || containsAny(event.getChildUuids());
+            }
+            return true;
+        }
+
+        private boolean containsAny(final List<String> uuids) {
+            if (uuids != null) {
+                for (final String uuid : uuids) {
+                    if (flowFileUuids.contains(uuid)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return "Criteria[flowFileUuids=" + flowFileUuids + ", componentId=" + componentId + ", eventType=" + eventType + ", startTime=" + startTime
+                + ", endTime=" + endTime + ", minFileSize=" + minFileSize + ", maxFileSize=" + maxFileSize + ", maxResults=" + maxResults + "]";
+        }
+    }
+
+    /**
+     * Allows a search to be abandoned
+     */
+    interface Cancellation {
+        boolean isCancelled();
+    }
+
+    private final EventIndex eventIndex;
+    private final EventSource eventSource;
+
+    EventSearcher(final EventIndex eventIndex, final EventSource eventSource) {
+        this.eventIndex = eventIndex;
+        this.eventSource = eventSource;
+    }
+
+    /**
+     * @param criteria the criteria that the events must meet
+     * @param cancellation indicates whether the search should be abandoned
+     * @return the most recent events that meet the given criteria, up to the maximum number of results of the criteria,
+     * from the newest to the oldest
+     * @throws IOException if unable to read the index or the events
+     */
+    List<ProvenanceEventRecord> search(final Criteria criteria, final Cancellation cancellation) throws IOException {
+        final List<ProvenanceEventRecord> results = new ArrayList<>();
+        final List<Path> eventFiles = eventSource.getEventFiles();
+
+        for (int i = eventFiles.size() - 1; i >= 0 && results.size() < criteria.maxResults; i--) {
+            if (cancellation.isCancelled()) {
+                break;
+            }
+
+            final Path path = eventFiles.get(i);
+            final EventIndexFile indexFile = eventIndex.get(path.toFile());
+            final long[] candidates = indexFile == null ? null : getCandidates(indexFile, criteria);
+            if (candidates == null) {
+                scan(path, criteria, criteria.maxResults - results.size(), results);
+            } else {
+                lookup(path, candidates, criteria, results, cancellation);
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * @return the ids of the events in the file that may match the given criteria, in ascending order, or <code>null</code>
+     * if the criteria do not include any indexed field, in which case the whole file needs to be scanned
+     */
+    private long[] getCandidates(final EventIndexFile indexFile, final Criteria criteria) {
+        long[] candidates = null;
+
+        if (!criteria.flowFileUuids.isEmpty()) {
+            long[] union = new long[0];
+            for (final String uuid : criteria.flowFileUuids) {
+                union = union(union, indexFile.getEventIds(Field.FLOWFILE_UUID, EventIndexFile.keyOf(uuid)));
+            }
+            candidates = union;
+        }
+        if (criteria.componentId != null) {
+            candidates = intersect(candidates, indexFile.getEventIds(Field.COMPONENT_ID, EventIndexFile.keyOf(criteria.componentId)));
+        }
+        if (criteria.eventType != null) {
+            candidates = intersect(candidates, indexFile.getEventIds(Field.EVENT_TYPE, criteria.eventType.ordinal()));
+        }
+        if (criteria.startTime != Long.MIN_VALUE || criteria.endTime != Long.MAX_VALUE) {
+            final long[] inRange = indexFile.getEventIds(Field.TIME_BUCKET, EventIndexFile.timeBucketOf(criteria.startTime), EventIndexFile.timeBucketOf(criteria.endTime));
+            candidates = intersect(candidates, inRange);
+        }
+
+        return candidates;
+    }
+
+    private void lookup(final Path path, final long[] candidates, final Criteria criteria, final List<ProvenanceEventRecord> results,
+                        final Cancellation cancellation) throws IOException {
+        final List<ProvenanceEventRecord> events = new ArrayList<>(1);
+        long previous = -1L;
+        for (int i = candidates.length - 1; i >= 0 && results.size() < criteria.maxResults; i--) {
+            final long eventId = candidates[i];
+            if (eventId == previous) {
+                continue;
+            }
+            previous = eventId;
+
+            if (cancellation.isCancelled()) {
+                return;
+            }
+
+            events.clear();
+            eventSource.readEvents(path, eventId, 1, events);
+            if (events.isEmpty() || events.get(0).getEventId() != eventId) {
+                logger.debug("Event {} is indexed in {} but could not be read from it", eventId, path);
+                continue;
+            }
+
+            // keys are hashes, so the values of the event still need to be checked
+            if (criteria.matches(events.get(0))) {
+                results.add(events.get(0));
+            }
+        }
+    }
+
+    private void scan(final Path path, final Criteria criteria, final int maxResults, final List<ProvenanceEventRecord> results) throws IOException {
+        // only the most recent matches of the file are kept
+        final Deque<ProvenanceEventRecord> matches = new ArrayDeque<>();
+        final List<ProvenanceEventRecord> batch = new ArrayList<>(SCAN_BATCH_SIZE);
+        long nextEventId = 0L;
+        while (true) {
+            batch.clear();
+            eventSource.readEvents(path, nextEventId, SCAN_BATCH_SIZE, batch);
+            for (final ProvenanceEventRecord event : batch) {
+                if (criteria.matches(event)) {
+                    matches.addLast(event);
+                    if (matches.size() > maxResults) {
+                        matches.removeFirst();
+                    }
+                }
+            }
+
+            if (batch.size() < SCAN_BATCH_SIZE) {
+                break;
+            }
+            nextEventId = batch.get(batch.size() - 1).getEventId() + 1;
+        }
+
+        while (!matches.isEmpty()) {
+            results.add(matches.removeLast());
+        }
+    }
+
+    private static long[] union(final long[] a, final long[] b) {
+        final long[] merged = new long[a.length + b.length];
+        int i = 0;
+        int j = 0;
+        int count = 0;
+        while (i < a.length || j < b.length) {
+            final long next;
+            if (j >= b.length || (i < a.length && a[i] <= b[j])) {
+                next = a[i++];
+            } else {
+                next = b[j++];
+            }
+            if (count == 0 || merged[count - 1] != next) {
+                merged[count++] = next;
+            }
+        }
+        return Arrays.copyOf(merged, count);
+    }
+
+    private static long[] intersect(final long[] a, final long[] b) {
+        if (a == null) {
+            return b;
+        }
+
+        final long[] intersection = new long[Math.min(a.length, b.length)];
+        int i = 0;
+        int j = 0;
+        int count = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                if (count == 0 || intersection[count - 1] != a[i]) {
+                    intersection[count++] = a[i];
+                }
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(intersection, count);
+    }
+}
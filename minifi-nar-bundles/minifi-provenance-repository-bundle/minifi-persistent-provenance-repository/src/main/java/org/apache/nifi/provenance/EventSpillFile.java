@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * A single append-only file that holds the records of events that are about to be evicted from an {@link OffHeapEventStore},
+ * so that they remain available once they have been. Records are appended in the order of their event ids, as a 4-byte
+ * length followed by the record, and the offset of each record is held on the heap.
+ * </p>
+ * <p>
+ * The file is never compacted: once appending a record would exceed the maximum size of the file, the file is truncated and
+ * starts over with that record, so the events that it holds are always a contiguous range of ids. The file is also truncated
+ * when it is opened, because the repository that it belongs to does not recover events across restarts.
+ * </p>
+ */
+class EventSpillFile implements Closeable {
+
+    private static final long NOT_SPILLED = -1L;
+
+    private final File file;
+    private final long maxBytes;
+    private final FileChannel channel;
+    private final ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+
+    private long firstEventId = -1L;
+    private long[] offsets = new long[1024];
+    private int eventCount = 0;
+    private long size = 0L;
+
+    /**
+     * @param file the file to spill to
+     * @param maxBytes the maximum number of bytes that the file is allowed to grow to
+     * @throws IOException if the file cannot be created
+     */
+    EventSpillFile(final File file, final long maxBytes) throws IOException {
+        final File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent + " for Provenance spill file");
+        }
+
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * @return the file that events are spilled to
+     */
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the current size of the file, in bytes
+     */
+    synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * @return the smallest event id that the file holds, or -1 if it holds none
+     */
+    synchronized long getFirstEventId() {
+        return eventCount == 0 ? -1L : firstEventId;
+    }
+
+    /**
+     * @return the event id that follows the largest one that the file holds, or -1 if it holds none
+     */
+    synchronized long getNextEventId() {
+        return eventCount == 0 ? -1L : firstEventId + eventCount;
+    }
+
+    /**
+     * Appends the record of the given event. Events must be appended in ascending order of their ids; events that are
+     * skipped are recorded as not having been spilled.
+     *
+     * @param eventId the id of the event
+     * @param record a buffer holding the record of the event, without its length, from its position to its limit
+     * @throws IOException if the record cannot be written
+     */
+    synchronized void append(final long eventId, final ByteBuffer record) throws IOException {
+        final int recordLength = record.remaining();
+        final long recordSize = 4L + recordLength;
+        if (recordSize > maxBytes) {
+            return;
+        }
+        if (eventCount > 0 && eventId < firstEventId + eventCount) {
+            throw new IllegalArgumentException("Cannot spill event " + eventId + " after event " + (firstEventId + eventCount - 1));
+        }
+
+        if (size + recordSize > maxBytes || (eventCount > 0 && eventId - firstEventId >= Integer.MAX_VALUE)) {
+            channel.truncate(0L);
+            size = 0L;
+            eventCount = 0;
+        }
+        if (eventCount == 0) {
+            firstEventId = eventId;
+        }
+
+        while (firstEventId + eventCount < eventId) {
+            addOffset(NOT_SPILLED);
+        }
+
+        lengthBuffer.clear();
+        lengthBuffer.putInt(recordLength);
+        lengthBuffer.flip();
+        writeFully(lengthBuffer, size);
+        writeFully(record.duplicate(), size + 4);
+
+        addOffset(size);
+        size += recordSize;
+    }
+
+    /**
+     * @param eventId the id of an event
+     * @param reuse a heap buffer to read the record into if it is large enough, or <code>null</code>
+     * @return a heap buffer holding the record of the event, without its length, between position 0 and its limit, or
+     * <code>null</code> if the file does not hold it
+     * @throws IOException if the record cannot be read
+     */
+    synchronized ByteBuffer read(final long eventId, final ByteBuffer reuse) throws IOException {
+        if (eventCount == 0 || eventId < firstEventId || eventId >= firstEventId + eventCount) {
+            return null;
+        }
+
+        final long offset = offsets[(int) (eventId - firstEventId)];
+        if (offset == NOT_SPILLED) {
+            return null;
+        }
+
+        lengthBuffer.clear();
+        readFully(lengthBuffer, offset);
+        lengthBuffer.flip();
+        final int length = lengthBuffer.getInt();
+        if (length < 0 || offset + 4 + length > size) {
+            throw new IOException("Provenance spill file " + file + " contains an invalid record length of " + length + " at offset " + offset);
+        }
+
+        final ByteBuffer record = OffHeapEventStore.prepare(reuse, length);
+        readFully(record, offset + 4);
+        record.flip();
+        return record;
+    }
+
+    private void addOffset(final long offset) {
+        if (eventCount == offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        offsets[eventCount++] = offset;
+    }
+
+    private void writeFully(final ByteBuffer buffer, final long position) throws IOException {
+        long writePosition = position;
+        while (buffer.hasRemaining()) {
+            writePosition += channel.write(buffer, writePosition);
+        }
+    }
+
+    private void readFully(final ByteBuffer buffer, final long position) throws IOException {
+        long readPosition = position;
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, readPosition);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of Provenance spill file " + file + " at offset " + readPosition);
+            }
+            readPosition += read;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        eventCount = 0;
+        channel.close();
+    }
+}
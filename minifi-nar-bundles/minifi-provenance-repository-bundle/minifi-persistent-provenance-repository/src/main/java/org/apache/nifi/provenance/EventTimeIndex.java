@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import org.apache.nifi.provenance.toc.TocUtil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * The time index of a single Provenance Event Log File. For each block of the file, the index holds the id of the first
+ * event in the block along with the earliest and latest time at which the events of the block occurred. Event ids are
+ * assigned in the order in which events are registered rather than the order in which they occurred, so the time ranges
+ * of consecutive blocks may overlap.
+ * </p>
+ * <p>
+ * The index is written alongside the Table of Contents of the file when journals are merged. It starts with the magic bytes
+ * "MNFT", a version byte and the number of blocks, followed by the first event id, earliest event time and latest event time
+ * of each block as longs. It is small enough to be held in memory in full.
+ * </p>
+ */
+final class EventTimeIndex {
+
+    static final int MAGIC = 0x4D4E4654; // "MNFT"
+    static final int FORMAT_VERSION = 1;
+    static final String FILE_EXTENSION = ".tidx";
+    private static final int HEADER_LENGTH = 4 + 1 + 4;
+    private static final int BLOCK_LENGTH = 3 * 8;
+
+    private final long[] firstEventIds;
+    private final long[] minEventTimes;
+    private final long[] maxEventTimes;
+    private final int blockCount;
+    private final long minEventTime;
+    private final long maxEventTime;
+
+    private EventTimeIndex(final long[] firstEventIds, final long[] minEventTimes, final long[] maxEventTimes, final int blockCount) {
+        this.firstEventIds = firstEventIds;
+        this.minEventTimes = minEventTimes;
+        this.maxEventTimes = maxEventTimes;
+        this.blockCount = blockCount;
+
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < blockCount; i++) {
+            min = Math.min(min, minEventTimes[i]);
+            max = Math.max(max, maxEventTimes[i]);
+        }
+        this.minEventTime = min;
+        this.maxEventTime = max;
+    }
+
+    /**
+     * @param eventFile a Provenance Event Log File
+     * @return the file that holds the time index of the given event file, which is kept in the same directory as its Table of Contents
+     */
+    static File getTimeIndexFile(final File eventFile) {
+        final File tocFile = TocUtil.getTocFile(eventFile);
+        final String tocName = tocFile.getName();
+        return new File(tocFile.getParentFile(), tocName.substring(0, tocName.lastIndexOf('.')) + FILE_EXTENSION);
+    }
+
+    /**
+     * Reads the given time index file
+     *
+     * @param file the time index file
+     * @return the index
+     * @throws IOException if the file cannot be read, or is not a valid time index file
+     */
+    static EventTimeIndex read(final File file) throws IOException {
+        try (final InputStream fis = new FileInputStream(file);
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(fis))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a Provenance Event Time Index File");
+            }
+            if (in.readByte() != FORMAT_VERSION) {
+                throw new IOException(file + " was written with an unsupported version of the Provenance Event Time Index File format");
+            }
+
+            final int blockCount = in.readInt();
+            if (blockCount < 0 || (long) blockCount * BLOCK_LENGTH + HEADER_LENGTH != file.length()) {
+                throw new IOException(file + " is truncated or corrupt");
+            }
+
+            final long[] firstEventIds = new long[blockCount];
+            final long[] minEventTimes = new long[blockCount];
+            final long[] maxEventTimes = new long[blockCount];
+            for (int i = 0; i < blockCount; i++) {
+                firstEventIds[i] = in.readLong();
+                minEventTimes[i] = in.readLong();
+                maxEventTimes[i] = in.readLong();
+            }
+            return new EventTimeIndex(firstEventIds, minEventTimes, maxEventTimes, blockCount);
+        }
+    }
+
+    /**
+     * Writes this index to the given file
+     *
+     * @param file the file to write
+     * @throws IOException if unable to write the file
+     */
+    void write(final File file) throws IOException {
+        try (final OutputStream fos = new FileOutputStream(file);
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+            out.writeInt(MAGIC);
+            out.writeByte(FORMAT_VERSION);
+            out.writeInt(blockCount);
+            for (int i = 0; i < blockCount; i++) {
+                out.writeLong(firstEventIds[i]);
+                out.writeLong(minEventTimes[i]);
+                out.writeLong(maxEventTimes[i]);
+            }
+        }
+    }
+
+    int getBlockCount() {
+        return blockCount;
+    }
+
+    boolean isEmpty() {
+        return blockCount == 0;
+    }
+
+    /**
+     * @return the earliest time at which an event of the file occurred, or {@link Long#MAX_VALUE} if the file holds no events
+     */
+    long getMinEventTime() {
+        return minEventTime;
+    }
+
+    /**
+     * @return the latest time at which an event of the file occurred, or {@link Long#MIN_VALUE} if the file holds no events
+     */
+    long getMaxEventTime() {
+        return maxEventTime;
+    }
+
+    /**
+     * @param timestamp a time in milliseconds since the epoch
+     * @return the id of the first event of the first block that holds an event that occurred at or after the given time, or
+     * -1 if no event of the file did
+     */
+    long getFirstEventIdSince(final long timestamp) {
+        if (timestamp > maxEventTime) {
+            return -1L;
+        }
+
+        for (int i = 0; i < blockCount; i++) {
+            if (maxEventTimes[i] >= timestamp) {
+                return firstEventIds[i];
+            }
+        }
+        return -1L;
+    }
+
+    @Override
+    public String toString() {
+        return "EventTimeIndex[blocks=" + blockCount + ", minEventTime=" + minEventTime + ", maxEventTime=" + maxEventTime + "]";
+    }
+
+    /**
+     * Builds the time index of a file as its blocks are written, in order
+     */
+    static class Builder {
+        private long[] firstEventIds = new long[16];
+        private long[] minEventTimes = new long[16];
+        private long[] maxEventTimes = new long[16];
+        private int blockCount = 0;
+
+        /**
+         * @param firstEventId the id of the first event in the block
+         * @param minEventTime the earliest time at which an event of the block occurred
+         * @param maxEventTime the latest time at which an event of the block occurred
+         */
+        void addBlock(final long firstEventId, final long minEventTime, final long maxEventTime) {
+            if (blockCount == firstEventIds.length) {
+                firstEventIds = Arrays.copyOf(firstEventIds, blockCount * 2);
+                minEventTimes = Arrays.copyOf(minEventTimes, blockCount * 2);
+                maxEventTimes = Arrays.copyOf(maxEventTimes, blockCount * 2);
+            }
+
+            firstEventIds[blockCount] = firstEventId;
+            minEventTimes[blockCount] = minEventTime;
+            maxEventTimes[blockCount] = maxEventTime;
+            blockCount++;
+        }
+
+        EventTimeIndex build() {
+            return new EventTimeIndex(firstEventIds, minEventTimes, maxEventTimes, blockCount);
+        }
+    }
+}
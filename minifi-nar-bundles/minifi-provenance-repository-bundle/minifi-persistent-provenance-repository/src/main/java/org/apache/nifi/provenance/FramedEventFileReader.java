@@ -0,0 +1,402 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import org.apache.nifi.provenance.compression.EventFileCodec;
+import org.apache.nifi.provenance.compression.EventFileCodecs;
+import org.apache.nifi.provenance.schema.EventRecord;
+import org.apache.nifi.provenance.serialization.RecordReader;
+import org.apache.nifi.provenance.toc.TocReader;
+import org.apache.nifi.repository.schema.Record;
+import org.apache.nifi.repository.schema.RecordSchema;
+import org.apache.nifi.repository.schema.SchemaRecordReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Reads a Provenance Event Log File whose blocks were compressed with an {@link EventFileCodec} other than GZIP, or whose
+ * blocks were dictionary encoded. Such a file starts with a short prefix that identifies the file and the codec that it was
+ * written with, followed by a sequence of frames, each of which holds a single compressed block:
+ * </p>
+ * <pre>
+ * prefix: [magic "MNFE"][format version: byte][codec id: byte]
+ * frame:  [uncompressed offset of block: long][uncompressed length: int][compressed length: int][compressed block]
+ * </pre>
+ * <p>
+ * Once uncompressed, the blocks of a version 1 file hold exactly what the NiFi schema record writer would have written: the
+ * header is part of the first block and each record is prefixed with its length. The blocks of a version 2 file start with
+ * a dictionary and hold records that are encoded by the {@link DictionaryRecordCodec}; the header of the file precedes the
+ * dictionary of the first block. A codec id of 0 means that the blocks are not compressed. The Table of Contents holds the
+ * offset of each frame.
+ * </p>
+ * <p>
+ * This class is not thread-safe.
+ * </p>
+ */
+class FramedEventFileReader implements RecordReader {
+
+    static final byte[] MAGIC = new byte[] {'M', 'N', 'F', 'E'};
+    static final byte FORMAT_VERSION = 2;
+    static final byte DICTIONARY_FORMAT_VERSION = 2;
+    static final byte UNCOMPRESSED_CODEC_ID = 0;
+    static final int PREFIX_LENGTH = MAGIC.length + 2;
+    static final int FRAME_HEADER_LENGTH = 16;
+
+    private final File file;
+    private final String filename;
+    private final FileChannel channel;
+    private final TocReader tocReader;
+    private final int maxAttributeChars;
+    private final EventFileCodec codec;
+    private final boolean dictionaryEncoded;
+    private final SchemaRecordReader recordReader;
+    private final int headerLength;
+
+    private byte[] block;
+    private String[] dictionary;
+    private int blockPosition;
+    private long blockOffset;
+    private long framePosition;
+    private long nextFramePosition;
+    private long maxEventId = -1L;
+
+    FramedEventFileReader(final File file, final TocReader tocReader, final int maxAttributeChars) throws IOException {
+        this.file = file;
+        this.filename = file.getName();
+        this.tocReader = tocReader;
+        this.maxAttributeChars = maxAttributeChars;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+        try {
+            final ByteBuffer prefix = ByteBuffer.allocate(PREFIX_LENGTH);
+            if (!readFully(prefix, 0L)) {
+                throw new EOFException("Provenance Event Log File " + file + " is empty");
+            }
+
+            final byte[] magic = new byte[MAGIC.length];
+            prefix.flip();
+            prefix.get(magic);
+            if (!Arrays.equals(MAGIC, magic)) {
+                throw new IOException("File " + file + " is not a framed Provenance Event Log File");
+            }
+
+            final byte formatVersion = prefix.get();
+            if (formatVersion > FORMAT_VERSION) {
+                throw new IOException("Cannot read Provenance Event Log File " + file + " because it was written with format version " + formatVersion
+                    + " but this reader only supports versions up to " + FORMAT_VERSION);
+            }
+
+            dictionaryEncoded = formatVersion >= DICTIONARY_FORMAT_VERSION;
+            final byte codecId = prefix.get();
+            codec = codecId == UNCOMPRESSED_CODEC_ID ? null : EventFileCodecs.forId(codecId);
+            if (codec == null && codecId != UNCOMPRESSED_CODEC_ID) {
+                throw new IOException("Cannot read Provenance Event Log File " + file + " because it was compressed with unknown codec " + codecId);
+            }
+
+            if (!readFrame(PREFIX_LENGTH)) {
+                throw new EOFException("Provenance Event Log File " + file + " does not contain a header");
+            }
+
+            final ByteArrayInputStream headerIn = new ByteArrayInputStream(block);
+            final DataInputStream dis = new DataInputStream(headerIn);
+            final String serializationName = dis.readUTF();
+            if (!ByteArraySchemaRecordWriter.SERIALIZATION_NAME.equals(serializationName)) {
+                throw new IOException("Cannot read Provenance Event Log File " + file + " because it was serialized with " + serializationName);
+            }
+
+            final int serializationVersion = dis.readInt();
+            if (serializationVersion > ByteArraySchemaRecordWriter.SERIALIZATION_VERSION) {
+                throw new IOException("Cannot read Provenance Event Log File " + file + " because it was serialized with version " + serializationVersion
+                    + " but this reader only supports versions up to " + ByteArraySchemaRecordWriter.SERIALIZATION_VERSION);
+            }
+
+            final int schemaLength = dis.readInt();
+            final byte[] schemaBytes = new byte[schemaLength];
+            dis.readFully(schemaBytes);
+            final RecordSchema schema = RecordSchema.readFrom(new ByteArrayInputStream(schemaBytes));
+            recordReader = SchemaRecordReader.fromSchema(schema);
+
+            headerLength = block.length - headerIn.available();
+            blockPosition = headerLength;
+            if (dictionaryEncoded) {
+                readDictionary();
+            }
+        } catch (final IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param file the file to check
+     * @return <code>true</code> if the given file starts with the prefix of a framed Provenance Event Log File
+     * @throws IOException if unable to read the file
+     */
+    static boolean isFramed(final File file) throws IOException {
+        try (final FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final ByteBuffer magic = ByteBuffer.allocate(MAGIC.length);
+            while (magic.hasRemaining()) {
+                if (fileChannel.read(magic) < 0) {
+                    return false;
+                }
+            }
+            return Arrays.equals(MAGIC, magic.array());
+        }
+    }
+
+    /**
+     * @param codec the codec that the blocks of the file are compressed with, or <code>null</code> if they are not compressed
+     * @param dictionaryEncoded whether the blocks of the file are dictionary encoded
+     * @return the prefix that a framed Provenance Event Log File that is written with the given codec starts with. Files that
+     * are not dictionary encoded are marked as format version 1, so that they remain readable by readers that predate version 2.
+     */
+    static byte[] createPrefix(final EventFileCodec codec, final boolean dictionaryEncoded) {
+        final byte[] prefix = Arrays.copyOf(MAGIC, PREFIX_LENGTH);
+        prefix[MAGIC.length] = dictionaryEncoded ? DICTIONARY_FORMAT_VERSION : 1;
+        prefix[MAGIC.length + 1] = codec == null ? UNCOMPRESSED_CODEC_ID : codec.getId();
+        return prefix;
+    }
+
+    /**
+     * @param uncompressedOffset the offset of the block within the uncompressed stream of blocks
+     * @param uncompressedLength the length of the block before it was compressed
+     * @param compressedLength the length of the compressed block
+     * @return the header of the frame that holds the block
+     */
+    static byte[] createFrameHeader(final long uncompressedOffset, final int uncompressedLength, final int compressedLength) {
+        final ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_LENGTH);
+        header.putLong(uncompressedOffset);
+        header.putInt(uncompressedLength);
+        header.putInt(compressedLength);
+        return header.array();
+    }
+
+    private boolean readFully(final ByteBuffer buffer, final long position) throws IOException {
+        long readPosition = position;
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, readPosition);
+            if (read < 0) {
+                if (buffer.position() == 0) {
+                    return false;
+                }
+                throw new EOFException("Provenance Event Log File " + file + " is truncated at offset " + readPosition);
+            }
+            readPosition += read;
+        }
+        return true;
+    }
+
+    /**
+     * Reads and decompresses the frame at the given position
+     *
+     * @return <code>false</code> if the given position is the end of the file
+     */
+    private boolean readFrame(final long position) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_LENGTH);
+        if (!readFully(header, position)) {
+            return false;
+        }
+
+        header.flip();
+        final long uncompressedOffset = header.getLong();
+        final int uncompressedLength = header.getInt();
+        final int compressedLength = header.getInt();
+        if (uncompressedOffset < 0 || uncompressedLength < 0 || compressedLength < 0 || (codec == null && compressedLength != uncompressedLength)) {
+            throw new IOException("Provenance Event Log File " + file + " contains an invalid frame at offset " + position);
+        }
+
+        final byte[] compressed = new byte[compressedLength];
+        if (!readFully(ByteBuffer.wrap(compressed), position + FRAME_HEADER_LENGTH) && compressedLength > 0) {
+            throw new EOFException("Provenance Event Log File " + file + " is truncated at offset " + position);
+        }
+
+        block = codec == null ? compressed : codec.decompress(compressed, 0, compressedLength, uncompressedLength);
+        blockPosition = position == PREFIX_LENGTH ? headerLength : 0;
+        blockOffset = uncompressedOffset;
+        framePosition = position;
+        nextFramePosition = position + FRAME_HEADER_LENGTH + compressedLength;
+
+        // while the constructor reads the first frame, the header has yet to be read; the constructor then reads the dictionary itself
+        if (dictionaryEncoded && headerLength > 0) {
+            readDictionary();
+        }
+        return true;
+    }
+
+    private void readDictionary() throws IOException {
+        final DictionaryRecordCodec.Decoder decoder = new DictionaryRecordCodec.Decoder(ByteBuffer.wrap(block), blockPosition, block.length);
+        try {
+            dictionary = decoder.readDictionary();
+        } catch (final IOException e) {
+            throw new IOException("Provenance Event Log File " + file + " contains an invalid block at offset " + framePosition, e);
+        }
+        blockPosition = decoder.getPosition();
+    }
+
+    /**
+     * Makes sure that there are bytes left to read in the current block, moving on to the next frame as needed
+     *
+     * @return <code>false</code> if the end of the file has been reached
+     */
+    private boolean ensureBlockData() throws IOException {
+        while (blockPosition >= block.length) {
+            if (!readFrame(nextFramePosition)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public StandardProvenanceEventRecord nextRecord() throws IOException {
+        if (!ensureBlockData()) {
+            return null;
+        }
+
+        final long startOffset = getBytesConsumed();
+        if (block.length - blockPosition < 4) {
+            throw new EOFException("Provenance Event Log File " + file + " contains a truncated record at offset " + startOffset);
+        }
+
+        final int recordLength = ByteBuffer.wrap(block, blockPosition, 4).getInt();
+        blockPosition += 4;
+        if (recordLength < 0 || recordLength > block.length - blockPosition) {
+            throw new EOFException("Provenance Event Log File " + file + " contains a truncated record at offset " + startOffset);
+        }
+
+        if (dictionaryEncoded) {
+            final DictionaryRecordCodec.Decoder decoder = new DictionaryRecordCodec.Decoder(ByteBuffer.wrap(block), blockPosition, blockPosition + recordLength);
+            blockPosition += recordLength;
+            final StandardProvenanceEventRecord event = decoder.readRecord(dictionary, filename, startOffset, maxAttributeChars);
+            maxEventId = Math.max(maxEventId, event.getEventId());
+            return event;
+        }
+
+        final Record record = recordReader.readRecord(new ByteArrayInputStream(block, blockPosition, recordLength));
+        blockPosition += recordLength;
+        if (record == null) {
+            return null;
+        }
+
+        final StandardProvenanceEventRecord event = EventRecord.getEvent(record, filename, startOffset, maxAttributeChars);
+        maxEventId = Math.max(maxEventId, event.getEventId());
+        return event;
+    }
+
+    @Override
+    public void skip(final long bytesToSkip) throws IOException {
+        skipTo(getBytesConsumed() + bytesToSkip);
+    }
+
+    @Override
+    public void skipTo(final long position) throws IOException {
+        final long currentPosition = getBytesConsumed();
+        if (position < currentPosition) {
+            throw new IOException("Cannot skip to byte offset " + position + " in stream because already at byte offset " + currentPosition);
+        }
+
+        while (position >= blockOffset + block.length) {
+            if (!readFrame(nextFramePosition)) {
+                throw new EOFException("Cannot skip to byte offset " + position + " because Provenance Event Log File " + file + " ends before it");
+            }
+        }
+
+        blockPosition = (int) Math.max(blockPosition, position - blockOffset);
+    }
+
+    @Override
+    public void skipToBlock(final int blockIndex) throws IOException {
+        if (tocReader == null) {
+            throw new IllegalStateException("Cannot skip to block " + blockIndex + " for Provenance Log " + filename + " because no Table-of-Contents file was found for this Log");
+        }
+
+        if (blockIndex == getBlockIndex()) {
+            return;
+        }
+
+        final long offset = tocReader.getBlockOffset(blockIndex);
+        if (offset < 0) {
+            throw new IOException("Unable to find block " + blockIndex + " in Provenance Log " + filename);
+        }
+
+        if (!readFrame(offset)) {
+            throw new EOFException("Unable to find block " + blockIndex + " in Provenance Log " + filename);
+        }
+    }
+
+    @Override
+    public int getBlockIndex() {
+        if (tocReader == null) {
+            throw new IllegalStateException("Cannot determine Block Index because no Table-of-Contents could be found for Provenance Log " + filename);
+        }
+
+        return tocReader.getBlockIndex(framePosition);
+    }
+
+    @Override
+    public boolean isBlockIndexAvailable() {
+        return tocReader != null;
+    }
+
+    @Override
+    public TocReader getTocReader() {
+        return tocReader;
+    }
+
+    @Override
+    public long getBytesConsumed() {
+        return blockOffset + blockPosition;
+    }
+
+    @Override
+    public long getMaxEventId() throws IOException {
+        if (tocReader != null) {
+            final long lastBlockOffset = tocReader.getLastBlockOffset();
+            skipToBlock(tocReader.getBlockIndex(lastBlockOffset));
+        }
+
+        while (nextRecord() != null) {
+        }
+
+        return maxEventId;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            channel.close();
+        } finally {
+            if (tocReader != null) {
+                tocReader.close();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + file + ", codec=" + (codec == null ? null : codec.getName()) + "]";
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * A lock-free histogram of non-negative long values. Values are counted in buckets whose upper bounds are powers of two,
+ * so recording a value costs a couple of atomic increments and the percentiles that are reported are accurate to within
+ * a factor of two. This is cheap enough to be left on for every event that passes through the repository.
+ * </p>
+ */
+public class Histogram {
+
+    private static final int BUCKET_COUNT = 64;
+
+    private final String name;
+    private final String unit;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong(0L);
+    private final AtomicLong sum = new AtomicLong(0L);
+    private final AtomicLong max = new AtomicLong(0L);
+
+    public Histogram(final String name, final String unit) {
+        this.name = name;
+        this.unit = unit;
+    }
+
+    /**
+     * Records the given value. Negative values are recorded as 0.
+     *
+     * @param value the value to record
+     */
+    public void record(final long value) {
+        final long normalized = Math.max(0L, value);
+        buckets.incrementAndGet(bucketFor(normalized));
+        count.incrementAndGet();
+        sum.addAndGet(normalized);
+
+        long currentMax = max.get();
+        while (normalized > currentMax && !max.compareAndSet(currentMax, normalized)) {
+            currentMax = max.get();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getUnit() {
+        return unit;
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getSum() {
+        return sum.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        final long currentCount = count.get();
+        return currentCount == 0L ? 0D : (double) sum.get() / currentCount;
+    }
+
+    /**
+     * @param percentile the percentile to compute, between 0 and 100
+     * @return the upper bound of the bucket that contains the given percentile, capped at the maximum value recorded
+     */
+    public long getPercentile(final double percentile) {
+        final long total = count.get();
+        if (total == 0L) {
+            return 0L;
+        }
+
+        final long threshold = (long) Math.ceil(total * Math.min(100D, Math.max(0D, percentile)) / 100D);
+        long seen = 0L;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets.get(i);
+            if (seen >= threshold && seen > 0L) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+
+        return max.get();
+    }
+
+    private static int bucketFor(final long value) {
+        // bucket 0 holds 0 and 1, bucket i holds values in the range (2^(i-1), 2^i]
+        if (value <= 1L) {
+            return 0;
+        }
+        return Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(value - 1));
+    }
+
+    private static long upperBound(final int bucket) {
+        return bucket >= 63 ? Long.MAX_VALUE : 1L << bucket;
+    }
+
+    @Override
+    public String toString() {
+        return name + "[count=" + getCount() + ", mean=" + String.format("%.1f", getMean()) + " " + unit + ", p50=" + getPercentile(50D)
+            + ", p99=" + getPercentile(99D) + ", max=" + getMax() + " " + unit + "]";
+    }
+}
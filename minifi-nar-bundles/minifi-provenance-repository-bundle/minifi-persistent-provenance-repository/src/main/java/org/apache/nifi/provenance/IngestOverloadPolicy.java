@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+/**
+ * Determines what happens to events that are registered asynchronously while the ingest ring buffer is full, which is the
+ * case when the journal writer threads cannot keep up, such as while rollover applies backpressure.
+ */
+enum IngestOverloadPolicy {
+
+    /**
+     * The registering thread waits for room in the ring buffer
+     */
+    BLOCK("block"),
+
+    /**
+     * The events are discarded and counted
+     */
+    DROP("drop"),
+
+    /**
+     * The events are appended to a spill file on disk, from which the journal writer threads take them once they catch up
+     */
+    SPILL("spill");
+
+    private final String name;
+
+    IngestOverloadPolicy(final String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public static IngestOverloadPolicy forName(final String name) {
+        for (final IngestOverloadPolicy policy : values()) {
+            if (policy.name.equalsIgnoreCase(name.trim())) {
+                return policy;
+            }
+        }
+        throw new IllegalArgumentException("Unknown Provenance ingest overload policy '" + name + "'; expected one of 'block', 'drop' or 'spill'");
+    }
+}
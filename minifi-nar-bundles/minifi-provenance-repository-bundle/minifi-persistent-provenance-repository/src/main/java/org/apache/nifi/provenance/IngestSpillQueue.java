@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * A first-in, first-out queue on disk for events that were registered asynchronously while the ingest ring buffer was
+ * full. Events are appended as a 4-byte length followed by the record, encoded without a dictionary and without an event
+ * id, as ids are only assigned once the events are written to a journal. The file is truncated whenever the queue has been
+ * drained, so it only grows for as long as the journal writer threads are behind.
+ * </p>
+ * <p>
+ * The file is not synced, as asynchronous registration does not promise durability anyway, but it is kept across restarts
+ * so that the events that it holds when the repository is shut down are written to the journals once it starts again.
+ * A record that was only partially written when the process died ends the queue.
+ * </p>
+ */
+final class IngestSpillQueue implements Closeable {
+
+    // the records of spilled events have not been assigned an id yet
+    private static final long UNASSIGNED_EVENT_ID = -1L;
+
+    private final File file;
+    private final long maxBytes;
+    private final int maxAttributeChars;
+    private final FileChannel channel;
+    private final DictionaryRecordCodec.RecordEncoder encoder = new DictionaryRecordCodec.RecordEncoder();
+    private final ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+
+    private long readPosition = 0L;
+    private long writePosition;
+
+    /**
+     * @param file the file to spill to, which is created if it does not exist
+     * @param maxBytes the maximum number of bytes that the file is allowed to grow to
+     * @param maxAttributeChars the maximum number of characters to retain for any attribute value
+     * @throws IOException if the file cannot be created or opened
+     */
+    IngestSpillQueue(final File file, final long maxBytes, final int maxAttributeChars) throws IOException {
+        final File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent + " for Provenance ingest spill file");
+        }
+
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.maxAttributeChars = maxAttributeChars;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.writePosition = channel.size();
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * @return <code>true</code> if no events are waiting in the queue
+     */
+    synchronized boolean isEmpty() {
+        return readPosition >= writePosition;
+    }
+
+    /**
+     * @return the number of bytes held by the events that are waiting in the queue
+     */
+    synchronized long getSize() {
+        return writePosition - readPosition;
+    }
+
+    /**
+     * Appends the given events to the end of the queue, unless they do not all fit within the maximum size of the file
+     *
+     * @param events the events to append
+     * @return <code>true</code> if the events were appended, <code>false</code> if there was no room for them
+     * @throws IOException if the events cannot be written
+     */
+    synchronized boolean append(final List<ProvenanceEventRecord> events) throws IOException {
+        final List<byte[]> records = new ArrayList<>(events.size());
+        long recordsSize = 0L;
+        for (final ProvenanceEventRecord event : events) {
+            final int length = encoder.encode(event, UNASSIGNED_EVENT_ID);
+            final byte[] record = new byte[length];
+            System.arraycopy(encoder.getBuffer(), 0, record, 0, length);
+            records.add(record);
+            recordsSize += length;
+        }
+
+        if (writePosition + recordsSize > maxBytes) {
+            return false;
+        }
+
+        for (final byte[] record : records) {
+            writeFully(ByteBuffer.wrap(record), writePosition);
+            writePosition += record.length;
+        }
+        return true;
+    }
+
+    /**
+     * Takes events from the head of the queue
+     *
+     * @param maxEvents the maximum number of events to take
+     * @return the events that were taken, in the order in which they were appended; empty if the queue is empty
+     * @throws IOException if the events cannot be read or decoded, in which case the rest of the queue is discarded
+     */
+    synchronized List<ProvenanceEventRecord> poll(final int maxEvents) throws IOException {
+        final List<ProvenanceEventRecord> events = new ArrayList<>(Math.min(maxEvents, 64));
+        try {
+            while (events.size() < maxEvents && writePosition - readPosition >= 4L) {
+                lengthBuffer.clear();
+                readFully(lengthBuffer, readPosition);
+                lengthBuffer.flip();
+                final int length = lengthBuffer.getInt();
+                if (length < 0 || readPosition + 4L + length > writePosition) {
+                    // the rest of the file is a record that was only partially written
+                    writePosition = readPosition;
+                    break;
+                }
+
+                final ByteBuffer record = ByteBuffer.allocate(length);
+                readFully(record, readPosition + 4L);
+                final DictionaryRecordCodec.Decoder decoder = new DictionaryRecordCodec.Decoder(record, 0, length);
+                events.add(decoder.readRecord(DictionaryRecordCodec.NO_DICTIONARY, null, 0L, maxAttributeChars));
+                readPosition += 4L + length;
+            }
+        } catch (final IOException ioe) {
+            reset();
+            throw ioe;
+        }
+
+        if (writePosition - readPosition < 4L) {
+            reset();
+        }
+        return events;
+    }
+
+    private void reset() throws IOException {
+        channel.truncate(0L);
+        readPosition = 0L;
+        writePosition = 0L;
+    }
+
+    private void writeFully(final ByteBuffer buffer, final long position) throws IOException {
+        long position0 = position;
+        while (buffer.hasRemaining()) {
+            position0 += channel.write(buffer, position0);
+        }
+    }
+
+    private void readFully(final ByteBuffer buffer, final long position) throws IOException {
+        long position0 = position;
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, position0);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of Provenance ingest spill file " + file + " at offset " + position0);
+            }
+            position0 += read;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "IngestSpillQueue[file=" + file + ", bytes=" + getSize() + "]";
+    }
+}
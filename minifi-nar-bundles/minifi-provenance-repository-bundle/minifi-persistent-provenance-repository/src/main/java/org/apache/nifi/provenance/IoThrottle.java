@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits background I/O, such as the rewriting of aging Provenance Event Log Files, to an average number of bytes per
+ * second that is shared by all of the threads that use the throttle. Each thread accounts for the bytes that it reads or
+ * writes and is then blocked for as long as it takes the budget to cover them. Budget that goes unused accumulates for at
+ * most one second, so that an idle throttle is not followed by an unbounded burst.
+ */
+final class IoThrottle {
+
+    private static final long BURST_NANOS = TimeUnit.SECONDS.toNanos(1L);
+
+    private final long bytesPerSecond;
+
+    // the time at which all of the I/O accounted for so far is covered by the budget; guarded by this
+    private long coveredNanos = System.nanoTime() - BURST_NANOS;
+
+    /**
+     * @param bytesPerSecond the budget, in bytes per second, or 0 for no limit
+     */
+    IoThrottle(final long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    boolean isUnlimited() {
+        return bytesPerSecond <= 0L;
+    }
+
+    /**
+     * Accounts for the given number of bytes of I/O, blocking until the budget covers them
+     *
+     * @param bytes the number of bytes read or written
+     * @throws InterruptedException if interrupted while waiting
+     */
+    void acquire(final long bytes) throws InterruptedException {
+        if (isUnlimited() || bytes <= 0L) {
+            return;
+        }
+
+        final long waitNanos;
+        synchronized (this) {
+            final long now = System.nanoTime();
+            coveredNanos = Math.max(coveredNanos, now - BURST_NANOS) + (long) (bytes * (double) TimeUnit.SECONDS.toNanos(1L) / bytesPerSecond);
+            waitNanos = coveredNanos - now;
+        }
+
+        if (waitNanos > 0L) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "IoThrottle[" + (isUnlimited() ? "unlimited" : bytesPerSecond + " bytes/sec") + "]";
+    }
+}
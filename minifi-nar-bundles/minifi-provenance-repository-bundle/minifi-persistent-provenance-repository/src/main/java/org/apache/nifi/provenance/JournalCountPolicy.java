@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * Decides how many journals each rollover creates. Every attempt to lock a journal is recorded, and at each rollover the
+ * share of attempts that found the journal already locked is compared against two thresholds:
+ * </p>
+ * <ul>
+ * <li>If more than {@value #GROW_MISS_RATE} of at least {@value #MIN_LOCK_ATTEMPTS} attempts missed, writers are waiting
+ * on each other, and the number of journals is doubled.</li>
+ * <li>If fewer than {@value #SHRINK_MISS_RATE} of the attempts missed and each journal received fewer than the minimum
+ * number of bytes, the journals are mostly empty, and their number is halved.</li>
+ * </ul>
+ * <p>
+ * The number of journals always stays within the configured bounds. When both bounds are the same, the number is fixed, and
+ * nothing is measured.
+ * </p>
+ */
+final class JournalCountPolicy {
+
+    static final double GROW_MISS_RATE = 0.05D;
+    static final double SHRINK_MISS_RATE = 0.01D;
+    static final int MIN_LOCK_ATTEMPTS = 100;
+
+    private final int minJournalCount;
+    private final int maxJournalCount;
+    private final long minBytesPerJournal;
+    private final LongAdder lockAttempts = new LongAdder();
+    private final LongAdder lockMisses = new LongAdder();
+    private volatile int journalCount;
+
+    /**
+     * @param journalCount the number of journals to start with, which is brought within the bounds
+     * @param minJournalCount the fewest journals that a rollover may create
+     * @param maxJournalCount the most journals that a rollover may create
+     * @param minBytesPerJournal the number of bytes that a journal has to receive between two rollovers in order not to be
+     * considered mostly empty
+     */
+    JournalCountPolicy(final int journalCount, final int minJournalCount, final int maxJournalCount, final long minBytesPerJournal) {
+        if (minJournalCount < 1 || maxJournalCount < minJournalCount) {
+            throw new IllegalArgumentException("Journal count bounds must satisfy 1 <= min <= max but were min=" + minJournalCount + ", max=" + maxJournalCount);
+        }
+
+        this.minJournalCount = minJournalCount;
+        this.maxJournalCount = maxJournalCount;
+        this.minBytesPerJournal = minBytesPerJournal;
+        this.journalCount = Math.max(minJournalCount, Math.min(maxJournalCount, journalCount));
+    }
+
+    /**
+     * @return whether the number of journals is adjusted at each rollover
+     */
+    boolean isAdaptive() {
+        return minJournalCount < maxJournalCount;
+    }
+
+    /**
+     * @return the number of journals that the next rollover creates
+     */
+    int getJournalCount() {
+        return journalCount;
+    }
+
+    int getMaxJournalCount() {
+        return maxJournalCount;
+    }
+
+    /**
+     * Records an attempt to lock a journal in order to write to it
+     *
+     * @param acquired whether the lock was obtained
+     */
+    void recordLockAttempt(final boolean acquired) {
+        if (!isAdaptive()) {
+            return;
+        }
+
+        lockAttempts.increment();
+        if (!acquired) {
+            lockMisses.increment();
+        }
+    }
+
+    /**
+     * Adjusts the number of journals according to what was measured since the previous rollover, and starts measuring anew.
+     * Must not be called concurrently.
+     *
+     * @param bytesWritten the number of bytes written to the journals since the previous rollover
+     * @return the number of journals that the rollover should create
+     */
+    int rollover(final long bytesWritten) {
+        if (!isAdaptive()) {
+            return journalCount;
+        }
+
+        final long attempts = lockAttempts.sumThenReset();
+        final long misses = lockMisses.sumThenReset();
+        final double missRate = attempts == 0L ? 0D : misses / (double) attempts;
+
+        final int currentCount = journalCount;
+        if (attempts >= MIN_LOCK_ATTEMPTS && missRate > GROW_MISS_RATE) {
+            journalCount = Math.min(maxJournalCount, currentCount * 2);
+        } else if (missRate < SHRINK_MISS_RATE && bytesWritten / currentCount < minBytesPerJournal) {
+            journalCount = Math.max(minJournalCount, currentCount / 2);
+        }
+        return journalCount;
+    }
+
+    @Override
+    public String toString() {
+        return "JournalCountPolicy[journalCount=" + journalCount + ", min=" + minJournalCount + ", max=" + maxJournalCount + "]";
+    }
+}
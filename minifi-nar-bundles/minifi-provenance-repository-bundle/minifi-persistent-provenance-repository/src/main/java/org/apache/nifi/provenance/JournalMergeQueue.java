@@ -0,0 +1,219 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * <p>
+ * The sets of journals that have been created but not yet merged, kept on disk so that a restart resumes their merges
+ * rather than rediscovering the journals by listing the journal directories. Each set is identified by its generation,
+ * which is the id of the first event of the set and the basename of its journals.
+ * </p>
+ * <p>
+ * The file is a log of records, each of which either adds a set along with the paths of its journals or removes a set
+ * once it has been merged. Additions are synced, as a set that is missing from the queue would never be merged; removals
+ * are not, as a set whose journals no longer exist is dropped when the queue is recovered. A record that was only
+ * partially written when the process died ends the log. The log is compacted each time it is recovered.
+ * </p>
+ */
+final class JournalMergeQueue implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(JournalMergeQueue.class);
+
+    private static final byte ADD = 1;
+    private static final byte REMOVE = 2;
+
+    private final File file;
+    private FileOutputStream fos; // guarded by this
+    private DataOutputStream out; // guarded by this
+
+    /**
+     * @param file the file that holds the queue
+     */
+    JournalMergeQueue(final File file) {
+        this.file = file;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Reads the queue from disk, dropping the journals that no longer exist and the sets that are left without any, and
+     * compacts the file so that it holds only the remaining sets
+     *
+     * @return the sets of journals that are still to be merged, keyed by generation, or <code>null</code> if there is no
+     * queue on disk, in which case the queue starts out empty
+     * @throws IOException if unable to read or rewrite the file
+     */
+    synchronized SortedMap<Long, List<File>> recover() throws IOException {
+        final SortedMap<Long, List<File>> journalSets = new TreeMap<>();
+        final boolean exists = file.exists();
+        if (exists) {
+            try (final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                readRecords(in, journalSets);
+            }
+        }
+
+        for (final Iterator<Map.Entry<Long, List<File>>> itr = journalSets.entrySet().iterator(); itr.hasNext();) {
+            final List<File> journalFiles = itr.next().getValue();
+            for (final Iterator<File> fileItr = journalFiles.iterator(); fileItr.hasNext();) {
+                if (!fileItr.next().exists()) {
+                    fileItr.remove();
+                }
+            }
+            if (journalFiles.isEmpty()) {
+                itr.remove();
+            }
+        }
+
+        compact(journalSets);
+        return exists ? journalSets : null;
+    }
+
+    private void readRecords(final DataInputStream in, final SortedMap<Long, List<File>> journalSets) throws IOException {
+        try {
+            while (true) {
+                final int op = in.read();
+                if (op < 0) {
+                    return;
+                }
+
+                final long generation = in.readLong();
+                if (op == ADD) {
+                    final int fileCount = in.readInt();
+                    final List<File> journalFiles = new ArrayList<>(fileCount);
+                    for (int i = 0; i < fileCount; i++) {
+                        journalFiles.add(new File(in.readUTF()));
+                    }
+                    journalSets.put(generation, journalFiles);
+                } else if (op == REMOVE) {
+                    journalSets.remove(generation);
+                } else {
+                    logger.warn("Provenance Journal Merge Queue {} holds an unknown record type {}; ignoring the rest of the queue", file, op);
+                    return;
+                }
+            }
+        } catch (final EOFException eof) {
+            // the last record was only partially written
+        }
+    }
+
+    private void compact(final SortedMap<Long, List<File>> journalSets) throws IOException {
+        closeOutput();
+
+        final File directory = file.getAbsoluteFile().getParentFile();
+        if (!directory.exists() && !directory.mkdirs() && !directory.exists()) {
+            throw new IOException("Unable to create directory " + directory + " for Provenance Journal Merge Queue");
+        }
+
+        final File tempFile = new File(directory, file.getName() + ".tmp");
+        try (final FileOutputStream tempFos = new FileOutputStream(tempFile);
+            final DataOutputStream tempOut = new DataOutputStream(new BufferedOutputStream(tempFos))) {
+            for (final Map.Entry<Long, List<File>> entry : journalSets.entrySet()) {
+                writeAdd(tempOut, entry.getKey(), entry.getValue());
+            }
+            tempOut.flush();
+            tempFos.getFD().sync();
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        fos = new FileOutputStream(file, true);
+        out = new DataOutputStream(new BufferedOutputStream(fos));
+    }
+
+    /**
+     * Records that the given journals have been created and must be merged
+     *
+     * @param generation the generation of the journals
+     * @param journalFiles the journals
+     * @throws IOException if unable to write to the queue
+     */
+    synchronized void add(final long generation, final List<File> journalFiles) throws IOException {
+        ensureOpen();
+        writeAdd(out, generation, journalFiles);
+        out.flush();
+        fos.getFD().sync();
+    }
+
+    /**
+     * Records that the journals of the given generation have been merged
+     *
+     * @param generation the generation of the journals
+     * @throws IOException if unable to write to the queue
+     */
+    synchronized void remove(final long generation) throws IOException {
+        ensureOpen();
+        out.write(REMOVE);
+        out.writeLong(generation);
+        out.flush();
+    }
+
+    private void ensureOpen() throws IOException {
+        if (out == null) {
+            throw new IOException("Provenance Journal Merge Queue " + file + " has not been recovered or has been closed");
+        }
+    }
+
+    private static void writeAdd(final DataOutputStream out, final long generation, final List<File> journalFiles) throws IOException {
+        out.write(ADD);
+        out.writeLong(generation);
+        out.writeInt(journalFiles.size());
+        for (final File journalFile : journalFiles) {
+            out.writeUTF(journalFile.getPath());
+        }
+    }
+
+    private void closeOutput() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+            fos = null;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closeOutput();
+    }
+
+    @Override
+    public String toString() {
+        return "JournalMergeQueue[file=" + file + "]";
+    }
+}
@@ -0,0 +1,374 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Runs the merges of sets of journals on the rollover threads. Of the merges that are ready to run, the one of the oldest
+ * generation always runs first, so that events become readable in the order in which they were recorded, and no more
+ * than the configured number of merges run at the same time, so that merging does not take all of the CPU and disk
+ * bandwidth away from the flow.
+ * </p>
+ * <p>
+ * A merge that fails is retried after a delay that doubles with each failed attempt, up to a maximum, rather than at a
+ * fixed interval. Once a merge succeeds, it is removed from the {@link JournalMergeQueue}, which is how a restart knows
+ * which journals are still to be merged.
+ * </p>
+ */
+final class JournalMergeScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(JournalMergeScheduler.class);
+
+    static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 1000L;
+    static final long DEFAULT_MAX_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(10L);
+
+    /**
+     * Merges a set of journals. Returning normally means that the journals no longer have to be merged, whether or not they
+     * held any events; throwing means that the merge is to be retried.
+     */
+    interface MergeAction {
+        void merge(List<File> journalFiles) throws Exception;
+    }
+
+    enum State {
+        QUEUED,
+        RUNNING,
+        BACKING_OFF
+    }
+
+    private final ScheduledExecutorService executor;
+    private final JournalMergeQueue queue;
+    private final int maxConcurrentMerges;
+    private final long initialBackoffNanos;
+    private final long maxBackoffNanos;
+
+    // guarded by this
+    private final SortedMap<Long, Merge> merges = new TreeMap<>();
+    private int runningMerges = 0;
+    private long failedAttempts = 0L;
+    private boolean shutdown = false;
+    private ScheduledFuture<?> scheduledDispatch;
+    private long scheduledDispatchNanos;
+
+    /**
+     * @param executor the threads to run the merges on
+     * @param queue the queue that merges are removed from once they succeed
+     * @param maxConcurrentMerges the maximum number of merges that run at the same time
+     * @param initialBackoff the delay before the first retry of a failed merge
+     * @param maxBackoff the longest delay between two attempts of a merge
+     * @param timeUnit the unit of the delays
+     */
+    JournalMergeScheduler(final ScheduledExecutorService executor, final JournalMergeQueue queue, final int maxConcurrentMerges, final long initialBackoff,
+                          final long maxBackoff, final TimeUnit timeUnit) {
+        this.executor = executor;
+        this.queue = queue;
+        this.maxConcurrentMerges = Math.max(1, maxConcurrentMerges);
+        this.initialBackoffNanos = timeUnit.toNanos(initialBackoff);
+        this.maxBackoffNanos = timeUnit.toNanos(maxBackoff);
+    }
+
+    /**
+     * Queues the merge of the given set of journals. The journals must already have been added to the {@link JournalMergeQueue}.
+     *
+     * @param generation the generation of the journals, which is the id of their first event
+     * @param journalFiles the journals to merge
+     * @param action merges the journals
+     */
+    void submit(final long generation, final List<File> journalFiles, final MergeAction action) {
+        synchronized (this) {
+            if (shutdown) {
+                return;
+            }
+
+            final Merge existing = merges.get(generation);
+            if (existing != null) {
+                logger.warn("The merge of the Provenance Journal Files of generation {} has already been scheduled; ignoring {}", generation, journalFiles);
+                return;
+            }
+            merges.put(generation, new Merge(generation, journalFiles, action));
+        }
+
+        dispatch();
+    }
+
+    /**
+     * Starts as many of the merges that are ready as the budget allows, oldest generation first, and arranges to be called
+     * again when the earliest of the merges that are backing off becomes ready
+     */
+    private void dispatch() {
+        final List<Merge> toRun = new ArrayList<>();
+        synchronized (this) {
+            if (shutdown) {
+                return;
+            }
+
+            final long now = System.nanoTime();
+            long nextReadyNanos = Long.MAX_VALUE;
+            for (final Merge merge : merges.values()) {
+                if (merge.state == State.RUNNING) {
+                    continue;
+                }
+
+                if (merge.state == State.BACKING_OFF && merge.nextAttemptNanos - now > 0L) {
+                    nextReadyNanos = Math.min(nextReadyNanos, merge.nextAttemptNanos);
+                    continue;
+                }
+
+                if (runningMerges < maxConcurrentMerges) {
+                    merge.state = State.RUNNING;
+                    runningMerges++;
+                    toRun.add(merge);
+                }
+            }
+
+            if (nextReadyNanos != Long.MAX_VALUE) {
+                scheduleDispatch(nextReadyNanos, now);
+            }
+        }
+
+        for (final Merge merge : toRun) {
+            try {
+                executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        runMerge(merge);
+                    }
+                });
+            } catch (final RejectedExecutionException ree) {
+                // the repository is being shut down
+                synchronized (this) {
+                    merge.state = State.QUEUED;
+                    runningMerges--;
+                }
+            }
+        }
+    }
+
+    // guarded by this
+    private void scheduleDispatch(final long readyNanos, final long now) {
+        // a dispatch that is already due may have passed over the merge, so only one that is still to come can be relied upon
+        if (scheduledDispatch != null && !scheduledDispatch.isDone() && scheduledDispatchNanos - now > 0L && scheduledDispatchNanos - readyNanos <= 0L) {
+            return;
+        }
+        if (scheduledDispatch != null) {
+            scheduledDispatch.cancel(false);
+        }
+
+        scheduledDispatchNanos = readyNanos;
+        try {
+            scheduledDispatch = executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    dispatch();
+                }
+            }, Math.max(0L, readyNanos - now), TimeUnit.NANOSECONDS);
+        } catch (final RejectedExecutionException ree) {
+            // the repository is being shut down
+            scheduledDispatch = null;
+        }
+    }
+
+    private void runMerge(final Merge merge) {
+        merge.attempts++;
+        Throwable failure = null;
+        try {
+            merge.action.merge(merge.journalFiles);
+        } catch (final Throwable t) {
+            failure = t;
+        }
+
+        boolean completed = false;
+        synchronized (this) {
+            runningMerges--;
+            if (failure == null) {
+                merges.remove(merge.generation);
+                // a merge that completes while shutting down stays in the queue; its journals no longer exist, so it is dropped on recovery
+                completed = !shutdown;
+            } else {
+                failedAttempts++;
+                final long backoffNanos = Math.min(maxBackoffNanos, initialBackoffNanos << Math.min(merge.attempts - 1, 30));
+                merge.state = State.BACKING_OFF;
+                merge.lastFailure = failure.toString();
+                merge.nextAttemptNanos = System.nanoTime() + backoffNanos;
+            }
+        }
+
+        if (failure != null) {
+            logger.error("Failed to merge Provenance Journal Files {} on attempt {} due to {}; will retry in {} millis", merge.journalFiles, merge.attempts,
+                failure.toString(), TimeUnit.NANOSECONDS.toMillis(merge.nextAttemptNanos - System.nanoTime()));
+            if (logger.isDebugEnabled()) {
+                logger.error("", failure);
+            }
+        } else if (completed) {
+            try {
+                queue.remove(merge.generation);
+            } catch (final IOException ioe) {
+                logger.warn("Failed to remove the merged Provenance Journal Files {} from {} due to {}; they will be dropped from it on restart",
+                    merge.journalFiles, queue, ioe.toString());
+            }
+        }
+
+        dispatch();
+    }
+
+    /**
+     * @return the state of each merge that has not yet succeeded, oldest generation first
+     */
+    synchronized List<MergeStatus> getMergeStatus() {
+        final long now = System.nanoTime();
+        final List<MergeStatus> statuses = new ArrayList<>(merges.size());
+        for (final Merge merge : merges.values()) {
+            final long retryMillis = merge.state == State.BACKING_OFF ? Math.max(0L, TimeUnit.NANOSECONDS.toMillis(merge.nextAttemptNanos - now)) : 0L;
+            statuses.add(new MergeStatus(merge.generation, merge.journalFiles.size(), merge.state, merge.attempts, merge.lastFailure, retryMillis));
+        }
+        return statuses;
+    }
+
+    /**
+     * @return the number of merges that are in the given state
+     */
+    synchronized int getMergeCount(final State state) {
+        int count = 0;
+        for (final Merge merge : merges.values()) {
+            if (merge.state == state) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of attempts to merge that have failed
+     */
+    synchronized long getFailedAttempts() {
+        return failedAttempts;
+    }
+
+    int getMaxConcurrentMerges() {
+        return maxConcurrentMerges;
+    }
+
+    /**
+     * Stops starting merges. Merges that are running are left to the executor to interrupt.
+     */
+    synchronized void shutdown() {
+        shutdown = true;
+        if (scheduledDispatch != null) {
+            scheduledDispatch.cancel(false);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "JournalMergeScheduler[maxConcurrentMerges=" + maxConcurrentMerges + "]";
+    }
+
+    private static class Merge {
+        private final long generation;
+        private final List<File> journalFiles;
+        private final MergeAction action;
+
+        // guarded by the scheduler, except for attempts, which only the thread running the merge updates
+        private State state = State.QUEUED;
+        private volatile int attempts = 0;
+        private String lastFailure;
+        private long nextAttemptNanos;
+
+        Merge(final long generation, final List<File> journalFiles, final MergeAction action) {
+            this.generation = generation;
+            this.journalFiles = Collections.unmodifiableList(new ArrayList<>(journalFiles));
+            this.action = action;
+        }
+    }
+
+    /**
+     * A snapshot of the state of the merge of a set of journals
+     */
+    static final class MergeStatus {
+        private final long generation;
+        private final int journalCount;
+        private final State state;
+        private final int attempts;
+        private final String lastFailure;
+        private final long retryMillis;
+
+        MergeStatus(final long generation, final int journalCount, final State state, final int attempts, final String lastFailure, final long retryMillis) {
+            this.generation = generation;
+            this.journalCount = journalCount;
+            this.state = state;
+            this.attempts = attempts;
+            this.lastFailure = lastFailure;
+            this.retryMillis = retryMillis;
+        }
+
+        /**
+         * @return the id of the first event of the journals
+         */
+        long getGeneration() {
+            return generation;
+        }
+
+        int getJournalCount() {
+            return journalCount;
+        }
+
+        State getState() {
+            return state;
+        }
+
+        /**
+         * @return the number of attempts that have been made to merge the journals
+         */
+        int getAttempts() {
+            return attempts;
+        }
+
+        /**
+         * @return the reason that the last attempt failed, or <code>null</code> if no attempt has failed
+         */
+        String getLastFailure() {
+            return lastFailure;
+        }
+
+        /**
+         * @return the number of milliseconds until the merge is retried, if it is backing off
+         */
+        long getRetryMillis() {
+            return retryMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "MergeStatus[generation=" + generation + ", state=" + state + ", attempts=" + attempts + ", lastFailure=" + lastFailure + "]";
+        }
+    }
+}
@@ -0,0 +1,765 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import org.apache.nifi.events.EventReporter;
+import org.apache.nifi.provenance.compression.EventFileCodec;
+import org.apache.nifi.provenance.compression.GzipEventFileCodec;
+import org.apache.nifi.provenance.serialization.RecordReader;
+import org.apache.nifi.provenance.toc.StandardTocWriter;
+import org.apache.nifi.provenance.toc.TocUtil;
+import org.apache.nifi.provenance.toc.TocWriter;
+import org.apache.nifi.reporting.Severity;
+import org.apache.nifi.stream.io.DataOutputStream;
+import org.apache.nifi.stream.io.NullOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+
+/**
+ * <p>
+ * Merges a set of journals into a single Provenance Event Log File. The work is split into three stages so that a merge
+ * is able to make use of more than one core:
+ * </p>
+ * <ul>
+ * <li>Each journal is read ahead by its own thread, which decodes the journal's events and re-encodes them into their
+ * serialized form for the merged file. If the merged file is to be indexed, it also extracts the terms that each event
+ * is indexed by.</li>
+ * <li>The calling thread picks the journal holding the next lowest event id from a {@link LongMinHeap} and appends that
+ * event's bytes to the current block, and its terms to the {@link EventIndexBuilder}.</li>
+ * <li>Full blocks are handed off to a pool of threads to be compressed, while the calling thread writes the compressed
+ * blocks to the merged file, their offsets to the Table of Contents, the times of their events to the
+ * {@link EventTimeIndex} and their checksums to the {@link BlockChecksums} of the file, in order.</li>
+ * </ul>
+ * <p>
+ * The calling thread also adds up the size of the events of each component into the {@link ComponentUsage} of the file,
+ * which the storage quotas of the components are charged from.
+ * </p>
+ * <p>
+ * The merged file is synced before the merge returns, as the journals that it was merged from are removed once it has been.
+ * If the merge fails, the merged file and the files written alongside it are removed, so that a failed attempt, such as
+ * one that ran out of disk space, neither holds on to that space nor leaves a truncated copy of the events to be recovered.
+ * </p>
+ * <p>
+ * When the merged file is uncompressed or compressed with GZIP, it is laid out exactly as the NiFi schema record writer lays
+ * it out, so that it is able to be read by the standard record readers: the header is part of the first block, and each
+ * block is a separate GZIP member whose offset is recorded in the Table of Contents. Any other {@link EventFileCodec} writes
+ * the blocks as frames, in the layout that is read by the {@link FramedEventFileReader}.
+ * </p>
+ * <p>
+ * If dictionary encoding is enabled, the blocks are always written as frames, and each block is encoded by the
+ * {@link DictionaryRecordCodec}. In that case the read-ahead threads only estimate the size of each event, and the events
+ * of each block are encoded by the compression pool, as the dictionary of a block is only known once all of its events are.
+ * </p>
+ */
+class JournalMerger {
+
+    private static final Logger logger = LoggerFactory.getLogger(JournalMerger.class);
+
+    // the block size that the NiFi record writers use for merged files
+    static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+    private static final int READ_AHEAD_RECORDS = 512;
+    private static final EncodedRecord END_OF_JOURNAL = new EncodedRecord(-1L, 0L, null, new byte[0], null, 0, null);
+
+    private final ExecutorService readAheadExecutor;
+    private final ExecutorService compressionExecutor;
+    private final int maxPendingBlocks;
+    private final int blockSize;
+    private final boolean dictionaryEncoding;
+
+    /**
+     * @param readAheadExecutor the executor used to read ahead each of the journals. It must be able to run one task per journal concurrently.
+     * @param compressionExecutor the executor used to compress the blocks of the merged file
+     * @param compressionThreads the number of threads of the compression executor
+     * @param blockSize the number of uncompressed bytes after which a new block is started
+     */
+    JournalMerger(final ExecutorService readAheadExecutor, final ExecutorService compressionExecutor, final int compressionThreads, final int blockSize) {
+        this(readAheadExecutor, compressionExecutor, compressionThreads, blockSize, false);
+    }
+
+    /**
+     * @param readAheadExecutor the executor used to read ahead each of the journals. It must be able to run one task per journal concurrently.
+     * @param compressionExecutor the executor used to compress the blocks of the merged file
+     * @param compressionThreads the number of threads of the compression executor
+     * @param blockSize the number of uncompressed bytes after which a new block is started. When dictionary encoding, this is
+     * the estimated number of bytes that the events of the block would take up without a dictionary.
+     * @param dictionaryEncoding whether the blocks are encoded with a dictionary of the strings that repeat within them
+     */
+    JournalMerger(final ExecutorService readAheadExecutor, final ExecutorService compressionExecutor, final int compressionThreads, final int blockSize,
+                  final boolean dictionaryEncoding) {
+        this.readAheadExecutor = readAheadExecutor;
+        this.compressionExecutor = compressionExecutor;
+        this.maxPendingBlocks = Math.max(1, compressionThreads) * 2;
+        this.blockSize = blockSize;
+        this.dictionaryEncoding = dictionaryEncoding;
+    }
+
+    /**
+     * Merges the records of the given readers into the given file, in order of their event ids. The readers are not closed.
+     *
+     * @param readers the readers of the journals to merge
+     * @param mergedFile the file to write the merged records to
+     * @param codec the codec to compress the blocks of the merged file with, or <code>null</code> to leave them uncompressed
+     * @param eventReporter the event reporter to report any warnings to; may be null
+     * @return the number of records written to the merged file
+     * @throws IOException if unable to read from a journal or to write to the merged file
+     */
+    int merge(final List<RecordReader> readers, final File mergedFile, final EventFileCodec codec, final EventReporter eventReporter) throws IOException {
+        return merge(readers, mergedFile, codec, eventReporter, null);
+    }
+
+    /**
+     * Merges the records of the given readers into the given file, in order of their event ids, adding each record to the
+     * given index builder. The readers are not closed.
+     *
+     * @param readers the readers of the journals to merge
+     * @param mergedFile the file to write the merged records to
+     * @param codec the codec to compress the blocks of the merged file with, or <code>null</code> to leave them uncompressed
+     * @param eventReporter the event reporter to report any warnings to; may be null
+     * @param indexBuilder the builder to add the postings of the merged records to; may be null
+     * @return the number of records written to the merged file
+     * @throws IOException if unable to read from a journal or to write to the merged file
+     */
+    int merge(final List<RecordReader> readers, final File mergedFile, final EventFileCodec codec, final EventReporter eventReporter,
+              final EventIndexBuilder indexBuilder) throws IOException {
+        return merge(readers, mergedFile, codec, eventReporter, indexBuilder, null);
+    }
+
+    /**
+     * Merges the records of the given readers into the given file, in order of their event ids, replacing each record with
+     * the result of the given transform before it is written. The transform must not change the id or time of a record.
+     * The readers are not closed.
+     *
+     * @param readers the readers of the journals or event files to merge
+     * @param mergedFile the file to write the merged records to
+     * @param codec the codec to compress the blocks of the merged file with, or <code>null</code> to leave them uncompressed
+     * @param eventReporter the event reporter to report any warnings to; may be null
+     * @param indexBuilder the builder to add the postings of the merged records to; may be null
+     * @param recordTransform the transform to apply to each record; may be null
+     * @return the number of records written to the merged file
+     * @throws IOException if unable to read from a journal or to write to the merged file, in which case the merged file
+     * and its Table of Contents, checksums, time index and component usage have been removed
+     */
+    int merge(final List<RecordReader> readers, final File mergedFile, final EventFileCodec codec, final EventReporter eventReporter,
+              final EventIndexBuilder indexBuilder, final UnaryOperator<StandardProvenanceEventRecord> recordTransform) throws IOException {
+        final List<BlockingQueue<EncodedRecord>> queues = new ArrayList<>(readers.size());
+        final List<Future<Void>> readAheadFutures = new ArrayList<>(readers.size());
+        final Deque<PendingBlock> pendingBlocks = new ArrayDeque<>();
+        final ReadAheadState state = new ReadAheadState();
+        boolean completed = false;
+
+        try {
+            for (final RecordReader reader : readers) {
+                final BlockingQueue<EncodedRecord> queue = new ArrayBlockingQueue<>(READ_AHEAD_RECORDS);
+                queues.add(queue);
+                readAheadFutures.add(readAheadExecutor.submit(new ReadAheadTask(reader, queue, state, eventReporter, indexBuilder != null, dictionaryEncoding,
+                    recordTransform)));
+            }
+
+            // prime the heap with the first record of each journal
+            final EncodedRecord[] heads = new EncodedRecord[readers.size()];
+            final LongMinHeap heap = new LongMinHeap(readers.size());
+            long minEventId = 0L;
+            for (int i = 0; i < heads.length; i++) {
+                final EncodedRecord head = take(queues.get(i), readAheadFutures.get(i));
+                if (head != null) {
+                    heads[i] = head;
+                    heap.add(head.getEventId(), i);
+                    minEventId = Math.min(minEventId, head.getEventId());
+                }
+            }
+
+            int records = 0;
+            try (final FileOutputStream out = new FileOutputStream(mergedFile);
+                final TocWriter tocWriter = new StandardTocWriter(TocUtil.getTocFile(mergedFile), false, false);
+                final BlockChecksums.Writer checksumWriter = new BlockChecksums.Writer(BlockChecksums.getChecksumFile(mergedFile))) {
+
+                final EventTimeIndex.Builder timeIndexBuilder = new EventTimeIndex.Builder();
+                final ComponentUsage.Builder usageBuilder = new ComponentUsage.Builder();
+                final BlockWriter blockWriter = new BlockWriter(out, tocWriter, checksumWriter, timeIndexBuilder, codec, dictionaryEncoding);
+                final MergedRecordEncoder headerEncoder = new MergedRecordEncoder();
+                BlockBuilder block = new BlockBuilder(minEventId, dictionaryEncoding);
+                block.getDataOutputStream().writeUTF(ByteArraySchemaRecordWriter.SERIALIZATION_NAME);
+                block.getDataOutputStream().writeInt(ByteArraySchemaRecordWriter.SERIALIZATION_VERSION);
+                headerEncoder.writeHeader(minEventId, block.getDataOutputStream());
+
+                while (!heap.isEmpty()) {
+                    final int journalIndex = heap.peekValue();
+                    final EncodedRecord record = heads[journalIndex];
+
+                    if (block.size() >= blockSize) {
+                        submit(block, codec, pendingBlocks, blockWriter);
+                        block = new BlockBuilder(record.getEventId(), dictionaryEncoding);
+                    }
+
+                    block.write(record);
+                    usageBuilder.add(record.getComponentId(), record.getSize());
+                    records++;
+                    if (indexBuilder != null) {
+                        indexBuilder.add(record.getEventId(), record.getIndexTerms());
+                    }
+
+                    final EncodedRecord next = take(queues.get(journalIndex), readAheadFutures.get(journalIndex));
+                    if (next == null) {
+                        heads[journalIndex] = null;
+                        heap.poll();
+                    } else {
+                        heads[journalIndex] = next;
+                        heap.replaceMinKey(next.getEventId());
+                    }
+                }
+
+                submit(block, codec, pendingBlocks, blockWriter);
+                while (!pendingBlocks.isEmpty()) {
+                    blockWriter.write(pendingBlocks.poll());
+                }
+
+                if (records > 0) {
+                    timeIndexBuilder.build().write(EventTimeIndex.getTimeIndexFile(mergedFile));
+                    usageBuilder.build().write(ComponentUsage.getUsageFile(mergedFile));
+                }
+
+                out.getFD().sync();
+                tocWriter.sync();
+                checksumWriter.sync();
+            }
+
+            completed = true;
+            return records;
+        } finally {
+            // If we did not finish, make sure that the read-ahead threads stop, as they may be waiting for room in their queues,
+            // and that they are no longer using the readers by the time that the caller closes them.
+            state.cancel();
+            for (final BlockingQueue<EncodedRecord> queue : queues) {
+                queue.clear();
+            }
+            for (final Future<Void> future : readAheadFutures) {
+                try {
+                    future.get();
+                } catch (final Exception e) {
+                    // already reported, if it happened before the merge completed
+                }
+            }
+            for (final PendingBlock pendingBlock : pendingBlocks) {
+                pendingBlock.getData().cancel(false);
+            }
+
+            if (!completed) {
+                for (final File file : deleteMergedFile(mergedFile)) {
+                    logger.warn("Failed to remove partially written Provenance Event Log File {}; this file should be cleaned up manually", file);
+                    if (eventReporter != null) {
+                        eventReporter.reportEvent(Severity.WARNING, MiNiFiPersistentProvenanceRepository.EVENT_CATEGORY, "Failed to remove partially written "
+                            + "Provenance Event Log File " + file + "; this file should be cleaned up manually");
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes the given merged file along with the files that are written alongside it: its Table of Contents, block
+     * checksums, time index, component usage and query index
+     *
+     * @param mergedFile a merged Provenance Event Log File
+     * @return the files that exist but could not be deleted
+     */
+    static List<File> deleteMergedFile(final File mergedFile) {
+        final List<File> remaining = new ArrayList<>();
+        for (final File file : new File[] {mergedFile, TocUtil.getTocFile(mergedFile), BlockChecksums.getChecksumFile(mergedFile),
+            EventTimeIndex.getTimeIndexFile(mergedFile), ComponentUsage.getUsageFile(mergedFile), EventIndex.getIndexFile(mergedFile)}) {
+            if (!file.delete() && file.exists()) {
+                remaining.add(file);
+            }
+        }
+        return remaining;
+    }
+
+    private void submit(final BlockBuilder block, final EventFileCodec codec, final Deque<PendingBlock> pendingBlocks, final BlockWriter blockWriter) throws IOException {
+        final Future<EncodedBlock> data;
+        if (codec != null || block.isDictionaryEncoded()) {
+            data = compressionExecutor.submit(new Callable<EncodedBlock>() {
+                @Override
+                public EncodedBlock call() throws IOException {
+                    return block.encode(codec);
+                }
+            });
+        } else {
+            data = CompletableFuture.completedFuture(block.encode(null));
+        }
+
+        // wait for the oldest block to be written if there are too many blocks in flight, so that a slow disk bounds the memory used
+        while (pendingBlocks.size() >= maxPendingBlocks) {
+            blockWriter.write(pendingBlocks.poll());
+        }
+        pendingBlocks.add(new PendingBlock(block, data));
+    }
+
+    private static EncodedRecord take(final BlockingQueue<EncodedRecord> queue, final Future<Void> readAheadFuture) throws IOException {
+        final EncodedRecord record;
+        try {
+            record = queue.take();
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for journal to be read");
+        }
+
+        if (record != END_OF_JOURNAL) {
+            return record;
+        }
+
+        // the journal has been exhausted; if that is because it could not be read, fail the merge
+        try {
+            readAheadFuture.get();
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for journal to be read");
+        } catch (final ExecutionException ee) {
+            final Throwable cause = ee.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Failed to read journal", cause);
+        }
+
+        return null;
+    }
+
+    /**
+     * Reads the records of a single journal and serializes them for the merged file
+     */
+    private static class ReadAheadTask implements Callable<Void> {
+        private final RecordReader reader;
+        private final BlockingQueue<EncodedRecord> queue;
+        private final ReadAheadState state;
+        private final EventReporter eventReporter;
+        private final MergedRecordEncoder encoder;
+        private final boolean indexing;
+        private final UnaryOperator<StandardProvenanceEventRecord> recordTransform;
+
+        ReadAheadTask(final RecordReader reader, final BlockingQueue<EncodedRecord> queue, final ReadAheadState state, final EventReporter eventReporter,
+                      final boolean indexing, final boolean dictionaryEncoding, final UnaryOperator<StandardProvenanceEventRecord> recordTransform) throws IOException {
+            this.reader = reader;
+            this.queue = queue;
+            this.state = state;
+            this.eventReporter = eventReporter;
+            this.encoder = dictionaryEncoding ? null : new MergedRecordEncoder();
+            this.indexing = indexing;
+            this.recordTransform = recordTransform;
+        }
+
+        @Override
+        public Void call() throws IOException, InterruptedException {
+            try {
+                boolean firstRecord = true;
+                while (!state.isCancelled()) {
+                    StandardProvenanceEventRecord record = null;
+                    try {
+                        record = reader.nextRecord();
+                    } catch (final EOFException eof) {
+                    } catch (final Exception e) {
+                        if (!firstRecord) {
+                            throw e;
+                        }
+
+                        logger.warn("Failed to generate Provenance Event Record from Journal due to " + e + "; it's possible that the record wasn't "
+                                + "completely written to the file. This record will be skipped.");
+                        if (logger.isDebugEnabled()) {
+                            logger.warn("", e);
+                        }
+
+                        if (eventReporter != null) {
+                            eventReporter.reportEvent(Severity.WARNING, MiNiFiPersistentProvenanceRepository.EVENT_CATEGORY, "Failed to read Provenance Event Record from Journal due to " + e
+                                    + "; it's possible that the record wasn't completely written to the file. This record will be skipped.");
+                        }
+                    }
+
+                    if (record == null) {
+                        break;
+                    }
+
+                    firstRecord = false;
+                    if (recordTransform != null) {
+                        record = recordTransform.apply(record);
+                    }
+                    final long[] indexTerms = indexing ? EventIndexBuilder.getTerms(record) : null;
+                    if (encoder == null) {
+                        put(new EncodedRecord(record.getEventId(), record.getEventTime(), record.getComponentId(), null, record, DictionaryRecordCodec.estimateSize(record), indexTerms));
+                    } else {
+                        final byte[] bytes = encoder.encode(record, record.getEventId());
+                        put(new EncodedRecord(record.getEventId(), record.getEventTime(), record.getComponentId(), bytes, null, bytes.length, indexTerms));
+                    }
+                }
+            } finally {
+                put(END_OF_JOURNAL);
+            }
+
+            return null;
+        }
+
+        private void put(final EncodedRecord record) throws InterruptedException {
+            while (!state.isCancelled()) {
+                if (queue.offer(record, 100L, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes blocks to the merged file in the order in which they were started, recording the offset of each block in
+     * the Table of Contents, the times of its events in the time index and its checksum in the checksum file. The prefix of
+     * a framed file is recorded as a block of its own, so that the checksum of each other block covers exactly the bytes
+     * between two offsets of the Table of Contents.
+     */
+    private static class BlockWriter {
+        private final OutputStream out;
+        private final TocWriter tocWriter;
+        private final BlockChecksums.Writer checksumWriter;
+        private final EventTimeIndex.Builder timeIndexBuilder;
+        private final Crc32c crc = new Crc32c();
+        private final boolean compressed;
+        private final boolean framed;
+        private long bytesWritten = 0L;
+        private long uncompressedBytesWritten = 0L;
+
+        BlockWriter(final OutputStream out, final TocWriter tocWriter, final BlockChecksums.Writer checksumWriter, final EventTimeIndex.Builder timeIndexBuilder,
+                    final EventFileCodec codec, final boolean dictionaryEncoding) throws IOException {
+            this.out = out;
+            this.tocWriter = tocWriter;
+            this.checksumWriter = checksumWriter;
+            this.timeIndexBuilder = timeIndexBuilder;
+            this.compressed = codec != null;
+            this.framed = dictionaryEncoding || (codec != null && codec.getId() != GzipEventFileCodec.ID);
+
+            if (framed) {
+                final byte[] prefix = FramedEventFileReader.createPrefix(codec, dictionaryEncoding);
+                out.write(prefix);
+                bytesWritten = prefix.length;
+                crc.update(prefix);
+                checksumWriter.append(bytesWritten, 0, crc.getValue());
+            }
+        }
+
+        void write(final PendingBlock block) throws IOException {
+            final EncodedBlock encodedBlock;
+            try {
+                encodedBlock = block.getData().get();
+            } catch (final InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for block to be compressed");
+            } catch (final ExecutionException ee) {
+                final Throwable cause = ee.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw new IOException("Failed to compress block", cause);
+            }
+
+            // an uncompressed file is a single stream, so only its beginning is recorded, just as the NiFi writers do
+            if (compressed || framed || bytesWritten == 0L) {
+                tocWriter.addBlockOffset(bytesWritten, block.getFirstEventId());
+            }
+            if (block.getFirstRecordEventId() >= 0L) {
+                timeIndexBuilder.addBlock(block.getFirstRecordEventId(), block.getMinEventTime(), block.getMaxEventTime());
+            }
+
+            crc.reset();
+            final byte[] data = encodedBlock.getData();
+            if (framed) {
+                final byte[] frameHeader = FramedEventFileReader.createFrameHeader(uncompressedBytesWritten, encodedBlock.getUncompressedLength(), data.length);
+                out.write(frameHeader);
+                crc.update(frameHeader);
+                bytesWritten += FramedEventFileReader.FRAME_HEADER_LENGTH;
+            }
+
+            out.write(data);
+            crc.update(data);
+            bytesWritten += data.length;
+            uncompressedBytesWritten += encodedBlock.getUncompressedLength();
+            checksumWriter.append(bytesWritten, block.getEventCount(), crc.getValue());
+        }
+    }
+
+    /**
+     * Accumulates the uncompressed bytes of a single block, or the records that are to be dictionary encoded into it
+     */
+    private static class BlockBuilder {
+        private final long firstEventId;
+        private final boolean dictionaryEncoded;
+        private final ExposedByteArrayOutputStream buffer = new ExposedByteArrayOutputStream(8192);
+        private final DataOutputStream dataOutputStream = new DataOutputStream(buffer);
+        private final List<ProvenanceEventRecord> records = new ArrayList<>();
+        private int recordsSize = 0;
+        private int eventCount = 0;
+        private long firstRecordEventId = -1L;
+        private long minEventTime = Long.MAX_VALUE;
+        private long maxEventTime = Long.MIN_VALUE;
+
+        BlockBuilder(final long firstEventId, final boolean dictionaryEncoded) {
+            this.firstEventId = firstEventId;
+            this.dictionaryEncoded = dictionaryEncoded;
+        }
+
+        long getFirstEventId() {
+            return firstEventId;
+        }
+
+        DataOutputStream getDataOutputStream() {
+            return dataOutputStream;
+        }
+
+        int size() {
+            return buffer.size() + recordsSize;
+        }
+
+        boolean isDictionaryEncoded() {
+            return dictionaryEncoded;
+        }
+
+        /**
+         * @return the id of the first record written to the block, or -1 if none has been
+         */
+        long getFirstRecordEventId() {
+            return firstRecordEventId;
+        }
+
+        int getEventCount() {
+            return eventCount;
+        }
+
+        long getMinEventTime() {
+            return minEventTime;
+        }
+
+        long getMaxEventTime() {
+            return maxEventTime;
+        }
+
+        void write(final EncodedRecord record) {
+            eventCount++;
+            if (firstRecordEventId < 0L) {
+                firstRecordEventId = record.getEventId();
+            }
+            minEventTime = Math.min(minEventTime, record.getEventTime());
+            maxEventTime = Math.max(maxEventTime, record.getEventTime());
+
+            if (record.getBytes() == null) {
+                records.add(record.getRecord());
+                recordsSize += record.getSize();
+            } else {
+                buffer.write(record.getBytes(), 0, record.getBytes().length);
+            }
+        }
+
+        EncodedBlock encode(final EventFileCodec codec) throws IOException {
+            final byte[] uncompressed;
+            final int uncompressedLength;
+            if (dictionaryEncoded) {
+                // the buffer holds nothing but the header of the file, if this is the first block
+                uncompressed = DictionaryRecordCodec.encodeBlock(buffer.getBuffer(), buffer.size(), records);
+                uncompressedLength = uncompressed.length;
+            } else {
+                uncompressed = buffer.getBuffer();
+                uncompressedLength = buffer.size();
+            }
+
+            if (codec == null) {
+                return new EncodedBlock(uncompressed.length == uncompressedLength ? uncompressed : Arrays.copyOf(uncompressed, uncompressedLength), uncompressedLength);
+            }
+            return new EncodedBlock(codec.compress(uncompressed, 0, uncompressedLength), uncompressedLength);
+        }
+    }
+
+    /**
+     * The data of a block as it is to be written to the merged file
+     */
+    private static class EncodedBlock {
+        private final byte[] data;
+        private final int uncompressedLength;
+
+        EncodedBlock(final byte[] data, final int uncompressedLength) {
+            this.data = data;
+            this.uncompressedLength = uncompressedLength;
+        }
+
+        byte[] getData() {
+            return data;
+        }
+
+        int getUncompressedLength() {
+            return uncompressedLength;
+        }
+    }
+
+    private static class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+        ExposedByteArrayOutputStream(final int initialSize) {
+            super(initialSize);
+        }
+
+        byte[] getBuffer() {
+            return buf;
+        }
+    }
+
+    /**
+     * Serializes records exactly as the NiFi schema record writer does, but into a byte array rather than into a file
+     */
+    private static class MergedRecordEncoder extends ByteArraySchemaRecordWriter {
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+        private final DataOutputStream dataOutputStream = new DataOutputStream(buffer);
+
+        MergedRecordEncoder() throws IOException {
+            super(new NullOutputStream(), null, false, 0);
+        }
+
+        byte[] encode(final ProvenanceEventRecord record, final long eventId) throws IOException {
+            buffer.reset();
+            writeRecord(record, eventId, dataOutputStream);
+            dataOutputStream.flush();
+            return buffer.toByteArray();
+        }
+    }
+
+    /**
+     * A record that has been read ahead: either its serialized bytes or, if it is to be dictionary encoded, the record itself
+     * along with an estimate of its size
+     */
+    private static class EncodedRecord {
+        private final long eventId;
+        private final long eventTime;
+        private final String componentId;
+        private final byte[] bytes;
+        private final ProvenanceEventRecord record;
+        private final int size;
+        private final long[] indexTerms;
+
+        EncodedRecord(final long eventId, final long eventTime, final String componentId, final byte[] bytes, final ProvenanceEventRecord record, final int size,
+                      final long[] indexTerms) {
+            this.eventId = eventId;
+            this.eventTime = eventTime;
+            this.componentId = componentId;
+            this.bytes = bytes;
+            this.record = record;
+            this.size = size;
+            this.indexTerms = indexTerms;
+        }
+
+        long getEventId() {
+            return eventId;
+        }
+
+        long getEventTime() {
+            return eventTime;
+        }
+
+        String getComponentId() {
+            return componentId;
+        }
+
+        byte[] getBytes() {
+            return bytes;
+        }
+
+        ProvenanceEventRecord getRecord() {
+            return record;
+        }
+
+        int getSize() {
+            return size;
+        }
+
+        long[] getIndexTerms() {
+            return indexTerms;
+        }
+    }
+
+    private static class PendingBlock {
+        private final long firstEventId;
+        private final long firstRecordEventId;
+        private final int eventCount;
+        private final long minEventTime;
+        private final long maxEventTime;
+        private final Future<EncodedBlock> data;
+
+        PendingBlock(final BlockBuilder block, final Future<EncodedBlock> data) {
+            this.firstEventId = block.getFirstEventId();
+            this.firstRecordEventId = block.getFirstRecordEventId();
+            this.eventCount = block.getEventCount();
+            this.minEventTime = block.getMinEventTime();
+            this.maxEventTime = block.getMaxEventTime();
+            this.data = data;
+        }
+
+        long getFirstEventId() {
+            return firstEventId;
+        }
+
+        long getFirstRecordEventId() {
+            return firstRecordEventId;
+        }
+
+        int getEventCount() {
+            return eventCount;
+        }
+
+        long getMinEventTime() {
+            return minEventTime;
+        }
+
+        long getMaxEventTime() {
+            return maxEventTime;
+        }
+
+        Future<EncodedBlock> getData() {
+            return data;
+        }
+    }
+
+    private static class ReadAheadState {
+        private volatile boolean cancelled = false;
+
+        void cancel() {
+            cancelled = true;
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+    }
+}
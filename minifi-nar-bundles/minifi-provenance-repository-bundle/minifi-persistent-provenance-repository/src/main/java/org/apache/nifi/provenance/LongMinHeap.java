@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import java.util.NoSuchElementException;
+
+/**
+ * <p>
+ * A binary min-heap of primitive <code>long</code> keys, each of which carries an <code>int</code> value. This is used to pick
+ * the journal holding the next lowest event id when merging journals: unlike a sorted map of records, neither adding nor
+ * replacing an entry allocates, and replacing the smallest key costs a single sift.
+ * </p>
+ * <p>
+ * This class is not thread-safe.
+ * </p>
+ */
+class LongMinHeap {
+
+    private long[] keys;
+    private int[] values;
+    private int size = 0;
+
+    LongMinHeap(final int initialCapacity) {
+        final int capacity = Math.max(1, initialCapacity);
+        this.keys = new long[capacity];
+        this.values = new int[capacity];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Adds the given key and value to the heap
+     *
+     * @param key the key to order by
+     * @param value the value associated with the key
+     */
+    void add(final long key, final int value) {
+        if (size == keys.length) {
+            final int newCapacity = keys.length * 2;
+            final long[] newKeys = new long[newCapacity];
+            final int[] newValues = new int[newCapacity];
+            System.arraycopy(keys, 0, newKeys, 0, size);
+            System.arraycopy(values, 0, newValues, 0, size);
+            keys = newKeys;
+            values = newValues;
+        }
+
+        keys[size] = key;
+        values[size] = value;
+        siftUp(size);
+        size++;
+    }
+
+    /**
+     * @return the smallest key in the heap
+     */
+    long peekKey() {
+        ensureNotEmpty();
+        return keys[0];
+    }
+
+    /**
+     * @return the value associated with the smallest key in the heap
+     */
+    int peekValue() {
+        ensureNotEmpty();
+        return values[0];
+    }
+
+    /**
+     * Removes the entry with the smallest key
+     *
+     * @return the value that was associated with the smallest key
+     */
+    int poll() {
+        ensureNotEmpty();
+        final int value = values[0];
+        size--;
+        if (size > 0) {
+            keys[0] = keys[size];
+            values[0] = values[size];
+            siftDown(0);
+        }
+        return value;
+    }
+
+    /**
+     * Replaces the smallest key with the given key, keeping its value. This is equivalent to, but cheaper than, a call to
+     * {@link #poll()} followed by a call to {@link #add(long, int)} with the same value.
+     *
+     * @param key the new key for the entry that currently has the smallest key
+     */
+    void replaceMinKey(final long key) {
+        ensureNotEmpty();
+        keys[0] = key;
+        siftDown(0);
+    }
+
+    private void ensureNotEmpty() {
+        if (size == 0) {
+            throw new NoSuchElementException("Heap is empty");
+        }
+    }
+
+    private void siftUp(final int index) {
+        final long key = keys[index];
+        final int value = values[index];
+
+        int child = index;
+        while (child > 0) {
+            final int parent = (child - 1) >>> 1;
+            if (keys[parent] <= key) {
+                break;
+            }
+            keys[child] = keys[parent];
+            values[child] = values[parent];
+            child = parent;
+        }
+
+        keys[child] = key;
+        values[child] = value;
+    }
+
+    private void siftDown(final int index) {
+        final long key = keys[index];
+        final int value = values[index];
+
+        int parent = index;
+        final int half = size >>> 1;
+        while (parent < half) {
+            int child = 2 * parent + 1;
+            final int right = child + 1;
+            if (right < size && keys[right] < keys[child]) {
+                child = right;
+            }
+            if (key <= keys[child]) {
+                break;
+            }
+            keys[parent] = keys[child];
+            values[parent] = values[child];
+            parent = child;
+        }
+
+        keys[parent] = key;
+        values[parent] = value;
+    }
+}
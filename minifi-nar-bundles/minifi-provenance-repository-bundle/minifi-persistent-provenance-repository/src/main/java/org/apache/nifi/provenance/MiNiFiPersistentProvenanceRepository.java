@@ -20,19 +20,22 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.nifi.authorization.Authorizer;
 import org.apache.nifi.authorization.user.NiFiUser;
 import org.apache.nifi.events.EventReporter;
+import org.apache.nifi.minifi.provenance.ProvenanceRepositoryMetrics;
+import org.apache.nifi.minifi.provenance.ProvenanceRepositoryMetricsProvider;
 import org.apache.nifi.processor.DataUnit;
+import org.apache.nifi.provenance.compression.EventFileCodec;
+import org.apache.nifi.provenance.compression.EventFileCodecs;
 import org.apache.nifi.provenance.expiration.ExpirationAction;
 import org.apache.nifi.provenance.expiration.FileRemovalAction;
 import org.apache.nifi.provenance.lineage.ComputeLineageSubmission;
+import org.apache.nifi.provenance.lineage.LineageComputationType;
 import org.apache.nifi.provenance.search.Query;
 import org.apache.nifi.provenance.search.QuerySubmission;
+import org.apache.nifi.provenance.search.SearchTerm;
 import org.apache.nifi.provenance.search.SearchableField;
 import org.apache.nifi.provenance.serialization.RecordReader;
-import org.apache.nifi.provenance.serialization.RecordReaders;
 import org.apache.nifi.provenance.serialization.RecordWriter;
-import org.apache.nifi.provenance.serialization.RecordWriters;
 import org.apache.nifi.provenance.toc.TocReader;
-import org.apache.nifi.provenance.toc.TocUtil;
 import org.apache.nifi.reporting.Severity;
 import org.apache.nifi.util.FormatUtils;
 import org.apache.nifi.util.NiFiProperties;
@@ -45,22 +48,38 @@ import java.io.File;
 import java.io.FileFilter;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Date;
+import java.util.EnumSet;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
@@ -70,25 +89,74 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
 import java.util.regex.Pattern;
 
 import static org.apache.nifi.provenance.toc.TocUtil.getTocFile;
 
 
 // TODO: When API, FlowController, and supporting classes are refactored/reimplemented migrate this class and its accompanying imports to minifi package structure
-public class MiNiFiPersistentProvenanceRepository implements ProvenanceRepository {
+public class MiNiFiPersistentProvenanceRepository implements StreamingProvenanceRepository, ProvenanceRepositoryMetricsProvider {
 
     public static final String EVENT_CATEGORY = "Provenance Repository";
     private static final String FILE_EXTENSION = ".prov";
     private static final String TEMP_FILE_SUFFIX = ".prov.part";
     private static final long PURGE_EVENT_MILLISECONDS = 2500L; //Determines the frequency over which the task to delete old events will occur
+    private static final long TIERING_CHECK_MILLISECONDS = 10000L;
     public static final int SERIALIZATION_VERSION = 8;
     public static final Pattern NUMBER_PATTERN = Pattern.compile("\\d+");
 
+    public static final String INGEST_RING_SIZE = "nifi.provenance.repository.ingest.ring.size";
+    public static final String INGEST_WRITER_THREADS = "nifi.provenance.repository.ingest.writer.threads";
+    public static final String INGEST_ASYNC = "nifi.provenance.repository.ingest.async";
+    public static final String INGEST_OVERLOAD_POLICY = "nifi.provenance.repository.ingest.overload.policy";
+    public static final String INGEST_SPILL_MAX_SIZE = "nifi.provenance.repository.ingest.spill.max.size";
+    public static final String GROUP_COMMIT_WINDOW = "nifi.provenance.repository.group.commit.window";
+    public static final String GROUP_COMMIT_MAX_EVENTS = "nifi.provenance.repository.group.commit.max.events";
+    public static final String MERGE_THREADS = "nifi.provenance.repository.merge.threads";
+    public static final String MERGE_CONCURRENCY = "nifi.provenance.repository.merge.concurrency";
+    public static final String COMPRESSION_CODEC = "nifi.provenance.repository.compression.codec";
+    public static final String BLOCK_CACHE_SIZE = "nifi.provenance.repository.block.cache.size";
+    public static final String DICTIONARY_ENCODING_ENABLED = "nifi.provenance.repository.dictionary.encoding.enabled";
+    public static final String QUERY_INDEX_ENABLED = "nifi.provenance.repository.query.index.enabled";
+    public static final String QUERY_INDEX_MAX_STORAGE_SIZE = "nifi.provenance.repository.query.index.max.storage.size";
+    public static final String QUERY_INDEX_MAX_HEAP_SIZE = "nifi.provenance.repository.query.index.max.heap.size";
+    public static final String ADMISSION_ALLOWED_EVENT_TYPES = "nifi.provenance.repository.admission.allowed.event.types";
+    public static final String ADMISSION_DENIED_EVENT_TYPES = "nifi.provenance.repository.admission.denied.event.types";
+    public static final String ADMISSION_ALLOWED_COMPONENT_IDS = "nifi.provenance.repository.admission.allowed.component.ids";
+    public static final String ADMISSION_DENIED_COMPONENT_IDS = "nifi.provenance.repository.admission.denied.component.ids";
+    public static final String ADMISSION_SAMPLING_PERCENTAGE = "nifi.provenance.repository.admission.sampling.percentage";
+    public static final String PLACEMENT_STRATEGY = "nifi.provenance.repository.placement.strategy";
+    public static final String PLACEMENT_MIN_USABLE_SPACE = "nifi.provenance.repository.placement.min.usable.space";
+    public static final String TIERING_RECOMPRESS_AFTER = "nifi.provenance.repository.tiering.recompress.after";
+    public static final String TIERING_COMPACT_AFTER = "nifi.provenance.repository.tiering.compact.after";
+    public static final String TIERING_CODEC = "nifi.provenance.repository.tiering.codec";
+    public static final String TIERING_RETAINED_ATTRIBUTES = "nifi.provenance.repository.tiering.retained.attributes";
+    public static final String TIERING_THREADS = "nifi.provenance.repository.tiering.threads";
+    public static final String TIERING_MAX_IO_RATE = "nifi.provenance.repository.tiering.max.io.rate";
+    public static final String JOURNAL_COUNT_MIN = "nifi.provenance.repository.journal.count.min";
+    public static final String JOURNAL_COUNT_MAX = "nifi.provenance.repository.journal.count.max";
+    public static final String JOURNAL_DIRECTORY_PREFIX = "nifi.provenance.repository.journal.directory.";
+    public static final String QUOTA_PREFIX = "nifi.provenance.repository.quota.";
+    public static final String QUOTA_COMPONENT_IDS_SUFFIX = ".component.ids";
+    public static final String QUOTA_MAX_STORAGE_SIZE_SUFFIX = ".max.storage.size";
+
+    private static final int MAX_INGEST_DRAIN_BATCH = 64;
+    private static final long NO_EVENT_ID = Long.MIN_VALUE;
+    private static final int MAX_LINEAGE_EVENTS = 10000;
+    private static final String INGEST_SPILL_DIRECTORY = "spill";
+    private static final String INGEST_SPILL_FILENAME = "ingest.spill";
+    private static final String MERGE_QUEUE_DIRECTORY = "merges";
+    private static final String MERGE_QUEUE_FILENAME = "merge.queue";
+    private static final long DROPPED_EVENTS_WARNING_MILLISECONDS = 10000L;
+
 
     private static final Logger logger = LoggerFactory.getLogger(MiNiFiPersistentProvenanceRepository.class);
 
@@ -96,8 +164,15 @@ public class MiNiFiPersistentProvenanceRepository implements ProvenanceRepositor
     private final long maxPartitionBytes;
 
     private final AtomicLong idGenerator = new AtomicLong(0L);
-    private final AtomicReference<SortedMap<Long, Path>> idToPathMap = new AtomicReference<>();
+    private final AtomicReference<EventFileIndex> eventFileIndex = new AtomicReference<>(EventFileIndex.EMPTY);
+    private final EventFileLedger eventFileLedger;
+    // the time index of each Provenance Event Log File that has one, keyed by the id of the first event in the file
+    private final ConcurrentMap<Long, EventTimeIndex> timeIndices = new ConcurrentHashMap<>();
+    // the id of the last event in the newest Provenance Event Log File, which bounds the last block that it exports; the ids
+    // of all other files are bounded by the first id of the file that follows them
+    private final ConcurrentMap<Long, Long> newestFileLastEventIds = new ConcurrentHashMap<>();
     private final AtomicBoolean recoveryFinished = new AtomicBoolean(false);
+    private final CountDownLatch recoveryLatch = new CountDownLatch(1);
 
     private final AtomicBoolean closed = new AtomicBoolean(false);
     private volatile long firstEventTimestamp = 0L;
@@ -110,18 +185,43 @@ public class MiNiFiPersistentProvenanceRepository implements ProvenanceRepositor
     private RecordWriter[] writers; // guarded by readLock/writeLock
 
     private final AtomicLong streamStartTime = new AtomicLong(System.currentTimeMillis());
-    private final RepositoryConfiguration configuration;
+    private final MiNiFiRepositoryConfiguration configuration;
     private final boolean alwaysSync;
     private final int rolloverCheckMillis;
     private final int maxAttributeChars;
 
     private final ScheduledExecutorService scheduledExecService;
     private final ScheduledExecutorService rolloverExecutor;
+    private final ExecutorService mergeReadAheadExecutor;
+    private final ExecutorService mergeCompressionExecutor;
+    private final JournalMerger journalMerger;
+    private final JournalMergeQueue mergeQueue;
+    private final JournalMergeScheduler mergeScheduler;
+    private final EventFileCodec compressionCodec;
+    private final EventFileBlockCache blockCache;
+    private final ProvenanceAdmissionPolicy admissionPolicy;
+    private final StoragePlacementPolicy placementPolicy;
+    private final StoragePlacementPolicy journalPlacementPolicy;
+    private final List<File> journalStorageDirectories;
+    private final JournalCountPolicy journalCountPolicy;
+    private final ComponentQuotas componentQuotas;
+    private final EventIndex eventIndex;
+    private final EventSearcher eventSearcher;
+    private final ExecutorService queryExecutor;
+    private final ConcurrentMap<String, AsyncQuerySubmission> querySubmissions = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AsyncLineageSubmission> lineageSubmissions = new ConcurrentHashMap<>();
+    private final EventFileTierer eventFileTierer;
+    private final ExecutorService tieringExecutor;
+    private final Set<File> tieringInProgress = Collections.newSetFromMap(new ConcurrentHashMap<File, Boolean>());
+    private final Set<File> untierableFiles = Collections.newSetFromMap(new ConcurrentHashMap<File, Boolean>());
+
+    // Readers of event files hold the read lock while a file is open, so that a file that is being rewritten is never read
+    // along with the Table of Contents of its replacement
+    private final ReadWriteLock eventFileReplaceLock = new ReentrantReadWriteLock();
 
     private final List<ExpirationAction> expirationActions = new ArrayList<>();
 
     private final AtomicLong writerIndex = new AtomicLong(0L);
-    private final AtomicLong storageDirectoryIndex = new AtomicLong(0L);
     private final AtomicLong bytesWrittenSinceRollover = new AtomicLong(0L);
     private final AtomicInteger recordsWrittenSinceRollover = new AtomicInteger(0);
     private final AtomicInteger rolloverCompletions = new AtomicInteger(0);
@@ -131,8 +231,48 @@ public class MiNiFiPersistentProvenanceRepository implements ProvenanceRepositor
 
     private EventReporter eventReporter;
 
-    private final Lock idLock = new ReentrantLock();
-    private Long maxId = null;
+    private final AtomicLong maxEventId = new AtomicLong(NO_EVENT_ID);
+
+    // Events are handed off to a ring buffer that is drained into the journals by a small set of writer threads,
+    // rather than having every registering thread compete for a journal. Null if the ring buffer is disabled.
+    private final ProvenanceEventRingBuffer<PendingEvents> ingestRing;
+    private final List<Thread> journalWriterThreads = new CopyOnWriteArrayList<>();
+
+    // When ingest is asynchronous, registering threads do not wait for their events to be written, and the overload
+    // policy decides what happens to events that arrive while the ring buffer is full. The spill queue is null unless
+    // the overload policy is to spill.
+    private final boolean ingestAsync;
+    private final IngestOverloadPolicy ingestOverloadPolicy;
+    private final IngestSpillQueue ingestSpillQueue;
+    private final LongAdder eventsDropped = new LongAdder();
+    private final LongAdder eventsSpilled = new LongAdder();
+    private final AtomicLong lastDroppedEventsWarning = new AtomicLong(0L);
+
+    // when always.sync is enabled, the journal writer threads collect the events of many producers into a single fsync
+    private final long groupCommitWindowNanos;
+    private final Histogram journalSyncHistogram = new Histogram("Journal Sync", "micros");
+    private final Histogram groupCommitBatchSizeHistogram = new Histogram("Group Commit Batch Size", "events");
+
+    // The journal files that have been created but not yet merged and removed. Backpressure is based on the number of
+    // these, so they are tracked here rather than by listing the journals directories. Whenever journals are removed,
+    // the journalsMerged condition is signaled so that a rollover that is applying backpressure can re-evaluate.
+    private final Set<File> unmergedJournals = Collections.newSetFromMap(new ConcurrentHashMap<File, Boolean>());
+    private final Lock journalMergeLock = new ReentrantLock();
+    private final Condition journalsMerged = journalMergeLock.newCondition();
+    private final AtomicLong journalMergeCount = new AtomicLong(0L);
+    private final Histogram backpressureHistogram = new Histogram("Backpressure Throttle Time", "millis");
+
+    // the remaining metrics that are reported by getMetrics; each costs no more than a few uncontended atomic updates per write
+    private final RateMeter eventsWrittenMeter = new RateMeter();
+    private final RateMeter bytesWrittenMeter = new RateMeter();
+    private final Histogram persistLatencyHistogram = new Histogram("Persist Latency", "micros");
+    private final LongAdder lockRetries = new LongAdder();
+    private final Histogram mergeDurationHistogram = new Histogram("Merge Duration", "millis");
+    private final AtomicLong mergedJournalBytes = new AtomicLong(0L);
+    private final AtomicLong mergedEventFileBytes = new AtomicLong(0L);
+    private final AtomicLong mergeNanos = new AtomicLong(0L);
+    private final Histogram purgeDurationHistogram = new Histogram("Purge Duration", "millis");
+    private final AtomicLong filesPurged = new AtomicLong(0L);
 
     public MiNiFiPersistentProvenanceRepository() throws IOException {
         maxPartitionMillis = 0;
@@ -144,7 +284,31 @@ public class MiNiFiPersistentProvenanceRepository implements ProvenanceRepositor
         maxAttributeChars = 0;
         scheduledExecService = null;
         rolloverExecutor = null;
+        mergeReadAheadExecutor = null;
+        mergeCompressionExecutor = null;
+        journalMerger = null;
+        mergeQueue = null;
+        mergeScheduler = null;
+        compressionCodec = null;
+        blockCache = null;
+        admissionPolicy = null;
+        placementPolicy = null;
+        journalPlacementPolicy = null;
+        journalStorageDirectories = null;
+        journalCountPolicy = null;
+        componentQuotas = ComponentQuotas.none();
+        eventFileLedger = new EventFileLedger();
+        eventIndex = null;
+        eventSearcher = null;
+        queryExecutor = null;
+        eventFileTierer = null;
+        tieringExecutor = null;
         eventReporter = null;
+        ingestRing = null;
+        ingestAsync = false;
+        ingestOverloadPolicy = null;
+        ingestSpillQueue = null;
+        groupCommitWindowNanos = 0L;
     }
 
     public MiNiFiPersistentProvenanceRepository(final NiFiProperties nifiProperties) throws IOException {
@@ -156,10 +320,16 @@ public class MiNiFiPersistentProvenanceRepository implements ProvenanceRepositor
             throw new IllegalArgumentException("Must specify at least one storage directory");
         }
 
-        this.configuration = configuration;
+        this.configuration = MiNiFiRepositoryConfiguration.of(configuration);
         this.maxAttributeChars = configuration.getMaxAttributeChars();
 
-        for (final File file : configuration.getStorageDirectories()) {
+        // Journals are written to their own directories when any are configured, so that they can be kept on a fast disk
+        // while the merged files, which are far larger and rarely read, are kept on a slower one. Otherwise they are written
+        // to the storage directories alongside the merged files.
+        final List<File> configuredJournalDirectories = this.configuration.getJournalDirectories();
+        journalStorageDirectories = configuredJournalDirectories.isEmpty() ? configuration.getStorageDirectories() : configuredJournalDirectories;
+
+        for (final File file : journalStorageDirectories) {
             final Path storageDirectory = file.toPath();
             final Path journalDirectory = storageDirectory.resolve("journals");
 
@@ -170,10 +340,21 @@ public class MiNiFiPersistentProvenanceRepository implements ProvenanceRepositor
             }
         }
 
+        // the merged files are written directly to the storage directories, which hold no journals if journals have their own
+        for (final File file : configuration.getStorageDirectories()) {
+            final Path storageDirectory = file.toPath();
+            if (!Files.exists(storageDirectory)) {
+                Files.createDirectories(storageDirectory);
+            } else if (!Files.isDirectory(storageDirectory)) {
+                throw new IllegalArgumentException("Storage Location " + storageDirectory + " is not a directory");
+            }
+        }
+
         this.maxPartitionMillis = configuration.getMaxEventFileLife(TimeUnit.MILLISECONDS);
         this.maxPartitionBytes = configuration.getMaxEventFileCapacity();
         this.alwaysSync = configuration.isAlwaysSync();
         this.rolloverCheckMillis = rolloverCheckMillis;
+        this.groupCommitWindowNanos = this.configuration.getGroupCommitWindow(TimeUnit.NANOSECONDS);
 
         scheduledExecService = Executors.newScheduledThreadPool(3, new NamedThreadFactory("Provenance Maintenance Thread"));
 
@@ -182,7 +363,122 @@ public class MiNiFiPersistentProvenanceRepository implements ProvenanceRepositor
         // disks efficiently. However, the rollover actions can be somewhat CPU intensive, so we double the number of threads in order
         // to account for that.
         final int numRolloverThreads = configuration.getStorageDirectories().size() * 2;
-        rolloverExecutor = Executors.newScheduledThreadPool(numRolloverThreads, new NamedThreadFactory("Provenance Repository Rollover Thread"));
+
+        // Merges run on the rollover threads, oldest generation first, within a budget so that merging leaves CPU and disk
+        // bandwidth to the flow. The sets of journals that are still to be merged are queued on disk for the next restart.
+        final int mergeConcurrency = this.configuration.getMergeConcurrency() > 0 ? this.configuration.getMergeConcurrency()
+            : Math.min(Runtime.getRuntime().availableProcessors(), numRolloverThreads);
+        rolloverExecutor = Executors.newScheduledThreadPool(Math.max(numRolloverThreads, mergeConcurrency), new NamedThreadFactory("Provenance Repository Rollover Thread"));
+        mergeQueue = new JournalMergeQueue(new File(new File(getFirstStorageDirectory(), MERGE_QUEUE_DIRECTORY), MERGE_QUEUE_FILENAME));
+        mergeScheduler = new JournalMergeScheduler(rolloverExecutor, mergeQueue, mergeConcurrency, JournalMergeScheduler.DEFAULT_INITIAL_BACKOFF_MILLIS,
+            JournalMergeScheduler.DEFAULT_MAX_BACKOFF_MILLIS, TimeUnit.MILLISECONDS);
+
+        // Each journal being merged is read ahead by its own thread, while the blocks of the merged file are compressed by a
+        // separate, bounded pool. Both are shared by all of the rollover threads.
+        final int numMergeThreads = Math.max(1, this.configuration.getMergeThreads());
+        mergeReadAheadExecutor = Executors.newCachedThreadPool(new NamedThreadFactory("Provenance Journal Merge Read-Ahead Thread"));
+        mergeCompressionExecutor = Executors.newFixedThreadPool(numMergeThreads, new NamedThreadFactory("Provenance Journal Merge Compression Thread"));
+        journalMerger = new JournalMerger(mergeReadAheadExecutor, mergeCompressionExecutor, numMergeThreads, JournalMerger.DEFAULT_BLOCK_SIZE,
+            this.configuration.isDictionaryEncodingEnabled());
+        compressionCodec = EventFileCodecs.forName(this.configuration.getCompressionCodec());
+
+        // getEvents is polled by the provenance reporting task, so keep the blocks that it reads decoded rather than reopening each file
+        final long blockCacheSize = this.configuration.getBlockCacheSize();
+        blockCache = blockCacheSize > 0 ? new EventFileBlockCache(blockCacheSize, maxAttributeChars, new EventReporter() {
+            @Override
+            public void reportEvent(final Severity severity, final String category, final String message) {
+                // the reporter is only known once the repository has been initialized
+                final EventReporter reporter = eventReporter;
+                if (reporter != null) {
+                    reporter.reportEvent(severity, category, message);
+                }
+            }
+        }) : null;
+
+        admissionPolicy = new ProvenanceAdmissionPolicy(this.configuration.getAdmissionAllowedEventTypes(), this.configuration.getAdmissionDeniedEventTypes(),
+            this.configuration.getAdmissionAllowedComponentIds(), this.configuration.getAdmissionDeniedComponentIds(), this.configuration.getAdmissionSamplingPercentage());
+        if (!admissionPolicy.isAdmitAll()) {
+            logger.info("Provenance Events will be filtered by {}", admissionPolicy);
+        }
+
+        // journals and merged files are spread across the storage directories, optionally favoring the faster and emptier ones
+        placementPolicy = new StoragePlacementPolicy(configuration.getStorageDirectories(),
+            StoragePlacementPolicy.Strategy.forName(this.configuration.getPlacementStrategy()), this.configuration.getPlacementMinUsableSpace());
+        if (configuredJournalDirectories.isEmpty()) {
+            journalPlacementPolicy = placementPolicy;
+            if (placementPolicy.getStrategy() != StoragePlacementPolicy.Strategy.ROUND_ROBIN) {
+                logger.info("Provenance journals and event files will be placed by {}", placementPolicy);
+            }
+        } else {
+            journalPlacementPolicy = new StoragePlacementPolicy(configuredJournalDirectories,
+                StoragePlacementPolicy.Strategy.forName(this.configuration.getPlacementStrategy()), this.configuration.getPlacementMinUsableSpace());
+            logger.info("Provenance journals will be placed by {} and event files by {}", journalPlacementPolicy, placementPolicy);
+        }
+
+        // a journal that is mostly empty at rollover costs a file handle and merge work; one that writers wait on costs throughput
+        journalCountPolicy = new JournalCountPolicy(configuration.getJournalCount(), this.configuration.getMinJournalCount(), this.configuration.getMaxJournalCount(),
+            configuration.getMaxEventFileCapacity() / this.configuration.getMaxJournalCount());
+        if (journalCountPolicy.isAdaptive()) {
+            logger.info("The number of Provenance journals will be adjusted at each rollover by {}", journalCountPolicy);
+        }
+
+        // a chatty component should not be able to push the events of the rest of the flow out of the repository
+        componentQuotas = new ComponentQuotas(this.configuration.getComponentQuotaComponentIds(), this.configuration.getComponentQuotaMaxSizes());
+        eventFileLedger = new EventFileLedger(componentQuotas.size());
+        if (!componentQuotas.isEmpty()) {
+            logger.info("Provenance Events will be aged off ahead of the rest when their components exceed {}", componentQuotas);
+        }
+
+        // the query index is optional because it costs disk space and merge time that many edge devices cannot spare
+        if (this.configuration.isQueryIndexEnabled()) {
+            eventIndex = new EventIndex(this.configuration.getQueryIndexMaxStorageSize(), this.configuration.getQueryIndexMaxHeapSize());
+            eventSearcher = new EventSearcher(eventIndex, new EventSearcher.EventSource() {
+                @Override
+                public List<Path> getEventFiles() {
+                    return eventFileIndex.get().getPaths();
+                }
+
+                @Override
+                public void readEvents(final Path path, final long firstEventId, final int maxEvents, final List<ProvenanceEventRecord> events) throws IOException {
+                    readEventsFromFile(path, firstEventId, maxEvents, events);
+                }
+            });
+            queryExecutor = Executors.newSingleThreadExecutor(new NamedThreadFactory("Provenance Query Thread"));
+        } else {
+            eventIndex = null;
+            eventSearcher = null;
+            queryExecutor = null;
+        }
+
+        // aging files are rewritten to take up less space, in the background and within a budget so that the journals keep the disk
+        if (this.configuration.isTieringEnabled()) {
+            final IoThrottle ioThrottle = new IoThrottle(this.configuration.getTieringMaxIoRate());
+            eventFileTierer = new EventFileTierer(journalMerger, EventFileCodecs.forName(this.configuration.getTieringCodec()),
+                this.configuration.getTieringRecompressAfter(TimeUnit.MILLISECONDS), this.configuration.getTieringCompactAfter(TimeUnit.MILLISECONDS),
+                this.configuration.getTieringRetainedAttributes(), ioThrottle, maxAttributeChars);
+            tieringExecutor = Executors.newFixedThreadPool(Math.max(1, this.configuration.getTieringThreads()), new NamedThreadFactory("Provenance Tiering Thread"));
+            logger.info("Aging Provenance Event files will be rewritten by {}", eventFileTierer);
+        } else {
+            eventFileTierer = null;
+            tieringExecutor = null;
+        }
+
+        ingestRing = this.configuration.getIngestWriterThreads() > 0 ? new ProvenanceEventRingBuffer<PendingEvents>(this.configuration.getIngestRingSize()) : null;
+
+        ingestOverloadPolicy = IngestOverloadPolicy.forName(this.configuration.getIngestOverloadPolicy());
+        if (this.configuration.isIngestAsync() && ingestRing == null) {
+            logger.warn("Asynchronous Provenance ingest requires at least one journal writer thread; events will be written by the threads that register them");
+        }
+        ingestAsync = this.configuration.isIngestAsync() && ingestRing != null;
+        if (ingestAsync && ingestOverloadPolicy == IngestOverloadPolicy.SPILL) {
+            ingestSpillQueue = new IngestSpillQueue(getIngestSpillFile(), this.configuration.getIngestSpillMaxSize(), maxAttributeChars);
+        } else {
+            ingestSpillQueue = null;
+        }
+        if (ingestAsync) {
+            logger.info("Provenance Events will be registered asynchronously; when the ingest ring buffer is full, events will be handled by the '{}' policy",
+                ingestOverloadPolicy.getName());
+        }
     }
 
     @Override
@@ -199,8 +495,34 @@ public class MiNiFiPersistentProvenanceRepository implements ProvenanceRepositor
 
             if (configuration.isAllowRollover()) {
                 writers = createWriters(configuration, idGenerator.get());
+                addUnmergedJournals(writers);
+
+                // events that were spilled before a restart are written by the journal writer threads if we still spill,
+                // and otherwise have to be written now, as nothing else will ever read the spill file
+                final File spillFile = getIngestSpillFile();
+                if (ingestSpillQueue == null && spillFile.exists()) {
+                    replaySpillFile(spillFile);
+                }
             }
 
+            if (ingestRing != null) {
+                final ThreadFactory threadFactory = new NamedThreadFactory("Provenance Journal Writer Thread");
+                for (int i = 0; i < configuration.getIngestWriterThreads(); i++) {
+                    final Thread writerThread = threadFactory.newThread(new JournalWriterTask());
+                    writerThread.setDaemon(true);
+                    journalWriterThreads.add(writerThread);
+                    writerThread.start();
+                }
+            }
+
+            scheduledExecService.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    eventsWrittenMeter.tick();
+                    bytesWrittenMeter.tick();
+                }
+            }, RateMeter.TICK_INTERVAL_SECONDS, RateMeter.TICK_INTERVAL_SECONDS, TimeUnit.SECONDS);
+
             if (configuration.isAllowRollover()) {
                 scheduledExecService.scheduleWithFixedDelay(new Runnable() {
                     @Override
@@ -245,6 +567,15 @@ public class MiNiFiPersistentProvenanceRepository implements ProvenanceRepositor
                         }
                     }
                 }, PURGE_EVENT_MILLISECONDS, PURGE_EVENT_MILLISECONDS, TimeUnit.MILLISECONDS);
+
+                if (eventFileTierer != null) {
+                    scheduledExecService.scheduleWithFixedDelay(new Runnable() {
+                        @Override
+                        public void run() {
+                            tierEventFiles();
+                        }
+                    }, TIERING_CHECK_MILLISECONDS, TIERING_CHECK_MILLISECONDS, TimeUnit.MILLISECONDS);
+                }
             }
 
             firstEventTimestamp = determineFirstEventTimestamp();
@@ -253,7 +584,7 @@ public class MiNiFiPersistentProvenanceRepository implements ProvenanceRepositor
         }
     }
 
-    private static RepositoryConfiguration createRepositoryConfiguration(final NiFiProperties properties) throws IOException {
+    private static MiNiFiRepositoryConfiguration createRepositoryConfiguration(final NiFiProperties properties) throws IOException {
         final Map<String, Path> storageDirectories = properties.getProvenanceRepositoryPaths();
         if (storageDirectories.isEmpty()) {
             storageDirectories.put("provenance_repository", Paths.get("provenance_repository"));
@@ -274,22 +605,9 @@ public class MiNiFiPersistentProvenanceRepository implements ProvenanceRepositor
 
         final Boolean alwaysSync = Boolean.parseBoolean(properties.getProperty("nifi.provenance.repository.always.sync", "false"));
 
-        final int defaultMaxAttrChars = 65536;
-        final String maxAttrLength = properties.getProperty("nifi.provenance.repository.max.attribute.length", String.valueOf(defaultMaxAttrChars));
-        int maxAttrChars;
-        try {
-            maxAttrChars = Integer.parseInt(maxAttrLength);
-            // must be at least 36 characters because that's the length of the uuid attribute,
-            // which must be kept intact
-            if (maxAttrChars < 36) {
-                maxAttrChars = 36;
-                logger.warn("Found max attribute length property set to " + maxAttrLength + " but minimum length is 36; using 36 instead");
-            }
-        } catch (final Exception e) {
-            maxAttrChars = defaultMaxAttrChars;
-        }
+        final int maxAttrChars = parseMaxAttributeChars(properties);
 
-        final RepositoryConfiguration config = new RepositoryConfiguration();
+        final MiNiFiRepositoryConfiguration config = new MiNiFiRepositoryConfiguration();
         for (final Path path : storageDirectories.values()) {
             config.addStorageDirectory(path.toFile());
         }
@@ -299,28 +617,132 @@ public class MiNiFiPersistentProvenanceRepository implements ProvenanceRepositor
         config.setMaxRecordLife(storageMillis, TimeUnit.MILLISECONDS);
         config.setMaxStorageCapacity(maxStorageBytes);
         config.setJournalCount(journalCount);
+        config.setMinJournalCount(properties.getIntegerProperty(JOURNAL_COUNT_MIN, 0));
+        config.setMaxJournalCount(properties.getIntegerProperty(JOURNAL_COUNT_MAX, 0));
         config.setMaxAttributeChars(maxAttrChars);
 
+        // sorted so that the journal directories are used in the same order on every start
+        for (final String propertyKey : new TreeSet<>(properties.getPropertyKeys())) {
+            if (propertyKey.startsWith(JOURNAL_DIRECTORY_PREFIX)) {
+                config.addJournalDirectory(Paths.get(properties.getProperty(propertyKey).trim()).toFile());
+            } else if (propertyKey.startsWith(QUOTA_PREFIX) && propertyKey.endsWith(QUOTA_COMPONENT_IDS_SUFFIX)) {
+                final String quotaName = propertyKey.substring(QUOTA_PREFIX.length(), propertyKey.length() - QUOTA_COMPONENT_IDS_SUFFIX.length());
+                final String maxSize = properties.getProperty(QUOTA_PREFIX + quotaName + QUOTA_MAX_STORAGE_SIZE_SUFFIX);
+                if (StringUtils.isBlank(maxSize)) {
+                    throw new IllegalArgumentException("Provenance storage quota " + quotaName + " does not specify " + QUOTA_PREFIX + quotaName + QUOTA_MAX_STORAGE_SIZE_SUFFIX);
+                }
+                config.addComponentQuota(quotaName, parseList(properties.getProperty(propertyKey)), DataUnit.parseDataSize(maxSize.trim(), DataUnit.B).longValue());
+            }
+        }
+
         if (shardSize != null) {
             config.setDesiredIndexSize(DataUnit.parseDataSize(shardSize, DataUnit.B).longValue());
         }
 
         config.setAlwaysSync(alwaysSync);
+        config.setIngestRingSize(properties.getIntegerProperty(INGEST_RING_SIZE, MiNiFiRepositoryConfiguration.DEFAULT_INGEST_RING_SIZE));
+        config.setIngestWriterThreads(properties.getIntegerProperty(INGEST_WRITER_THREADS, MiNiFiRepositoryConfiguration.DEFAULT_INGEST_WRITER_THREADS));
+        config.setIngestAsync(Boolean.parseBoolean(properties.getProperty(INGEST_ASYNC, String.valueOf(MiNiFiRepositoryConfiguration.DEFAULT_INGEST_ASYNC))));
+        config.setIngestOverloadPolicy(properties.getProperty(INGEST_OVERLOAD_POLICY, MiNiFiRepositoryConfiguration.DEFAULT_INGEST_OVERLOAD_POLICY));
+        final String ingestSpillMaxSize = properties.getProperty(INGEST_SPILL_MAX_SIZE, MiNiFiRepositoryConfiguration.DEFAULT_INGEST_SPILL_MAX_SIZE);
+        config.setIngestSpillMaxSize(DataUnit.parseDataSize(ingestSpillMaxSize, DataUnit.B).longValue());
+
+        final String groupCommitWindow = properties.getProperty(GROUP_COMMIT_WINDOW, MiNiFiRepositoryConfiguration.DEFAULT_GROUP_COMMIT_WINDOW);
+        config.setGroupCommitWindow(FormatUtils.getTimeDuration(groupCommitWindow, TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+        config.setGroupCommitMaxEvents(properties.getIntegerProperty(GROUP_COMMIT_MAX_EVENTS, MiNiFiRepositoryConfiguration.DEFAULT_GROUP_COMMIT_MAX_EVENTS));
+        config.setMergeThreads(properties.getIntegerProperty(MERGE_THREADS, MiNiFiRepositoryConfiguration.DEFAULT_MERGE_THREADS));
+        config.setMergeConcurrency(properties.getIntegerProperty(MERGE_CONCURRENCY, 0));
+        config.setCompressionCodec(properties.getProperty(COMPRESSION_CODEC, MiNiFiRepositoryConfiguration.DEFAULT_COMPRESSION_CODEC));
+
+        final String blockCacheSize = properties.getProperty(BLOCK_CACHE_SIZE, MiNiFiRepositoryConfiguration.DEFAULT_BLOCK_CACHE_SIZE);
+        config.setBlockCacheSize(DataUnit.parseDataSize(blockCacheSize, DataUnit.B).longValue());
+        config.setDictionaryEncodingEnabled(Boolean.parseBoolean(properties.getProperty(DICTIONARY_ENCODING_ENABLED,
+            String.valueOf(MiNiFiRepositoryConfiguration.DEFAULT_DICTIONARY_ENCODING_ENABLED))));
+
+        config.setQueryIndexEnabled(Boolean.parseBoolean(properties.getProperty(QUERY_INDEX_ENABLED, String.valueOf(MiNiFiRepositoryConfiguration.DEFAULT_QUERY_INDEX_ENABLED))));
+        final String queryIndexMaxStorageSize = properties.getProperty(QUERY_INDEX_MAX_STORAGE_SIZE, MiNiFiRepositoryConfiguration.DEFAULT_QUERY_INDEX_MAX_STORAGE_SIZE);
+        config.setQueryIndexMaxStorageSize(DataUnit.parseDataSize(queryIndexMaxStorageSize, DataUnit.B).longValue());
+        final String queryIndexMaxHeapSize = properties.getProperty(QUERY_INDEX_MAX_HEAP_SIZE, MiNiFiRepositoryConfiguration.DEFAULT_QUERY_INDEX_MAX_HEAP_SIZE);
+        config.setQueryIndexMaxHeapSize(DataUnit.parseDataSize(queryIndexMaxHeapSize, DataUnit.B).longValue());
+
+        config.setAdmissionAllowedEventTypes(parseEventTypes(properties.getProperty(ADMISSION_ALLOWED_EVENT_TYPES)));
+        config.setAdmissionDeniedEventTypes(parseEventTypes(properties.getProperty(ADMISSION_DENIED_EVENT_TYPES)));
+        config.setAdmissionAllowedComponentIds(parseList(properties.getProperty(ADMISSION_ALLOWED_COMPONENT_IDS)));
+        config.setAdmissionDeniedComponentIds(parseList(properties.getProperty(ADMISSION_DENIED_COMPONENT_IDS)));
+        final String samplingPercentage = properties.getProperty(ADMISSION_SAMPLING_PERCENTAGE);
+        if (!StringUtils.isBlank(samplingPercentage)) {
+            config.setAdmissionSamplingPercentage(Double.parseDouble(samplingPercentage.trim()));
+        }
+
+        config.setPlacementStrategy(properties.getProperty(PLACEMENT_STRATEGY, MiNiFiRepositoryConfiguration.DEFAULT_PLACEMENT_STRATEGY));
+        final String placementMinUsableSpace = properties.getProperty(PLACEMENT_MIN_USABLE_SPACE, MiNiFiRepositoryConfiguration.DEFAULT_PLACEMENT_MIN_USABLE_SPACE);
+        config.setPlacementMinUsableSpace(DataUnit.parseDataSize(placementMinUsableSpace, DataUnit.B).longValue());
+
+        final String tieringRecompressAfter = properties.getProperty(TIERING_RECOMPRESS_AFTER);
+        if (!StringUtils.isBlank(tieringRecompressAfter)) {
+            config.setTieringRecompressAfter(FormatUtils.getTimeDuration(tieringRecompressAfter.trim(), TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS);
+        }
+        final String tieringCompactAfter = properties.getProperty(TIERING_COMPACT_AFTER);
+        if (!StringUtils.isBlank(tieringCompactAfter)) {
+            config.setTieringCompactAfter(FormatUtils.getTimeDuration(tieringCompactAfter.trim(), TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS);
+        }
+        config.setTieringCodec(properties.getProperty(TIERING_CODEC, MiNiFiRepositoryConfiguration.DEFAULT_TIERING_CODEC));
+        config.setTieringRetainedAttributes(parseList(properties.getProperty(TIERING_RETAINED_ATTRIBUTES)));
+        config.setTieringThreads(properties.getIntegerProperty(TIERING_THREADS, MiNiFiRepositoryConfiguration.DEFAULT_TIERING_THREADS));
+        final String tieringMaxIoRate = properties.getProperty(TIERING_MAX_IO_RATE, MiNiFiRepositoryConfiguration.DEFAULT_TIERING_MAX_IO_RATE);
+        config.setTieringMaxIoRate(DataUnit.parseDataSize(tieringMaxIoRate, DataUnit.B).longValue());
 
         return config;
     }
 
+    static int parseMaxAttributeChars(final NiFiProperties properties) {
+        final int defaultMaxAttrChars = 65536;
+        final String maxAttrLength = properties.getProperty("nifi.provenance.repository.max.attribute.length", String.valueOf(defaultMaxAttrChars));
+        int maxAttrChars;
+        try {
+            maxAttrChars = Integer.parseInt(maxAttrLength);
+            // must be at least 36 characters because that's the length of the uuid attribute,
+            // which must be kept intact
+            if (maxAttrChars < 36) {
+                maxAttrChars = 36;
+                logger.warn("Found max attribute length property set to " + maxAttrLength + " but minimum length is 36; using 36 instead");
+            }
+        } catch (final Exception e) {
+            maxAttrChars = defaultMaxAttrChars;
+        }
+        return maxAttrChars;
+    }
+
+    static Set<String> parseList(final String value) {
+        final Set<String> values = new LinkedHashSet<>();
+        if (value != null) {
+            for (final String element : value.split(",")) {
+                if (!element.trim().isEmpty()) {
+                    values.add(element.trim());
+                }
+            }
+        }
+        return values;
+    }
+
+    static Set<ProvenanceEventType> parseEventTypes(final String value) {
+        final Set<ProvenanceEventType> eventTypes = EnumSet.noneOf(ProvenanceEventType.class);
+        for (final String eventType : parseList(value)) {
+            eventTypes.add(ProvenanceEventType.valueOf(eventType.toUpperCase()));
+        }
+        return eventTypes;
+    }
+
     // protected in order to override for unit tests
     protected RecordWriter[] createWriters(final RepositoryConfiguration config, final long initialRecordId) throws IOException {
-        final List<File> storageDirectories = config.getStorageDirectories();
-
-        final RecordWriter[] writers = new RecordWriter[config.getJournalCount()];
-        for (int i = 0; i < config.getJournalCount(); i++) {
-            final File storageDirectory = storageDirectories.get(i % storageDirectories.size());
+        final int journalCount = journalCountPolicy.getJournalCount();
+        final RecordWriter[] writers = new RecordWriter[journalCount];
+        for (int i = 0; i < journalCount; i++) {
+            final File storageDirectory = journalPlacementPolicy.nextDirectory();
             final File journalDirectory = new File(storageDirectory, "journals");
             final File journalFile = new File(journalDirectory, String.valueOf(initialRecordId) + ".journal." + i);
 
-            writers[i] = RecordWriters.newSchemaRecordWriter(journalFile, false, false);
+            writers[i] = new ChecksummedJournalWriter(journalFile);
             writers[i].writeHeader(initialRecordId);
         }
 
@@ -343,244 +765,1026 @@ public class MiNiFiPersistentProvenanceRepository implements ProvenanceRepositor
 
     @Override
     public void registerEvent(final ProvenanceEventRecord event) {
-        persistRecord(Collections.singleton(event));
+        registerEvents(Collections.singleton(event));
     }
 
     @Override
     public void registerEvents(final Iterable<ProvenanceEventRecord> events) {
-        persistRecord(events);
-    }
-
-    @Override
-    public List<ProvenanceEventRecord> getEvents(final long firstRecordId, final int maxRecords, final NiFiUser user) throws IOException {
-        throw new MethodNotSupportedException("Cannot list events for a specified user.");
-    }
-
-    @Override
-    public List<ProvenanceEventRecord> getEvents(final long firstRecordId, final int maxRecords) throws IOException {
-        final List<ProvenanceEventRecord> records = new ArrayList<>(maxRecords);
+        if (ingestRing == null) {
+            final List<ProvenanceEventRecord> admitted = admissionPolicy.admit(events);
+            if (!admitted.isEmpty()) {
+                try {
+                    persistRecord(admitted);
+                } catch (final IOException ioe) {
+                    // already logged and reported; without a ring buffer, registering events does not fail on a write error
+                }
+            }
+            return;
+        }
 
-        final List<Path> paths = getPathsForId(firstRecordId);
-        if (paths == null || paths.isEmpty()) {
-            return records;
+        if (ingestAsync) {
+            enqueueEvents(events);
+            return;
         }
 
-        for (final Path path : paths) {
-            try (RecordReader reader = RecordReaders.newRecordReader(path.toFile(), getAllLogFiles(), maxAttributeChars)) {
-                // if this is the first record, try to find out the block index and jump directly to
-                // the block index. This avoids having to read through a lot of data that we don't care about
-                // just to get to the first record that we want.
-                if (records.isEmpty()) {
-                    final TocReader tocReader = reader.getTocReader();
-                    if (tocReader != null) {
-                        final Integer blockIndex = tocReader.getBlockIndexForEventId(firstRecordId);
-                        if (blockIndex != null) {
-                            reader.skipToBlock(blockIndex);
-                        }
+        // Wait for the events to be written to the journals so that callers keep the same durability guarantees
+        // that they had when writing to the journals directly.
+        final Future<Void> completion = submitEvents(events);
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    completion.get();
+                    return;
+                } catch (final InterruptedException ie) {
+                    interrupted = true;
+                } catch (final ExecutionException ee) {
+                    final Throwable cause = ee.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
                     }
-                }
-
-                StandardProvenanceEventRecord record;
-                while (records.size() < maxRecords && (record = reader.nextRecord()) != null) {
-                    if (record.getEventId() >= firstRecordId) {
-                        records.add(record);
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
                     }
+                    throw new IllegalStateException("Failed to persist Provenance Events", cause);
                 }
-            } catch (final EOFException | FileNotFoundException fnfe) {
-                // assume file aged off (or there's no data in file, in case of EOFException, which indicates that data was cached
-                // in operating system and entire O/S crashed and always.sync was not turned on.)
-            } catch (final IOException ioe) {
-                logger.error("Failed to read Provenance Event File {} due to {}", path.toFile(), ioe.toString());
-                logger.error("", ioe);
-                eventReporter.reportEvent(Severity.ERROR, EVENT_CATEGORY, "Failed to read Provenance Event File " + path.toFile() + " due to " + ioe.toString());
             }
-
-            if (records.size() >= maxRecords) {
-                break;
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
             }
         }
+    }
 
-        if (logger.isDebugEnabled()) {
-            logger.debug("Retrieving up to {} records starting at Event ID {}; returning {} events", maxRecords, firstRecordId, records.size());
+    /**
+     * Hands the given events off to the journal writer threads without waiting for them to be written. The returned
+     * Future completes once the events have been written to a journal (and synced, if the repository is configured to
+     * always sync), which gives callers the same durability guarantees as {@link #registerEvents(Iterable)} if they
+     * choose to wait for it.
+     *
+     * @param events the events to register
+     * @return a Future that completes when the events have been persisted to the journals, or completes exceptionally with
+     * the IOException that prevented them from being written
+     */
+    public Future<Void> submitEvents(final Iterable<ProvenanceEventRecord> events) {
+        final List<ProvenanceEventRecord> eventList = admitEvents(events);
+        if (eventList.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
         }
 
-        return records;
+        final PendingEvents pending = new PendingEvents(eventList);
+        handOff(pending);
+        return pending.getCompletion();
     }
 
-    private List<Path> getPathsForId(final long id) {
-        final SortedMap<Long, Path> map = idToPathMap.get();
-
-        final List<Path> paths = new ArrayList<>();
-
-        final Iterator<Map.Entry<Long, Path>> itr = map.entrySet().iterator();
-        if (!itr.hasNext()) {
-            return paths;
+    private List<ProvenanceEventRecord> admitEvents(final Iterable<ProvenanceEventRecord> events) {
+        final List<ProvenanceEventRecord> eventList = new ArrayList<>();
+        for (final ProvenanceEventRecord event : events) {
+            if (admissionPolicy.admit(event)) {
+                eventList.add(event);
+            }
         }
+        return eventList;
+    }
 
-        Map.Entry<Long, Path> lastEntry = itr.next();
-        while (itr.hasNext()) {
-            final Map.Entry<Long, Path> entry = itr.next();
-            final Long startIndex = entry.getKey();
-
-            if (startIndex >= id) {
-                paths.add(lastEntry.getValue());
-                paths.add(entry.getValue());
+    /**
+     * Hands the given events off to the journal writer threads, waiting for room in the ring buffer if necessary. The
+     * events are written by the calling thread if there are no writer threads to hand them off to.
+     *
+     * @param pending the events to hand off
+     */
+    private void handOff(final PendingEvents pending) {
+        if (ingestRing == null || journalWriterThreads.isEmpty()) {
+            pending.persist();
+            return;
+        }
 
-                while (itr.hasNext()) {
-                    paths.add(itr.next().getValue());
+        boolean interrupted = false;
+        try {
+            while (!ingestRing.offer(pending, 100L, TimeUnit.MILLISECONDS)) {
+                if (closed.get()) {
+                    // no writer threads are left to drain the ring, so write the events ourselves
+                    pending.persist();
+                    return;
                 }
-
-                return paths;
             }
-
-            lastEntry = entry;
-        }
-
-        // we didn't find any entry whose first ID is greater than the id
-        // requested. However,
-        // since we don't know the max ID of the last entry in the map, it's
-        // possible that the
-        // ID that we want lives within that file, so we add it to the paths to
-        // return
-        if (lastEntry != null) {
-            paths.add(lastEntry.getValue());
+        } catch (final InterruptedException ie) {
+            interrupted = true;
+            pending.persist();
+            return;
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
         }
 
-        if (logger.isDebugEnabled()) {
-            logger.debug("Looking for Event ID {}, searching in paths: {}", id, paths);
+        // if we raced with the repository being closed, the writer threads may already be gone
+        if (closed.get() && !journalWriterThreadsAlive()) {
+            drainIngestRing();
         }
-
-        return paths;
     }
 
-    public RepositoryConfiguration getConfiguration() {
-        return configuration;
-    }
+    /**
+     * Hands the given events off to the journal writer threads without waiting for them to be written. If the ring buffer
+     * is full, the overload policy decides whether to wait for room, drop the events or spill them to disk. Failures to
+     * write the events are logged and reported, as there is no caller left to throw them to.
+     *
+     * @param events the events to register
+     */
+    private void enqueueEvents(final Iterable<ProvenanceEventRecord> events) {
+        final List<ProvenanceEventRecord> eventList = admitEvents(events);
+        if (eventList.isEmpty()) {
+            return;
+        }
 
-    private void recover() throws IOException {
-        long maxId = -1L;
+        final PendingEvents pending = createAsyncPendingEvents(eventList);
+        if (ingestOverloadPolicy == IngestOverloadPolicy.BLOCK || journalWriterThreads.isEmpty() || closed.get()) {
+            handOff(pending);
+            return;
+        }
 
-        final List<File> filesToRecover = new ArrayList<>();
-        for (final File file : configuration.getStorageDirectories()) {
-            final File[] matchingFiles = file.listFiles(new FileFilter() {
-                @Override
-                public boolean accept(final File pathname) {
-                    final String filename = pathname.getName();
-                    if (!filename.contains(FILE_EXTENSION) || filename.endsWith(TEMP_FILE_SUFFIX)) {
-                        return false;
-                    }
+        // events are spilled for as long as earlier events are still waiting in the spill queue, so that they stay in order
+        final boolean spilling = ingestSpillQueue != null && !ingestSpillQueue.isEmpty();
+        if (!spilling && ingestRing.offer(pending)) {
+            return;
+        }
 
-                    final String baseFilename = filename.substring(0, filename.indexOf("."));
-                    return NUMBER_PATTERN.matcher(baseFilename).matches();
+        if (ingestSpillQueue != null) {
+            try {
+                if (ingestSpillQueue.append(eventList)) {
+                    eventsSpilled.add(eventList.size());
+                    return;
                 }
-            });
-            for (final File matchingFile : matchingFiles) {
-                filesToRecover.add(matchingFile);
+                dropEvents(eventList.size(), "the ingest spill file has reached its maximum size of " + configuration.getIngestSpillMaxSize() + " bytes");
+            } catch (final IOException ioe) {
+                logger.error("Failed to spill Provenance Events to {} due to {}", ingestSpillQueue.getFile(), ioe.toString());
+                logger.error("", ioe);
+                dropEvents(eventList.size(), "they could not be spilled to disk");
             }
+        } else {
+            dropEvents(eventList.size(), "the ingest ring buffer is full");
         }
+    }
 
-        final SortedMap<Long, Path> sortedPathMap = new TreeMap<>(new Comparator<Long>() {
+    /**
+     * @param events the events to write
+     * @return the pending events, whose failure to be written is logged and reported, as no registering thread waits for them
+     */
+    private PendingEvents createAsyncPendingEvents(final List<ProvenanceEventRecord> events) {
+        final PendingEvents pending = new PendingEvents(events);
+        pending.getCompletion().whenComplete(new BiConsumer<Void, Throwable>() {
             @Override
-            public int compare(final Long o1, final Long o2) {
-                return Long.compare(o1, o2);
+            public void accept(final Void result, final Throwable failure) {
+                if (failure != null) {
+                    logger.error("Failed to persist asynchronously registered Provenance Events due to {}", failure.toString());
+                    logger.error("", failure);
+                    if (eventReporter != null) {
+                        eventReporter.reportEvent(Severity.ERROR, EVENT_CATEGORY, "Failed to persist Provenance Events due to " + failure.toString());
+                    }
+                }
             }
         });
+        return pending;
+    }
 
-        File maxIdFile = null;
-        for (final File file : filesToRecover) {
-            final String filename = file.getName();
-            final String baseName = filename.substring(0, filename.indexOf("."));
-            final long fileFirstId = Long.parseLong(baseName);
-            sortedPathMap.put(fileFirstId, file.toPath());
-
-            if (fileFirstId > maxId) {
-                maxId = fileFirstId;
-                maxIdFile = file;
+    private void dropEvents(final int count, final String reason) {
+        eventsDropped.add(count);
+
+        // warn at most every few seconds, rather than for every commit of every processor while the repository is overloaded
+        final long now = System.currentTimeMillis();
+        final long lastWarning = lastDroppedEventsWarning.get();
+        if (now - lastWarning >= DROPPED_EVENTS_WARNING_MILLISECONDS && lastDroppedEventsWarning.compareAndSet(lastWarning, now)) {
+            final String message = "Dropping Provenance Events because " + reason + "; " + eventsDropped.sum() + " events have been dropped so far";
+            logger.warn(message);
+            if (eventReporter != null) {
+                eventReporter.reportEvent(Severity.WARNING, EVENT_CATEGORY, message);
             }
         }
+    }
 
-        if (maxIdFile != null) {
-            // Determine the max ID in the last file.
-            try (final RecordReader reader = RecordReaders.newRecordReader(maxIdFile, getAllLogFiles(), maxAttributeChars)) {
-                final long eventId = reader.getMaxEventId();
-                if (eventId > maxId) {
-                    maxId = eventId;
-                    checkAndSetMaxEventId(maxId);
-                }
+    private File getIngestSpillFile() {
+        return new File(new File(getFirstStorageDirectory(), INGEST_SPILL_DIRECTORY), INGEST_SPILL_FILENAME);
+    }
 
-            } catch (final IOException ioe) {
-                logger.error("Failed to read Provenance Event File {} due to {}", maxIdFile, ioe);
-                logger.error("", ioe);
+    private File getFirstStorageDirectory() {
+        return configuration.getStorageDirectories().iterator().next();
+    }
+
+    /**
+     * Writes all of the events of a spill file that was left behind by a previous run to the journals and then removes it
+     *
+     * @param spillFile the spill file
+     * @throws IOException if the spill file cannot be read or removed
+     */
+    private void replaySpillFile(final File spillFile) throws IOException {
+        long replayed = 0L;
+        try (final IngestSpillQueue spilled = new IngestSpillQueue(spillFile, Long.MAX_VALUE, maxAttributeChars)) {
+            List<ProvenanceEventRecord> events;
+            while (!(events = spilled.poll(MAX_INGEST_DRAIN_BATCH)).isEmpty()) {
+                persistRecord(events);
+                replayed += events.size();
             }
         }
 
-        // Establish current max event ID and increment generator to pick up from this point
-        checkAndSetMaxEventId(maxId);
-        idGenerator.set(maxId + 1);
+        Files.delete(spillFile.toPath());
+        logger.info("Wrote {} Provenance Events that were spilled to {} before the repository was last shut down", replayed, spillFile);
+    }
 
+    /**
+     * Writes a batch of the events that are waiting in the spill queue to one of the journals
+     *
+     * @return <code>true</code> if any events were waiting
+     */
+    private boolean persistSpilledEvents() {
+        final List<ProvenanceEventRecord> events;
         try {
-            final Set<File> recoveredJournals = recoverJournalFiles();
-            filesToRecover.addAll(recoveredJournals);
-
-            // Find the file that has the greatest ID
-            File greatestMinIdFile = null;
-            long greatestMinId = 0L;
-            for (final File recoveredJournal : recoveredJournals) {
-                // if the file was removed because the journals were empty, don't count it
-                if (!recoveredJournal.exists()) {
-                    continue;
-                }
-
-                final String basename = StringUtils.substringBefore(recoveredJournal.getName(), ".");
-                try {
-                    final long minId = Long.parseLong(basename);
-
-                    sortedPathMap.put(minId, recoveredJournal.toPath());
-                    if (greatestMinIdFile == null || minId > greatestMinId) {
-                        greatestMinId = minId;
-                        greatestMinIdFile = recoveredJournal;
-                    }
-                } catch (final NumberFormatException nfe) {
-                    // not a file we care about...
-                }
-            }
-
-            // Read the records in the last file to find its max id
-            if (greatestMinIdFile != null) {
-                try (final RecordReader recordReader = RecordReaders.newRecordReader(greatestMinIdFile, Collections.<Path>emptyList(), maxAttributeChars)) {
-                    maxId = recordReader.getMaxEventId();
-                }
-            }
-
-            // set the ID Generator 1 greater than the max id
-            idGenerator.set(maxId + 1);
+            events = ingestSpillQueue.poll(MAX_INGEST_DRAIN_BATCH);
         } catch (final IOException ioe) {
-            logger.error("Failed to recover Journal Files due to {}", ioe.toString());
+            logger.error("Failed to read spilled Provenance Events from {} due to {}; the remaining spilled events have been discarded",
+                ingestSpillQueue.getFile(), ioe.toString());
             logger.error("", ioe);
+            return false;
+        }
+        if (events.isEmpty()) {
+            return false;
         }
 
-        idToPathMap.set(Collections.unmodifiableSortedMap(sortedPathMap));
-        logger.trace("In recovery, path map: {}", sortedPathMap);
+        persistPendingEvents(Collections.singletonList(createAsyncPendingEvents(events)));
+        return true;
+    }
 
-        logger.info("Recovered records");
-        recoveryFinished.set(true);
+    @Override
+    public List<ProvenanceEventRecord> getEvents(final long firstRecordId, final int maxRecords, final NiFiUser user) throws IOException {
+        throw new MethodNotSupportedException("Cannot list events for a specified user.");
     }
 
     @Override
-    public synchronized void close() throws IOException {
-        this.closed.set(true);
-        writeLock.lock();
-        try {
-            logger.debug("Obtained write lock for close");
+    public List<ProvenanceEventRecord> getEvents(final long firstRecordId, final int maxRecords) throws IOException {
+        // the list grows with the events that are found rather than being sized for the most that could be requested
+        final List<ProvenanceEventRecord> records = new ArrayList<>();
+        readEvents(firstRecordId, maxRecords, records);
 
-            scheduledExecService.shutdownNow();
+        if (logger.isDebugEnabled()) {
+            logger.debug("Retrieving up to {} records starting at Event ID {}; returning {} events", maxRecords, firstRecordId, records.size());
+        }
+
+        return records;
+    }
+
+    @Override
+    public ProvenanceEventCursor openCursor(final long firstEventId) {
+        return new EventFileCursor(firstEventId);
+    }
+
+    /**
+     * Returns the events that occurred at or after the given time, in order of their ids. Each Provenance Event Log File is
+     * read starting from the first block that its time index shows to hold such an event, and files that hold none are not
+     * read at all. Files that were merged before time indices were kept are read in full.
+     *
+     * @param timestamp the time, in milliseconds since the epoch, at or after which the events occurred
+     * @param maxRecords the maximum number of events to return
+     * @return the events that occurred at or after the given time
+     * @throws IOException if interrupted while waiting for the repository to recover
+     */
+    public List<ProvenanceEventRecord> getEventsSince(final long timestamp, final int maxRecords) throws IOException {
+        awaitRecovery();
+
+        final List<ProvenanceEventRecord> records = new ArrayList<>();
+        final EventFileIndex index = eventFileIndex.get();
+        for (int i = 0; i < index.size() && records.size() < maxRecords; i++) {
+            final long fileFirstEventId = index.getStartId(i);
+            final EventTimeIndex timeIndex = timeIndices.get(fileFirstEventId);
+            final long firstEventId = timeIndex == null ? fileFirstEventId : timeIndex.getFirstEventIdSince(timestamp);
+            if (firstEventId < 0L) {
+                continue;
+            }
+
+            final Path path = index.getPath(i);
+            try {
+                readEventsSince(path, firstEventId, timestamp, maxRecords, records);
+            } catch (final FileNotFoundException fnfe) {
+                // assume file aged off
+            } catch (final EOFException eof) {
+                reportTruncatedEventFile(path, eof);
+            } catch (final IOException ioe) {
+                logger.error("Failed to read Provenance Event File {} due to {}", path.toFile(), ioe.toString());
+                logger.error("", ioe);
+                eventReporter.reportEvent(Severity.ERROR, EVENT_CATEGORY, "Failed to read Provenance Event File " + path.toFile() + " due to " + ioe.toString());
+            }
+        }
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("Retrieving up to {} records that occurred at or after {}; returning {} events", maxRecords, timestamp, records.size());
+        }
+
+        return records;
+    }
+
+    /**
+     * Returns the blocks of the Provenance Event Log Files that hold the events starting with the given id, as they are
+     * stored, without decoding them. Only events that have been merged into event files are exported, as is the case for
+     * {@link #getEvents(long, int)}. The first block that is returned may also hold events with smaller ids than the given
+     * one, which the receiver of the block is expected to skip.
+     *
+     * @param firstEventId the id of the first event to export
+     * @param maxBlocks the maximum number of blocks to return
+     * @return the blocks, in order of their event ids
+     * @throws IOException if interrupted while waiting for the repository to recover
+     */
+    public List<RawEventBlock> getRawEventBlocks(final long firstEventId, final int maxBlocks) throws IOException {
+        awaitRecovery();
+
+        final List<RawEventBlock> blocks = new ArrayList<>();
+        final EventFileIndex index = eventFileIndex.get();
+        for (int i = 0; i < index.size() && blocks.size() < maxBlocks; i++) {
+            final boolean newest = i == index.size() - 1;
+            if (!newest && index.getStartId(i + 1) <= firstEventId) {
+                continue;
+            }
+
+            final Path path = index.getPath(i);
+            eventFileReplaceLock.readLock().lock();
+            try {
+                final File file = getCurrentPath(path).toFile();
+                final long lastEventIdOfFile = newest ? getNewestFileLastEventId(index.getStartId(i), file) : index.getStartId(i + 1) - 1L;
+                for (final RawEventBlock block : RawEventBlock.readBlocks(file, index.getStartId(i), lastEventIdOfFile)) {
+                    if (block.getLastEventId() >= firstEventId && block.getLastEventId() >= block.getFirstEventId() && blocks.size() < maxBlocks) {
+                        blocks.add(block);
+                    }
+                }
+            } catch (final FileNotFoundException | NoSuchFileException fnfe) {
+                // assume file aged off
+            } catch (final EOFException eof) {
+                reportTruncatedEventFile(path, eof);
+            } catch (final IOException ioe) {
+                logger.error("Failed to export the blocks of Provenance Event File {} due to {}", path.toFile(), ioe.toString());
+                logger.error("", ioe);
+                eventReporter.reportEvent(Severity.ERROR, EVENT_CATEGORY, "Failed to export the blocks of Provenance Event File " + path.toFile() + " due to " + ioe.toString());
+            } finally {
+                eventFileReplaceLock.readLock().unlock();
+            }
+        }
+
+        return blocks;
+    }
+
+    /**
+     * Finds the id of the last event of the newest Provenance Event Log File by reading its last block. This is done once
+     * per file, as its id no longer changes once it has been merged.
+     */
+    private long getNewestFileLastEventId(final long fileFirstEventId, final File file) throws IOException {
+        final Long cached = newestFileLastEventIds.get(fileFirstEventId);
+        if (cached != null) {
+            return cached;
+        }
+
+        long lastEventId = fileFirstEventId - 1L;
+        try (final RecordReader reader = MiNiFiRecordReaders.newRecordReader(file, null, maxAttributeChars)) {
+            final TocReader tocReader = reader.getTocReader();
+            if (tocReader != null) {
+                int lastBlockIndex = 0;
+                while (tocReader.getBlockOffset(lastBlockIndex + 1) >= 0L) {
+                    lastBlockIndex++;
+                }
+                reader.skipToBlock(lastBlockIndex);
+            }
+
+            StandardProvenanceEventRecord record;
+            while ((record = reader.nextRecord()) != null) {
+                lastEventId = Math.max(lastEventId, record.getEventId());
+            }
+        }
+
+        newestFileLastEventIds.keySet().retainAll(Collections.singleton(fileFirstEventId));
+        newestFileLastEventIds.put(fileFirstEventId, lastEventId);
+        return lastEventId;
+    }
+
+    private void awaitRecovery() throws IOException {
+        // events that are still in journals being recovered cannot be read yet, and must not be skipped over
+        while (!recoveryFinished.get() && !closed.get()) {
+            try {
+                recoveryLatch.await(1, TimeUnit.SECONDS);
+            } catch (final InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the Provenance Repository to recover", ie);
+            }
+        }
+    }
+
+    private void readEvents(final long firstRecordId, final int maxRecords, final List<ProvenanceEventRecord> records) throws IOException {
+        awaitRecovery();
+
+        final List<Path> paths = eventFileIndex.get().getPathsForId(firstRecordId);
+        if (paths.isEmpty()) {
+            return;
+        }
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("Looking for Event ID {}, searching in paths: {}", firstRecordId, paths);
+        }
+
+        for (final Path path : paths) {
+            try {
+                readEventsFromFile(path, firstRecordId, maxRecords, records);
+            } catch (final IOException ioe) {
+                reportEventFileReadFailure(path, ioe);
+            }
+
+            if (records.size() >= maxRecords) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Reports that the given Provenance Event Log File could not be read, unless that is because it has been aged off
+     */
+    private void reportEventFileReadFailure(final Path path, final IOException ioe) {
+        if (ioe instanceof FileNotFoundException) {
+            // assume file aged off
+            return;
+        }
+        if (ioe instanceof EOFException) {
+            reportTruncatedEventFile(path, (EOFException) ioe);
+            return;
+        }
+
+        logger.error("Failed to read Provenance Event File {} due to {}", path.toFile(), ioe.toString());
+        logger.error("", ioe);
+        eventReporter.reportEvent(Severity.ERROR, EVENT_CATEGORY, "Failed to read Provenance Event File " + path.toFile() + " due to " + ioe.toString());
+    }
+
+    /**
+     * Reports that the given Provenance Event Log File ended before all of the events that it should hold could be read.
+     * Merged files are synced before their journals are removed, so unless the file has been aged off in the meantime, it
+     * has been damaged since it was written.
+     */
+    private void reportTruncatedEventFile(final Path path, final EOFException eof) {
+        final File file = getCurrentPath(path).toFile();
+        if (!file.exists()) {
+            return;
+        }
+
+        logger.warn("Provenance Event File {} is truncated or corrupt; the events that follow the damaged part of the file cannot be read: {}", file, eof.toString());
+        eventReporter.reportEvent(Severity.WARNING, EVENT_CATEGORY, "Provenance Event File " + file + " is truncated or corrupt; the events that follow the damaged "
+                + "part of the file cannot be read: " + eof.toString());
+    }
+
+    private void readEventsFromFile(final Path path, final long firstRecordId, final int maxRecords, final List<ProvenanceEventRecord> records) throws IOException {
+        eventFileReplaceLock.readLock().lock();
+        try {
+            final Path currentPath = getCurrentPath(path);
+            if (blockCache == null || !blockCache.readEvents(currentPath.toFile(), firstRecordId, maxRecords, records)) {
+                readEvents(currentPath, firstRecordId, maxRecords, records);
+            }
+        } finally {
+            eventFileReplaceLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param path the path of an event file, as it was found in the index
+     * @return the path that the file has now, which differs from the given path if the file was rewritten since
+     */
+    private Path getCurrentPath(final Path path) {
+        if (eventFileTierer == null || Files.exists(path)) {
+            return path;
+        }
+
+        final Path currentPath = eventFileIndex.get().getPathForStartId(Long.parseLong(StringUtils.substringBefore(path.toFile().getName(), ".")));
+        return currentPath == null ? path : currentPath;
+    }
+
+    private void readEvents(final Path path, final long firstRecordId, final int maxRecords, final List<ProvenanceEventRecord> records) throws IOException {
+        try (RecordReader reader = MiNiFiRecordReaders.newRecordReader(path.toFile(), getAllLogFiles(), maxAttributeChars)) {
+            // if this is the first record, try to find out the block index and jump directly to
+            // the block index. This avoids having to read through a lot of data that we don't care about
+            // just to get to the first record that we want.
+            if (records.isEmpty()) {
+                final TocReader tocReader = reader.getTocReader();
+                if (tocReader != null) {
+                    final Integer blockIndex = tocReader.getBlockIndexForEventId(firstRecordId);
+                    if (blockIndex != null) {
+                        reader.skipToBlock(blockIndex);
+                    }
+                }
+            }
+
+            StandardProvenanceEventRecord record;
+            while (records.size() < maxRecords && (record = reader.nextRecord()) != null) {
+                if (record.getEventId() >= firstRecordId) {
+                    records.add(record);
+                }
+            }
+        }
+    }
+
+    private void readEventsSince(final Path path, final long firstRecordId, final long timestamp, final int maxRecords,
+                                 final List<ProvenanceEventRecord> records) throws IOException {
+        eventFileReplaceLock.readLock().lock();
+        try (RecordReader reader = MiNiFiRecordReaders.newRecordReader(getCurrentPath(path).toFile(), getAllLogFiles(), maxAttributeChars)) {
+            // the time index gives the first block that may hold a matching event, which the TOC locates within the file
+            final TocReader tocReader = reader.getTocReader();
+            if (tocReader != null) {
+                final Integer blockIndex = tocReader.getBlockIndexForEventId(firstRecordId);
+                if (blockIndex != null) {
+                    reader.skipToBlock(blockIndex);
+                }
+            }
+
+            StandardProvenanceEventRecord record;
+            while (records.size() < maxRecords && (record = reader.nextRecord()) != null) {
+                if (record.getEventId() >= firstRecordId && record.getEventTime() >= timestamp) {
+                    records.add(record);
+                }
+            }
+        } finally {
+            eventFileReplaceLock.readLock().unlock();
+        }
+    }
+
+    public RepositoryConfiguration getConfiguration() {
+        return configuration;
+    }
+
+    private void recover() throws IOException {
+        long maxId = -1L;
+
+        // a rewrite of an event file that was interrupted may have left the file without its Table of Contents
+        for (final File storageDirectory : configuration.getStorageDirectories()) {
+            EventFileTierer.recover(storageDirectory);
+        }
+
+        final List<File> filesToRecover = new ArrayList<>();
+        for (final File file : configuration.getStorageDirectories()) {
+            final File[] matchingFiles = file.listFiles(new FileFilter() {
+                @Override
+                public boolean accept(final File pathname) {
+                    final String filename = pathname.getName();
+                    if (!filename.contains(FILE_EXTENSION) || filename.endsWith(TEMP_FILE_SUFFIX)) {
+                        return false;
+                    }
+
+                    final String baseFilename = filename.substring(0, filename.indexOf("."));
+                    return NUMBER_PATTERN.matcher(baseFilename).matches();
+                }
+            });
+            for (final File matchingFile : matchingFiles) {
+                filesToRecover.add(matchingFile);
+            }
+        }
+
+        // Journals that were left behind by an unclean shutdown are merged in the background, so that new events can be
+        // written to fresh journals in the meantime.
+        final SortedMap<Long, List<File>> journalSets = recoverJournalSets();
+
+        final SortedMap<Long, Path> sortedPathMap = new TreeMap<>(new Comparator<Long>() {
+            @Override
+            public int compare(final Long o1, final Long o2) {
+                return Long.compare(o1, o2);
+            }
+        });
+
+        File maxIdFile = null;
+        for (final File file : filesToRecover) {
+            final String filename = file.getName();
+            final String baseName = filename.substring(0, filename.indexOf("."));
+            final long fileFirstId = Long.parseLong(baseName);
+
+            // a file whose journals are all still there was being merged when the repository stopped, so it may be truncated;
+            // the journals are merged again rather than recovering it, whichever storage directory they end up merged into
+            final List<File> journalSet = journalSets.get(fileFirstId);
+            if (journalSet != null && isMergeUnfinished(journalSet)) {
+                logger.warn("Provenance Event Log File {} was not fully merged from its journals before the repository stopped; removing it "
+                    + "so that the journals are able to be merged again", file);
+                for (final File remaining : JournalMerger.deleteMergedFile(file)) {
+                    logger.error("Failed to delete partially merged Provenance Event Log File {}; this may result in duplicate or missing events. "
+                        + "This file should be deleted manually.", remaining);
+                }
+                continue;
+            }
+
+            sortedPathMap.put(fileFirstId, file.toPath());
+
+            if (fileFirstId > maxId) {
+                maxId = fileFirstId;
+                maxIdFile = file;
+            }
+        }
+
+        if (maxIdFile != null) {
+            // Determine the max ID in the last file.
+            try (final RecordReader reader = MiNiFiRecordReaders.newRecordReader(maxIdFile, getAllLogFiles(), maxAttributeChars)) {
+                final long eventId = reader.getMaxEventId();
+                if (eventId > maxId) {
+                    maxId = eventId;
+                    checkAndSetMaxEventId(maxId);
+                }
+
+            } catch (final IOException ioe) {
+                logger.error("Failed to read Provenance Event File {} due to {}", maxIdFile, ioe);
+                logger.error("", ioe);
+            }
+        }
+
+        // Establish current max event ID and increment generator to pick up from this point
+        checkAndSetMaxEventId(maxId);
+        idGenerator.set(maxId + 1);
+
+        // The events of the journals that are yet to be merged must not be given out again, so the greatest event ID in the
+        // most recent set of journals is determined up front.
+        if (!journalSets.isEmpty()) {
+            final long latestJournalSetId = journalSets.lastKey();
+            maxId = Math.max(maxId, latestJournalSetId - 1);
+
+            for (final File journalFile : journalSets.get(latestJournalSetId)) {
+                try (final RecordReader recordReader = MiNiFiRecordReaders.newRecordReader(journalFile, Collections.<Path>emptyList(), maxAttributeChars)) {
+                    maxId = Math.max(maxId, recordReader.getMaxEventId());
+                } catch (final EOFException eof) {
+                    // there's nothing here.
+                } catch (final IOException ioe) {
+                    logger.error("Failed to read Provenance Journal File {} due to {}", journalFile, ioe.toString());
+                    logger.error("", ioe);
+                }
+            }
+
+            // set the ID Generator 1 greater than the max id
+            checkAndSetMaxEventId(maxId);
+            idGenerator.set(maxId + 1);
+        }
+
+        eventFileIndex.set(EventFileIndex.of(sortedPathMap));
+        for (final Map.Entry<Long, Path> entry : sortedPathMap.entrySet()) {
+            final File eventFile = entry.getValue().toFile();
+            addToLedger(entry.getKey(), eventFile);
+            loadTimeIndex(entry.getKey(), eventFile);
+            checkRecoveredEventFile(eventFile, eventFile.equals(maxIdFile));
+        }
+        if (eventIndex != null) {
+            eventIndex.recover(configuration.getStorageDirectories(), sortedPathMap.keySet());
+        }
+        logger.trace("In recovery, path map: {}", sortedPathMap);
+
+        logger.info("Recovered records");
+
+        // the journals being recovered count towards backpressure until they have been merged
+        for (final List<File> journalFileSet : journalSets.values()) {
+            unmergedJournals.addAll(journalFileSet);
+        }
+        recoverJournalFiles(journalSets);
+    }
+
+    /**
+     * @return the sets of journals that are still to be merged, keyed by the ID of the first event in each set. They are
+     * read from the merge queue, unless there is none, as is the case the first time that the repository starts with a merge
+     * queue, in which case the journal directories are listed and the journals found are queued.
+     */
+    private SortedMap<Long, List<File>> recoverJournalSets() throws IOException {
+        if (!configuration.isAllowRollover()) {
+            return new TreeMap<>();
+        }
+
+        final SortedMap<Long, List<File>> queuedJournalSets = mergeQueue.recover();
+        if (queuedJournalSets != null) {
+            return queuedJournalSets;
+        }
+
+        final SortedMap<Long, List<File>> journalSets = findUnmergedJournals();
+        for (final Map.Entry<Long, List<File>> entry : journalSets.entrySet()) {
+            mergeQueue.add(entry.getKey(), entry.getValue());
+        }
+        return journalSets;
+    }
+
+    /**
+     * @return the journal files that exist across all journal and storage directories, grouped by their basename, which is
+     * the ID of the first event in the journals. The storage directories are listed even when journals have their own
+     * directories, in case the journals were moved to their own directories while some were left unmerged.
+     */
+    private SortedMap<Long, List<File>> findUnmergedJournals() {
+        final SortedMap<Long, List<File>> journalSets = new TreeMap<>();
+        if (!configuration.isAllowRollover()) {
+            return journalSets;
+        }
+
+        final Set<File> directories = new LinkedHashSet<>(journalStorageDirectories);
+        directories.addAll(configuration.getStorageDirectories());
+        for (final File storageDir : directories) {
+            final File[] journalFiles = new File(storageDir, "journals").listFiles();
+            if (journalFiles == null) {
+                continue;
+            }
+
+            for (final File journalFile : journalFiles) {
+                if (journalFile.isDirectory()) {
+                    continue;
+                }
+
+                final String basename = StringUtils.substringBefore(journalFile.getName(), ".");
+                if (!NUMBER_PATTERN.matcher(basename).matches()) {
+                    logger.warn("Ignoring unexpected file {} in journals directory", journalFile);
+                    continue;
+                }
+
+                final Long firstEventId = Long.valueOf(basename);
+                List<File> files = journalSets.get(firstEventId);
+                if (files == null) {
+                    files = new ArrayList<>();
+                    journalSets.put(firstEventId, files);
+                }
+
+                files.add(journalFile);
+            }
+        }
+
+        return journalSets;
+    }
+
+    /**
+     * Schedules the merge of each of the given sets of journals, adding the merged files to the repository as they complete.
+     * Recovery is finished once the first attempt to merge each of them has completed, whether or not it succeeded; the
+     * merges that fail keep being retried afterwards.
+     *
+     * @param journalSets the journals to merge, keyed by the ID of the first event in each set
+     */
+    private void recoverJournalFiles(final SortedMap<Long, List<File>> journalSets) {
+        if (journalSets.isEmpty()) {
+            finishRecovery();
+            return;
+        }
+
+        final int journalSetCount = journalSets.size();
+        final AtomicInteger remaining = new AtomicInteger(journalSetCount);
+        final AtomicInteger recoveredEventFiles = new AtomicInteger(0);
+        final long startNanos = System.nanoTime();
+        logger.info("Recovering {} sets of Provenance Journal Files in the background", journalSetCount);
+
+        for (final Map.Entry<Long, List<File>> entry : journalSets.entrySet()) {
+            final AtomicBoolean firstAttempt = new AtomicBoolean(true);
+
+            mergeScheduler.submit(entry.getKey(), entry.getValue(), new JournalMergeScheduler.MergeAction() {
+                @Override
+                public void merge(final List<File> journalFileSet) throws IOException {
+                    try {
+                        truncateTornJournals(journalFileSet);
+                        final File mergedFile = mergeJournals(journalFileSet, getMergeFile(journalFileSet, placementPolicy.nextDirectory()), eventReporter);
+                        if (mergedFile != null) {
+                            addEventFile(mergedFile);
+                            recoveredEventFiles.incrementAndGet();
+                        }
+                    } finally {
+                        if (firstAttempt.getAndSet(false)) {
+                            final int left = remaining.decrementAndGet();
+                            logger.info("Recovered {} of {} sets of Provenance Journal Files", journalSetCount - left, journalSetCount);
+
+                            if (left == 0) {
+                                logger.info("Finished recovering {} sets of Provenance Journal Files into {} Provenance Event Log Files in {} millis",
+                                        journalSetCount, recoveredEventFiles.get(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+                                finishRecovery();
+                            }
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Checks each of the given journals against the checksums of its blocks and truncates it after its last valid block, so
+     * that the end of a journal that was torn by a crash of the operating system is not merged. The events of the blocks
+     * that are discarded are counted exactly; any bytes that were written after the last block with a checksum are reported
+     * by their size. Journals that have no checksums were written before checksums were kept, and are merged as they are.
+     *
+     * @param journalFiles the journals of a single rollover
+     */
+    private void truncateTornJournals(final List<File> journalFiles) {
+        for (final File journalFile : journalFiles) {
+            final File checksumFile = BlockChecksums.getChecksumFile(journalFile);
+            if (!checksumFile.exists()) {
+                continue;
+            }
+
+            try {
+                final BlockChecksums.Validation validation = BlockChecksums.read(checksumFile).validate(journalFile);
+                if (validation.isIntact()) {
+                    continue;
+                }
+
+                try (final FileChannel channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.WRITE)) {
+                    channel.truncate(validation.getValidLength());
+                    channel.force(true);
+                }
+                BlockChecksums.truncate(checksumFile, validation.getValidBlocks());
+
+                final String message = "Provenance Journal File " + journalFile + " was not completely written before the repository was last stopped. Kept "
+                        + validation.getValidEvents() + " events in " + validation.getValidBlocks() + " valid blocks; discarded " + validation.getInvalidEvents()
+                        + " events in " + validation.getInvalidBlocks() + " blocks that were missing or did not match their checksums and "
+                        + validation.getUncheckedBytes() + " bytes that were written after the last checksum";
+                logger.warn(message);
+                eventReporter.reportEvent(Severity.WARNING, EVENT_CATEGORY, message);
+            } catch (final IOException ioe) {
+                logger.warn("Failed to check Provenance Journal File {} against its checksums due to {}; it will be merged without being checked", journalFile, ioe.toString());
+                if (logger.isDebugEnabled()) {
+                    logger.warn("", ioe);
+                }
+            }
+        }
+    }
+
+    private void finishRecovery() {
+        recoveryFinished.set(true);
+        recoveryLatch.countDown();
+    }
+
+    /**
+     * Adds the given Provenance Event Log File to the index of event files
+     *
+     * @param file a newly merged Provenance Event Log File
+     */
+    private void addEventFile(final File file) {
+        // update our map of id to Path
+        // We need to make sure that another thread doesn't also update the map at the same time. We cannot
+        // use the write lock when purging old events, and we want to use the same approach here.
+        boolean updated = false;
+        final Long fileFirstEventId = Long.valueOf(StringUtils.substringBefore(file.getName(), "."));
+        while (!updated) {
+            final EventFileIndex existingIndex = eventFileIndex.get();
+            updated = eventFileIndex.compareAndSet(existingIndex, existingIndex.add(fileFirstEventId, file.toPath()));
+        }
+
+        // account for the file only once it can be found in the index, so that purging it also removes it from the index
+        addToLedger(fileFirstEventId, file);
+        loadTimeIndex(fileFirstEventId, file);
+    }
+
+    /**
+     * Adds the given Provenance Event Log File to the ledger, charging it against the quotas of the components whose events it holds
+     *
+     * @param firstEventId the id of the first event in the file
+     * @param eventFile the Provenance Event Log File
+     */
+    private void addToLedger(final long firstEventId, final File eventFile) {
+        final long bytes = eventFile.length();
+        ComponentUsage usage = null;
+        final File usageFile = ComponentUsage.getUsageFile(eventFile);
+        if (!componentQuotas.isEmpty() && usageFile.exists()) {
+            try {
+                usage = ComponentUsage.read(usageFile);
+            } catch (final IOException ioe) {
+                logger.warn("Failed to read Provenance Component Usage File {} due to {}; {} will not be charged against any storage quota", usageFile, ioe.toString(), eventFile);
+            }
+        }
+
+        eventFileLedger.add(firstEventId, eventFile, bytes, eventFile.lastModified(), componentQuotas.charge(usage, bytes));
+    }
+
+    /**
+     * Loads the time index of the given Provenance Event Log File, if it has one
+     *
+     * @param firstEventId the id of the first event in the file
+     * @param eventFile the Provenance Event Log File
+     */
+    private void loadTimeIndex(final long firstEventId, final File eventFile) {
+        final File timeIndexFile = EventTimeIndex.getTimeIndexFile(eventFile);
+        if (!timeIndexFile.exists()) {
+            // the file was merged before time indices were kept, so searching it by time requires reading it
+            timeIndices.remove(firstEventId);
+            return;
+        }
+
+        try {
+            timeIndices.put(firstEventId, EventTimeIndex.read(timeIndexFile));
+        } catch (final IOException ioe) {
+            timeIndices.remove(firstEventId);
+            logger.warn("Failed to read Provenance Event Time Index File {} due to {}; {} will be read in full when searched by time", timeIndexFile, ioe.toString(), eventFile);
+        }
+    }
+
+    /**
+     * Checks a recovered Provenance Event Log File against the checksums of its blocks. Merged files are synced before their
+     * journals are removed, so a file only disagrees with its checksums if it was damaged afterwards. Every file is checked for
+     * blocks that are missing from its end, which requires no reading; the most recent file, which recovery reads anyway, is
+     * also checked block by block. Damaged blocks are reported along with the number of events that they hold, and are skipped
+     * when the file is read.
+     *
+     * @param eventFile the recovered file
+     * @param readBlocks whether to check the bytes of every block rather than only that every block is present
+     */
+    private void checkRecoveredEventFile(final File eventFile, final boolean readBlocks) {
+        final File checksumFile = BlockChecksums.getChecksumFile(eventFile);
+        if (!checksumFile.exists()) {
+            // the file was merged before checksums were kept
+            return;
+        }
+
+        try {
+            final BlockChecksums checksums = BlockChecksums.read(checksumFile);
+            final BitSet damagedBlocks;
+            try (final FileChannel channel = FileChannel.open(eventFile.toPath(), StandardOpenOption.READ)) {
+                final long fileLength = channel.size();
+                final ByteBuffer data = readBlocks && fileLength <= Integer.MAX_VALUE ? channel.map(FileChannel.MapMode.READ_ONLY, 0L, fileLength) : null;
+                damagedBlocks = checksums.findDamagedBlocks(data, fileLength);
+            }
+            if (damagedBlocks.isEmpty()) {
+                return;
+            }
+
+            long damagedEvents = 0L;
+            for (int i = damagedBlocks.nextSetBit(0); i >= 0; i = damagedBlocks.nextSetBit(i + 1)) {
+                damagedEvents += checksums.getEventCount(i);
+            }
+
+            final String message = "Provenance Event File " + eventFile + " has " + damagedBlocks.cardinality() + " blocks holding " + damagedEvents
+                    + " events that are missing or do not match their checksums; these events will be skipped when the file is read";
+            logger.warn(message);
+            eventReporter.reportEvent(Severity.WARNING, EVENT_CATEGORY, message);
+        } catch (final IOException ioe) {
+            logger.warn("Failed to check Provenance Event File {} against its checksums due to {}", eventFile, ioe.toString());
+            if (logger.isDebugEnabled()) {
+                logger.warn("", ioe);
+            }
+        }
+    }
+
+    private void removeTimeIndexAndChecksums(final long firstEventId, final File eventFile) {
+        timeIndices.remove(firstEventId);
+
+        final File timeIndexFile = EventTimeIndex.getTimeIndexFile(eventFile);
+        if (!timeIndexFile.delete() && timeIndexFile.exists()) {
+            logger.warn("Failed to remove Provenance Event Time Index File {}; this file should be cleaned up manually", timeIndexFile);
+        }
+
+        final File usageFile = ComponentUsage.getUsageFile(eventFile);
+        if (!usageFile.delete() && usageFile.exists()) {
+            logger.warn("Failed to remove Provenance Component Usage File {}; this file should be cleaned up manually", usageFile);
+        }
+
+        final File checksumFile = BlockChecksums.getChecksumFile(eventFile);
+        if (!checksumFile.delete() && checksumFile.exists()) {
+            logger.warn("Failed to remove Provenance Block Checksum File {}; this file should be cleaned up manually", checksumFile);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        // the scheduler is shut down first, so that a merge that gives up because the repository is closed is never taken
+        // to have completed, which would drop its journals from the merge queue
+        mergeScheduler.shutdown();
+        this.closed.set(true);
+
+        // wake any rollover that is applying backpressure so that it notices the repository is closing
+        journalMergeLock.lock();
+        try {
+            journalsMerged.signalAll();
+        } finally {
+            journalMergeLock.unlock();
+        }
+
+        // let the journal writer threads finish writing whatever has already been handed off to them. This must be done
+        // before obtaining the write lock because the writer threads need the read lock in order to write to the journals.
+        if (ingestRing != null) {
+            ingestRing.wakeAll();
+            for (final Thread writerThread : journalWriterThreads) {
+                try {
+                    writerThread.join(TimeUnit.SECONDS.toMillis(10L));
+                } catch (final InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            drainIngestRing();
+        }
+
+        // anything that is still spilled is written to the journals once the repository is started again
+        if (ingestSpillQueue != null) {
+            ingestSpillQueue.close();
+        }
+
+        writeLock.lock();
+        try {
+            logger.debug("Obtained write lock for close");
+
+            scheduledExecService.shutdownNow();
             rolloverExecutor.shutdownNow();
+            mergeReadAheadExecutor.shutdownNow();
+            mergeCompressionExecutor.shutdownNow();
+            if (queryExecutor != null) {
+                queryExecutor.shutdownNow();
+            }
+            if (tieringExecutor != null) {
+                tieringExecutor.shutdownNow();
+            }
+            if (blockCache != null) {
+                blockCache.close();
+            }
 
             if (writers != null) {
                 for (final RecordWriter writer : writers) {
                     writer.close();
                 }
             }
+            mergeQueue.close();
         } finally {
             writeLock.unlock();
         }
@@ -590,7 +1794,15 @@ public class MiNiFiPersistentProvenanceRepository implements ProvenanceRepositor
         return this.closed.get();
     }
 
-    private void persistRecord(final Iterable<ProvenanceEventRecord> records) {
+    /**
+     * Writes the given records to one of the journals, rolling the journals over if they have grown too large
+     *
+     * @param records the records to write
+     * @throws IOException if the records could not be written to a journal, after the failure has been logged and reported
+     * and a rollover has been attempted in order to move off the journal that failed
+     */
+    private void persistRecord(final Iterable<ProvenanceEventRecord> records) throws IOException {
+        final long persistStartNanos = System.nanoTime();
         final long totalJournalSize;
         readLock.lock();
         try {
@@ -612,23 +1824,29 @@ public class MiNiFiPersistentProvenanceRepository implements ProvenanceRepositor
                 final long idx = writerIndex.getAndIncrement();
                 writer = recordWriters[(int) (idx % recordWriters.length)];
                 locked = writer.tryLock();
+                journalCountPolicy.recordLockAttempt(locked);
+                if (!locked) {
+                    lockRetries.increment();
+                }
             } while (!locked);
 
             try {
+                final long writeStartNanos = System.nanoTime();
                 try {
-                    for (final ProvenanceEventRecord nextRecord : records) {
-                        final long eventId = idGenerator.getAndIncrement();
-                        bytesWritten += writer.writeRecord(nextRecord, eventId);
-                        logger.trace("Wrote record with ID {} to {}", eventId, writer);
-                        checkAndSetMaxEventId(eventId);
-                    }
+                    bytesWritten += writeRecords(writer, records);
 
                     if (alwaysSync) {
+                        final long syncStartNanos = System.nanoTime();
                         writer.sync();
+                        journalSyncHistogram.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - syncStartNanos));
+                        groupCommitBatchSizeHistogram.record(count(records));
                     }
 
+                    journalPlacementPolicy.recordWrite(writer.getFile(), bytesWritten, System.nanoTime() - writeStartNanos);
                     totalJournalSize = bytesWrittenSinceRollover.addAndGet(bytesWritten);
                     recordsWrittenSinceRollover.getAndIncrement();
+                    bytesWrittenMeter.mark(bytesWritten);
+                    persistLatencyHistogram.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - persistStartNanos));
                 } catch (final Throwable t) {
                     // We need to set the repoDirty flag before we release the lock for this journal.
                     // Otherwise, another thread may write to this journal -- this is a problem because
@@ -636,6 +1854,7 @@ public class MiNiFiPersistentProvenanceRepository implements ProvenanceRepositor
                     // journal will result in corruption!
                     writer.markDirty();
                     dirtyWriterCount.incrementAndGet();
+                    journalPlacementPolicy.recordFailure(writer.getFile());
                     streamStartTime.set(0L);    // force rollover to happen soon.
                     throw t;
                 } finally {
@@ -672,7 +1891,8 @@ public class MiNiFiPersistentProvenanceRepository implements ProvenanceRepositor
                     readLock.lock();
                 }
 
-                return;
+                // none of the records are known to have reached the journal, so they must not be taken to be persisted
+                throw ioe;
             }
         } finally {
             readLock.unlock();
@@ -702,19 +1922,27 @@ public class MiNiFiPersistentProvenanceRepository implements ProvenanceRepositor
     }
 
     /**
-     * @return all of the Provenance Event Log Files (not the journals, the merged files) available across all storage directories.
+     * Writes the given records to the given writer, which must be locked by the caller.
+     *
+     * @return the number of bytes written
      */
-    private List<File> getLogFiles() {
-        final List<File> files = new ArrayList<>();
-        for (final Path path : idToPathMap.get().values()) {
-            files.add(path.toFile());
-        }
-
-        if (files.isEmpty()) {
-            return files;
-        }
-
-        return files;
+    private long writeRecords(final RecordWriter writer, final Iterable<ProvenanceEventRecord> records) throws IOException {
+        // Claim the IDs for all of the records with a single atomic operation. Because we do this while holding
+        // the lock on the writer, the IDs within each journal are always ascending.
+        final long firstEventId = idGenerator.getAndAdd(count(records));
+        long eventId = firstEventId;
+        long bytesWritten = 0L;
+        for (final ProvenanceEventRecord nextRecord : records) {
+            bytesWritten += writer.writeRecord(nextRecord, eventId);
+            logger.trace("Wrote record with ID {} to {}", eventId, writer);
+            eventId++;
+        }
+
+        if (eventId > firstEventId) {
+            checkAndSetMaxEventId(eventId - 1);
+            eventsWrittenMeter.mark(eventId - firstEventId);
+        }
+        return bytesWritten;
     }
 
     /**
@@ -746,89 +1974,37 @@ public class MiNiFiPersistentProvenanceRepository implements ProvenanceRepositor
      * @throws IOException if unable to purge old events due to an I/O problem
      */
     synchronized void purgeOldEvents() throws IOException {
-        while (!recoveryFinished.get()) {
-            try {
-                Thread.sleep(100L);
-            } catch (final InterruptedException ie) {
-            }
+        // files that are still being recovered are not yet accounted for, so wait for the next run
+        if (!recoveryFinished.get()) {
+            logger.debug("Provenance Repository is still recovering; will not purge old events yet");
+            return;
         }
 
-        final List<File> toPurge = new ArrayList<>();
         final long timeCutoff = System.currentTimeMillis() - configuration.getMaxRecordLife(TimeUnit.MILLISECONDS);
 
-        final List<File> sortedByBasename = getLogFiles();
-        long bytesUsed = getSize(sortedByBasename, timeCutoff);
-
-        for (final Path path : idToPathMap.get().values()) {
-            final File file = path.toFile();
-            final long lastModified = file.lastModified();
-            if (lastModified > 0L && lastModified < timeCutoff) {
-                toPurge.add(file);
+        // The ledger already knows the size and age of every file, ordered by the ID of the first event in each file. Because
+        // the ID is monotonically increasing, this is also the order in which the files were written, so that only the files
+        // that are actually aged off are visited. The files of components that exceed their quotas go first.
+        final long[] maxQuotaBytes = componentQuotas.getMaxBytes();
+        for (int quota = 0; quota < maxQuotaBytes.length; quota++) {
+            final long quotaBytes = eventFileLedger.getQuotaBytes(quota);
+            if (quotaBytes > maxQuotaBytes[quota]) {
+                logger.info("Provenance Events of storage quota {} take up {} bytes, which exceeds its maximum of {} bytes; aging off its oldest event files",
+                    componentQuotas.getName(quota), quotaBytes, maxQuotaBytes[quota]);
             }
         }
 
-        // This comparator sorts the data based on the "basename" of the files. I.e., the numeric portion.
-        // We do this because the numeric portion represents the ID of the first event in the log file.
-        // As a result, we are sorting based on time, since the ID is monotonically increasing. By doing this,
-        // are able to avoid hitting disk continually to check timestamps
-        final Comparator<File> sortByBasenameComparator = new Comparator<File>() {
-            @Override
-            public int compare(final File o1, final File o2) {
-                final String baseName1 = StringUtils.substringBefore(o1.getName(), ".");
-                final String baseName2 = StringUtils.substringBefore(o2.getName(), ".");
-
-                Long id1 = null;
-                Long id2 = null;
-                try {
-                    id1 = Long.parseLong(baseName1);
-                } catch (final NumberFormatException nfe) {
-                    id1 = null;
-                }
-
-                try {
-                    id2 = Long.parseLong(baseName2);
-                } catch (final NumberFormatException nfe) {
-                    id2 = null;
-                }
-
-                if (id1 == null && id2 == null) {
-                    return 0;
-                }
-                if (id1 == null) {
-                    return 1;
-                }
-                if (id2 == null) {
-                    return -1;
-                }
-
-                return Long.compare(id1, id2);
-            }
-        };
-
-        // If we have too much data (at least 90% of our max capacity), start aging it off
-        if (bytesUsed > configuration.getMaxStorageCapacity() * 0.9) {
-            Collections.sort(sortedByBasename, sortByBasenameComparator);
-
-            for (final File file : sortedByBasename) {
-                toPurge.add(file);
-                bytesUsed -= file.length();
-                if (bytesUsed < configuration.getMaxStorageCapacity()) {
-                    // we've shrunk the repo size down enough to stop
-                    break;
-                }
-            }
+        final List<File> filesToPurge = eventFileLedger.selectFilesToPurge(timeCutoff, configuration.getMaxStorageCapacity(), maxQuotaBytes);
+        if (filesToPurge.isEmpty()) {
+            return;
         }
-
-        // Sort all of the files that we want to purge such that the oldest events are aged off first
-        Collections.sort(toPurge, sortByBasenameComparator);
-        logger.debug("Purging old event files: {}", toPurge);
-
-        // Remove any duplicates that we may have.
-        final Set<File> uniqueFilesToPurge = new LinkedHashSet<>(toPurge);
+        logger.debug("Purging old event files: {}", filesToPurge);
+        final long purgeStartNanos = System.nanoTime();
 
         // Age off the data.
         final Set<String> removed = new LinkedHashSet<>();
-        for (File file : uniqueFilesToPurge) {
+        for (final File fileToPurge : filesToPurge) {
+            File file = fileToPurge;
             final String baseName = StringUtils.substringBefore(file.getName(), ".");
             ExpirationAction currentAction = null;
             try {
@@ -844,10 +2020,20 @@ public class MiNiFiPersistentProvenanceRepository implements ProvenanceRepositor
                 }
 
                 removed.add(baseName);
+                eventFileLedger.remove(fileToPurge);
+                removeTimeIndexAndChecksums(Long.parseLong(baseName), fileToPurge);
+                if (eventIndex != null) {
+                    eventIndex.remove(fileToPurge);
+                }
             } catch (final FileNotFoundException fnf) {
                 logger.warn("Failed to perform Expiration Action {} on Provenance Event file {} because the file no longer exists; will not "
                         + "perform additional Expiration Actions on this file", currentAction, file);
                 removed.add(baseName);
+                eventFileLedger.remove(fileToPurge);
+                removeTimeIndexAndChecksums(Long.parseLong(baseName), fileToPurge);
+                if (eventIndex != null) {
+                    eventIndex.remove(fileToPurge);
+                }
             } catch (final Throwable t) {
                 logger.warn("Failed to perform Expiration Action {} on Provenance Event file {} due to {}; will not perform additional "
                         + "Expiration Actions on this file at this time", currentAction, file, t.toString());
@@ -858,29 +2044,127 @@ public class MiNiFiPersistentProvenanceRepository implements ProvenanceRepositor
             }
         }
 
+        for (final File file : filesToPurge) {
+            untierableFiles.remove(file);
+            if (blockCache != null) {
+                blockCache.invalidate(file);
+            }
+        }
+
         // Update the Map ID to Path map to not include the removed file
         // We cannot obtain the write lock here because there may be a need for the lock in the rollover method,
         // if we have 'backpressure applied'. This would result in a deadlock because the rollover method would be
         // waiting for purgeOldEvents, and purgeOldEvents would be waiting for the write lock held by rollover.
+        final Predicate<Path> isRemoved = new Predicate<Path>() {
+            @Override
+            public boolean test(final Path path) {
+                return removed.contains(StringUtils.substringBefore(path.toFile().getName(), "."));
+            }
+        };
+
         boolean updated = false;
         while (!updated) {
-            final SortedMap<Long, Path> existingPathMap = idToPathMap.get();
-            final SortedMap<Long, Path> newPathMap = new TreeMap<>(new PathMapComparator());
-            newPathMap.putAll(existingPathMap);
+            final EventFileIndex existingIndex = eventFileIndex.get();
+            final EventFileIndex newIndex = existingIndex.remove(isRemoved);
 
-            final Iterator<Map.Entry<Long, Path>> itr = newPathMap.entrySet().iterator();
-            while (itr.hasNext()) {
-                final Map.Entry<Long, Path> entry = itr.next();
-                final String filename = entry.getValue().toFile().getName();
-                final String baseName = StringUtils.substringBefore(filename, ".");
+            updated = eventFileIndex.compareAndSet(existingIndex, newIndex);
+            logger.debug("After expiration, path map: {}", newIndex);
+        }
 
-                if (removed.contains(baseName)) {
-                    itr.remove();
+        filesPurged.addAndGet(removed.size());
+        purgeDurationHistogram.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - purgeStartNanos));
+    }
+
+    /**
+     * Submits the event files that have aged into a new tier to be rewritten, up to the number of tiering threads. Files
+     * that are about to be aged off anyway are left alone.
+     */
+    void tierEventFiles() {
+        if (eventFileTierer == null || !recoveryFinished.get() || closed.get()) {
+            return;
+        }
+
+        final long now = System.currentTimeMillis();
+        final long purgeCutoff = now - configuration.getMaxRecordLife(TimeUnit.MILLISECONDS);
+        for (final File file : eventFileLedger.selectFilesLastModifiedBefore(now - eventFileTierer.getMinimumAgeMillis())) {
+            if (tieringInProgress.size() >= Math.max(1, configuration.getTieringThreads())) {
+                break;
+            }
+            if (tieringInProgress.contains(file) || untierableFiles.contains(file)) {
+                continue;
+            }
+
+            final long lastModified = file.lastModified();
+            final String targetName = eventFileTierer.getTargetName(file, lastModified, now);
+            if (targetName == null || lastModified < purgeCutoff) {
+                continue;
+            }
+
+            tieringInProgress.add(file);
+            tieringExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        tierEventFile(file, targetName);
+                    } finally {
+                        tieringInProgress.remove(file);
+                    }
+                }
+            });
+        }
+    }
+
+    private void tierEventFile(final File file, final String targetName) {
+        final long firstEventId = Long.parseLong(StringUtils.substringBefore(file.getName(), "."));
+        File stagedFile = null;
+        try {
+            stagedFile = eventFileTierer.stage(file, targetName, eventReporter);
+
+            // purging holds the monitor as well, so the file cannot be aged off while it is being swapped
+            synchronized (this) {
+                final Path currentPath = eventFileIndex.get().getPathForStartId(firstEventId);
+                if (closed.get() || currentPath == null || !currentPath.toFile().equals(file)) {
+                    logger.debug("Provenance Event file {} was aged off while it was being rewritten", file);
+                    return;
                 }
+
+                final File tieredFile;
+                eventFileReplaceLock.writeLock().lock();
+                try {
+                    tieredFile = eventFileTierer.install(file, stagedFile);
+                    stagedFile = null;
+
+                    boolean updated = false;
+                    while (!updated) {
+                        final EventFileIndex existingIndex = eventFileIndex.get();
+                        updated = eventFileIndex.compareAndSet(existingIndex, existingIndex.add(firstEventId, tieredFile.toPath()));
+                    }
+                    addToLedger(firstEventId, tieredFile);
+                    loadTimeIndex(firstEventId, tieredFile);
+                    if (blockCache != null) {
+                        blockCache.invalidate(file);
+                    }
+                } finally {
+                    eventFileReplaceLock.writeLock().unlock();
+                }
+
+                logger.info("Rewrote Provenance Event file {} as {}", file, tieredFile.getName());
+            }
+        } catch (final Exception e) {
+            if (closed.get() || !file.exists()) {
+                logger.debug("Stopped rewriting Provenance Event file {} because the repository was closed or the file was aged off", file);
+                return;
             }
 
-            updated = idToPathMap.compareAndSet(existingPathMap, newPathMap);
-            logger.debug("After expiration, path map: {}", newPathMap);
+            untierableFiles.add(file);
+            logger.warn("Failed to rewrite Provenance Event file {} as {} due to {}; it will be kept as it is", file, targetName, e.toString());
+            logger.warn("", e);
+            eventReporter.reportEvent(Severity.WARNING, EVENT_CATEGORY, "Failed to rewrite Provenance Event file " + file + " as " + targetName
+                + " due to " + e.toString() + "; it will be kept as it is");
+        } finally {
+            if (stagedFile != null) {
+                eventFileTierer.discard(stagedFile);
+            }
         }
     }
 
@@ -892,8 +2176,15 @@ public class MiNiFiPersistentProvenanceRepository implements ProvenanceRepositor
             return 0L;
         }
 
+        // the time index of the first file holds its earliest event time; files merged without one must be read
+        final EventFileIndex index = eventFileIndex.get();
+        final EventTimeIndex firstTimeIndex = index.isEmpty() ? null : timeIndices.get(index.getStartId(0));
+        if (firstTimeIndex != null && !firstTimeIndex.isEmpty()) {
+            return firstTimeIndex.getMinEventTime();
+        }
+
         for (final File logFile : logFiles) {
-            try (final RecordReader reader = RecordReaders.newRecordReader(logFile, null, Integer.MAX_VALUE)) {
+            try (final RecordReader reader = MiNiFiRecordReaders.newRecordReader(logFile, null, Integer.MAX_VALUE)) {
                 final StandardProvenanceEventRecord event = reader.nextRecord();
                 if (event != null) {
                     return event.getEventTime();
@@ -920,23 +2211,83 @@ public class MiNiFiPersistentProvenanceRepository implements ProvenanceRepositor
     }
 
     /**
-     * @return the number of journal files that exist across all storage directories
+     * @return the number of journal files that exist across all storage directories
+     */
+    // made protected for testing purposes
+    protected int getJournalCount() {
+        return unmergedJournals.size();
+    }
+
+    /**
+     * Records that the journals of the given writers have been created, both for backpressure and in the merge queue, so
+     * that they are merged after a restart even if they are never rolled over
+     */
+    private void addUnmergedJournals(final RecordWriter[] journalWriters) {
+        final List<File> journalFiles = new ArrayList<>(journalWriters.length);
+        for (final RecordWriter writer : journalWriters) {
+            unmergedJournals.add(writer.getFile());
+            journalFiles.add(writer.getFile());
+        }
+
+        if (journalFiles.isEmpty()) {
+            return;
+        }
+
+        try {
+            mergeQueue.add(getJournalGeneration(journalFiles), journalFiles);
+        } catch (final IOException ioe) {
+            logger.error("Failed to add Provenance Journal Files {} to {} due to {}; if the repository is restarted before they are rolled over, "
+                + "they will not be merged", journalFiles, mergeQueue, ioe.toString());
+            logger.error("", ioe);
+            eventReporter.reportEvent(Severity.ERROR, EVENT_CATEGORY, "Failed to add Provenance Journal Files to the merge queue due to " + ioe.toString());
+        }
+    }
+
+    /**
+     * @return the generation of the given journals, which is their basename: the ID of the first event written to them
+     */
+    private static long getJournalGeneration(final List<File> journalFiles) {
+        return Long.parseLong(StringUtils.substringBefore(journalFiles.get(0).getName(), "."));
+    }
+
+    /**
+     * Records that the given journal file no longer exists, removes the checksums of its blocks and wakes any rollover that
+     * is waiting for journals to be merged
      */
-    // made protected for testing purposes
-    protected int getJournalCount() {
-        // determine how many 'journals' we have in the journals directories
-        int journalFileCount = 0;
-        for (final File storageDir : configuration.getStorageDirectories()) {
-            final File journalsDir = new File(storageDir, "journals");
-            final File[] journalFiles = journalsDir.listFiles();
-            if (journalFiles != null) {
-                journalFileCount += journalFiles.length;
-            }
+    private void journalRemoved(final File journalFile) {
+        unmergedJournals.remove(journalFile);
+
+        final File checksumFile = BlockChecksums.getChecksumFile(journalFile);
+        if (!checksumFile.delete() && checksumFile.exists()) {
+            logger.warn("Failed to remove journal checksum file {}; this file should be cleaned up manually", checksumFile);
         }
 
-        return journalFileCount;
+        journalMergeLock.lock();
+        try {
+            journalMergeCount.incrementAndGet();
+            journalsMerged.signalAll();
+        } finally {
+            journalMergeLock.unlock();
+        }
     }
 
+    /**
+     * Waits for journals to be removed, unless any have been removed since the given number of merges was observed. The wait is
+     * bounded so that the caller periodically re-evaluates its state even if no merge completes.
+     *
+     * @param observedMergeCount the value of journalMergeCount when the caller last checked the number of journals
+     */
+    private void awaitJournalsMerged(final long observedMergeCount) {
+        journalMergeLock.lock();
+        try {
+            if (journalMergeCount.get() == observedMergeCount) {
+                journalsMerged.await(1, TimeUnit.SECONDS);
+            }
+        } catch (final InterruptedException ie) {
+        } finally {
+            journalMergeLock.unlock();
+        }
+    }
 
     /**
      * Method is exposed for unit testing
@@ -996,73 +2347,32 @@ public class MiNiFiPersistentProvenanceRepository implements ProvenanceRepositor
                 }
             }
 
-            // Choose a storage directory to store the merged file in.
-            final long storageDirIdx = storageDirectoryIndex.getAndIncrement();
-            final List<File> storageDirs = configuration.getStorageDirectories();
-            final File storageDir = storageDirs.get((int) (storageDirIdx % storageDirs.size()));
-
-            Future<?> future = null;
             if (!journalsToMerge.isEmpty()) {
-                // Run the rollover logic in a background thread.
-                final AtomicReference<Future<?>> futureReference = new AtomicReference<>();
+                // Merge in the background. A failed merge is retried with an increasing delay, and the storage directory
+                // of the merged file is chosen anew for each attempt, as the previous one may have run out of space. Whatever a
+                // failed attempt wrote is removed before the next one, so only the last attempt leaves a merged file behind.
                 final int recordsWritten = recordsWrittenSinceRollover.getAndSet(0);
-                final Runnable rolloverRunnable = new Runnable() {
+                mergeScheduler.submit(getJournalGeneration(journalsToMerge), journalsToMerge, new JournalMergeScheduler.MergeAction() {
                     @Override
-                    public void run() {
-                        try {
-                            final File fileRolledOver;
-
-                            try {
-                                fileRolledOver = mergeJournals(journalsToMerge, getMergeFile(journalsToMerge, storageDir), eventReporter);
-                            } catch (final IOException ioe) {
-                                logger.error("Failed to merge Journal Files {} into a Provenance Log File due to {}", journalsToMerge, ioe.toString());
-                                logger.error("", ioe);
-                                return;
-                            }
-
-                            if (fileRolledOver == null) {
-                                logger.debug("Couldn't merge journals. Will try again in 10 seconds. journalsToMerge: {}, storageDir: {}", journalsToMerge, storageDir);
-                                return;
-                            }
-                            final File file = fileRolledOver;
-
-                            // update our map of id to Path
-                            // We need to make sure that another thread doesn't also update the map at the same time. We cannot
-                            // use the write lock when purging old events, and we want to use the same approach here.
-                            boolean updated = false;
-                            final Long fileFirstEventId = Long.valueOf(StringUtils.substringBefore(fileRolledOver.getName(), "."));
-                            while (!updated) {
-                                final SortedMap<Long, Path> existingPathMap = idToPathMap.get();
-                                final SortedMap<Long, Path> newIdToPathMap = new TreeMap<>(new PathMapComparator());
-                                newIdToPathMap.putAll(existingPathMap);
-                                newIdToPathMap.put(fileFirstEventId, file.toPath());
-                                updated = idToPathMap.compareAndSet(existingPathMap, newIdToPathMap);
-                            }
-
-                            logger.info("Successfully Rolled over Provenance Event file containing {} records", recordsWritten);
-                            rolloverCompletions.getAndIncrement();
-
-                            // We have finished successfully. Cancel the future so that we don't run anymore
-                            Future<?> future;
-                            while ((future = futureReference.get()) == null) {
-                                try {
-                                    Thread.sleep(10L);
-                                } catch (final InterruptedException ie) {
-                                }
-                            }
-
-                            future.cancel(false);
-                        } catch (final Throwable t) {
-                            logger.error("Failed to rollover Provenance repository due to {}", t.toString());
-                            logger.error("", t);
+                    public void merge(final List<File> journalFiles) throws IOException {
+                        final File fileRolledOver = mergeJournals(journalFiles, getMergeFile(journalFiles, placementPolicy.nextDirectory()), eventReporter);
+                        if (fileRolledOver == null) {
+                            logger.debug("No Provenance Event file was created from journals {}", journalFiles);
+                            return;
                         }
+                        addEventFile(fileRolledOver);
+
+                        logger.info("Successfully Rolled over Provenance Event file containing {} records", recordsWritten);
+                        rolloverCompletions.getAndIncrement();
                     }
-                };
+                });
+            }
 
-                // We are going to schedule the future to run immediately and then repeat every 10 seconds. This allows us to keep retrying if we
-                // fail for some reason. When we succeed, the Runnable will cancel itself.
-                future = rolloverExecutor.scheduleWithFixedDelay(rolloverRunnable, 0, 10, TimeUnit.SECONDS);
-                futureReference.set(future);
+            final int previousJournalCount = writers.length;
+            final int nextJournalCount = journalCountPolicy.rollover(bytesWrittenSinceRollover.get());
+            if (nextJournalCount != previousJournalCount) {
+                logger.info("Changing the number of Provenance journals from {} to {} based on the contention between writers and the bytes written per journal",
+                    previousJournalCount, nextJournalCount);
             }
 
             streamStartTime.set(System.currentTimeMillis());
@@ -1070,9 +2380,11 @@ public class MiNiFiPersistentProvenanceRepository implements ProvenanceRepositor
 
             // We don't want to create new 'writers' until the number of unmerged journals falls below our threshold. So we wait
             // here before we repopulate the 'writers' member variable and release the lock.
+            long observedMergeCount = journalMergeCount.get();
             int journalFileCount = getJournalCount();
-            long repoSize = getSize(getLogFiles(), 0L);
-            final int journalCountThreshold = configuration.getJournalCount() * 5;
+            long repoSize = eventFileLedger.getTotalBytes();
+            // the sets of journals differ in size when the number of journals is adjusted, so allow for 5 of the largest sets
+            final int journalCountThreshold = journalCountPolicy.getMaxJournalCount() * 5;
             final long sizeThreshold = (long) (configuration.getMaxStorageCapacity() * 1.1D); // do not go over 10% of max capacity
 
             // check if we need to apply backpressure.
@@ -1088,48 +2400,47 @@ public class MiNiFiPersistentProvenanceRepository implements ProvenanceRepositor
                         + "threshold for blocking is {} ({} bytes)", journalFileCount, repoSize, journalCountThreshold, sizeThreshold);
                 eventReporter.reportEvent(Severity.WARNING, "Provenance Repository", "The rate of the dataflow is "
                         + "exceeding the provenance recording rate. Slowing down flow to accommodate");
+                final long throttleStartNanos = System.nanoTime();
 
                 while (journalFileCount > journalCountThreshold || repoSize > sizeThreshold) {
                     // if a shutdown happens while we are in this loop, kill the rollover thread and break
                     if (this.closed.get()) {
-                        if (future != null) {
-                            future.cancel(true);
-                        }
-
                         break;
                     }
 
-                    if (repoSize > sizeThreshold) {
+                    if (repoSize > sizeThreshold && recoveryFinished.get()) {
                         logger.debug("Provenance Repository has exceeded its size threshold; will trigger purging of oldest events");
                         purgeOldEvents();
 
+                        observedMergeCount = journalMergeCount.get();
                         journalFileCount = getJournalCount();
-                        repoSize = getSize(getLogFiles(), 0L);
+                        repoSize = eventFileLedger.getTotalBytes();
                         continue;
                     } else {
-                        // if we are constrained by the number of journal files rather than the size of the repo,
-                        // then we will just sleep a bit because another thread is already actively merging the journals,
-                        // due to the runnable that we scheduled above
-                        try {
-                            Thread.sleep(100L);
-                        } catch (final InterruptedException ie) {
-                        }
+                        // if we are constrained by the number of journal files rather than the size of the repo, or cannot
+                        // purge until recovery finishes, then we will just wait for another thread to finish merging journals,
+                        // as one is already actively merging them due to the runnable that we scheduled above
+                        awaitJournalsMerged(observedMergeCount);
                     }
 
                     logger.debug("Provenance Repository is still behind. Keeping flow slowed down "
                             + "to accommodate. Currently, there are {} journal files ({} bytes) and "
                             + "threshold for blocking is {} ({} bytes)", journalFileCount, repoSize, journalCountThreshold, sizeThreshold);
 
+                    observedMergeCount = journalMergeCount.get();
                     journalFileCount = getJournalCount();
-                    repoSize = getSize(getLogFiles(), 0L);
+                    repoSize = eventFileLedger.getTotalBytes();
                 }
 
+                final long throttleMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - throttleStartNanos);
+                backpressureHistogram.record(throttleMillis);
                 logger.info("Provenance Repository has now caught up with rolling over journal files. Current number of "
-                        + "journal files to be rolled over is {}", journalFileCount);
+                        + "journal files to be rolled over is {}; the flow was slowed down for {} millis", journalFileCount, throttleMillis);
             }
 
             // we've finished rolling over successfully. Create new writers and reset state.
             writers = createWriters(configuration, idGenerator.get());
+            addUnmergedJournals(writers);
             dirtyWriterCount.set(0);
             streamStartTime.set(System.currentTimeMillis());
             recordsWrittenSinceRollover.getAndSet(0);
@@ -1137,56 +2448,6 @@ public class MiNiFiPersistentProvenanceRepository implements ProvenanceRepositor
     }
 
 
-    // protected for use in unit tests
-    protected Set<File> recoverJournalFiles() throws IOException {
-        if (!configuration.isAllowRollover()) {
-            return Collections.emptySet();
-        }
-
-        final Map<String, List<File>> journalMap = new HashMap<>();
-
-        // Map journals' basenames to the files with that basename.
-        final List<File> storageDirs = configuration.getStorageDirectories();
-        for (final File storageDir : configuration.getStorageDirectories()) {
-            final File journalDir = new File(storageDir, "journals");
-            if (!journalDir.exists()) {
-                continue;
-            }
-
-            final File[] journalFiles = journalDir.listFiles();
-            if (journalFiles == null) {
-                continue;
-            }
-
-            for (final File journalFile : journalFiles) {
-                if (journalFile.isDirectory()) {
-                    continue;
-                }
-
-                final String basename = StringUtils.substringBefore(journalFile.getName(), ".");
-                List<File> files = journalMap.get(basename);
-                if (files == null) {
-                    files = new ArrayList<>();
-                    journalMap.put(basename, files);
-                }
-
-                files.add(journalFile);
-            }
-        }
-
-        final Set<File> mergedFiles = new HashSet<>();
-        for (final List<File> journalFileSet : journalMap.values()) {
-            final long storageDirIdx = storageDirectoryIndex.getAndIncrement();
-            final File storageDir = storageDirs.get((int) (storageDirIdx % storageDirs.size()));
-            final File mergedFile = mergeJournals(journalFileSet, getMergeFile(journalFileSet, storageDir), eventReporter);
-            if (mergedFile != null) {
-                mergedFiles.add(mergedFile);
-            }
-        }
-
-        return mergedFiles;
-    }
-
     static File getMergeFile(final List<File> journalFiles, final File storageDir) {
         // verify that all Journal files have the same basename
         String canonicalBaseName = null;
@@ -1211,9 +2472,9 @@ public class MiNiFiPersistentProvenanceRepository implements ProvenanceRepositor
      * </p>
      * <p>
      * <p>
-     * If the repository is configured to compress the data, the file written to may not be the same as the <code>suggestedMergeFile</code>, as a filename extension of '.gz' may be appended. If the
-     * journals are successfully merged, the file that they were merged into will be returned. If unable to merge the records (for instance, because the repository has been closed or because the list
-     * of journal files was empty), this method will return <code>null</code>.
+     * If the repository is configured to compress the data, the file written to may not be the same as the <code>suggestedMergeFile</code>, as the filename extension of the configured
+     * compression codec, such as '.gz', may be appended. If the journals are successfully merged, the file that they were merged into will be returned. If unable to merge the records
+     * (for instance, because the repository has been closed or because the list of journal files was empty), this method will return <code>null</code>.
      * </p>
      *
      * @param journalFiles       the journal files to merge
@@ -1249,32 +2510,9 @@ public class MiNiFiPersistentProvenanceRepository implements ProvenanceRepositor
             }
         });
 
-        final String firstJournalFile = journalFiles.get(0).getName();
-        final String firstFileSuffix = StringUtils.substringAfterLast(firstJournalFile, ".");
-        final boolean allPartialFiles = firstFileSuffix.equals("0");
-
         // check if we have all of the "partial" files for the journal.
-        if (allPartialFiles) {
-            if (suggestedMergeFile.exists()) {
-                // we have all "partial" files and there is already a merged file. Delete the data from the index
-                // because the merge file may not be fully merged. We will re-merge.
-                logger.warn("Merged Journal File {} already exists; however, all partial journal files also exist "
-                        + "so assuming that the merge did not finish. Repeating procedure in order to ensure consistency.");
-
-                // Since we only store the file's basename, block offset, and event ID, and because the newly created file could end up on
-                // a different Storage Directory than the original, we need to ensure that we delete both the partially merged
-                // file and the TOC file. Otherwise, we could get the wrong copy and have issues retrieving events.
-                if (!suggestedMergeFile.delete()) {
-                    logger.error("Failed to delete partially written Provenance Journal File {}. This may result in events from this journal "
-                            + "file not being able to be displayed. This file should be deleted manually.", suggestedMergeFile);
-                }
-
-                final File tocFile = TocUtil.getTocFile(suggestedMergeFile);
-                if (tocFile.exists() && !tocFile.delete()) {
-                    logger.error("Failed to delete .toc file {}; this may result in not being able to read the Provenance Events from the {} Journal File. "
-                            + "This can be corrected by manually deleting the {} file", tocFile, suggestedMergeFile, tocFile);
-                }
-            }
+        if (isMergeUnfinished(journalFiles)) {
+            removeUnfinishedMerges(suggestedMergeFile);
         } else {
             logger.warn("Cannot merge journal files {} because expected first file to end with extension '.0' "
                     + "but it did not; assuming that the files were already merged but only some finished deletion "
@@ -1283,6 +2521,8 @@ public class MiNiFiPersistentProvenanceRepository implements ProvenanceRepositor
             for (final File file : journalFiles) {
                 if (!file.delete() && file.exists()) {
                     logger.warn("Failed to delete unneeded journal file {}; this file should be cleaned up manually", file);
+                } else {
+                    journalRemoved(file);
                 }
             }
 
@@ -1290,13 +2530,18 @@ public class MiNiFiPersistentProvenanceRepository implements ProvenanceRepositor
         }
 
         final long startNanos = System.nanoTime();
+        long journalBytes = 0L;
+        for (final File journalFile : journalFiles) {
+            journalBytes += journalFile.length();
+        }
 
         // Map each journal to a RecordReader
         final List<RecordReader> readers = new ArrayList<>();
         int records = 0;
+        final EventIndexBuilder indexBuilder = eventIndex == null ? null : eventIndex.newBuilder();
 
-        final boolean isCompress = configuration.isCompressOnRollover();
-        final File writerFile = isCompress ? new File(suggestedMergeFile.getParentFile(), suggestedMergeFile.getName() + ".gz") : suggestedMergeFile;
+        final EventFileCodec codec = configuration.isCompressOnRollover() ? compressionCodec : null;
+        final File writerFile = codec == null ? suggestedMergeFile : new File(suggestedMergeFile.getParentFile(), suggestedMergeFile.getName() + codec.getFileExtension());
 
         try {
             for (final File journalFile : journalFiles) {
@@ -1304,7 +2549,7 @@ public class MiNiFiPersistentProvenanceRepository implements ProvenanceRepositor
                     // Use MAX_VALUE for number of chars because we don't want to truncate the value as we write it
                     // out. This allows us to later decide that we want more characters and still be able to retrieve
                     // the entire event.
-                    readers.add(RecordReaders.newRecordReader(journalFile, null, Integer.MAX_VALUE));
+                    readers.add(MiNiFiRecordReaders.newRecordReader(journalFile, null, Integer.MAX_VALUE));
                 } catch (final EOFException eof) {
                     // there's nothing here. Skip over it.
                 } catch (final IOException ioe) {
@@ -1319,84 +2564,14 @@ public class MiNiFiPersistentProvenanceRepository implements ProvenanceRepositor
                 }
             }
 
-            // Create a Map so that the key is the next record available from a reader and the value is the Reader from which
-            // the record came. This sorted map is then used so that we are able to always get the first entry, which is the next
-            // lowest record id
-            final SortedMap<StandardProvenanceEventRecord, RecordReader> recordToReaderMap = new TreeMap<>(new Comparator<StandardProvenanceEventRecord>() {
-                @Override
-                public int compare(final StandardProvenanceEventRecord o1, final StandardProvenanceEventRecord o2) {
-                    return Long.compare(o1.getEventId(), o2.getEventId());
-                }
-            });
-
-            long minEventId = 0L;
-            long earliestTimestamp = System.currentTimeMillis();
-            for (final RecordReader reader : readers) {
-                StandardProvenanceEventRecord record = null;
-
-                try {
-                    record = reader.nextRecord();
-                } catch (final EOFException eof) {
-                } catch (final Exception e) {
-                    logger.warn("Failed to generate Provenance Event Record from Journal due to " + e + "; it's possible that the record wasn't "
-                            + "completely written to the file. This record will be skipped.");
-                    if (logger.isDebugEnabled()) {
-                        logger.warn("", e);
-                    }
-
-                    if (eventReporter != null) {
-                        eventReporter.reportEvent(Severity.WARNING, EVENT_CATEGORY, "Failed to read Provenance Event Record from Journal due to " + e +
-                                "; it's possible that hte record wasn't completely written to the file. This record will be skipped.");
-                    }
-                }
-
-                if (record == null) {
-                    continue;
-                }
-
-                if (record.getEventTime() < earliestTimestamp) {
-                    earliestTimestamp = record.getEventTime();
-                }
-
-                if (record.getEventId() < minEventId) {
-                    minEventId = record.getEventId();
-                }
-
-                recordToReaderMap.put(record, reader);
-            }
-
-            // loop over each entry in the map, persisting the records to the merged file in order, and populating the map
-            // with the next entry from the journal file from which the previous record was written.
-            try (final RecordWriter writer = RecordWriters.newSchemaRecordWriter(writerFile, configuration.isCompressOnRollover(), true)) {
-                writer.writeHeader(minEventId);
-
-                while (!recordToReaderMap.isEmpty()) {
-                    final Map.Entry<StandardProvenanceEventRecord, RecordReader> entry = recordToReaderMap.entrySet().iterator().next();
-                    final StandardProvenanceEventRecord record = entry.getKey();
-                    final RecordReader reader = entry.getValue();
-
-                    writer.writeRecord(record, record.getEventId());
-                    final int blockIndex = writer.getTocWriter().getCurrentBlockIndex();
-
-                    records++;
-
-                    // Remove this entry from the map
-                    recordToReaderMap.remove(record);
-
-                    // Get the next entry from this reader and add it to the map
-                    StandardProvenanceEventRecord nextRecord = null;
-
-                    try {
-                        nextRecord = reader.nextRecord();
-                    } catch (final EOFException eof) {
-                    }
-
-                    if (nextRecord != null) {
-                        recordToReaderMap.put(nextRecord, reader);
-                    }
-                }
+            records = journalMerger.merge(readers, writerFile, codec, eventReporter, indexBuilder);
+            if (indexBuilder != null && records > 0) {
+                writeIndex(indexBuilder, writerFile);
             }
         } finally {
+            if (indexBuilder != null) {
+                indexBuilder.release();
+            }
             for (final RecordReader reader : readers) {
                 try {
                     reader.close();
@@ -1414,6 +2589,8 @@ public class MiNiFiPersistentProvenanceRepository implements ProvenanceRepositor
                     eventReporter.reportEvent(Severity.WARNING, EVENT_CATEGORY, "Failed to remove temporary journal file " +
                             journalFile.getAbsolutePath() + "; this file should be cleaned up manually");
                 }
+            } else {
+                journalRemoved(journalFile);
             }
 
             final File tocFile = getTocFile(journalFile);
@@ -1428,18 +2605,89 @@ public class MiNiFiPersistentProvenanceRepository implements ProvenanceRepositor
         }
 
         if (records == 0) {
-            writerFile.delete();
+            JournalMerger.deleteMergedFile(writerFile);
             logger.debug("Couldn't merge journals: No Records to merge");
             return null;
         } else {
             final long nanos = System.nanoTime() - startNanos;
             final long millis = TimeUnit.MILLISECONDS.convert(nanos, TimeUnit.NANOSECONDS);
+            final long eventFileBytes = writerFile.length();
+            placementPolicy.recordWrite(writerFile, eventFileBytes, nanos);
+            mergeDurationHistogram.record(millis);
+            mergedJournalBytes.addAndGet(journalBytes);
+            mergedEventFileBytes.addAndGet(eventFileBytes);
+            mergeNanos.addAndGet(nanos);
             logger.info("Successfully merged {} journal files ({} records) into single Provenance Log File {} in {} milliseconds", journalFiles.size(), records, suggestedMergeFile, millis);
         }
 
         return writerFile;
     }
 
+    /**
+     * @param journalFiles a set of journal files
+     * @return whether the first journal of the set, whose name ends with '.0', still exists, in which case no merge of the
+     * set has finished, as the journals are only removed, in order, once they have been merged
+     */
+    private static boolean isMergeUnfinished(final List<File> journalFiles) {
+        for (final File journalFile : journalFiles) {
+            if (StringUtils.substringAfterLast(journalFile.getName(), ".").equals("0")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes anything that an earlier attempt to merge a set of journals left behind. A failed merge removes its own output,
+     * but one that was cut short by the repository stopping does not, and each attempt may have picked a different storage
+     * directory and, if the repository was restarted with another configuration, a different codec.
+     *
+     * @param suggestedMergeFile the file that the journals are about to be merged into
+     */
+    private void removeUnfinishedMerges(final File suggestedMergeFile) {
+        final String mergeFilename = suggestedMergeFile.getName();
+        for (final File storageDir : configuration.getStorageDirectories()) {
+            final File[] earlierFiles = storageDir.listFiles(new FileFilter() {
+                @Override
+                public boolean accept(final File pathname) {
+                    return pathname.getName().startsWith(mergeFilename);
+                }
+            });
+            if (earlierFiles == null) {
+                continue;
+            }
+
+            for (final File earlierFile : earlierFiles) {
+                // Since we only store the file's basename, block offset, and event ID, and because the newly created file could end up on
+                // a different Storage Directory than the original, we need to ensure that we delete the partially merged file and
+                // all of the files written alongside it. Otherwise, we could get the wrong copy and have issues retrieving events.
+                logger.warn("Merged Journal File {} already exists; however, all partial journal files also exist "
+                        + "so assuming that the merge did not finish. Repeating procedure in order to ensure consistency.", earlierFile);
+                for (final File remaining : JournalMerger.deleteMergedFile(earlierFile)) {
+                    logger.error("Failed to delete partially written Provenance Journal File {}. This may result in events from this journal "
+                            + "file not being able to be displayed. This file should be deleted manually.", remaining);
+                }
+            }
+        }
+    }
+
+    private void writeIndex(final EventIndexBuilder indexBuilder, final File eventFile) {
+        if (indexBuilder.isAbandoned()) {
+            logger.info("Provenance Event Log File {} will not be indexed because its postings did not fit within the heap allotted to the query index", eventFile);
+            return;
+        }
+
+        // the events are safely merged at this point, so failing to index them only leaves them to be scanned by queries
+        try {
+            eventIndex.write(indexBuilder, eventFile);
+        } catch (final IOException ioe) {
+            logger.warn("Failed to index Provenance Event Log File {} due to {}; queries will scan this file instead", eventFile, ioe.toString());
+            if (logger.isDebugEnabled()) {
+                logger.warn("", ioe);
+            }
+        }
+    }
+
     private StandardProvenanceEventRecord truncateAttributes(final StandardProvenanceEventRecord original) {
         boolean requireTruncation = false;
 
@@ -1461,119 +2709,378 @@ public class MiNiFiPersistentProvenanceRepository implements ProvenanceRepositor
         return truncated;
     }
 
-    private Map<String, String> truncateAttributes(final Map<String, String> original) {
-        final Map<String, String> truncatedAttrs = new HashMap<>();
-        for (final Map.Entry<String, String> entry : original.entrySet()) {
-            if (entry.getValue().length() > maxAttributeChars) {
-                truncatedAttrs.put(entry.getKey(), entry.getValue().substring(0, maxAttributeChars));
-            } else {
-                truncatedAttrs.put(entry.getKey(), entry.getValue());
-            }
-        }
-        return truncatedAttrs;
+    private Map<String, String> truncateAttributes(final Map<String, String> original) {
+        final Map<String, String> truncatedAttrs = new HashMap<>();
+        for (final Map.Entry<String, String> entry : original.entrySet()) {
+            if (entry.getValue().length() > maxAttributeChars) {
+                truncatedAttrs.put(entry.getKey(), entry.getValue().substring(0, maxAttributeChars));
+            } else {
+                truncatedAttrs.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return truncatedAttrs;
+    }
+
+    @Override
+    public ProvenanceEventRecord getEvent(final long id) throws IOException {
+        final List<ProvenanceEventRecord> records = getEvents(id, 1);
+        if (records.isEmpty()) {
+            return null;
+        }
+        final ProvenanceEventRecord record = records.get(0);
+        if (record.getEventId() != id) {
+            return null;
+        }
+        return record;
+    }
+
+    private boolean needToRollover() {
+        final long writtenSinceRollover = bytesWrittenSinceRollover.get();
+
+        if (writtenSinceRollover >= maxPartitionBytes) {
+            return true;
+        }
+
+        if ((dirtyWriterCount.get() > 0) || (writtenSinceRollover > 0 && System.currentTimeMillis() > streamStartTime.get() + maxPartitionMillis)) {
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * @return a List of all Provenance Event Log Files, sorted in ascending order by the first Event ID in each file
+     */
+    private List<File> getSortedLogFiles() {
+        // the index is already ordered by the first Event ID in each file
+        final List<Path> paths = eventFileIndex.get().getPaths();
+        final List<File> files = new ArrayList<>(paths.size());
+        for (final Path path : paths) {
+            files.add(path.toFile());
+        }
+        return files;
+    }
+
+    @Override
+    public Long getMaxEventId() {
+        final long maxId = maxEventId.get();
+        return maxId == NO_EVENT_ID ? null : maxId;
+    }
+
+    private void checkAndSetMaxEventId(final long id) {
+        long maxId = maxEventId.get();
+        while (id > maxId) {
+            if (maxEventId.compareAndSet(maxId, id)) {
+                return;
+            }
+            maxId = maxEventId.get();
+        }
+    }
+
+    private static int count(final Iterable<ProvenanceEventRecord> records) {
+        if (records instanceof Collection) {
+            return ((Collection<?>) records).size();
+        }
+
+        int count = 0;
+        for (final Iterator<ProvenanceEventRecord> itr = records.iterator(); itr.hasNext(); itr.next()) {
+            count++;
+        }
+        return count;
+    }
+
+    private boolean journalWriterThreadsAlive() {
+        for (final Thread writerThread : journalWriterThreads) {
+            if (writerThread.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes any events that are still waiting in the ingest ring buffer using the calling thread.
+     */
+    private void drainIngestRing() {
+        final List<PendingEvents> batch = new ArrayList<>(MAX_INGEST_DRAIN_BATCH);
+        while (ingestRing.drainTo(batch, MAX_INGEST_DRAIN_BATCH) > 0) {
+            persistPendingEvents(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Writes all of the events of the given batch to a single journal and then completes the Future of each of the batch's producers.
+     *
+     * @param batch the events handed off by the producers
+     */
+    private void persistPendingEvents(final List<PendingEvents> batch) {
+        final List<ProvenanceEventRecord> records = new ArrayList<>();
+        for (final PendingEvents pending : batch) {
+            records.addAll(pending.getEvents());
+        }
+
+        // If we have to sync, keep collecting events from other producers for up to the group commit window so that
+        // all of them are made durable by a single fsync. This happens before a journal is locked, so that neither the
+        // other journal writer threads nor a rollover have to wait out the window. The batch is appended to as well.
+        if (alwaysSync && groupCommitWindowNanos > 0L) {
+            new GroupCommit(batch, records).collect();
+        }
+
+        try {
+            persistRecord(records);
+        } catch (final Throwable t) {
+            for (final PendingEvents pending : batch) {
+                pending.getCompletion().completeExceptionally(t);
+            }
+            return;
+        }
+
+        for (final PendingEvents pending : batch) {
+            pending.getCompletion().complete(null);
+        }
+    }
+
+    /**
+     * @return a histogram of the amount of time, in microseconds, that each fsync of a journal took. Only populated if the
+     * repository is configured to always sync.
+     */
+    public Histogram getJournalSyncHistogram() {
+        return journalSyncHistogram;
+    }
+
+    /**
+     * @return a histogram of the number of events that were made durable by each fsync of a journal. Only populated if the
+     * repository is configured to always sync.
+     */
+    public Histogram getGroupCommitBatchSizeHistogram() {
+        return groupCommitBatchSizeHistogram;
+    }
+
+    /**
+     * @return a histogram of the amount of time, in milliseconds, that each rollover spent applying backpressure because the
+     * journals could not be merged as quickly as events were recorded, or because the repository exceeded its capacity.
+     * While backpressure is applied, no events can be registered.
+     */
+    public Histogram getBackpressureHistogram() {
+        return backpressureHistogram;
+    }
+
+    @Override
+    public ProvenanceRepositoryMetrics getMetrics() {
+        final ProvenanceRepositoryMetrics metrics = new ProvenanceRepositoryMetrics();
+        metrics.setJournalCount(getJournalCount());
+        metrics.setDirtyWriterCount(dirtyWriterCount.get());
+        metrics.setEventFileCount(eventFileLedger.getFileCount());
+        metrics.setRepositorySize(eventFileLedger.getTotalBytes());
+
+        metrics.setEventsWritten(eventsWrittenMeter.getCount());
+        metrics.setBytesWritten(bytesWrittenMeter.getCount());
+        metrics.setEventsPerSecond(eventsWrittenMeter.getRate());
+        metrics.setBytesPerSecond(bytesWrittenMeter.getRate());
+        metrics.setPersistLatencyAverageMicros(persistLatencyHistogram.getMean());
+        metrics.setPersistLatency99thPercentileMicros(persistLatencyHistogram.getPercentile(99D));
+        metrics.setPersistLatencyMaxMicros(persistLatencyHistogram.getMax());
+        metrics.setLockRetries(lockRetries.sum());
+        metrics.setJournalSyncAverageMicros(journalSyncHistogram.getMean());
+        metrics.setJournalSync99thPercentileMicros(journalSyncHistogram.getPercentile(99D));
+        metrics.setJournalSyncMaxMicros(journalSyncHistogram.getMax());
+        metrics.setGroupCommitAverageBatchSize(groupCommitBatchSizeHistogram.getMean());
+        metrics.setGroupCommitMaxBatchSize(groupCommitBatchSizeHistogram.getMax());
+        metrics.setEventsDropped(eventsDropped.sum());
+        metrics.setEventsSpilled(eventsSpilled.sum());
+
+        final long journalBytes = mergedJournalBytes.get();
+        final long eventFileBytes = mergedEventFileBytes.get();
+        final long nanos = mergeNanos.get();
+        metrics.setMergeCount(mergeDurationHistogram.getCount());
+        metrics.setMergeAverageMillis(mergeDurationHistogram.getMean());
+        metrics.setMergeMaxMillis(mergeDurationHistogram.getMax());
+        metrics.setMergeBytesPerSecond(nanos == 0L ? 0D : journalBytes * (double) TimeUnit.SECONDS.toNanos(1L) / nanos);
+        metrics.setCompressionRatio(eventFileBytes == 0L ? 0D : (double) journalBytes / eventFileBytes);
+
+        metrics.setPurgeCount(purgeDurationHistogram.getCount());
+        metrics.setPurgeAverageMillis(purgeDurationHistogram.getMean());
+        metrics.setFilesPurged(filesPurged.get());
+        metrics.setBackpressureMillis(backpressureHistogram.getSum());
+
+        metrics.setQueuedMergeCount(mergeScheduler.getMergeCount(JournalMergeScheduler.State.QUEUED));
+        metrics.setRunningMergeCount(mergeScheduler.getMergeCount(JournalMergeScheduler.State.RUNNING));
+        metrics.setFailingMergeCount(mergeScheduler.getMergeCount(JournalMergeScheduler.State.BACKING_OFF));
+        return metrics;
     }
 
-    @Override
-    public ProvenanceEventRecord getEvent(final long id) throws IOException {
-        final List<ProvenanceEventRecord> records = getEvents(id, 1);
-        if (records.isEmpty()) {
-            return null;
-        }
-        final ProvenanceEventRecord record = records.get(0);
-        if (record.getEventId() != id) {
-            return null;
-        }
-        return record;
+    /**
+     * @return a histogram of the amount of time, in microseconds, taken to persist each batch of events to a journal,
+     * including waiting for a journal that is not in use and syncing it if the repository is configured to always sync
+     */
+    public Histogram getPersistLatencyHistogram() {
+        return persistLatencyHistogram;
     }
 
-    private boolean needToRollover() {
-        final long writtenSinceRollover = bytesWrittenSinceRollover.get();
+    /**
+     * @return the policy that decides which storage directory each event file is placed in, along with the write throughput
+     * of each storage directory. Journals are placed by it as well, unless they have directories of their own
+     */
+    public StoragePlacementPolicy getStoragePlacementPolicy() {
+        return placementPolicy;
+    }
 
-        if (writtenSinceRollover >= maxPartitionBytes) {
-            return true;
-        }
+    /**
+     * @return the policy that decides which directory each journal is placed in, which is the storage placement policy
+     * unless journals have directories of their own
+     */
+    public StoragePlacementPolicy getJournalPlacementPolicy() {
+        return journalPlacementPolicy;
+    }
 
-        if ((dirtyWriterCount.get() > 0) || (writtenSinceRollover > 0 && System.currentTimeMillis() > streamStartTime.get() + maxPartitionMillis)) {
-            return true;
+    /**
+     * @return the state of each merge of a set of journals that has not yet succeeded, oldest generation first
+     */
+    List<JournalMergeScheduler.MergeStatus> getJournalMergeStatus() {
+        return mergeScheduler.getMergeStatus();
+    }
+
+    /**
+     * @return the number of bytes of the event files that are charged against each storage quota, keyed by the name of the quota
+     */
+    Map<String, Long> getComponentQuotaUsage() {
+        final Map<String, Long> usage = new LinkedHashMap<>();
+        for (int quota = 0; quota < componentQuotas.size(); quota++) {
+            usage.put(componentQuotas.getName(quota), eventFileLedger.getQuotaBytes(quota));
         }
+        return usage;
+    }
 
-        return false;
+    /**
+     * @return the policy that decides which of the registered events are persisted, along with the number of events that
+     * it has discarded
+     */
+    public ProvenanceAdmissionPolicy getAdmissionPolicy() {
+        return admissionPolicy;
     }
 
     /**
-     * @return a List of all Provenance Event Log Files, sorted in ascending order by the first Event ID in each file
+     * Collects events from the ingest ring buffer for a journal writer thread that is about to write and sync a batch, until
+     * either the group commit window elapses or the maximum number of events for a single commit is reached. No locks are
+     * held while collecting.
      */
-    private List<File> getSortedLogFiles() {
-        final List<Path> paths = new ArrayList<>(getAllLogFiles());
-        Collections.sort(paths, new Comparator<Path>() {
-            @Override
-            public int compare(final Path o1, final Path o2) {
-                return Long.compare(getFirstEventId(o1.toFile()), getFirstEventId(o2.toFile()));
-            }
-        });
+    private class GroupCommit {
+        private final List<PendingEvents> batch;
+        private final List<ProvenanceEventRecord> records;
+        private final long deadlineNanos;
+
+        GroupCommit(final List<PendingEvents> batch, final List<ProvenanceEventRecord> records) {
+            this.batch = batch;
+            this.records = records;
+            this.deadlineNanos = System.nanoTime() + groupCommitWindowNanos;
+        }
+
+        /**
+         * Appends the events that arrive within the window to the batch and to its records
+         */
+        void collect() {
+            final List<PendingEvents> additional = new ArrayList<>();
+            while (records.size() < configuration.getGroupCommitMaxEvents() && !closed.get()) {
+                final long remainingNanos = deadlineNanos - System.nanoTime();
+                if (remainingNanos <= 0L) {
+                    return;
+                }
 
-        final List<File> files = new ArrayList<>(paths.size());
-        for (final Path path : paths) {
-            files.add(path.toFile());
+                if (ingestRing.drainTo(additional, MAX_INGEST_DRAIN_BATCH) == 0) {
+                    try {
+                        ingestRing.awaitNotEmpty(remainingNanos, TimeUnit.NANOSECONDS);
+                    } catch (final InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    continue;
+                }
+
+                for (final PendingEvents pending : additional) {
+                    records.addAll(pending.getEvents());
+                }
+                batch.addAll(additional);
+                additional.clear();
+            }
         }
-        return files;
     }
 
     /**
-     * Returns the Event ID of the first event in the given Provenance Event Log File.
-     *
-     * @param logFile the log file from which to obtain the first Event ID
-     * @return the ID of the first event in the given log file
+     * The events that were registered by a single call to {@link #submitEvents(Iterable)}, along with the Future that
+     * is completed once they have been written.
      */
-    private long getFirstEventId(final File logFile) {
-        final String name = logFile.getName();
-        final int dotIndex = name.indexOf(".");
-        return Long.parseLong(name.substring(0, dotIndex));
-    }
+    private class PendingEvents {
+        private final List<ProvenanceEventRecord> events;
+        private final CompletableFuture<Void> completion = new CompletableFuture<>();
 
-    @Override
-    public Long getMaxEventId() {
-        idLock.lock();
-        try {
-            return this.maxId;
-        } finally {
-            idLock.unlock();
+        PendingEvents(final List<ProvenanceEventRecord> events) {
+            this.events = events;
         }
-    }
 
-    private void checkAndSetMaxEventId(long id) {
-        idLock.lock();
-        try {
-            if (maxId == null || id > maxId) {
-                maxId = id;
+        List<ProvenanceEventRecord> getEvents() {
+            return events;
+        }
+
+        CompletableFuture<Void> getCompletion() {
+            return completion;
+        }
+
+        void persist() {
+            try {
+                persistRecord(events);
+                completion.complete(null);
+            } catch (final Throwable t) {
+                completion.completeExceptionally(t);
             }
-        } finally {
-            idLock.unlock();
         }
     }
 
-    public Collection<Path> getAllLogFiles() {
-        final SortedMap<Long, Path> map = idToPathMap.get();
-        return map == null ? new ArrayList<Path>() : map.values();
-    }
+    /**
+     * Drains the ingest ring buffer in batches, writing each batch to one of the journals. Runs until the repository is closed
+     * and there are no more events waiting to be written.
+     */
+    private class JournalWriterTask implements Runnable {
+        @Override
+        public void run() {
+            final List<PendingEvents> batch = new ArrayList<>(MAX_INGEST_DRAIN_BATCH);
+            while (true) {
+                if (ingestRing.drainTo(batch, MAX_INGEST_DRAIN_BATCH) == 0) {
+                    if (closed.get()) {
+                        return;
+                    }
 
-    private static class PathMapComparator implements Comparator<Long> {
+                    // the spill queue is only drained once the ring buffer has caught up
+                    if (ingestSpillQueue != null && persistSpilledEvents()) {
+                        continue;
+                    }
 
-        @Override
-        public int compare(final Long o1, final Long o2) {
-            if (o1 == null && o2 == null) {
-                return 0;
-            }
-            if (o1 == null) {
-                return 1;
-            }
-            if (o2 == null) {
-                return -1;
+                    try {
+                        ingestRing.awaitNotEmpty(100L, TimeUnit.MILLISECONDS);
+                    } catch (final InterruptedException ie) {
+                        if (closed.get()) {
+                            return;
+                        }
+                    }
+                    continue;
+                }
+
+                try {
+                    persistPendingEvents(batch);
+                } catch (final Throwable t) {
+                    logger.error("Failed to persist Provenance Events due to {}", t.toString());
+                    logger.error("", t);
+                } finally {
+                    batch.clear();
+                }
             }
-            return Long.compare(o1, o2);
         }
     }
 
+    public Collection<Path> getAllLogFiles() {
+        return eventFileIndex.get().getPaths();
+    }
+
 
     private static class NamedThreadFactory implements ThreadFactory {
 
@@ -1617,48 +3124,279 @@ public class MiNiFiPersistentProvenanceRepository implements ProvenanceRepositor
     }
 
     @Override
-    public QuerySubmission submitQuery(Query query, NiFiUser niFiUser) {
-        throw new MethodNotSupportedException("Querying and indexing is not available for implementation " + this.getClass().getName());
+    public QuerySubmission submitQuery(final Query query, final NiFiUser niFiUser) {
+        if (eventSearcher == null) {
+            throw new MethodNotSupportedException("Querying and indexing is not available for implementation " + this.getClass().getName());
+        }
+
+        expireSubmissions();
+        final AsyncQuerySubmission submission = new AsyncQuerySubmission(query, 1, niFiUser == null ? null : niFiUser.getIdentity());
+        querySubmissions.put(submission.getQueryIdentifier(), submission);
+
+        final EventSearcher.Criteria criteria;
+        try {
+            criteria = createCriteria(query);
+        } catch (final IllegalArgumentException iae) {
+            submission.getResult().setError(iae.getMessage());
+            return submission;
+        }
+
+        if (criteria == null) {
+            // the query contradicts itself, so no event can match it
+            submission.getResult().update(Collections.<ProvenanceEventRecord>emptyList(), 0L);
+            return submission;
+        }
+
+        submission.addQueryExecution(queryExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final List<ProvenanceEventRecord> events = eventSearcher.search(criteria, new EventSearcher.Cancellation() {
+                        @Override
+                        public boolean isCancelled() {
+                            return submission.isCanceled();
+                        }
+                    });
+                    submission.getResult().update(events, events.size());
+                } catch (final Throwable t) {
+                    logger.error("Failed to execute Provenance Query {} due to {}", query, t.toString());
+                    if (logger.isDebugEnabled()) {
+                        logger.error("", t);
+                    }
+                    submission.getResult().setError("Failed to execute query due to " + t.toString());
+                }
+            }
+        }));
+        return submission;
+    }
+
+    /**
+     * @return the criteria of the given query, or <code>null</code> if the query contradicts itself
+     * @throws IllegalArgumentException if the query searches a field that is not indexed
+     */
+    private EventSearcher.Criteria createCriteria(final Query query) {
+        String flowFileUuid = null;
+        String componentId = null;
+        ProvenanceEventType eventType = null;
+
+        for (final SearchTerm term : query.getSearchTerms()) {
+            final SearchableField field = term.getSearchableField();
+            final String value = term.getValue();
+            final String fieldId = field.getIdentifier();
+
+            if (!field.isAttribute() && fieldId.equals(SearchableFields.FlowFileUUID.getIdentifier())) {
+                if (flowFileUuid != null && !flowFileUuid.equals(value)) {
+                    return null;
+                }
+                flowFileUuid = value;
+            } else if (!field.isAttribute() && fieldId.equals(SearchableFields.ComponentID.getIdentifier())) {
+                if (componentId != null && !componentId.equals(value)) {
+                    return null;
+                }
+                componentId = value;
+            } else if (!field.isAttribute() && fieldId.equals(SearchableFields.EventType.getIdentifier())) {
+                final ProvenanceEventType type;
+                try {
+                    type = ProvenanceEventType.valueOf(value.trim().toUpperCase());
+                } catch (final IllegalArgumentException iae) {
+                    throw new IllegalArgumentException("'" + value + "' is not a valid Provenance Event Type");
+                }
+                if (eventType != null && eventType != type) {
+                    return null;
+                }
+                eventType = type;
+            } else {
+                final List<String> searchableFieldNames = new ArrayList<>();
+                for (final SearchableField searchableField : getSearchableFields()) {
+                    searchableFieldNames.add(searchableField.getFriendlyName());
+                }
+                throw new IllegalArgumentException("Searching by " + field.getFriendlyName() + " is not supported; only " + searchableFieldNames + " can be searched");
+            }
+        }
+
+        final EventSearcher.Criteria criteria = new EventSearcher.Criteria()
+            .componentId(componentId)
+            .eventType(eventType)
+            .timeRange(query.getStartDate() == null ? Long.MIN_VALUE : query.getStartDate().getTime(),
+                query.getEndDate() == null ? Long.MAX_VALUE : query.getEndDate().getTime())
+            .fileSizeRange(query.getMinFileSize() == null ? Long.MIN_VALUE : DataUnit.parseDataSize(query.getMinFileSize(), DataUnit.B).longValue(),
+                query.getMaxFileSize() == null ? Long.MAX_VALUE : DataUnit.parseDataSize(query.getMaxFileSize(), DataUnit.B).longValue())
+            .maxResults(query.getMaxResults() > 0 ? query.getMaxResults() : Integer.MAX_VALUE);
+        if (flowFileUuid != null) {
+            criteria.flowFileUuids(Collections.singleton(flowFileUuid));
+        }
+        return criteria;
     }
 
     @Override
-    public QuerySubmission retrieveQuerySubmission(String queryIdentifier, NiFiUser niFiUser) {
-        throw new MethodNotSupportedException("Querying and indexing is not available for implementation " + this.getClass().getName());
+    public QuerySubmission retrieveQuerySubmission(final String queryIdentifier, final NiFiUser niFiUser) {
+        if (eventSearcher == null) {
+            throw new MethodNotSupportedException("Querying and indexing is not available for implementation " + this.getClass().getName());
+        }
+        return querySubmissions.get(queryIdentifier);
     }
 
     @Override
     public List<SearchableField> getSearchableFields() {
-        throw new MethodNotSupportedException("Querying and indexing is not available for implementation " + this.getClass().getName());
+        if (eventSearcher == null) {
+            throw new MethodNotSupportedException("Querying and indexing is not available for implementation " + this.getClass().getName());
+        }
+        return Arrays.asList(SearchableFields.FlowFileUUID, SearchableFields.ComponentID, SearchableFields.EventType);
     }
 
     @Override
     public List<SearchableField> getSearchableAttributes() {
-        throw new MethodNotSupportedException("Querying and indexing is not available for implementation " + this.getClass().getName());
+        if (eventSearcher == null) {
+            throw new MethodNotSupportedException("Querying and indexing is not available for implementation " + this.getClass().getName());
+        }
+        return Collections.emptyList();
     }
 
     @Override
-    public AsyncLineageSubmission submitLineageComputation(final String flowFileUuid, NiFiUser niFiUser) {
-        throw new MethodNotSupportedException("Computation of lineage is not available for implementation " + this.getClass().getName());
+    public AsyncLineageSubmission submitLineageComputation(final String flowFileUuid, final NiFiUser niFiUser) {
+        if (eventSearcher == null) {
+            throw new MethodNotSupportedException("Computation of lineage is not available for implementation " + this.getClass().getName());
+        }
+        return submitLineageComputation(Collections.singleton(flowFileUuid), niFiUser, LineageComputationType.FLOWFILE_LINEAGE, null, Long.MIN_VALUE, Long.MAX_VALUE);
     }
 
     @Override
-    public ComputeLineageSubmission submitLineageComputation(long eventId, NiFiUser user) {
-        throw new MethodNotSupportedException("Computation of lineage is not available for implementation " + this.getClass().getName());
+    public ComputeLineageSubmission submitLineageComputation(final long eventId, final NiFiUser niFiUser) {
+        if (eventSearcher == null) {
+            throw new MethodNotSupportedException("Computation of lineage is not available for implementation " + this.getClass().getName());
+        }
+
+        final ProvenanceEventRecord event = getEventForLineage(eventId);
+        if (event == null) {
+            return failedLineageSubmission(LineageComputationType.FLOWFILE_LINEAGE, eventId, niFiUser, "Could not find event with ID " + eventId);
+        }
+        return submitLineageComputation(Collections.singleton(event.getFlowFileUuid()), niFiUser, LineageComputationType.FLOWFILE_LINEAGE, eventId,
+            Long.MIN_VALUE, Long.MAX_VALUE);
     }
 
     @Override
-    public AsyncLineageSubmission submitExpandChildren(final long eventId, NiFiUser niFiUser) {
-        throw new MethodNotSupportedException("Computation of lineage is not available for implementation " + this.getClass().getName());
+    public AsyncLineageSubmission submitExpandChildren(final long eventId, final NiFiUser niFiUser) {
+        if (eventSearcher == null) {
+            throw new MethodNotSupportedException("Computation of lineage is not available for implementation " + this.getClass().getName());
+        }
+
+        final ProvenanceEventRecord event = getEventForLineage(eventId);
+        if (event == null) {
+            return failedLineageSubmission(LineageComputationType.EXPAND_CHILDREN, eventId, niFiUser, "Could not find event with ID " + eventId);
+        }
+        if (!isExpandable(event.getEventType())) {
+            return failedLineageSubmission(LineageComputationType.EXPAND_CHILDREN, eventId, niFiUser, "Event ID " + eventId + " indicates an event of type "
+                + event.getEventType() + ". Children cannot be expanded for events of this type");
+        }
+        return submitLineageComputation(event.getChildUuids(), niFiUser, LineageComputationType.EXPAND_CHILDREN, eventId, event.getEventTime(), Long.MAX_VALUE);
     }
 
     @Override
-    public AsyncLineageSubmission submitExpandParents(final long eventId, NiFiUser niFiUser) {
-        throw new MethodNotSupportedException("Computation of lineage is not available for implementation " + this.getClass().getName());
+    public AsyncLineageSubmission submitExpandParents(final long eventId, final NiFiUser niFiUser) {
+        if (eventSearcher == null) {
+            throw new MethodNotSupportedException("Computation of lineage is not available for implementation " + this.getClass().getName());
+        }
+
+        final ProvenanceEventRecord event = getEventForLineage(eventId);
+        if (event == null) {
+            return failedLineageSubmission(LineageComputationType.EXPAND_PARENTS, eventId, niFiUser, "Could not find event with ID " + eventId);
+        }
+        if (!isExpandable(event.getEventType())) {
+            return failedLineageSubmission(LineageComputationType.EXPAND_PARENTS, eventId, niFiUser, "Event ID " + eventId + " indicates an event of type "
+                + event.getEventType() + ". Parents cannot be expanded for events of this type");
+        }
+        return submitLineageComputation(event.getParentUuids(), niFiUser, LineageComputationType.EXPAND_PARENTS, eventId, event.getLineageStartDate(),
+            event.getEventTime());
     }
 
     @Override
-    public AsyncLineageSubmission retrieveLineageSubmission(final String lineageIdentifier, NiFiUser niFiUser) {
-        throw new MethodNotSupportedException("Computation of lineage is not available for implementation " + this.getClass().getName());
+    public AsyncLineageSubmission retrieveLineageSubmission(final String lineageIdentifier, final NiFiUser niFiUser) {
+        if (eventSearcher == null) {
+            throw new MethodNotSupportedException("Computation of lineage is not available for implementation " + this.getClass().getName());
+        }
+        return lineageSubmissions.get(lineageIdentifier);
+    }
+
+    private static boolean isExpandable(final ProvenanceEventType eventType) {
+        switch (eventType) {
+            case JOIN:
+            case FORK:
+            case CLONE:
+            case REPLAY:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private ProvenanceEventRecord getEventForLineage(final long eventId) {
+        try {
+            return getEvent(eventId);
+        } catch (final IOException ioe) {
+            logger.warn("Failed to retrieve Provenance Event with ID {} in order to compute its lineage due to {}", eventId, ioe.toString());
+            return null;
+        }
+    }
+
+    private AsyncLineageSubmission failedLineageSubmission(final LineageComputationType type, final long eventId, final NiFiUser niFiUser, final String error) {
+        final AsyncLineageSubmission submission = new AsyncLineageSubmission(type, eventId, Collections.<String>emptySet(), 1,
+            niFiUser == null ? null : niFiUser.getIdentity());
+        lineageSubmissions.put(submission.getLineageIdentifier(), submission);
+        submission.getResult().setError(error);
+        return submission;
+    }
+
+    private AsyncLineageSubmission submitLineageComputation(final Collection<String> flowFileUuids, final NiFiUser niFiUser, final LineageComputationType type,
+                                                            final Long eventId, final long startTime, final long endTime) {
+        expireSubmissions();
+        final AsyncLineageSubmission submission = new AsyncLineageSubmission(type, eventId, flowFileUuids, 1, niFiUser == null ? null : niFiUser.getIdentity());
+        lineageSubmissions.put(submission.getLineageIdentifier(), submission);
+
+        // lineage is bounded so that a FlowFile with a very long history cannot exhaust the heap of a small device
+        final EventSearcher.Criteria criteria = new EventSearcher.Criteria()
+            .flowFileUuids(flowFileUuids)
+            .timeRange(startTime, endTime)
+            .maxResults(MAX_LINEAGE_EVENTS);
+
+        queryExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    submission.getResult().update(eventSearcher.search(criteria, new EventSearcher.Cancellation() {
+                        @Override
+                        public boolean isCancelled() {
+                            return submission.isCanceled();
+                        }
+                    }));
+                } catch (final Throwable t) {
+                    logger.error("Failed to compute lineage of FlowFiles {} due to {}", flowFileUuids, t.toString());
+                    if (logger.isDebugEnabled()) {
+                        logger.error("", t);
+                    }
+                    submission.getResult().setError("Failed to compute lineage due to " + t.toString());
+                }
+            }
+        });
+        return submission;
+    }
+
+    private void expireSubmissions() {
+        final Date now = new Date();
+        final Iterator<AsyncQuerySubmission> queryItr = querySubmissions.values().iterator();
+        while (queryItr.hasNext()) {
+            final StandardQueryResult result = queryItr.next().getResult();
+            if (result.isFinished() && result.getExpiration().before(now)) {
+                queryItr.remove();
+            }
+        }
+
+        final Iterator<AsyncLineageSubmission> lineageItr = lineageSubmissions.values().iterator();
+        while (lineageItr.hasNext()) {
+            final StandardLineageResult result = lineageItr.next().getResult();
+            if (result.isFinished() && result.getExpiration().before(now)) {
+                lineageItr.remove();
+            }
+        }
     }
 
     @Override
@@ -1670,4 +3408,192 @@ public class MiNiFiPersistentProvenanceRepository implements ProvenanceRepositor
     public ProvenanceEventRepository getProvenanceEventRepository() {
         return this;
     }
+
+    /**
+     * Streams events out of the Provenance Event Log Files one file at a time, iterating over the records of each file through
+     * the block cache. An event is only decoded if it is asked for, and a serialized event is a view of the block that holds it
+     * rather than a copy, unless the event was dictionary encoded, in which case it is encoded into a buffer that is reused from
+     * one event to the next. Files that cannot be read through the block cache are read with a record reader that stays open
+     * between calls. As with {@link #getEvents(long, int)}, the events of a file that cannot be read are skipped.
+     */
+    private class EventFileCursor implements ProvenanceEventCursor {
+        private final EventFileBlockCache cache;
+        private final boolean ownsCache;
+        private final DictionaryRecordCodec.RecordEncoder encoder = new DictionaryRecordCodec.RecordEncoder();
+        private byte[] encodedBuffer;
+        private ByteBuffer encodedView;
+        private long nextEventId;
+        private long eventId = -1L;
+        private Path path;
+        private long fileStartId = -1L;
+        private File file;
+        private EventFileBlockCache.RecordIterator records;
+        private RecordReader reader;
+        private ProvenanceEventRecord readerEvent;
+
+        EventFileCursor(final long firstEventId) {
+            this.nextEventId = firstEventId;
+
+            // without a shared block cache, the cursor maps the files itself but does not keep any of their blocks
+            this.ownsCache = blockCache == null;
+            this.cache = ownsCache ? new EventFileBlockCache(0L, maxAttributeChars, eventReporter) : blockCache;
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            awaitRecovery();
+            eventId = -1L;
+            readerEvent = null;
+
+            eventFileReplaceLock.readLock().lock();
+            try {
+                while (true) {
+                    try {
+                        if (advance()) {
+                            return true;
+                        }
+                    } catch (final IOException ioe) {
+                        closeFile();
+                        reportEventFileReadFailure(path, ioe);
+                    }
+
+                    // the current file has been read to its end, so move on to the file that follows it once there is one
+                    final Path nextPath = getNextPath();
+                    if (nextPath == null) {
+                        return false;
+                    }
+
+                    try {
+                        openFile(nextPath);
+                    } catch (final IOException ioe) {
+                        closeFile();
+                        reportEventFileReadFailure(nextPath, ioe);
+                    }
+                }
+            } finally {
+                eventFileReplaceLock.readLock().unlock();
+            }
+        }
+
+        private boolean advance() throws IOException {
+            if (records != null) {
+                while (records.next()) {
+                    if (records.getEventId() >= nextEventId) {
+                        eventId = records.getEventId();
+                        nextEventId = eventId + 1;
+                        return true;
+                    }
+                }
+            } else if (reader != null) {
+                StandardProvenanceEventRecord record;
+                while ((record = reader.nextRecord()) != null) {
+                    if (record.getEventId() >= nextEventId) {
+                        readerEvent = record;
+                        eventId = record.getEventId();
+                        nextEventId = eventId + 1;
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private Path getNextPath() {
+            for (final Path candidate : eventFileIndex.get().getPathsForId(nextEventId)) {
+                if (getStartId(candidate) > fileStartId) {
+                    return candidate;
+                }
+            }
+            return null;
+        }
+
+        private void openFile(final Path nextPath) throws IOException {
+            closeFile();
+            path = nextPath;
+            fileStartId = getStartId(nextPath);
+            file = getCurrentPath(nextPath).toFile();
+
+            records = cache.iterate(file, nextEventId);
+            if (records == null) {
+                reader = MiNiFiRecordReaders.newRecordReader(file, getAllLogFiles(), maxAttributeChars);
+                final TocReader tocReader = reader.getTocReader();
+                if (tocReader != null) {
+                    final Integer blockIndex = tocReader.getBlockIndexForEventId(nextEventId);
+                    if (blockIndex != null) {
+                        reader.skipToBlock(blockIndex);
+                    }
+                }
+            }
+        }
+
+        private void closeFile() {
+            records = null;
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (final IOException ioe) {
+                    logger.debug("Failed to close reader of Provenance Event File {}", file, ioe);
+                }
+                reader = null;
+            }
+            if (ownsCache && file != null) {
+                cache.invalidate(file);
+            }
+        }
+
+        private long getStartId(final Path eventFile) {
+            return Long.parseLong(StringUtils.substringBefore(eventFile.toFile().getName(), "."));
+        }
+
+        @Override
+        public long getEventId() {
+            return eventId;
+        }
+
+        @Override
+        public ProvenanceEventRecord getEvent() throws IOException {
+            if (eventId < 0L) {
+                return null;
+            }
+            return records == null ? readerEvent : records.getEvent();
+        }
+
+        @Override
+        public ByteBuffer getSerializedEvent() throws IOException {
+            if (eventId < 0L) {
+                return null;
+            }
+
+            if (records != null) {
+                final ByteBuffer stored = records.getSerializedRecord();
+                if (stored != null) {
+                    return stored;
+                }
+            }
+
+            final ProvenanceEventRecord event = getEvent();
+            if (event == null) {
+                return null;
+            }
+
+            final int length = encoder.encode(event, eventId);
+            if (encoder.getBuffer() != encodedBuffer) {
+                encodedBuffer = encoder.getBuffer();
+                encodedView = ByteBuffer.wrap(encodedBuffer).asReadOnlyBuffer();
+            }
+            encodedView.limit(length);
+            encodedView.position(4);
+            return encodedView;
+        }
+
+        @Override
+        public void close() {
+            closeFile();
+            eventId = -1L;
+            readerEvent = null;
+            if (ownsCache) {
+                cache.close();
+            }
+        }
+    }
 }
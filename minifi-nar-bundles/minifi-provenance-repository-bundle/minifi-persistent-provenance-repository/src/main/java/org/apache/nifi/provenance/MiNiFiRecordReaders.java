@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import org.apache.nifi.provenance.compression.EventFileCodec;
+import org.apache.nifi.provenance.compression.EventFileCodecs;
+import org.apache.nifi.provenance.serialization.RecordReader;
+import org.apache.nifi.provenance.serialization.RecordReaders;
+import org.apache.nifi.provenance.toc.StandardTocReader;
+import org.apache.nifi.provenance.toc.TocReader;
+import org.apache.nifi.provenance.toc.TocUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+
+/**
+ * Creates the {@link RecordReader} for a Provenance Event Log File. Files that were compressed with an
+ * {@link EventFileCodec} other than GZIP are recognized by their prefix and read by a {@link FramedEventFileReader};
+ * all other files are read by the NiFi record readers.
+ */
+final class MiNiFiRecordReaders {
+
+    private static final String PROVENANCE_EXTENSION = ".prov";
+
+    private MiNiFiRecordReaders() {
+    }
+
+    /**
+     * Creates a new Record Reader that is capable of reading Provenance Event Log Files
+     *
+     * @param file the file to create a Record Reader for
+     * @param provenanceLogFiles collection of all provenance log files, used to find the file if it has been renamed; may be null
+     * @param maxAttributeChars the maximum number of characters to retain for any attribute value
+     * @return a Record Reader for the given file
+     * @throws IOException if unable to create a Record Reader for the given file
+     */
+    static RecordReader newRecordReader(final File file, final Collection<Path> provenanceLogFiles, final int maxAttributeChars) throws IOException {
+        final File framedFile = findFramedFile(file, provenanceLogFiles);
+        if (framedFile == null) {
+            return RecordReaders.newRecordReader(file, provenanceLogFiles, maxAttributeChars);
+        }
+
+        final File tocFile = TocUtil.getTocFile(framedFile);
+        final TocReader tocReader = tocFile.exists() ? new StandardTocReader(tocFile) : null;
+        try {
+            return new FramedEventFileReader(framedFile, tocReader, maxAttributeChars);
+        } catch (final IOException | RuntimeException e) {
+            if (tocReader != null) {
+                tocReader.close();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Locates the given file in the same way as the NiFi record readers do, also considering the extensions of all codecs,
+     * as the file may have been written before the repository was configured to use a different codec
+     *
+     * @return the framed file, or <code>null</code> if the file cannot be found or is not framed
+     */
+    private static File findFramedFile(final File file, final Collection<Path> provenanceLogFiles) throws IOException {
+        File candidate = file;
+
+        if (!candidate.exists() && provenanceLogFiles != null) {
+            final String baseName = getBaseName(file.getName()) + ".";
+            for (final Path path : provenanceLogFiles) {
+                if (path.toFile().getName().startsWith(baseName)) {
+                    candidate = path.toFile();
+                    break;
+                }
+            }
+        }
+
+        if (!candidate.exists()) {
+            final String baseName = getBaseName(candidate.getName());
+            for (final EventFileCodec codec : EventFileCodecs.getAvailableCodecs()) {
+                final File alternate = new File(candidate.getParentFile(), baseName + PROVENANCE_EXTENSION + codec.getFileExtension());
+                if (alternate.exists()) {
+                    candidate = alternate;
+                    break;
+                }
+            }
+        }
+
+        if (!candidate.isFile() || !FramedEventFileReader.isFramed(candidate)) {
+            return null;
+        }
+
+        return candidate;
+    }
+
+    private static String getBaseName(final String filename) {
+        final int dotIndex = filename.indexOf('.');
+        return dotIndex < 0 ? filename : filename.substring(0, dotIndex);
+    }
+}
@@ -0,0 +1,528 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import org.apache.nifi.provenance.compression.GzipEventFileCodec;
+import org.apache.nifi.provenance.compression.ZstdEventFileCodec;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Extends the NiFi {@link RepositoryConfiguration} with the settings that only apply to the {@link MiNiFiPersistentProvenanceRepository}.
+ */
+public class MiNiFiRepositoryConfiguration extends RepositoryConfiguration {
+
+    public static final int DEFAULT_INGEST_RING_SIZE = 1024;
+    public static final int DEFAULT_INGEST_WRITER_THREADS = 2;
+    public static final boolean DEFAULT_INGEST_ASYNC = false;
+    public static final String DEFAULT_INGEST_OVERLOAD_POLICY = IngestOverloadPolicy.BLOCK.getName();
+    public static final String DEFAULT_INGEST_SPILL_MAX_SIZE = "100 MB";
+    public static final String DEFAULT_GROUP_COMMIT_WINDOW = "1 millis";
+    public static final int DEFAULT_GROUP_COMMIT_MAX_EVENTS = 1024;
+    public static final int DEFAULT_MERGE_THREADS = 2;
+    public static final String DEFAULT_COMPRESSION_CODEC = GzipEventFileCodec.NAME;
+    public static final String DEFAULT_BLOCK_CACHE_SIZE = "8 MB";
+    public static final boolean DEFAULT_DICTIONARY_ENCODING_ENABLED = false;
+    public static final boolean DEFAULT_QUERY_INDEX_ENABLED = false;
+    public static final String DEFAULT_QUERY_INDEX_MAX_STORAGE_SIZE = "16 MB";
+    public static final String DEFAULT_QUERY_INDEX_MAX_HEAP_SIZE = "4 MB";
+    public static final double DEFAULT_ADMISSION_SAMPLING_PERCENTAGE = 100D;
+    public static final String DEFAULT_PLACEMENT_STRATEGY = StoragePlacementPolicy.Strategy.ROUND_ROBIN.getName();
+    public static final String DEFAULT_PLACEMENT_MIN_USABLE_SPACE = "100 MB";
+    public static final String DEFAULT_TIERING_CODEC = ZstdEventFileCodec.NAME;
+    public static final int DEFAULT_TIERING_THREADS = 1;
+    public static final String DEFAULT_TIERING_MAX_IO_RATE = "5 MB";
+
+    private int ingestRingSize = DEFAULT_INGEST_RING_SIZE;
+    private int ingestWriterThreads = DEFAULT_INGEST_WRITER_THREADS;
+    private boolean ingestAsync = DEFAULT_INGEST_ASYNC;
+    private String ingestOverloadPolicy = DEFAULT_INGEST_OVERLOAD_POLICY;
+    private long ingestSpillMaxSize = 100L * 1024L * 1024L;
+    private long groupCommitWindowNanos = TimeUnit.MILLISECONDS.toNanos(1L);
+    private int groupCommitMaxEvents = DEFAULT_GROUP_COMMIT_MAX_EVENTS;
+    private int mergeThreads = DEFAULT_MERGE_THREADS;
+    private int mergeConcurrency = 0;
+    private String compressionCodec = DEFAULT_COMPRESSION_CODEC;
+    private long blockCacheSize = 8L * 1024L * 1024L;
+    private boolean dictionaryEncodingEnabled = DEFAULT_DICTIONARY_ENCODING_ENABLED;
+    private boolean queryIndexEnabled = DEFAULT_QUERY_INDEX_ENABLED;
+    private long queryIndexMaxStorageSize = 16L * 1024L * 1024L;
+    private long queryIndexMaxHeapSize = 4L * 1024L * 1024L;
+    private Set<ProvenanceEventType> admissionAllowedEventTypes = Collections.emptySet();
+    private Set<ProvenanceEventType> admissionDeniedEventTypes = Collections.emptySet();
+    private Set<String> admissionAllowedComponentIds = Collections.emptySet();
+    private Set<String> admissionDeniedComponentIds = Collections.emptySet();
+    private double admissionSamplingPercentage = DEFAULT_ADMISSION_SAMPLING_PERCENTAGE;
+    private String placementStrategy = DEFAULT_PLACEMENT_STRATEGY;
+    private long placementMinUsableSpace = 100L * 1024L * 1024L;
+    private final List<File> journalDirectories = new ArrayList<>();
+    private long tieringRecompressAfterMillis = -1L;
+    private long tieringCompactAfterMillis = -1L;
+    private String tieringCodec = DEFAULT_TIERING_CODEC;
+    private Set<String> tieringRetainedAttributes = Collections.emptySet();
+    private int tieringThreads = DEFAULT_TIERING_THREADS;
+    private long tieringMaxIoRate = 5L * 1024L * 1024L;
+    private int minJournalCount = 0;
+    private int maxJournalCount = 0;
+    private final Map<String, Set<String>> componentQuotaComponentIds = new LinkedHashMap<>();
+    private final Map<String, Long> componentQuotaMaxSizes = new LinkedHashMap<>();
+
+    /**
+     * Creates a MiNiFi configuration that carries over all of the settings of the given NiFi configuration and uses
+     * the defaults for all MiNiFi specific settings. If the given configuration already is a MiNiFi configuration,
+     * it is returned as-is.
+     *
+     * @param config the configuration to copy
+     * @return a MiNiFi configuration with the same settings as the given configuration
+     */
+    public static MiNiFiRepositoryConfiguration of(final RepositoryConfiguration config) {
+        if (config instanceof MiNiFiRepositoryConfiguration) {
+            return (MiNiFiRepositoryConfiguration) config;
+        }
+
+        final MiNiFiRepositoryConfiguration copy = new MiNiFiRepositoryConfiguration();
+        for (final File storageDirectory : config.getStorageDirectories()) {
+            copy.addStorageDirectory(storageDirectory);
+        }
+        copy.setAllowRollover(config.isAllowRollover());
+        copy.setCompressionBlockBytes(config.getCompressionBlockBytes());
+        copy.setMaxRecordLife(config.getMaxRecordLife(TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS);
+        copy.setMaxStorageCapacity(config.getMaxStorageCapacity());
+        copy.setMaxEventFileLife(config.getMaxEventFileLife(TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS);
+        copy.setMaxEventFileCapacity(config.getMaxEventFileCapacity());
+        copy.setSearchableFields(config.getSearchableFields());
+        copy.setSearchableAttributes(config.getSearchableAttributes());
+        copy.setCompressOnRollover(config.isCompressOnRollover());
+        copy.setQueryThreadPoolSize(config.getQueryThreadPoolSize());
+        copy.setIndexThreadPoolSize(config.getIndexThreadPoolSize());
+        copy.setDesiredIndexSize(config.getDesiredIndexSize());
+        copy.setJournalCount(config.getJournalCount());
+        copy.setAlwaysSync(config.isAlwaysSync());
+        copy.setMaxAttributeChars(config.getMaxAttributeChars());
+        return copy;
+    }
+
+    /**
+     * @return the number of slots in the ring buffer that sits in front of the journals
+     */
+    public int getIngestRingSize() {
+        return ingestRingSize;
+    }
+
+    public void setIngestRingSize(final int ingestRingSize) {
+        this.ingestRingSize = ingestRingSize;
+    }
+
+    /**
+     * @return the number of threads that drain the ingest ring buffer into the journals. A value of 0 disables the ring
+     * buffer, in which case events are written to the journals by the thread that registers them
+     */
+    public int getIngestWriterThreads() {
+        return ingestWriterThreads;
+    }
+
+    public void setIngestWriterThreads(final int ingestWriterThreads) {
+        this.ingestWriterThreads = ingestWriterThreads;
+    }
+
+    /**
+     * @return <code>true</code> if registering events only hands them off to the journal writer threads rather than also
+     * waiting for them to be written. Has no effect unless there is at least one journal writer thread
+     */
+    public boolean isIngestAsync() {
+        return ingestAsync;
+    }
+
+    public void setIngestAsync(final boolean ingestAsync) {
+        this.ingestAsync = ingestAsync;
+    }
+
+    /**
+     * @return the name of the policy that decides what happens to asynchronously registered events when the ingest ring
+     * buffer is full: "block", "drop" or "spill"
+     */
+    public String getIngestOverloadPolicy() {
+        return ingestOverloadPolicy;
+    }
+
+    public void setIngestOverloadPolicy(final String ingestOverloadPolicy) {
+        this.ingestOverloadPolicy = ingestOverloadPolicy;
+    }
+
+    /**
+     * @return the maximum number of bytes of events that the "spill" overload policy writes to disk while the ingest ring
+     * buffer is full, beyond which further events are dropped
+     */
+    public long getIngestSpillMaxSize() {
+        return ingestSpillMaxSize;
+    }
+
+    public void setIngestSpillMaxSize(final long ingestSpillMaxSize) {
+        this.ingestSpillMaxSize = ingestSpillMaxSize;
+    }
+
+    /**
+     * @param timeUnit the unit to return the window in
+     * @return the amount of time that a journal writer thread collects events from concurrent producers before syncing the
+     * journal, when the repository is configured to always sync. A value of 0 syncs each drained batch immediately
+     */
+    public long getGroupCommitWindow(final TimeUnit timeUnit) {
+        return timeUnit.convert(groupCommitWindowNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void setGroupCommitWindow(final long window, final TimeUnit timeUnit) {
+        this.groupCommitWindowNanos = TimeUnit.NANOSECONDS.convert(window, timeUnit);
+    }
+
+    /**
+     * @return the maximum number of events that are made durable by a single group commit
+     */
+    public int getGroupCommitMaxEvents() {
+        return groupCommitMaxEvents;
+    }
+
+    public void setGroupCommitMaxEvents(final int groupCommitMaxEvents) {
+        this.groupCommitMaxEvents = groupCommitMaxEvents;
+    }
+
+    /**
+     * @return the number of threads used to compress the blocks of the Provenance Event Log Files that journals are merged into
+     */
+    public int getMergeThreads() {
+        return mergeThreads;
+    }
+
+    public void setMergeThreads(final int mergeThreads) {
+        this.mergeThreads = mergeThreads;
+    }
+
+    /**
+     * @return the maximum number of sets of journals that are merged at the same time. A value of 0 allows one merge per
+     * available processor, but no more than two per storage directory
+     */
+    public int getMergeConcurrency() {
+        return mergeConcurrency;
+    }
+
+    public void setMergeConcurrency(final int mergeConcurrency) {
+        this.mergeConcurrency = mergeConcurrency;
+    }
+
+    /**
+     * @return the name of the codec that the blocks of merged Provenance Event Log Files are compressed with, when the
+     * repository is configured to compress on rollover
+     */
+    public String getCompressionCodec() {
+        return compressionCodec;
+    }
+
+    public void setCompressionCodec(final String compressionCodec) {
+        this.compressionCodec = compressionCodec;
+    }
+
+    /**
+     * @return the maximum number of bytes of decoded Provenance Event Log File blocks to keep in memory in order to serve
+     * reads of events. A value of 0 disables the cache, in which case each read opens the files that it reads from
+     */
+    public long getBlockCacheSize() {
+        return blockCacheSize;
+    }
+
+    public void setBlockCacheSize(final long blockCacheSize) {
+        this.blockCacheSize = blockCacheSize;
+    }
+
+    /**
+     * @return whether the strings that repeat within a block of a merged Provenance Event Log File, such as attribute keys
+     * and values, are written once per block and referred to by id. Files written this way cannot be read by the NiFi
+     * record readers.
+     */
+    public boolean isDictionaryEncodingEnabled() {
+        return dictionaryEncodingEnabled;
+    }
+
+    public void setDictionaryEncodingEnabled(final boolean dictionaryEncodingEnabled) {
+        this.dictionaryEncodingEnabled = dictionaryEncodingEnabled;
+    }
+
+    /**
+     * @return whether the events of merged Provenance Event Log Files are indexed, so that the repository is able to search
+     * for events and compute lineage
+     */
+    public boolean isQueryIndexEnabled() {
+        return queryIndexEnabled;
+    }
+
+    public void setQueryIndexEnabled(final boolean queryIndexEnabled) {
+        this.queryIndexEnabled = queryIndexEnabled;
+    }
+
+    /**
+     * @return the maximum number of bytes that the index files may take up on disk, across all storage directories. The
+     * index files of the oldest events are deleted first when the limit is reached.
+     */
+    public long getQueryIndexMaxStorageSize() {
+        return queryIndexMaxStorageSize;
+    }
+
+    public void setQueryIndexMaxStorageSize(final long queryIndexMaxStorageSize) {
+        this.queryIndexMaxStorageSize = queryIndexMaxStorageSize;
+    }
+
+    /**
+     * @return the maximum number of bytes of index postings to hold in memory while journals are merged, across all merges.
+     * Files whose postings do not fit are left unindexed, and are scanned when searched.
+     */
+    public long getQueryIndexMaxHeapSize() {
+        return queryIndexMaxHeapSize;
+    }
+
+    public void setQueryIndexMaxHeapSize(final long queryIndexMaxHeapSize) {
+        this.queryIndexMaxHeapSize = queryIndexMaxHeapSize;
+    }
+
+    /**
+     * @return the event types that are persisted. An empty set allows all event types
+     */
+    public Set<ProvenanceEventType> getAdmissionAllowedEventTypes() {
+        return admissionAllowedEventTypes;
+    }
+
+    public void setAdmissionAllowedEventTypes(final Set<ProvenanceEventType> admissionAllowedEventTypes) {
+        this.admissionAllowedEventTypes = admissionAllowedEventTypes.isEmpty() ? Collections.<ProvenanceEventType>emptySet() : EnumSet.copyOf(admissionAllowedEventTypes);
+    }
+
+    /**
+     * @return the event types that are discarded, regardless of whether they are allowed
+     */
+    public Set<ProvenanceEventType> getAdmissionDeniedEventTypes() {
+        return admissionDeniedEventTypes;
+    }
+
+    public void setAdmissionDeniedEventTypes(final Set<ProvenanceEventType> admissionDeniedEventTypes) {
+        this.admissionDeniedEventTypes = admissionDeniedEventTypes.isEmpty() ? Collections.<ProvenanceEventType>emptySet() : EnumSet.copyOf(admissionDeniedEventTypes);
+    }
+
+    /**
+     * @return the ids of the components whose events are persisted. An empty set allows all components
+     */
+    public Set<String> getAdmissionAllowedComponentIds() {
+        return admissionAllowedComponentIds;
+    }
+
+    public void setAdmissionAllowedComponentIds(final Set<String> admissionAllowedComponentIds) {
+        this.admissionAllowedComponentIds = new HashSet<>(admissionAllowedComponentIds);
+    }
+
+    /**
+     * @return the ids of the components whose events are discarded, regardless of whether they are allowed
+     */
+    public Set<String> getAdmissionDeniedComponentIds() {
+        return admissionDeniedComponentIds;
+    }
+
+    public void setAdmissionDeniedComponentIds(final Set<String> admissionDeniedComponentIds) {
+        this.admissionDeniedComponentIds = new HashSet<>(admissionDeniedComponentIds);
+    }
+
+    /**
+     * @return the percentage of FlowFiles whose events are persisted, between 0 and 100
+     */
+    public double getAdmissionSamplingPercentage() {
+        return admissionSamplingPercentage;
+    }
+
+    public void setAdmissionSamplingPercentage(final double admissionSamplingPercentage) {
+        this.admissionSamplingPercentage = admissionSamplingPercentage;
+    }
+
+    /**
+     * @return the name of the strategy that chooses the storage directory of each journal and merged event file, either
+     * 'round-robin' or 'balanced'
+     */
+    public String getPlacementStrategy() {
+        return placementStrategy;
+    }
+
+    public void setPlacementStrategy(final String placementStrategy) {
+        this.placementStrategy = placementStrategy;
+    }
+
+    /**
+     * @return the number of usable bytes below which the balanced placement strategy stops placing files in a storage directory
+     */
+    public long getPlacementMinUsableSpace() {
+        return placementMinUsableSpace;
+    }
+
+    public void setPlacementMinUsableSpace(final long placementMinUsableSpace) {
+        this.placementMinUsableSpace = placementMinUsableSpace;
+    }
+
+    /**
+     * @return the directories that journals are written to, which are separate from the storage directories that hold the
+     * merged Provenance Event Log Files. If empty, journals are written to the storage directories
+     */
+    public List<File> getJournalDirectories() {
+        return Collections.unmodifiableList(journalDirectories);
+    }
+
+    public void addJournalDirectory(final File journalDirectory) {
+        this.journalDirectories.add(journalDirectory);
+    }
+
+    /**
+     * @param timeUnit the unit to return the age in
+     * @return the age at which Provenance Event Log Files are re-encoded with the archival variant of the tiering codec, or
+     * -1 if files are never re-encoded
+     */
+    public long getTieringRecompressAfter(final TimeUnit timeUnit) {
+        return tieringRecompressAfterMillis < 0L ? -1L : timeUnit.convert(tieringRecompressAfterMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void setTieringRecompressAfter(final long age, final TimeUnit timeUnit) {
+        this.tieringRecompressAfterMillis = age < 0L ? -1L : TimeUnit.MILLISECONDS.convert(age, timeUnit);
+    }
+
+    /**
+     * @param timeUnit the unit to return the age in
+     * @return the age at which Provenance Event Log Files are re-encoded with only the retained attributes of their events,
+     * or -1 if files are never compacted
+     */
+    public long getTieringCompactAfter(final TimeUnit timeUnit) {
+        return tieringCompactAfterMillis < 0L ? -1L : timeUnit.convert(tieringCompactAfterMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void setTieringCompactAfter(final long age, final TimeUnit timeUnit) {
+        this.tieringCompactAfterMillis = age < 0L ? -1L : TimeUnit.MILLISECONDS.convert(age, timeUnit);
+    }
+
+    /**
+     * @return the name of the codec whose archival variant aging Provenance Event Log Files are re-encoded with
+     */
+    public String getTieringCodec() {
+        return tieringCodec;
+    }
+
+    public void setTieringCodec(final String tieringCodec) {
+        this.tieringCodec = tieringCodec;
+    }
+
+    /**
+     * @return the names of the attributes that are kept when a Provenance Event Log File is compacted. The 'uuid' attribute
+     * is always kept
+     */
+    public Set<String> getTieringRetainedAttributes() {
+        return tieringRetainedAttributes;
+    }
+
+    public void setTieringRetainedAttributes(final Set<String> tieringRetainedAttributes) {
+        this.tieringRetainedAttributes = new HashSet<>(tieringRetainedAttributes);
+    }
+
+    /**
+     * @return the maximum number of Provenance Event Log Files that are re-encoded at the same time
+     */
+    public int getTieringThreads() {
+        return tieringThreads;
+    }
+
+    public void setTieringThreads(final int tieringThreads) {
+        this.tieringThreads = tieringThreads;
+    }
+
+    /**
+     * @return the number of bytes per second that may be rewritten when re-encoding Provenance Event Log Files, shared by all
+     * of the tiering threads. A value of 0 does not limit the rate
+     */
+    public long getTieringMaxIoRate() {
+        return tieringMaxIoRate;
+    }
+
+    public void setTieringMaxIoRate(final long tieringMaxIoRate) {
+        this.tieringMaxIoRate = tieringMaxIoRate;
+    }
+
+    /**
+     * @return the fewest journals that a rollover may create when the number of journals is adjusted to the contention
+     * between writers. Unless set, it is the configured journal count, or the maximum if that is lower
+     */
+    public int getMinJournalCount() {
+        return minJournalCount > 0 ? minJournalCount : Math.min(getJournalCount(), maxJournalCount > 0 ? maxJournalCount : getJournalCount());
+    }
+
+    public void setMinJournalCount(final int minJournalCount) {
+        this.minJournalCount = minJournalCount;
+    }
+
+    /**
+     * @return the most journals that a rollover may create when the number of journals is adjusted to the contention
+     * between writers. Unless set, it is the configured journal count, or the minimum if that is higher
+     */
+    public int getMaxJournalCount() {
+        return maxJournalCount > 0 ? maxJournalCount : Math.max(getJournalCount(), minJournalCount > 0 ? minJournalCount : getJournalCount());
+    }
+
+    public void setMaxJournalCount(final int maxJournalCount) {
+        this.maxJournalCount = maxJournalCount;
+    }
+
+    /**
+     * @return the ids of the components that each storage quota covers, keyed by the name of the quota
+     */
+    public Map<String, Set<String>> getComponentQuotaComponentIds() {
+        return Collections.unmodifiableMap(componentQuotaComponentIds);
+    }
+
+    /**
+     * @return the maximum number of bytes that the events of the components of each storage quota may take up, keyed by the
+     * name of the quota
+     */
+    public Map<String, Long> getComponentQuotaMaxSizes() {
+        return Collections.unmodifiableMap(componentQuotaMaxSizes);
+    }
+
+    /**
+     * Adds a storage quota, or replaces the quota with the same name. Once the events of the given components take up more
+     * than the given number of bytes, the oldest event files that hold their events are aged off ahead of all others.
+     *
+     * @param name the name of the quota
+     * @param componentIds the ids of the components that the quota covers, such as all of the components of a Process Group
+     * @param maxBytes the maximum number of bytes that the events of the components may take up
+     */
+    public void addComponentQuota(final String name, final Set<String> componentIds, final long maxBytes) {
+        this.componentQuotaComponentIds.put(name, Collections.unmodifiableSet(new LinkedHashSet<>(componentIds)));
+        this.componentQuotaMaxSizes.put(name, maxBytes);
+    }
+
+    /**
+     * @return <code>true</code> if aging Provenance Event Log Files are re-encoded or compacted before they are aged off
+     */
+    public boolean isTieringEnabled() {
+        return tieringRecompressAfterMillis >= 0L || tieringCompactAfterMillis >= 0L;
+    }
+}
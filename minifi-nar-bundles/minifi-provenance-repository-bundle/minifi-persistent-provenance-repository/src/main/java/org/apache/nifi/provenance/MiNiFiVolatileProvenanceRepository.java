@@ -0,0 +1,490 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.nifi.authorization.Authorizer;
+import org.apache.nifi.authorization.user.NiFiUser;
+import org.apache.nifi.events.EventReporter;
+import org.apache.nifi.processor.DataUnit;
+import org.apache.nifi.provenance.MiNiFiPersistentProvenanceRepository.MethodNotSupportedException;
+import org.apache.nifi.provenance.lineage.ComputeLineageSubmission;
+import org.apache.nifi.provenance.search.Query;
+import org.apache.nifi.provenance.search.QuerySubmission;
+import org.apache.nifi.provenance.search.SearchableField;
+import org.apache.nifi.reporting.Severity;
+import org.apache.nifi.util.NiFiProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * A Provenance Repository for devices whose storage cannot sustain the writes of the persistent repository. Events are
+ * serialized into a bounded ring of direct buffers outside of the Java heap (see {@link OffHeapEventStore}), which evicts the
+ * oldest events once it is full, and are served from there to the Provenance Reporting Task at memory speed. Events do not
+ * survive a restart.
+ * </p>
+ * <p>
+ * Optionally, events that are about to be evicted from the ring are spilled to a single append-only file (see
+ * {@link EventSpillFile}), so that events that could not be reported before being evicted remain available for as long as
+ * the file has room for them.
+ * </p>
+ */
+public class MiNiFiVolatileProvenanceRepository implements StreamingProvenanceRepository {
+
+    public static final String MAX_STORAGE_SIZE = "nifi.provenance.repository.volatile.max.storage.size";
+    public static final String SEGMENT_SIZE = "nifi.provenance.repository.volatile.segment.size";
+    public static final String SPILL_FILE = "nifi.provenance.repository.volatile.spill.file";
+    public static final String SPILL_MAX_SIZE = "nifi.provenance.repository.volatile.spill.max.size";
+
+    public static final String DEFAULT_MAX_STORAGE_SIZE = "16 MB";
+    public static final String DEFAULT_SEGMENT_SIZE = "1 MB";
+    public static final String DEFAULT_SPILL_MAX_SIZE = "64 MB";
+
+    private static final long SPILL_INTERVAL_MILLIS = 100L;
+    private static final String RING_STORAGE_NAME = "memory";
+
+    private static final Logger logger = LoggerFactory.getLogger(MiNiFiVolatileProvenanceRepository.class);
+
+    private final OffHeapEventStore store;
+    private final EventSpillFile spillFile;
+    private final int maxAttributeChars;
+    private final ProvenanceAdmissionPolicy admissionPolicy;
+    private final ScheduledExecutorService spillExecutor;
+
+    private final AtomicLong idGenerator = new AtomicLong(0L);
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private final ThreadLocal<DictionaryRecordCodec.RecordEncoder> encoders = new ThreadLocal<DictionaryRecordCodec.RecordEncoder>() {
+        @Override
+        protected DictionaryRecordCodec.RecordEncoder initialValue() {
+            return new DictionaryRecordCodec.RecordEncoder();
+        }
+    };
+
+    // only accessed by the spill thread
+    private long nextSpillId = 0L;
+    private ByteBuffer spillBuffer;
+    private volatile EventReporter eventReporter;
+
+    public MiNiFiVolatileProvenanceRepository() {
+        store = null;
+        spillFile = null;
+        maxAttributeChars = 0;
+        admissionPolicy = null;
+        spillExecutor = null;
+    }
+
+    public MiNiFiVolatileProvenanceRepository(final NiFiProperties properties) throws IOException {
+        this(parseDataSize(properties.getProperty(MAX_STORAGE_SIZE, DEFAULT_MAX_STORAGE_SIZE)),
+            (int) Math.min(Integer.MAX_VALUE, parseDataSize(properties.getProperty(SEGMENT_SIZE, DEFAULT_SEGMENT_SIZE))),
+            StringUtils.isBlank(properties.getProperty(SPILL_FILE)) ? null : new File(properties.getProperty(SPILL_FILE).trim()),
+            parseDataSize(properties.getProperty(SPILL_MAX_SIZE, DEFAULT_SPILL_MAX_SIZE)),
+            MiNiFiPersistentProvenanceRepository.parseMaxAttributeChars(properties),
+            createAdmissionPolicy(properties));
+    }
+
+    /**
+     * @param maxStorageBytes the maximum number of bytes of direct memory to hold events in
+     * @param segmentSize the number of bytes of each direct buffer that the ring of events is made of
+     * @param spillFile the file to spill events to before they are evicted, or <code>null</code> to discard them
+     * @param maxSpillBytes the maximum size of the spill file
+     * @param maxAttributeChars the maximum number of characters to retain for any attribute value
+     * @param admissionPolicy the policy that decides which events are stored
+     * @throws IOException if the spill file cannot be created
+     */
+    public MiNiFiVolatileProvenanceRepository(final long maxStorageBytes, final int segmentSize, final File spillFile, final long maxSpillBytes,
+                                              final int maxAttributeChars, final ProvenanceAdmissionPolicy admissionPolicy) throws IOException {
+        this.store = new OffHeapEventStore(maxStorageBytes, segmentSize);
+        this.maxAttributeChars = maxAttributeChars;
+        this.admissionPolicy = admissionPolicy;
+
+        if (spillFile == null) {
+            this.spillFile = null;
+            this.spillExecutor = null;
+        } else {
+            this.spillFile = new EventSpillFile(spillFile, maxSpillBytes);
+            this.spillExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    final Thread thread = Executors.defaultThreadFactory().newThread(r);
+                    thread.setName("Provenance Spill Thread");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        if (!admissionPolicy.isAdmitAll()) {
+            logger.info("Provenance Events will be filtered by {}", admissionPolicy);
+        }
+    }
+
+    private static long parseDataSize(final String value) {
+        return DataUnit.parseDataSize(value, DataUnit.B).longValue();
+    }
+
+    private static ProvenanceAdmissionPolicy createAdmissionPolicy(final NiFiProperties properties) {
+        final String samplingPercentage = properties.getProperty(MiNiFiPersistentProvenanceRepository.ADMISSION_SAMPLING_PERCENTAGE);
+        return new ProvenanceAdmissionPolicy(
+            MiNiFiPersistentProvenanceRepository.parseEventTypes(properties.getProperty(MiNiFiPersistentProvenanceRepository.ADMISSION_ALLOWED_EVENT_TYPES)),
+            MiNiFiPersistentProvenanceRepository.parseEventTypes(properties.getProperty(MiNiFiPersistentProvenanceRepository.ADMISSION_DENIED_EVENT_TYPES)),
+            MiNiFiPersistentProvenanceRepository.parseList(properties.getProperty(MiNiFiPersistentProvenanceRepository.ADMISSION_ALLOWED_COMPONENT_IDS)),
+            MiNiFiPersistentProvenanceRepository.parseList(properties.getProperty(MiNiFiPersistentProvenanceRepository.ADMISSION_DENIED_COMPONENT_IDS)),
+            StringUtils.isBlank(samplingPercentage) ? 100D : Double.parseDouble(samplingPercentage.trim()));
+    }
+
+    @Override
+    public void initialize(final EventReporter eventReporter, final Authorizer authorizer, final ProvenanceAuthorizableFactory resourceFactory) throws IOException {
+        this.eventReporter = eventReporter;
+
+        if (spillExecutor != null) {
+            spillExecutor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        spill();
+                    } catch (final Throwable t) {
+                        logger.error("Failed to spill Provenance Events to {} due to {}", spillFile.getFile(), t.toString());
+                        logger.error("", t);
+                        if (eventReporter != null) {
+                            eventReporter.reportEvent(Severity.ERROR, MiNiFiPersistentProvenanceRepository.EVENT_CATEGORY,
+                                "Failed to spill Provenance Events to " + spillFile.getFile() + " due to " + t.toString());
+                        }
+                    }
+                }
+            }, SPILL_INTERVAL_MILLIS, SPILL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        logger.info("Storing up to {} bytes of Provenance Events in memory{}", store.getCapacity(),
+            spillFile == null ? "" : " and spilling them to " + spillFile.getFile() + " before they are evicted");
+    }
+
+    /**
+     * @return the maximum number of characters that any Event attribute should contain. If the event contains
+     * more characters than this, the attribute is truncated on retrieval
+     */
+    public int getMaxAttributeCharacters() {
+        return maxAttributeChars;
+    }
+
+    /**
+     * @return the policy that decides which events are stored
+     */
+    public ProvenanceAdmissionPolicy getAdmissionPolicy() {
+        return admissionPolicy;
+    }
+
+    /**
+     * @return the number of bytes of direct memory that hold events
+     */
+    public long getAllocatedBytes() {
+        return store.getAllocatedBytes();
+    }
+
+    @Override
+    public StandardProvenanceEventRecord.Builder eventBuilder() {
+        return new StandardProvenanceEventRecord.Builder();
+    }
+
+    @Override
+    public void registerEvent(final ProvenanceEventRecord event) {
+        registerEvents(Collections.singleton(event));
+    }
+
+    @Override
+    public void registerEvents(final Iterable<ProvenanceEventRecord> events) {
+        final DictionaryRecordCodec.RecordEncoder encoder = encoders.get();
+        for (final ProvenanceEventRecord event : events) {
+            if (!admissionPolicy.admit(event)) {
+                continue;
+            }
+
+            final long eventId = idGenerator.getAndIncrement();
+            final int length;
+            try {
+                length = encoder.encode(event, eventId);
+            } catch (final RuntimeException e) {
+                // the id has been handed out, so it must be published for readers not to wait on it
+                store.appendTombstone(eventId);
+                logger.warn("Failed to serialize Provenance Event {} due to {}", event, e.toString());
+                continue;
+            }
+
+            if (length > store.getMaxRecordSize()) {
+                store.appendTombstone(eventId);
+                logger.warn("Discarding Provenance Event {} because its {} bytes exceed half of the {} bytes of memory available to Provenance Events",
+                    event, length, store.getCapacity());
+                continue;
+            }
+
+            store.append(eventId, encoder.getBuffer(), length);
+        }
+    }
+
+    @Override
+    public List<ProvenanceEventRecord> getEvents(final long firstRecordId, final int maxRecords, final NiFiUser user) throws IOException {
+        throw new MethodNotSupportedException("Cannot list events for a specified user.");
+    }
+
+    @Override
+    public List<ProvenanceEventRecord> getEvents(final long firstRecordId, final int maxRecords) throws IOException {
+        final List<ProvenanceEventRecord> records = new ArrayList<>();
+        try (final ProvenanceEventCursor cursor = openCursor(firstRecordId)) {
+            while (records.size() < maxRecords && cursor.next()) {
+                final ProvenanceEventRecord record = cursor.getEvent();
+                if (record != null) {
+                    records.add(record);
+                }
+            }
+        }
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("Retrieving up to {} records starting at Event ID {}; returning {} events", maxRecords, firstRecordId, records.size());
+        }
+        return records;
+    }
+
+    @Override
+    public ProvenanceEventCursor openCursor(final long firstEventId) {
+        return new VolatileEventCursor(firstEventId);
+    }
+
+    /**
+     * @return the given event id, or if neither the ring nor the spill file hold the event, the smallest id larger than it
+     * that either of them may hold
+     */
+    private long skipEvictedEvents(final long eventId) throws IOException {
+        final long minIndexedId = store.getMinIndexedId();
+        if (eventId >= minIndexedId) {
+            return eventId;
+        }
+
+        final long firstSpilledId = spillFile == null ? -1L : spillFile.getFirstEventId();
+        if (firstSpilledId >= 0 && eventId < spillFile.getNextEventId()) {
+            return Math.min(Math.max(eventId, firstSpilledId), minIndexedId);
+        }
+        return minIndexedId;
+    }
+
+    private ProvenanceEventRecord decode(final ByteBuffer record, final String storageName, final long eventId) {
+        try {
+            final DictionaryRecordCodec.Decoder decoder = new DictionaryRecordCodec.Decoder(record, record.position(), record.limit());
+            final StandardProvenanceEventRecord event = decoder.readRecord(DictionaryRecordCodec.NO_DICTIONARY, storageName, eventId, maxAttributeChars);
+            return event.getEventId() == eventId ? event : null;
+        } catch (final IOException | RuntimeException e) {
+            // the record was overwritten by a newer one while it was being copied out of the ring
+            logger.debug("Provenance Event {} was evicted while being read", eventId, e);
+            return null;
+        }
+    }
+
+    /**
+     * Spills the events that are in the older half of the ring to the spill file, in order of their ids
+     */
+    void spill() throws IOException {
+        final long pressureThreshold = store.getCapacity() / 2;
+        long eventId = Math.max(nextSpillId, store.getMinIndexedId());
+
+        while (!closed.get() && eventId <= store.getMaxPublishedId() && store.isPublished(eventId)) {
+            final long bytesWrittenSince = store.getBytesWrittenSince(eventId);
+            if (bytesWrittenSince >= 0 && bytesWrittenSince < pressureThreshold) {
+                break;
+            }
+
+            // events that could not be serialized, or were evicted before they could be spilled, are skipped
+            final ByteBuffer record = bytesWrittenSince < 0 ? null : store.read(eventId, spillBuffer);
+            if (record != null) {
+                spillBuffer = record;
+                spillFile.append(eventId, record);
+            }
+            eventId++;
+        }
+
+        nextSpillId = eventId;
+    }
+
+    @Override
+    public ProvenanceEventRecord getEvent(final long id) throws IOException {
+        final List<ProvenanceEventRecord> records = getEvents(id, 1);
+        if (records.isEmpty()) {
+            return null;
+        }
+        final ProvenanceEventRecord record = records.get(0);
+        if (record.getEventId() != id) {
+            return null;
+        }
+        return record;
+    }
+
+    @Override
+    public ProvenanceEventRecord getEvent(final long id, final NiFiUser user) throws IOException {
+        throw new MethodNotSupportedException("Cannot handle user authorization requests.");
+    }
+
+    @Override
+    public Long getMaxEventId() {
+        final long maxId = store.getMaxPublishedId();
+        return maxId < 0 ? null : maxId;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+
+        if (spillExecutor != null) {
+            spillExecutor.shutdownNow();
+            try {
+                spillExecutor.awaitTermination(10L, TimeUnit.SECONDS);
+            } catch (final InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            spillFile.close();
+        }
+    }
+
+    @Override
+    public ProvenanceEventRepository getProvenanceEventRepository() {
+        return this;
+    }
+
+    @Override
+    public QuerySubmission submitQuery(final Query query, final NiFiUser niFiUser) {
+        throw new MethodNotSupportedException("Querying and indexing is not available for implementation " + this.getClass().getName());
+    }
+
+    @Override
+    public QuerySubmission retrieveQuerySubmission(final String queryIdentifier, final NiFiUser niFiUser) {
+        throw new MethodNotSupportedException("Querying and indexing is not available for implementation " + this.getClass().getName());
+    }
+
+    @Override
+    public List<SearchableField> getSearchableFields() {
+        throw new MethodNotSupportedException("Querying and indexing is not available for implementation " + this.getClass().getName());
+    }
+
+    @Override
+    public List<SearchableField> getSearchableAttributes() {
+        throw new MethodNotSupportedException("Querying and indexing is not available for implementation " + this.getClass().getName());
+    }
+
+    @Override
+    public ComputeLineageSubmission submitLineageComputation(final String flowFileUuid, final NiFiUser niFiUser) {
+        throw new MethodNotSupportedException("Computation of lineage is not available for implementation " + this.getClass().getName());
+    }
+
+    @Override
+    public ComputeLineageSubmission submitLineageComputation(final long eventId, final NiFiUser niFiUser) {
+        throw new MethodNotSupportedException("Computation of lineage is not available for implementation " + this.getClass().getName());
+    }
+
+    @Override
+    public ComputeLineageSubmission retrieveLineageSubmission(final String lineageIdentifier, final NiFiUser niFiUser) {
+        throw new MethodNotSupportedException("Computation of lineage is not available for implementation " + this.getClass().getName());
+    }
+
+    @Override
+    public ComputeLineageSubmission submitExpandParents(final long eventId, final NiFiUser niFiUser) {
+        throw new MethodNotSupportedException("Computation of lineage is not available for implementation " + this.getClass().getName());
+    }
+
+    @Override
+    public ComputeLineageSubmission submitExpandChildren(final long eventId, final NiFiUser niFiUser) {
+        throw new MethodNotSupportedException("Computation of lineage is not available for implementation " + this.getClass().getName());
+    }
+
+    /**
+     * Streams events out of the ring, falling back to the spill file for events that have been evicted from the ring. The
+     * record of the current event is copied into a buffer that is reused from one event to the next, and is only decoded
+     * when the event is asked for.
+     */
+    private class VolatileEventCursor implements ProvenanceEventCursor {
+        private long nextEventId;
+        private long eventId = -1L;
+        private String storageName;
+        private ByteBuffer buffer;
+        private ByteBuffer record;
+
+        VolatileEventCursor(final long firstEventId) {
+            this.nextEventId = Math.max(0L, firstEventId);
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            record = null;
+            long candidate = skipEvictedEvents(nextEventId);
+            final long maxId = store.getMaxPublishedId();
+
+            // events are published out of order by concurrent writers, and must not be skipped over while unpublished
+            while (candidate <= maxId && store.isPublished(candidate)) {
+                ByteBuffer read = store.read(candidate, buffer);
+                storageName = RING_STORAGE_NAME;
+                if (read == null && spillFile != null) {
+                    read = spillFile.read(candidate, buffer);
+                    storageName = spillFile.getFile().getName();
+                }
+
+                candidate++;
+                if (read != null) {
+                    buffer = read;
+                    record = read;
+                    eventId = candidate - 1;
+                    nextEventId = candidate;
+                    return true;
+                }
+            }
+
+            nextEventId = candidate;
+            return false;
+        }
+
+        @Override
+        public long getEventId() {
+            return eventId;
+        }
+
+        @Override
+        public ProvenanceEventRecord getEvent() {
+            return record == null ? null : decode(record.duplicate(), storageName, eventId);
+        }
+
+        @Override
+        public ByteBuffer getSerializedEvent() {
+            return record == null ? null : record.asReadOnlyBuffer();
+        }
+
+        @Override
+        public void close() {
+            buffer = null;
+            record = null;
+        }
+    }
+}
@@ -0,0 +1,332 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <p>
+ * A bounded store of serialized Provenance Events that lives outside of the Java heap, in a ring of direct buffers. Each
+ * record is a 4-byte length followed by its bytes, and records are laid end to end, straddling segments where necessary.
+ * Once the ring is full, each record that is appended overwrites the oldest records, so events are evicted oldest-first.
+ * </p>
+ * <p>
+ * Appending is lock-free: a writer reserves the bytes for its record by advancing the tail of the ring, copies the record
+ * into the reserved bytes, and then publishes the record in an index that maps each event id to the position of its record.
+ * A reader copies a record out of the ring and then verifies that no writer has reserved the bytes that it copied since the
+ * record was published, so a record that is overwritten while it is being read is reported as evicted rather than returned.
+ * </p>
+ * <p>
+ * The index holds one entry per {@value #BYTES_PER_INDEX_SLOT} bytes of the ring, and the entry of an event is reused by the
+ * event whose id is larger by the size of the index. Events that are smaller than that on average are therefore evicted
+ * from the index before the ring fills, which keeps the heap that the index occupies proportional to the size of the ring.
+ * </p>
+ */
+class OffHeapEventStore {
+
+    static final int BYTES_PER_INDEX_SLOT = 256;
+    private static final int MIN_INDEX_SLOTS = 1024;
+    private static final int MAX_INDEX_SLOTS = 1 << 24;
+
+    private static final long EMPTY_SLOT = -1L;
+    private static final long TOMBSTONE = -1L;
+
+    private final long capacity;
+    private final int segmentSize;
+    private final int maxRecordSize;
+    private final AtomicReferenceArray<ByteBuffer> segments;
+
+    // the logical position at which the next record is to be written; the physical position is this modulo the capacity
+    private final AtomicLong tail = new AtomicLong(0L);
+    private final AtomicLong maxPublishedId = new AtomicLong(-1L);
+
+    // The id of the event that each slot holds, or the negated id of the event, minus 2, while its offset is being updated.
+    // Writers update a slot's id, then its offset, then its id again, so a reader that reads the same id before and after
+    // reading the offset knows that the offset belongs to that id.
+    private final AtomicLongArray slotIds;
+    private final AtomicLongArray slotOffsets;
+    private final int slotMask;
+
+    private final ThreadLocal<ByteBuffer[]> views;
+
+    /**
+     * @param capacity the maximum number of bytes to hold, which is rounded up to a whole number of segments
+     * @param segmentSize the number of bytes of each direct buffer that the ring is made of
+     */
+    OffHeapEventStore(final long capacity, final int segmentSize) {
+        if (segmentSize < 1024) {
+            throw new IllegalArgumentException("Segment size must be at least 1024 bytes but was " + segmentSize);
+        }
+        if (capacity < segmentSize) {
+            throw new IllegalArgumentException("Capacity of " + capacity + " bytes is smaller than the segment size of " + segmentSize + " bytes");
+        }
+
+        final long segmentCount = (capacity + segmentSize - 1) / segmentSize;
+        if (segmentCount > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Capacity of " + capacity + " bytes requires too many segments of " + segmentSize + " bytes");
+        }
+
+        this.segmentSize = segmentSize;
+        this.capacity = segmentCount * segmentSize;
+        this.maxRecordSize = (int) Math.min(Integer.MAX_VALUE, this.capacity / 2);
+        this.segments = new AtomicReferenceArray<>((int) segmentCount);
+
+        final long desiredSlots = Math.max(MIN_INDEX_SLOTS, Math.min(MAX_INDEX_SLOTS, this.capacity / BYTES_PER_INDEX_SLOT));
+        final int slotCount = Integer.highestOneBit((int) desiredSlots - 1) << 1;
+        this.slotIds = new AtomicLongArray(slotCount);
+        this.slotOffsets = new AtomicLongArray(slotCount);
+        this.slotMask = slotCount - 1;
+        for (int i = 0; i < slotCount; i++) {
+            slotIds.set(i, EMPTY_SLOT);
+        }
+
+        // each thread positions its own views of the segments, so that the shared buffers are never repositioned
+        final int viewCount = (int) segmentCount;
+        this.views = new ThreadLocal<ByteBuffer[]>() {
+            @Override
+            protected ByteBuffer[] initialValue() {
+                return new ByteBuffer[viewCount];
+            }
+        };
+    }
+
+    /**
+     * @return the number of bytes that the ring holds once it is full
+     */
+    long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the largest record, including its length, that is able to be appended
+     */
+    int getMaxRecordSize() {
+        return maxRecordSize;
+    }
+
+    /**
+     * @return the total number of bytes that have been appended since the store was created
+     */
+    long getBytesWritten() {
+        return tail.get();
+    }
+
+    /**
+     * @return the number of bytes of direct memory that have been allocated
+     */
+    long getAllocatedBytes() {
+        long allocated = 0L;
+        for (int i = 0; i < segments.length(); i++) {
+            if (segments.get(i) != null) {
+                allocated += segmentSize;
+            }
+        }
+        return allocated;
+    }
+
+    /**
+     * @return the largest event id that has been published, or -1 if none has
+     */
+    long getMaxPublishedId() {
+        return maxPublishedId.get();
+    }
+
+    /**
+     * @return the smallest event id that the index may still hold, given the largest id that has been published
+     */
+    long getMinIndexedId() {
+        return Math.max(0L, maxPublishedId.get() - slotMask);
+    }
+
+    /**
+     * Copies the given record into the ring and publishes it under the given event id
+     *
+     * @param eventId the id of the event
+     * @param record a buffer holding the 4-byte length of the record followed by the record itself
+     * @param length the number of bytes of the buffer to copy, which must not exceed {@link #getMaxRecordSize()}
+     */
+    void append(final long eventId, final byte[] record, final int length) {
+        if (length > maxRecordSize) {
+            throw new IllegalArgumentException("Record of " + length + " bytes exceeds the maximum of " + maxRecordSize + " bytes");
+        }
+
+        final long offset = tail.getAndAdd(length);
+        final ByteBuffer[] threadViews = views.get();
+        long position = offset;
+        int copied = 0;
+        while (copied < length) {
+            final int segmentIndex = (int) ((position % capacity) / segmentSize);
+            final int segmentOffset = (int) (position % segmentSize);
+            final int chunk = Math.min(length - copied, segmentSize - segmentOffset);
+
+            final ByteBuffer view = getView(threadViews, segmentIndex);
+            view.position(segmentOffset);
+            view.put(record, copied, chunk);
+
+            copied += chunk;
+            position += chunk;
+        }
+
+        publish(eventId, offset);
+    }
+
+    /**
+     * Publishes the given event id without a record, such as when the event could not be serialized, so that readers
+     * do not wait for it
+     *
+     * @param eventId the id of the event
+     */
+    void appendTombstone(final long eventId) {
+        publish(eventId, TOMBSTONE);
+    }
+
+    private void publish(final long eventId, final long offset) {
+        final int slot = (int) (eventId & slotMask);
+        slotIds.set(slot, -eventId - 2);
+        slotOffsets.set(slot, offset);
+        slotIds.set(slot, eventId);
+
+        long maxId = maxPublishedId.get();
+        while (eventId > maxId && !maxPublishedId.compareAndSet(maxId, eventId)) {
+            maxId = maxPublishedId.get();
+        }
+    }
+
+    /**
+     * @param eventId the id of an event
+     * @return <code>true</code> if the event, or an event that has since taken its place in the index, has been published
+     */
+    boolean isPublished(final long eventId) {
+        final long slotId = slotIds.get((int) (eventId & slotMask));
+        if (slotId == EMPTY_SLOT) {
+            return false;
+        }
+
+        final long publishedId = slotId >= 0 ? slotId : -slotId - 2;
+        return slotId >= 0 ? publishedId >= eventId : publishedId > eventId;
+    }
+
+    /**
+     * @param eventId the id of an event
+     * @return the number of bytes that have been appended since the record of the event was, or -1 if the store does not
+     * hold a record for the event
+     */
+    long getBytesWrittenSince(final long eventId) {
+        final long offset = getOffset(eventId);
+        if (offset < 0) {
+            return -1L;
+        }
+
+        final long written = tail.get() - offset;
+        return written > capacity ? -1L : written;
+    }
+
+    /**
+     * @param eventId the id of an event
+     * @param reuse a heap buffer to copy the record into if it is large enough, or <code>null</code>
+     * @return a heap buffer holding the record of the event, without its length, between position 0 and its limit, or
+     * <code>null</code> if the store does not hold a record for the event
+     */
+    ByteBuffer read(final long eventId, final ByteBuffer reuse) {
+        final long offset = getOffset(eventId);
+        if (offset < 0 || tail.get() - offset > capacity) {
+            return null;
+        }
+
+        final ByteBuffer[] threadViews = views.get();
+        ByteBuffer buffer = prepare(reuse, 4);
+        copy(threadViews, offset, buffer.array(), 4);
+        final int length = buffer.getInt(0);
+        if (length <= 0 || length > maxRecordSize - 4) {
+            return null;
+        }
+
+        buffer = prepare(buffer, length);
+        copy(threadViews, offset + 4, buffer.array(), length);
+
+        // if a writer has reserved any of the bytes that were copied, the record may have been overwritten while being copied
+        if (tail.get() - offset > capacity) {
+            return null;
+        }
+        return buffer;
+    }
+
+    /**
+     * @param reuse a heap buffer to reuse if it is large enough, or <code>null</code>
+     * @param length the number of bytes that the buffer is to hold
+     * @return a heap buffer whose position is 0 and whose limit is the given length
+     */
+    static ByteBuffer prepare(final ByteBuffer reuse, final int length) {
+        if (reuse == null || reuse.capacity() < length) {
+            final ByteBuffer allocated = ByteBuffer.allocate(Math.max(length, reuse == null ? 256 : reuse.capacity() * 2));
+            allocated.limit(length);
+            return allocated;
+        }
+
+        reuse.clear();
+        reuse.limit(length);
+        return reuse;
+    }
+
+    private long getOffset(final long eventId) {
+        final int slot = (int) (eventId & slotMask);
+        if (slotIds.get(slot) != eventId) {
+            return -1L;
+        }
+
+        final long offset = slotOffsets.get(slot);
+        if (slotIds.get(slot) != eventId) {
+            return -1L;
+        }
+        return offset == TOMBSTONE ? -1L : offset;
+    }
+
+    private void copy(final ByteBuffer[] threadViews, final long offset, final byte[] destination, final int length) {
+        long position = offset;
+        int copied = 0;
+        while (copied < length) {
+            final int segmentIndex = (int) ((position % capacity) / segmentSize);
+            final int segmentOffset = (int) (position % segmentSize);
+            final int chunk = Math.min(length - copied, segmentSize - segmentOffset);
+
+            final ByteBuffer view = getView(threadViews, segmentIndex);
+            view.position(segmentOffset);
+            view.get(destination, copied, chunk);
+
+            copied += chunk;
+            position += chunk;
+        }
+    }
+
+    private ByteBuffer getView(final ByteBuffer[] threadViews, final int segmentIndex) {
+        ByteBuffer view = threadViews[segmentIndex];
+        if (view == null) {
+            ByteBuffer segment = segments.get(segmentIndex);
+            if (segment == null) {
+                // segments are allocated as the ring first fills, so that a lightly used store does not claim all of its memory
+                final ByteBuffer allocated = ByteBuffer.allocateDirect(segmentSize);
+                segment = segments.compareAndSet(segmentIndex, null, allocated) ? allocated : segments.get(segmentIndex);
+            }
+            view = segment.duplicate();
+            threadViews[segmentIndex] = view;
+        }
+        return view;
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Decides which Provenance Events are persisted by the repository. Events can be allowed or denied by their type and by the
+ * id of the component that generated them, and the FlowFiles whose events are kept can be sampled. Deny lists take
+ * precedence over allow lists, and an empty allow list allows everything.
+ * </p>
+ * <p>
+ * Sampling is deterministic: it is based on a hash of the FlowFile UUID, so either all or none of the admitted events of a
+ * FlowFile are kept, and the same FlowFiles are kept across restarts.
+ * </p>
+ */
+public class ProvenanceAdmissionPolicy {
+
+    // sampling percentages are honored to a hundredth of a percent
+    private static final int SAMPLING_BUCKETS = 10000;
+
+    private final Set<ProvenanceEventType> allowedEventTypes;
+    private final Set<ProvenanceEventType> deniedEventTypes;
+    private final Set<String> allowedComponentIds;
+    private final Set<String> deniedComponentIds;
+    private final int samplingThreshold;
+    private final boolean admitAll;
+
+    private final AtomicLong eventsAdmitted = new AtomicLong(0L);
+    private final AtomicLong eventsFilteredByType = new AtomicLong(0L);
+    private final AtomicLong eventsFilteredByComponent = new AtomicLong(0L);
+    private final AtomicLong eventsFilteredBySampling = new AtomicLong(0L);
+
+    /**
+     * @param allowedEventTypes the event types to persist, or an empty collection to allow all types
+     * @param deniedEventTypes the event types to discard
+     * @param allowedComponentIds the ids of the components whose events are persisted, or an empty collection to allow all components
+     * @param deniedComponentIds the ids of the components whose events are discarded
+     * @param samplingPercentage the percentage of FlowFiles whose events are persisted, between 0 and 100
+     */
+    public ProvenanceAdmissionPolicy(final Collection<ProvenanceEventType> allowedEventTypes, final Collection<ProvenanceEventType> deniedEventTypes,
+                                     final Collection<String> allowedComponentIds, final Collection<String> deniedComponentIds, final double samplingPercentage) {
+        if (samplingPercentage < 0D || samplingPercentage > 100D) {
+            throw new IllegalArgumentException("Sampling percentage must be between 0 and 100 but was " + samplingPercentage);
+        }
+
+        this.allowedEventTypes = allowedEventTypes.isEmpty() ? EnumSet.allOf(ProvenanceEventType.class) : EnumSet.copyOf(allowedEventTypes);
+        this.deniedEventTypes = deniedEventTypes.isEmpty() ? EnumSet.noneOf(ProvenanceEventType.class) : EnumSet.copyOf(deniedEventTypes);
+        this.allowedComponentIds = new HashSet<>(allowedComponentIds);
+        this.deniedComponentIds = new HashSet<>(deniedComponentIds);
+        this.samplingThreshold = (int) Math.round(samplingPercentage * SAMPLING_BUCKETS / 100D);
+        this.admitAll = allowedEventTypes.isEmpty() && deniedEventTypes.isEmpty() && allowedComponentIds.isEmpty() && deniedComponentIds.isEmpty()
+            && samplingThreshold >= SAMPLING_BUCKETS;
+    }
+
+    /**
+     * @return a policy that persists every event
+     */
+    public static ProvenanceAdmissionPolicy admitAll() {
+        return new ProvenanceAdmissionPolicy(Collections.<ProvenanceEventType>emptySet(), Collections.<ProvenanceEventType>emptySet(),
+            Collections.<String>emptySet(), Collections.<String>emptySet(), 100D);
+    }
+
+    /**
+     * @return <code>true</code> if this policy persists every event
+     */
+    public boolean isAdmitAll() {
+        return admitAll;
+    }
+
+    /**
+     * @param event the event to check
+     * @return <code>true</code> if the event is to be persisted
+     */
+    public boolean admit(final ProvenanceEventRecord event) {
+        if (admitAll) {
+            eventsAdmitted.incrementAndGet();
+            return true;
+        }
+
+        final ProvenanceEventType eventType = event.getEventType();
+        if (!allowedEventTypes.contains(eventType) || deniedEventTypes.contains(eventType)) {
+            eventsFilteredByType.incrementAndGet();
+            return false;
+        }
+
+        final String componentId = event.getComponentId();
+        if ((!allowedComponentIds.isEmpty() && !allowedComponentIds.contains(componentId)) || deniedComponentIds.contains(componentId)) {
+            eventsFilteredByComponent.incrementAndGet();
+            return false;
+        }
+
+        if (samplingThreshold < SAMPLING_BUCKETS && getSamplingBucket(event.getFlowFileUuid()) >= samplingThreshold) {
+            eventsFilteredBySampling.incrementAndGet();
+            return false;
+        }
+
+        eventsAdmitted.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * @param events the events to check
+     * @return the events that are to be persisted, in the order given
+     */
+    List<ProvenanceEventRecord> admit(final Iterable<ProvenanceEventRecord> events) {
+        final List<ProvenanceEventRecord> admitted = new ArrayList<>();
+        for (final ProvenanceEventRecord event : events) {
+            if (admit(event)) {
+                admitted.add(event);
+            }
+        }
+        return admitted;
+    }
+
+    static int getSamplingBucket(final String flowFileUuid) {
+        if (flowFileUuid == null) {
+            return 0;
+        }
+
+        // String.hashCode is specified by the JLS, so the same FlowFiles are sampled on every JVM. The bits are mixed because
+        // the hash codes of UUIDs differ little in their low bits.
+        int hash = flowFileUuid.hashCode() * 0x9E3779B9;
+        hash ^= hash >>> 16;
+        return Math.floorMod(hash, SAMPLING_BUCKETS);
+    }
+
+    /**
+     * @return the number of events that were persisted
+     */
+    public long getEventsAdmitted() {
+        return eventsAdmitted.get();
+    }
+
+    /**
+     * @return the number of events that were discarded because of their type
+     */
+    public long getEventsFilteredByType() {
+        return eventsFilteredByType.get();
+    }
+
+    /**
+     * @return the number of events that were discarded because of the component that generated them
+     */
+    public long getEventsFilteredByComponent() {
+        return eventsFilteredByComponent.get();
+    }
+
+    /**
+     * @return the number of events that were discarded because their FlowFile was not sampled
+     */
+    public long getEventsFilteredBySampling() {
+        return eventsFilteredBySampling.get();
+    }
+
+    /**
+     * @return the total number of events that were discarded
+     */
+    public long getEventsFiltered() {
+        return getEventsFilteredByType() + getEventsFilteredByComponent() + getEventsFilteredBySampling();
+    }
+
+    @Override
+    public String toString() {
+        return "ProvenanceAdmissionPolicy[allowedEventTypes=" + allowedEventTypes + ", deniedEventTypes=" + deniedEventTypes + ", allowedComponentIds="
+            + allowedComponentIds + ", deniedComponentIds=" + deniedComponentIds + ", samplingPercentage=" + (samplingThreshold * 100D / SAMPLING_BUCKETS) + "]";
+    }
+}
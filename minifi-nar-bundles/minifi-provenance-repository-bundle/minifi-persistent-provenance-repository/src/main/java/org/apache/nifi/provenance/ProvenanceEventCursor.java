@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import org.apache.nifi.provenance.schema.EventRecord;
+import org.apache.nifi.provenance.schema.ProvenanceEventSchema;
+import org.apache.nifi.repository.schema.Record;
+import org.apache.nifi.repository.schema.SchemaRecordReader;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * <p>
+ * Streams Provenance Events out of a repository one at a time, in ascending order of their ids, so that a consumer holds no
+ * more than the current event in memory rather than a whole batch of them. An event is only decoded if {@link #getEvent()}
+ * is called, so consumers that only forward events can use {@link #getSerializedEvent()} instead.
+ * </p>
+ * <p>
+ * A cursor is not thread-safe. Anything that it returns is only valid until the next call to {@link #next()}.
+ * </p>
+ */
+public interface ProvenanceEventCursor extends Closeable {
+
+    /**
+     * Advances to the next event
+     *
+     * @return <code>true</code> if the cursor advanced, or <code>false</code> if no further events are available yet, in
+     * which case calling this method again later returns any events that have been registered since
+     * @throws IOException if the next event cannot be read
+     */
+    boolean next() throws IOException;
+
+    /**
+     * @return the id of the current event
+     */
+    long getEventId();
+
+    /**
+     * @return the current event, or <code>null</code> if it was evicted from the repository before it could be decoded
+     * @throws IOException if the event cannot be decoded
+     */
+    ProvenanceEventRecord getEvent() throws IOException;
+
+    /**
+     * @return a read-only buffer holding the current event in serialized form, from its position to its limit, which
+     * {@link #deserialize(ByteBuffer)} turns back into an event. Where possible this is a view of the event as it is stored,
+     * either as the NiFi schema record writer writes it or in the compact form that the volatile repository keeps, so that
+     * forwarding an event requires neither decoding nor copying it. The buffer may be reused by the next call to {@link #next()}.
+     * @throws IOException if the event cannot be serialized
+     */
+    ByteBuffer getSerializedEvent() throws IOException;
+
+    /**
+     * @param serializedEvent a buffer holding an event as returned by {@link #getSerializedEvent()}, from its position to its limit
+     * @return the event
+     * @throws IOException if the buffer does not hold a valid event
+     */
+    static ProvenanceEventRecord deserialize(final ByteBuffer serializedEvent) throws IOException {
+        final int position = serializedEvent.position();
+        if (serializedEvent.hasRemaining() && serializedEvent.get(position) == EventFileBlockCache.SCHEMA_RECORD_SENTINEL) {
+            final SchemaRecordReader reader = SchemaRecordReader.fromSchema(ProvenanceEventSchema.PROVENANCE_EVENT_SCHEMA_V1);
+            final Record record = reader.readRecord(new EventFileBlockCache.ByteBufferInputStream(serializedEvent, position, serializedEvent.remaining()));
+            if (record == null) {
+                throw new EOFException("Serialized Provenance Event is empty");
+            }
+            return EventRecord.getEvent(record, null, 0L, Integer.MAX_VALUE);
+        }
+
+        final DictionaryRecordCodec.Decoder decoder = new DictionaryRecordCodec.Decoder(serializedEvent, position, serializedEvent.limit());
+        return decoder.readRecord(DictionaryRecordCodec.NO_DICTIONARY, null, 0L, Integer.MAX_VALUE);
+    }
+}
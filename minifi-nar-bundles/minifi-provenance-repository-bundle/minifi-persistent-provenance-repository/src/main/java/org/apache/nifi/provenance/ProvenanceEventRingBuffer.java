@@ -0,0 +1,309 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>
+ * A bounded, lock-free, multi-producer/multi-consumer ring buffer. Each slot carries a sequence number so that producers
+ * and consumers are able to claim slots with a single compare-and-set on their respective cursor, without ever taking a lock
+ * on the fast path.
+ * </p>
+ * <p>
+ * Consumers may drain several published slots with a single claim, which allows the journal writer threads to amortize the
+ * cost of obtaining a journal over many producers. A lock is used only to park threads when the ring is empty (consumers)
+ * or full (producers), and it is only touched when a thread is actually waiting.
+ * </p>
+ *
+ * @param <T> the type of entry held in the ring
+ */
+class ProvenanceEventRingBuffer<T> {
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<T> entries;
+    private final AtomicLongArray sequences;
+
+    private final AtomicLong producerCursor = new AtomicLong(0L);
+    private final AtomicLong consumerCursor = new AtomicLong(0L);
+
+    private final Lock waitLock = new ReentrantLock();
+    private final Condition notEmpty = waitLock.newCondition();
+    private final Condition notFull = waitLock.newCondition();
+    private final AtomicInteger waitingConsumers = new AtomicInteger(0);
+    private final AtomicInteger waitingProducers = new AtomicInteger(0);
+
+    ProvenanceEventRingBuffer(final int requestedCapacity) {
+        if (requestedCapacity < 1) {
+            throw new IllegalArgumentException("Ring buffer capacity must be at least 1 but was " + requestedCapacity);
+        }
+
+        // round up to a power of two so that the slot index can be computed with a mask. The ring needs at least two
+        // slots, as a published slot's sequence must never be mistaken for a free slot on the producer's next lap.
+        int size = 2;
+        while (size < requestedCapacity) {
+            size <<= 1;
+        }
+
+        this.capacity = size;
+        this.mask = size - 1;
+        this.entries = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * @return the number of slots in the ring
+     */
+    int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return an approximation of the number of slots that have been claimed by producers but not yet consumed, which
+     * includes entries that a producer has claimed a slot for but not yet finished publishing
+     */
+    int size() {
+        final long size = producerCursor.get() - consumerCursor.get();
+        return (int) Math.max(0L, Math.min(size, capacity));
+    }
+
+    /**
+     * @return <code>true</code> if the next entry to be consumed has not been published. A slot that a producer has claimed
+     * but not yet published does not count, as it cannot be drained until it is published, which signals the consumers.
+     */
+    boolean isEmpty() {
+        long position = consumerCursor.get();
+        while (true) {
+            final long difference = sequences.get((int) (position & mask)) - (position + 1);
+            if (difference == 0L) {
+                return false;
+            } else if (difference < 0L) {
+                return true;
+            }
+
+            // another consumer took the slot since we read the cursor
+            position = consumerCursor.get();
+        }
+    }
+
+    /**
+     * Publishes the given entry if there is a free slot
+     *
+     * @param entry the entry to publish
+     * @return <code>true</code> if the entry was published, <code>false</code> if the ring is full
+     */
+    boolean offer(final T entry) {
+        if (entry == null) {
+            throw new NullPointerException("Cannot publish a null entry");
+        }
+
+        long position = producerCursor.get();
+        while (true) {
+            final int index = (int) (position & mask);
+            final long difference = sequences.get(index) - position;
+
+            if (difference == 0L) {
+                if (producerCursor.compareAndSet(position, position + 1)) {
+                    entries.set(index, entry);
+                    sequences.set(index, position + 1);
+                    signal(waitingConsumers, notEmpty);
+                    return true;
+                }
+                position = producerCursor.get();
+            } else if (difference < 0L) {
+                // the slot still holds an entry from the previous lap
+                return false;
+            } else {
+                position = producerCursor.get();
+            }
+        }
+    }
+
+    /**
+     * Publishes the given entry, waiting up to the given amount of time for a slot to become available
+     *
+     * @param entry the entry to publish
+     * @param timeout the maximum amount of time to wait
+     * @param unit the unit of the timeout
+     * @return <code>true</code> if the entry was published, <code>false</code> if the timeout elapsed first
+     * @throws InterruptedException if interrupted while waiting for a free slot
+     */
+    boolean offer(final T entry, final long timeout, final TimeUnit unit) throws InterruptedException {
+        if (offer(entry)) {
+            return true;
+        }
+
+        long remainingNanos = unit.toNanos(timeout);
+        waitingProducers.incrementAndGet();
+        try {
+            while (true) {
+                if (offer(entry)) {
+                    return true;
+                }
+                if (remainingNanos <= 0L) {
+                    return false;
+                }
+
+                waitLock.lock();
+                try {
+                    if (size() >= capacity) {
+                        remainingNanos = notFull.awaitNanos(remainingNanos);
+                    }
+                } finally {
+                    waitLock.unlock();
+                }
+            }
+        } finally {
+            waitingProducers.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return the next published entry, or <code>null</code> if the ring is empty
+     */
+    T poll() {
+        long position = consumerCursor.get();
+        while (true) {
+            final int index = (int) (position & mask);
+            final long difference = sequences.get(index) - (position + 1);
+
+            if (difference == 0L) {
+                if (consumerCursor.compareAndSet(position, position + 1)) {
+                    return release(index, position);
+                }
+                position = consumerCursor.get();
+            } else if (difference < 0L) {
+                return null;
+            } else {
+                position = consumerCursor.get();
+            }
+        }
+    }
+
+    /**
+     * Claims up to <code>maxEntries</code> consecutive published entries with a single compare-and-set and adds them,
+     * in publication order, to the given collection.
+     *
+     * @param target the collection to add the drained entries to
+     * @param maxEntries the maximum number of entries to drain
+     * @return the number of entries drained
+     */
+    int drainTo(final Collection<? super T> target, final int maxEntries) {
+        while (true) {
+            final long position = consumerCursor.get();
+
+            int available = 0;
+            while (available < maxEntries) {
+                final long slotPosition = position + available;
+                if (sequences.get((int) (slotPosition & mask)) != slotPosition + 1) {
+                    break;
+                }
+                available++;
+            }
+
+            if (available == 0) {
+                return 0;
+            }
+
+            if (consumerCursor.compareAndSet(position, position + available)) {
+                for (int i = 0; i < available; i++) {
+                    final long slotPosition = position + i;
+                    target.add(release((int) (slotPosition & mask), slotPosition));
+                }
+                return available;
+            }
+        }
+    }
+
+    /**
+     * Waits until the ring contains at least one entry or the given amount of time has elapsed
+     *
+     * @param timeout the maximum amount of time to wait
+     * @param unit the unit of the timeout
+     * @return <code>true</code> if the ring is not empty
+     * @throws InterruptedException if interrupted while waiting
+     */
+    boolean awaitNotEmpty(final long timeout, final TimeUnit unit) throws InterruptedException {
+        if (!isEmpty()) {
+            return true;
+        }
+
+        // register as a waiter before checking the ring again so that a producer publishing concurrently
+        // is guaranteed to either see us waiting or be seen by our check.
+        waitingConsumers.incrementAndGet();
+        try {
+            waitLock.lock();
+            try {
+                long remainingNanos = unit.toNanos(timeout);
+                while (isEmpty() && remainingNanos > 0L) {
+                    remainingNanos = notEmpty.awaitNanos(remainingNanos);
+                }
+                return !isEmpty();
+            } finally {
+                waitLock.unlock();
+            }
+        } finally {
+            waitingConsumers.decrementAndGet();
+        }
+    }
+
+    /**
+     * Wakes up any thread that is waiting on the ring, regardless of whether or not its condition has been met.
+     */
+    void wakeAll() {
+        waitLock.lock();
+        try {
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            waitLock.unlock();
+        }
+    }
+
+    private T release(final int index, final long position) {
+        final T entry = entries.get(index);
+        entries.set(index, null);
+        sequences.set(index, position + capacity);
+        signal(waitingProducers, notFull);
+        return entry;
+    }
+
+    private void signal(final AtomicInteger waiters, final Condition condition) {
+        if (waiters.get() == 0) {
+            return;
+        }
+
+        waitLock.lock();
+        try {
+            condition.signalAll();
+        } finally {
+            waitLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * Counts occurrences of something, such as events or bytes written, and estimates how many occur per second as an
+ * exponentially weighted moving average over roughly the last minute.
+ * </p>
+ * <p>
+ * Marking only adds to a striped counter, so it is cheap enough to do on every write. The rate is only re-estimated when
+ * {@link #tick()} is called, which must happen every {@value #TICK_INTERVAL_SECONDS} seconds.
+ * </p>
+ */
+class RateMeter {
+
+    static final long TICK_INTERVAL_SECONDS = 5L;
+    private static final double ALPHA = 1D - Math.exp(-TICK_INTERVAL_SECONDS / 60D);
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder uncounted = new LongAdder();
+
+    // guarded by this
+    private boolean initialized = false;
+    private volatile double rate = 0D;
+
+    void mark(final long amount) {
+        count.add(amount);
+        uncounted.add(amount);
+    }
+
+    /**
+     * Folds everything that has been marked since the previous tick into the rate
+     */
+    synchronized void tick() {
+        final double instantRate = uncounted.sumThenReset() / (double) TICK_INTERVAL_SECONDS;
+        if (initialized) {
+            rate += ALPHA * (instantRate - rate);
+        } else {
+            rate = instantRate;
+            initialized = true;
+        }
+    }
+
+    /**
+     * @return the total amount that has been marked
+     */
+    long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return the smoothed amount marked per second, as of the last tick
+     */
+    double getRate() {
+        return rate;
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import org.apache.nifi.provenance.serialization.RecordReader;
+import org.apache.nifi.provenance.toc.StandardTocWriter;
+import org.apache.nifi.provenance.toc.TocUtil;
+import org.apache.nifi.provenance.toc.TocWriter;
+import org.apache.nifi.util.file.FileUtils;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>
+ * A single block of a merged Provenance Event Log File, exactly as it is stored: compressed, and framed or dictionary
+ * encoded if the file is. Blocks are exported by {@link MiNiFiPersistentProvenanceRepository#getRawEventBlocks(long, int)}
+ * so that they can be forwarded without decoding and re-encoding their events, which leaves the cost of forwarding
+ * independent of the size and number of the events.
+ * </p>
+ * <p>
+ * A block can only be decoded along with the head of its file, which is everything up to the end of the first block of the
+ * file and holds the header and schema of the file. Receivers are expected to keep the head of each file that they receive
+ * blocks of, and to pass it to {@link #decode(String, byte[], byte[], long, int)} along with each block.
+ * </p>
+ * <p>
+ * Each block carries the {@link Crc32c} checksum that was recorded for it when its file was merged, so that a receiver is able
+ * to verify that the block arrived as it was written.
+ * </p>
+ * <p>
+ * A block refers to its file rather than holding its bytes. If the file is aged off or rewritten before the block is
+ * transferred, the transfer fails, and the block has to be exported again.
+ * </p>
+ */
+public final class RawEventBlock {
+
+    private static final int TOC_VERSION_WITH_EVENT_IDS = 2;
+
+    private final File file;
+    private final int blockIndex;
+    private final long offset;
+    private final long length;
+    private final long fileHeadLength;
+    private final long firstEventId;
+    private final long lastEventId;
+    private final long checksum;
+
+    private RawEventBlock(final File file, final int blockIndex, final long offset, final long length, final long fileHeadLength,
+                          final long firstEventId, final long lastEventId, final long checksum) {
+        this.file = file;
+        this.blockIndex = blockIndex;
+        this.offset = offset;
+        this.length = length;
+        this.fileHeadLength = fileHeadLength;
+        this.firstEventId = firstEventId;
+        this.lastEventId = lastEventId;
+        this.checksum = checksum;
+    }
+
+    /**
+     * Lists the blocks of the given Provenance Event Log File by reading its Table of Contents
+     *
+     * @param file the Provenance Event Log File
+     * @param firstEventIdOfFile the id of the first event in the file, as given by its name
+     * @param lastEventIdOfFile the greatest event id that the file may hold, which bounds its last block
+     * @return the blocks of the file, in order. If the last entry of the Table of Contents was only partly written, the blocks
+     * before it are returned, and the last of them ends where the partly written entry says that the next block starts.
+     * @throws IOException if the Table of Contents cannot be read, or does not record the first event id of each block
+     */
+    static List<RawEventBlock> readBlocks(final File file, final long firstEventIdOfFile, final long lastEventIdOfFile) throws IOException {
+        final File tocFile = TocUtil.getTocFile(file);
+        final List<long[]> entries = new ArrayList<>();
+        long tornBlockOffset = -1L;
+        try (final InputStream fis = new FileInputStream(tocFile);
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(fis))) {
+            final int version = in.read();
+            if (version < TOC_VERSION_WITH_EVENT_IDS) {
+                throw new IOException("Cannot export the blocks of " + file + " because its Table of Contents does not record the first event id of each block");
+            }
+            in.read(); // whether the blocks are compressed, which the codec of the file already tells
+
+            while (true) {
+                final long blockOffset;
+                try {
+                    blockOffset = in.readLong();
+                } catch (final EOFException eof) {
+                    break;
+                }
+
+                try {
+                    entries.add(new long[] {blockOffset, in.readLong()});
+                } catch (final EOFException eof) {
+                    // the Table of Contents was cut short while the entry was being written; its block cannot be exported without its first event id
+                    tornBlockOffset = blockOffset;
+                    break;
+                }
+            }
+        }
+
+        final long fileLength = file.length();
+        final long lastBlockEnd = tornBlockOffset < 0L ? fileLength : Math.min(tornBlockOffset, fileLength);
+        if (entries.isEmpty() || lastBlockEnd == 0L) {
+            return Collections.emptyList();
+        }
+
+        final BlockChecksums checksums = readChecksums(file);
+        final long fileHeadLength = entries.size() > 1 ? entries.get(1)[0] : lastBlockEnd;
+        final List<RawEventBlock> blocks = new ArrayList<>(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            final long blockOffset = entries.get(i)[0];
+            final long blockEnd = i + 1 < entries.size() ? entries.get(i + 1)[0] : lastBlockEnd;
+            final long blockLastEventId = i + 1 < entries.size() ? entries.get(i + 1)[1] - 1L : lastEventIdOfFile;
+            // the Table of Contents does not always record the first event id of the first block, which the name of the file does
+            final long blockFirstEventId = i == 0 ? firstEventIdOfFile : entries.get(i)[1];
+            final long blockChecksum = checksums == null ? -1L : checksums.getChecksum(blockOffset, blockEnd);
+            blocks.add(new RawEventBlock(file, i, blockOffset, blockEnd - blockOffset, fileHeadLength, blockFirstEventId, blockLastEventId, blockChecksum));
+        }
+        return blocks;
+    }
+
+    private static BlockChecksums readChecksums(final File file) {
+        final File checksumFile = BlockChecksums.getChecksumFile(file);
+        if (!checksumFile.exists()) {
+            // the file was merged before checksums were kept
+            return null;
+        }
+
+        try {
+            return BlockChecksums.read(checksumFile);
+        } catch (final IOException ioe) {
+            // the blocks can still be exported; they just cannot be verified
+            return null;
+        }
+    }
+
+    /**
+     * @return the name of the file that the block belongs to, which identifies the format and codec of the file to {@link #decode}
+     */
+    public String getFilename() {
+        return file.getName();
+    }
+
+    /**
+     * @return the position of the block within its file, starting at 0
+     */
+    public int getBlockIndex() {
+        return blockIndex;
+    }
+
+    /**
+     * @return the id of the first event that the block may hold
+     */
+    public long getFirstEventId() {
+        return firstEventId;
+    }
+
+    /**
+     * @return the id of the last event that the block may hold. Any event with an id between the first and last event id of
+     * the block that is not in the block is not in the repository either, so a forwarder resumes with the next id.
+     */
+    public long getLastEventId() {
+        return lastEventId;
+    }
+
+    /**
+     * @return the number of bytes of the block
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @return the {@link Crc32c} checksum of the bytes of the block, or -1 if no checksum was recorded for the block, as is
+     * the case for files that were merged before checksums were kept and for uncompressed files, which are a single block
+     * to the Table of Contents
+     */
+    public long getChecksum() {
+        return checksum;
+    }
+
+    /**
+     * @return the number of bytes of the head of the block's file
+     */
+    public long getFileHeadLength() {
+        return fileHeadLength;
+    }
+
+    /**
+     * Writes the bytes of the block to the given channel, letting the operating system copy them directly from the file
+     * where it is able to
+     *
+     * @param target a blocking channel to write the block to
+     * @return the number of bytes written
+     * @throws IOException if the file cannot be read, such as when it has been aged off, or the channel cannot be written
+     */
+    public long transferTo(final WritableByteChannel target) throws IOException {
+        return transfer(offset, length, target);
+    }
+
+    /**
+     * Writes the head of the block's file to the given channel, in the same way as {@link #transferTo(WritableByteChannel)}
+     *
+     * @param target a blocking channel to write the head of the file to
+     * @return the number of bytes written
+     * @throws IOException if the file cannot be read, or the channel cannot be written
+     */
+    public long transferFileHeadTo(final WritableByteChannel target) throws IOException {
+        return transfer(0L, fileHeadLength, target);
+    }
+
+    private long transfer(final long position, final long count, final WritableByteChannel target) throws IOException {
+        try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < position + count) {
+                throw new EOFException("Provenance Event Log File " + file + " no longer holds block " + blockIndex);
+            }
+
+            long transferred = 0L;
+            while (transferred < count) {
+                transferred += channel.transferTo(position + transferred, count - transferred, target);
+            }
+            return transferred;
+        }
+    }
+
+    /**
+     * Decodes the events of an exported block. This is intended for the receiving end of a forwarder, which is expected to
+     * have the MiNiFi Provenance Repository classes available but not the file that the block came from, so the block is
+     * reassembled into a file of its own, in a temporary directory, and read by the same readers as the repository uses.
+     *
+     * @param filename the name of the file that the block came from, as given by {@link #getFilename()}
+     * @param fileHead the head of the file, as written by {@link #transferFileHeadTo(WritableByteChannel)}
+     * @param block the block, as written by {@link #transferTo(WritableByteChannel)}, or <code>null</code> to decode the
+     * first block of the file, which is part of its head
+     * @param firstEventId the id of the first event of the block, as given by {@link #getFirstEventId()}
+     * @param maxAttributeChars the maximum number of characters to retain for any attribute value
+     * @return the events of the block
+     * @throws IOException if the block cannot be decoded
+     */
+    public static List<ProvenanceEventRecord> decode(final String filename, final byte[] fileHead, final byte[] block, final long firstEventId,
+                                                     final int maxAttributeChars) throws IOException {
+        final File directory = Files.createTempDirectory("provenance-block").toFile();
+        try {
+            final File file = new File(directory, new File(filename).getName());
+            final boolean framed = fileHead.length >= FramedEventFileReader.MAGIC.length
+                && Arrays.equals(FramedEventFileReader.MAGIC, Arrays.copyOf(fileHead, FramedEventFileReader.MAGIC.length));
+
+            final File tocFile = TocUtil.getTocFile(file);
+            Files.createDirectories(tocFile.getParentFile().toPath());
+            try (final OutputStream out = new FileOutputStream(file);
+                final TocWriter tocWriter = new StandardTocWriter(tocFile, false, false)) {
+                out.write(fileHead);
+                tocWriter.addBlockOffset(framed ? FramedEventFileReader.PREFIX_LENGTH : 0L, block == null ? firstEventId : 0L);
+                if (block != null) {
+                    out.write(block);
+                    tocWriter.addBlockOffset(fileHead.length, firstEventId);
+                }
+            }
+
+            final List<ProvenanceEventRecord> events = new ArrayList<>();
+            try (final RecordReader reader = MiNiFiRecordReaders.newRecordReader(file, null, maxAttributeChars)) {
+                if (block != null) {
+                    reader.skipToBlock(1);
+                }
+
+                StandardProvenanceEventRecord event;
+                while ((event = reader.nextRecord()) != null) {
+                    events.add(event);
+                }
+            }
+            return events;
+        } finally {
+            FileUtils.deleteFile(directory, true);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RawEventBlock[file=" + file + ", block=" + blockIndex + ", events=" + firstEventId + "-" + lastEventId + ", bytes=" + length + "]";
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Decides which storage directory each new journal and merged Provenance Event Log File is placed in, and keeps track of how
+ * quickly each directory has been written to.
+ * </p>
+ * <p>
+ * The {@link Strategy#ROUND_ROBIN round-robin} strategy cycles through the directories regardless of how they perform. The
+ * {@link Strategy#BALANCED balanced} strategy uses a smooth weighted round-robin, in which each directory is weighted by its
+ * measured write throughput, so that a slow or degraded disk is given proportionally fewer files. Directories whose usable
+ * space has fallen below the configured minimum are given no files at all, unless every directory has, in which case the
+ * directory with the most usable space is chosen. A directory that has not been written to yet is weighted as well as the
+ * fastest directory, so that it is measured.
+ * </p>
+ */
+public class StoragePlacementPolicy {
+
+    /**
+     * The ways in which a storage directory can be chosen
+     */
+    public enum Strategy {
+        ROUND_ROBIN("round-robin"),
+        BALANCED("balanced");
+
+        private final String name;
+
+        Strategy(final String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public static Strategy forName(final String name) {
+            for (final Strategy strategy : values()) {
+                if (strategy.name.equalsIgnoreCase(name.trim())) {
+                    return strategy;
+                }
+            }
+            throw new IllegalArgumentException("Unknown Provenance storage placement strategy '" + name + "'; expected one of 'round-robin' or 'balanced'");
+        }
+    }
+
+    // throughput is re-estimated once this many bytes have been written to a directory, so that it is not skewed by tiny writes
+    static final long SAMPLE_BYTES = 1024L * 1024L;
+    // the weight of the newest estimate of a directory's throughput, relative to all earlier estimates
+    private static final double SMOOTHING_FACTOR = 0.3D;
+    private static final long USABLE_SPACE_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(5L);
+
+    private final Strategy strategy;
+    private final long minUsableBytes;
+    private final List<StorageDirectoryStats> directoryStats;
+    private final Map<File, StorageDirectoryStats> statsByDirectory;
+    private final AtomicLong roundRobinIndex = new AtomicLong(0L);
+
+    // the running weights of the smooth weighted round-robin; guarded by this
+    private final double[] currentWeights;
+
+    /**
+     * @param storageDirectories the directories to place files in
+     * @param strategy the way in which to choose a directory
+     * @param minUsableBytes the number of usable bytes below which the balanced strategy avoids a directory
+     */
+    public StoragePlacementPolicy(final List<File> storageDirectories, final Strategy strategy, final long minUsableBytes) {
+        if (storageDirectories.isEmpty()) {
+            throw new IllegalArgumentException("Must specify at least one storage directory");
+        }
+
+        this.strategy = strategy;
+        this.minUsableBytes = minUsableBytes;
+
+        final List<StorageDirectoryStats> stats = new ArrayList<>(storageDirectories.size());
+        final Map<File, StorageDirectoryStats> byDirectory = new HashMap<>();
+        for (final File storageDirectory : storageDirectories) {
+            final StorageDirectoryStats directoryStats = new StorageDirectoryStats(storageDirectory);
+            stats.add(directoryStats);
+            byDirectory.put(storageDirectory.getAbsoluteFile(), directoryStats);
+        }
+        this.directoryStats = Collections.unmodifiableList(stats);
+        this.statsByDirectory = byDirectory;
+        this.currentWeights = new double[stats.size()];
+    }
+
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * @return the statistics of each storage directory, in the order in which the directories are configured
+     */
+    public List<StorageDirectoryStats> getStorageDirectoryStats() {
+        return directoryStats;
+    }
+
+    /**
+     * @return the storage directory to place the next file in
+     */
+    public File nextDirectory() {
+        final int index;
+        if (strategy == Strategy.ROUND_ROBIN || directoryStats.size() == 1) {
+            index = (int) (roundRobinIndex.getAndIncrement() % directoryStats.size());
+        } else {
+            index = nextBalancedIndex();
+        }
+
+        final StorageDirectoryStats chosen = directoryStats.get(index);
+        chosen.placements.incrementAndGet();
+        return chosen.getDirectory();
+    }
+
+    private synchronized int nextBalancedIndex() {
+        double fastest = 0D;
+        for (final StorageDirectoryStats stats : directoryStats) {
+            fastest = Math.max(fastest, stats.getThroughput());
+        }
+
+        final double[] weights = new double[directoryStats.size()];
+        double totalWeight = 0D;
+        int mostUsableIndex = 0;
+        long mostUsableBytes = Long.MIN_VALUE;
+        for (int i = 0; i < weights.length; i++) {
+            final StorageDirectoryStats stats = directoryStats.get(i);
+            final long usableBytes = stats.refreshUsableBytes();
+            if (usableBytes > mostUsableBytes) {
+                mostUsableBytes = usableBytes;
+                mostUsableIndex = i;
+            }
+
+            if (usableBytes >= minUsableBytes) {
+                final double throughput = stats.getThroughput();
+                weights[i] = throughput > 0D ? throughput : Math.max(1D, fastest);
+                totalWeight += weights[i];
+            }
+        }
+
+        if (totalWeight == 0D) {
+            return mostUsableIndex;
+        }
+
+        int chosen = -1;
+        for (int i = 0; i < weights.length; i++) {
+            currentWeights[i] += weights[i];
+            if (weights[i] > 0D && (chosen < 0 || currentWeights[i] > currentWeights[chosen])) {
+                chosen = i;
+            }
+        }
+        currentWeights[chosen] -= totalWeight;
+        return chosen;
+    }
+
+    /**
+     * Records that the given number of bytes were written to the given file, which is a journal or an event file within one of
+     * the storage directories. Writes to files that are not within a storage directory are ignored.
+     *
+     * @param file the file that was written to
+     * @param bytes the number of bytes written
+     * @param nanos the time that the write took
+     */
+    public void recordWrite(final File file, final long bytes, final long nanos) {
+        final StorageDirectoryStats stats = getStats(file);
+        if (stats != null) {
+            stats.recordWrite(bytes, nanos);
+        }
+    }
+
+    /**
+     * Records that writing to the given file failed, which halves the estimated throughput of its storage directory
+     *
+     * @param file the file that could not be written to
+     */
+    public void recordFailure(final File file) {
+        final StorageDirectoryStats stats = getStats(file);
+        if (stats != null) {
+            stats.recordFailure();
+        }
+    }
+
+    private StorageDirectoryStats getStats(final File file) {
+        // journals are held in a subdirectory of their storage directory, and event files directly within it
+        File directory = file.getAbsoluteFile().getParentFile();
+        for (int depth = 0; depth < 2 && directory != null; depth++) {
+            final StorageDirectoryStats stats = statsByDirectory.get(directory);
+            if (stats != null) {
+                return stats;
+            }
+            directory = directory.getParentFile();
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "StoragePlacementPolicy[strategy=" + strategy.getName() + ", directories=" + directoryStats + "]";
+    }
+
+    /**
+     * The write statistics of a single storage directory
+     */
+    public static class StorageDirectoryStats {
+        private final File directory;
+        private final AtomicLong bytesWritten = new AtomicLong(0L);
+        private final AtomicLong writeNanos = new AtomicLong(0L);
+        private final AtomicLong writes = new AtomicLong(0L);
+        private final AtomicLong failures = new AtomicLong(0L);
+        private final AtomicLong placements = new AtomicLong(0L);
+
+        // the bytes and time of the writes that have not yet been folded into the throughput estimate
+        private final AtomicLong sampleBytes = new AtomicLong(0L);
+        private final AtomicLong sampleNanos = new AtomicLong(0L);
+
+        private volatile double throughput = 0D;
+        private volatile long usableBytes;
+        private volatile long usableBytesNanos;
+
+        StorageDirectoryStats(final File directory) {
+            this.directory = directory;
+            this.usableBytes = directory.getUsableSpace();
+            this.usableBytesNanos = System.nanoTime();
+        }
+
+        void recordWrite(final long bytes, final long nanos) {
+            bytesWritten.addAndGet(bytes);
+            writeNanos.addAndGet(nanos);
+            writes.incrementAndGet();
+
+            sampleNanos.addAndGet(nanos);
+            if (sampleBytes.addAndGet(bytes) >= SAMPLE_BYTES) {
+                synchronized (this) {
+                    final long sampledBytes = sampleBytes.getAndSet(0L);
+                    final long sampledNanos = Math.max(1L, sampleNanos.getAndSet(0L));
+                    if (sampledBytes > 0L) {
+                        final double sample = sampledBytes * (double) TimeUnit.SECONDS.toNanos(1L) / sampledNanos;
+                        throughput = throughput == 0D ? sample : SMOOTHING_FACTOR * sample + (1D - SMOOTHING_FACTOR) * throughput;
+                    }
+                }
+            }
+        }
+
+        synchronized void recordFailure() {
+            failures.incrementAndGet();
+            throughput = throughput / 2D;
+        }
+
+        long refreshUsableBytes() {
+            final long now = System.nanoTime();
+            if (now - usableBytesNanos > USABLE_SPACE_REFRESH_NANOS) {
+                usableBytes = directory.getUsableSpace();
+                usableBytesNanos = now;
+            }
+            return usableBytes;
+        }
+
+        public File getDirectory() {
+            return directory;
+        }
+
+        /**
+         * @return the number of bytes written to the journals and event files of the directory
+         */
+        public long getBytesWritten() {
+            return bytesWritten.get();
+        }
+
+        /**
+         * @return the total time spent writing to the journals and event files of the directory, in nanoseconds
+         */
+        public long getWriteNanos() {
+            return writeNanos.get();
+        }
+
+        public long getWriteCount() {
+            return writes.get();
+        }
+
+        public long getFailureCount() {
+            return failures.get();
+        }
+
+        /**
+         * @return the number of journals and event files that have been placed in the directory
+         */
+        public long getPlacementCount() {
+            return placements.get();
+        }
+
+        /**
+         * @return the smoothed write throughput of the directory, in bytes per second, or 0 if too little has been written
+         * to it to tell
+         */
+        public double getThroughput() {
+            return throughput;
+        }
+
+        /**
+         * @return the number of usable bytes of the directory, as of the last time that it was checked
+         */
+        public long getUsableBytes() {
+            return usableBytes;
+        }
+
+        @Override
+        public String toString() {
+            return "StorageDirectoryStats[directory=" + directory + ", bytesWritten=" + getBytesWritten() + ", throughput="
+                + Math.round(throughput) + " bytes/sec, usableBytes=" + usableBytes + ", placements=" + getPlacementCount() + "]";
+        }
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import java.io.IOException;
+
+/**
+ * A Provenance Repository whose events can be streamed with a {@link ProvenanceEventCursor} rather than read in batches
+ * with {@link #getEvents(long, int)}, which decodes and holds every event of a batch at once.
+ */
+public interface StreamingProvenanceRepository extends ProvenanceRepository {
+
+    /**
+     * @param firstEventId the id of the first event to return; events with smaller ids are skipped
+     * @return a cursor over the events of the repository, starting with the first event whose id is at least the given id
+     * @throws IOException if the repository cannot be read
+     */
+    ProvenanceEventCursor openCursor(long firstEventId) throws IOException;
+}
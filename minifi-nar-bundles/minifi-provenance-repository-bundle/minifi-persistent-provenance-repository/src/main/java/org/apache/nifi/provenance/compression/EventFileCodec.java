@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance.compression;
+
+import java.io.IOException;
+
+/**
+ * <p>
+ * A codec that is used to compress the blocks of the Provenance Event Log Files that journals are merged into. The codec
+ * that a file was written with is recorded in the file, so that the file is able to be read regardless of the codec
+ * that the repository is currently configured to use.
+ * </p>
+ * <p>
+ * Implementations are discovered through the {@link java.util.ServiceLoader} mechanism and must be thread-safe, as blocks
+ * are compressed and decompressed concurrently.
+ * </p>
+ */
+public interface EventFileCodec {
+
+    /**
+     * @return the name that is used to select this codec in the repository configuration
+     */
+    String getName();
+
+    /**
+     * @return the identifier that is written to the header of each file that is compressed with this codec. Must be unique
+     * across all codecs and must never change, as it is used to select the codec when reading a file.
+     */
+    byte getId();
+
+    /**
+     * @return the extension that is appended to the name of each file that is compressed with this codec, such as ".gz"
+     */
+    String getFileExtension();
+
+    /**
+     * Compresses a single block
+     *
+     * @param data the buffer holding the uncompressed data
+     * @param offset the offset of the data in the buffer
+     * @param length the number of bytes to compress
+     * @return the compressed data
+     * @throws IOException if unable to compress the data
+     */
+    byte[] compress(byte[] data, int offset, int length) throws IOException;
+
+    /**
+     * Decompresses a single block that was compressed by {@link #compress(byte[], int, int)}
+     *
+     * @param data the buffer holding the compressed data
+     * @param offset the offset of the compressed data in the buffer
+     * @param length the number of compressed bytes
+     * @param uncompressedLength the number of bytes that the block held before it was compressed
+     * @return the uncompressed data
+     * @throws IOException if the data is not valid for this codec
+     */
+    byte[] decompress(byte[] data, int offset, int length, int uncompressedLength) throws IOException;
+
+    /**
+     * @return a codec with the same name, identifier and extension as this one, whose blocks are decompressed in the same way,
+     * but that spends more time compressing in order to produce smaller files. It is used to re-encode files that are
+     * kept for a long time. By default, this codec itself.
+     */
+    default EventFileCodec getArchivalCodec() {
+        return this;
+    }
+}
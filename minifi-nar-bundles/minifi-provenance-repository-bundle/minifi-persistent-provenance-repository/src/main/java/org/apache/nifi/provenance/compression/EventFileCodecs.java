@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance.compression;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+
+/**
+ * Looks up the {@link EventFileCodec}s that are available, either by the name used in the configuration or by the
+ * identifier recorded in a file.
+ */
+public final class EventFileCodecs {
+
+    private static volatile Map<String, EventFileCodec> codecsByName;
+
+    private EventFileCodecs() {
+    }
+
+    /**
+     * @param name the name of the codec, as it appears in the configuration
+     * @return the codec with the given name
+     * @throws IllegalArgumentException if there is no codec with the given name
+     */
+    public static EventFileCodec forName(final String name) {
+        final EventFileCodec codec = getCodecs().get(name == null ? null : name.trim().toLowerCase());
+        if (codec == null) {
+            throw new IllegalArgumentException("Unknown Provenance Event File compression codec '" + name + "'; available codecs are " + getNames());
+        }
+        return codec;
+    }
+
+    /**
+     * @param id the identifier recorded in a Provenance Event File
+     * @return the codec with the given identifier, or <code>null</code> if there is no such codec
+     */
+    public static EventFileCodec forId(final byte id) {
+        for (final EventFileCodec codec : getAvailableCodecs()) {
+            if (codec.getId() == id) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the names of all of the available codecs
+     */
+    public static Set<String> getNames() {
+        return getCodecs().keySet();
+    }
+
+    /**
+     * @return all of the available codecs
+     */
+    public static Collection<EventFileCodec> getAvailableCodecs() {
+        return getCodecs().values();
+    }
+
+    private static Map<String, EventFileCodec> getCodecs() {
+        Map<String, EventFileCodec> codecs = codecsByName;
+        if (codecs == null) {
+            final Map<String, EventFileCodec> loaded = new LinkedHashMap<>();
+            for (final EventFileCodec codec : ServiceLoader.load(EventFileCodec.class, EventFileCodecs.class.getClassLoader())) {
+                loaded.put(codec.getName().toLowerCase(), codec);
+            }
+            codecs = Collections.unmodifiableMap(loaded);
+            codecsByName = codecs;
+        }
+        return codecs;
+    }
+}
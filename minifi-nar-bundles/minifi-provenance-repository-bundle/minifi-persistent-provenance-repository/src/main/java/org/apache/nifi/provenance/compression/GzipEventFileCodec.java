@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance.compression;
+
+import org.apache.nifi.stream.io.GZIPOutputStream;
+import org.apache.nifi.stream.io.StreamUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Compresses each block as a separate GZIP member, at the same compression level that the NiFi record writers use. Files
+ * that are compressed with this codec keep the NiFi layout, so that they are able to be read by the NiFi record readers.
+ */
+public class GzipEventFileCodec implements EventFileCodec {
+
+    public static final String NAME = "gzip";
+    public static final byte ID = 1;
+
+    // the level that the NiFi record writers use, and the best level that GZIP offers
+    private static final int DEFAULT_COMPRESSION_LEVEL = 1;
+    private static final int ARCHIVAL_COMPRESSION_LEVEL = 9;
+
+    private final int compressionLevel;
+
+    public GzipEventFileCodec() {
+        this(DEFAULT_COMPRESSION_LEVEL);
+    }
+
+    private GzipEventFileCodec(final int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getFileExtension() {
+        return ".gz";
+    }
+
+    @Override
+    public byte[] compress(final byte[] data, final int offset, final int length) throws IOException {
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, length / 4));
+        try (final GZIPOutputStream gzipOut = new GZIPOutputStream(compressed, compressionLevel)) {
+            gzipOut.write(data, offset, length);
+        }
+        return compressed.toByteArray();
+    }
+
+    @Override
+    public byte[] decompress(final byte[] data, final int offset, final int length, final int uncompressedLength) throws IOException {
+        final byte[] uncompressed = new byte[uncompressedLength];
+        try (final GZIPInputStream gzipIn = new GZIPInputStream(new ByteArrayInputStream(data, offset, length))) {
+            StreamUtils.fillBuffer(gzipIn, uncompressed);
+        }
+        return uncompressed;
+    }
+
+    @Override
+    public EventFileCodec getArchivalCodec() {
+        return new GzipEventFileCodec(ARCHIVAL_COMPRESSION_LEVEL);
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestBlockChecksums {
+
+    private File journalFile;
+
+    @Before
+    public void writeJournal() throws IOException {
+        final File journalDir = new File("target/storage/" + UUID.randomUUID().toString() + "/journals");
+        assertTrue(journalDir.mkdirs());
+        journalFile = new File(journalDir, "0.journal.0");
+
+        final char[] payload = new char[10000];
+        try (final ChecksummedJournalWriter writer = new ChecksummedJournalWriter(journalFile)) {
+            writer.writeHeader(0L);
+            for (int i = 0; i < 20; i++) {
+                writer.writeRecord(createEvent(new String(payload)), i);
+            }
+        }
+    }
+
+    private static ProvenanceEventRecord createEvent(final String payload) {
+        final Map<String, String> attributes = new HashMap<>();
+        attributes.put("uuid", UUID.randomUUID().toString());
+        attributes.put("payload", payload);
+        return TestUtil.createEvent(3L, "1234", ProvenanceEventType.RECEIVE, System.currentTimeMillis(), attributes);
+    }
+
+    @Test
+    public void testJournalIsCoveredByChecksums() throws IOException {
+        final File checksumFile = BlockChecksums.getChecksumFile(journalFile);
+        assertEquals(new File(new File(journalFile.getParentFile(), "toc"), "0.journal.0.crc"), checksumFile);
+
+        final BlockChecksums checksums = BlockChecksums.read(checksumFile);
+        assertTrue(checksums.getBlockCount() > 2);
+        assertEquals(journalFile.length(), checksums.getEndOffset(checksums.getBlockCount() - 1));
+
+        final BlockChecksums.Validation validation = checksums.validate(journalFile);
+        assertTrue(validation.isIntact());
+        assertEquals(20L, validation.getValidEvents());
+        assertEquals(0, validation.getInvalidBlocks());
+    }
+
+    @Test
+    public void testCorruptBlockInvalidatesTheRestOfTheFile() throws IOException {
+        final BlockChecksums checksums = BlockChecksums.read(BlockChecksums.getChecksumFile(journalFile));
+        try (final RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+            final long position = checksums.getEndOffset(1) + 10L;
+            file.seek(position);
+            final int b = file.read();
+            file.seek(position);
+            file.write(b ^ 0xFF);
+        }
+
+        final BlockChecksums.Validation validation = checksums.validate(journalFile);
+        assertFalse(validation.isIntact());
+        assertEquals(2, validation.getValidBlocks());
+        assertEquals(checksums.getEndOffset(1), validation.getValidLength());
+        assertEquals(checksums.getEventCount(0) + checksums.getEventCount(1), validation.getValidEvents());
+        assertEquals(checksums.getBlockCount() - 2, validation.getInvalidBlocks());
+        assertEquals(20L - validation.getValidEvents(), validation.getInvalidEvents());
+        assertEquals(0L, validation.getUncheckedBytes());
+    }
+
+    @Test
+    public void testTornTail() throws IOException {
+        final File checksumFile = BlockChecksums.getChecksumFile(journalFile);
+        final BlockChecksums checksums = BlockChecksums.read(checksumFile);
+        final int lastBlock = checksums.getBlockCount() - 1;
+
+        // the last block was only partially written, and the entry of the one before it was torn as well
+        try (final RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+            file.setLength(checksums.getEndOffset(lastBlock) - 100L);
+        }
+        try (final RandomAccessFile file = new RandomAccessFile(checksumFile, "rw")) {
+            file.setLength(file.length() - BlockChecksums.ENTRY_LENGTH - 3L);
+        }
+
+        final BlockChecksums tornChecksums = BlockChecksums.read(checksumFile);
+        assertEquals(lastBlock - 1, tornChecksums.getBlockCount());
+
+        final BlockChecksums.Validation validation = tornChecksums.validate(journalFile);
+        assertEquals(lastBlock - 1, validation.getValidBlocks());
+        assertEquals(checksums.getEndOffset(lastBlock - 2), validation.getValidLength());
+        assertEquals(0, validation.getInvalidBlocks());
+        assertEquals(journalFile.length() - validation.getValidLength(), validation.getUncheckedBytes());
+
+        BlockChecksums.truncate(checksumFile, 1);
+        assertEquals(1, BlockChecksums.read(checksumFile).getBlockCount());
+    }
+
+    @Test
+    public void testDamagedBlocksDoNotHideTheBlocksThatFollowThem() throws IOException {
+        final BlockChecksums checksums = BlockChecksums.read(BlockChecksums.getChecksumFile(journalFile));
+        try (final RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+            final long position = checksums.getEndOffset(1) + 10L;
+            file.seek(position);
+            final int b = file.read();
+            file.seek(position);
+            file.write(b ^ 0xFF);
+        }
+
+        final ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(journalFile.toPath()));
+        assertEquals(-1, checksums.findCorruptBlock(data, 0L, checksums.getEndOffset(1)));
+        assertEquals(2, checksums.findCorruptBlock(data, checksums.getEndOffset(1), data.limit()));
+        assertEquals(-1, checksums.findCorruptBlock(data, checksums.getEndOffset(2), data.limit()));
+        assertEquals(checksums.getEventCount(2), checksums.getEventCount(checksums.getEndOffset(1), checksums.getEndOffset(2)));
+
+        final BitSet damagedBlocks = checksums.findDamagedBlocks(data, data.limit());
+        assertEquals(1, damagedBlocks.cardinality());
+        assertTrue(damagedBlocks.get(2));
+
+        // without the bytes of the file, only blocks that are missing from its end are found
+        final int lastBlock = checksums.getBlockCount() - 1;
+        final BitSet missingBlocks = checksums.findDamagedBlocks(null, checksums.getEndOffset(lastBlock) - 1L);
+        assertEquals(1, missingBlocks.cardinality());
+        assertTrue(missingBlocks.get(lastBlock));
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestComponentQuotas {
+
+    @Test
+    public void testFileIsChargedInProportionToUsage() {
+        final Map<String, Set<String>> componentIds = new HashMap<>();
+        componentIds.put("tail", Collections.singleton("tail-file"));
+        componentIds.put("ingest", new HashSet<>(Arrays.asList("tail-file", "split-text")));
+        final Map<String, Long> maxBytes = new HashMap<>();
+        maxBytes.put("tail", 1000L);
+        maxBytes.put("ingest", 5000L);
+        final ComponentQuotas quotas = new ComponentQuotas(componentIds, maxBytes);
+
+        // quotas are ordered by name
+        assertEquals(2, quotas.size());
+        assertEquals("ingest", quotas.getName(0));
+        assertEquals("tail", quotas.getName(1));
+        assertArrayEquals(new long[] {5000L, 1000L}, quotas.getMaxBytes());
+        assertArrayEquals(new int[] {0, 1}, quotas.getQuotas("tail-file"));
+        assertEquals(0, quotas.getQuotas("put-file").length);
+
+        final ComponentUsage.Builder builder = new ComponentUsage.Builder();
+        builder.add("tail-file", 600L);
+        builder.add("split-text", 200L);
+        builder.add("put-file", 200L);
+
+        // the usage is counted before compression, so the 1000 bytes of events are charged against a 100 byte file
+        assertArrayEquals(new long[] {80L, 60L}, quotas.charge(builder.build(), 100L));
+    }
+
+    @Test
+    public void testFileWithoutCoveredEventsIsNotCharged() {
+        final ComponentQuotas quotas = new ComponentQuotas(Collections.singletonMap("tail", Collections.singleton("tail-file")),
+            Collections.singletonMap("tail", 1000L));
+
+        final ComponentUsage.Builder builder = new ComponentUsage.Builder();
+        builder.add("put-file", 200L);
+        assertNull(quotas.charge(builder.build(), 100L));
+        assertNull(quotas.charge(null, 100L));
+
+        final ComponentQuotas none = ComponentQuotas.none();
+        assertTrue(none.isEmpty());
+        assertNull(none.charge(builder.build(), 100L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testQuotaWithoutMaximumRejected() {
+        new ComponentQuotas(Collections.singletonMap("tail", Collections.singleton("tail-file")), Collections.<String, Long>emptyMap());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testQuotaWithoutComponentsRejected() {
+        new ComponentQuotas(Collections.singletonMap("tail", Collections.<String>emptySet()), Collections.singletonMap("tail", 1000L));
+    }
+}
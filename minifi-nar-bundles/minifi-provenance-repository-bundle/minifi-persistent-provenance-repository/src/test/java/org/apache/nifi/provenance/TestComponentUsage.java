@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestComponentUsage {
+
+    private File storageDir;
+
+    @Before
+    public void createStorageDir() {
+        storageDir = new File("target/storage/" + UUID.randomUUID().toString());
+        assertTrue(new File(storageDir, "toc").mkdirs());
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        final ComponentUsage.Builder builder = new ComponentUsage.Builder();
+        builder.add("tail", 100L);
+        builder.add("tail", 150L);
+        builder.add("put", 50L);
+        builder.add("tail", 25L);
+        builder.add(null, 10L);
+
+        final File usageFile = ComponentUsage.getUsageFile(new File(storageDir, "100.prov.gz"));
+        assertEquals(new File(new File(storageDir, "toc"), "100.usage"), usageFile);
+        builder.build().write(usageFile);
+
+        final ComponentUsage usage = ComponentUsage.read(usageFile);
+        assertEquals(3, usage.getBytesByComponent().size());
+        assertEquals(275L, usage.getBytes("tail"));
+        assertEquals(50L, usage.getBytes("put"));
+        assertEquals(10L, usage.getBytes(""));
+        assertEquals(0L, usage.getBytes("other"));
+        assertEquals(335L, usage.getTotalBytes());
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedFileRejected() throws IOException {
+        final ComponentUsage.Builder builder = new ComponentUsage.Builder();
+        builder.add("tail", 100L);
+        final File usageFile = ComponentUsage.getUsageFile(new File(storageDir, "0.prov"));
+        builder.build().write(usageFile);
+
+        try (final FileOutputStream out = new FileOutputStream(usageFile, true)) {
+            out.getChannel().truncate(usageFile.length() - 1);
+        }
+        ComponentUsage.read(usageFile);
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestCrc32c {
+
+    @Test
+    public void testKnownValues() {
+        final Crc32c crc = new Crc32c();
+        assertEquals(0L, crc.getValue());
+
+        crc.update("123456789".getBytes(StandardCharsets.US_ASCII));
+        assertEquals(0xE3069283L, crc.getValue());
+
+        // the test vector of RFC 3720: 32 bytes of zeros
+        crc.reset();
+        crc.update(new byte[32]);
+        assertEquals(0x8A9136AAL, crc.getValue());
+    }
+
+    @Test
+    public void testSlicedUpdateMatchesSingleBytes() {
+        final byte[] data = new byte[1031];
+        new Random(42L).nextBytes(data);
+
+        final Crc32c singleBytes = new Crc32c();
+        for (final byte b : data) {
+            singleBytes.update(b);
+        }
+
+        // split at every alignment, so that both the sliced loop and the loop over the remaining bytes are covered
+        for (int split = 0; split < 17; split++) {
+            final Crc32c sliced = new Crc32c();
+            sliced.update(data, 0, split);
+            sliced.update(data, split, data.length - split);
+            assertEquals(singleBytes.getValue(), sliced.getValue());
+        }
+    }
+}
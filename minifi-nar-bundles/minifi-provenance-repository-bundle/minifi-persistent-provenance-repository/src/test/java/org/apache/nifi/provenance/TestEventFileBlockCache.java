@@ -0,0 +1,331 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import org.apache.nifi.provenance.compression.EventFileCodecs;
+import org.apache.nifi.provenance.serialization.RecordReader;
+import org.apache.nifi.provenance.serialization.RecordWriter;
+import org.apache.nifi.provenance.serialization.RecordWriters;
+import org.apache.nifi.provenance.toc.StandardTocWriter;
+import org.apache.nifi.provenance.toc.TocUtil;
+import org.apache.nifi.util.file.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestEventFileBlockCache {
+
+    private static final int EVENT_COUNT = 200;
+
+    private File storageDir;
+
+    @Before
+    public void setup() {
+        storageDir = new File("target/storage/" + UUID.randomUUID().toString());
+        storageDir.mkdirs();
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        FileUtils.deleteFile(storageDir, true);
+    }
+
+    @Test
+    public void testSequentialReadsOfNiFiCompressedFile() throws IOException {
+        final File eventFile = new File(storageDir, "0.prov.gz");
+        try (final RecordWriter writer = new ByteArraySchemaRecordWriter(eventFile, new StandardTocWriter(TocUtil.getTocFile(eventFile), false, false), true, 1024)) {
+            writer.writeHeader(0L);
+            for (int i = 0; i < EVENT_COUNT; i++) {
+                writer.writeRecord(createEvent(i), i);
+            }
+        }
+
+        final List<StandardProvenanceEventRecord> expected = readAll(eventFile);
+        assertEquals(EVENT_COUNT, expected.size());
+
+        try (final EventFileBlockCache cache = new EventFileBlockCache(1024L * 1024L, Integer.MAX_VALUE)) {
+            // read the file as the reporting task does, a batch at a time
+            long nextEventId = 0L;
+            while (nextEventId < EVENT_COUNT) {
+                final List<ProvenanceEventRecord> batch = new ArrayList<>();
+                assertTrue(cache.readEvents(eventFile, nextEventId, 15, batch));
+                assertFalse(batch.isEmpty());
+
+                for (final ProvenanceEventRecord event : batch) {
+                    final StandardProvenanceEventRecord expectedEvent = expected.get((int) event.getEventId());
+                    assertEquals(nextEventId++, event.getEventId());
+                    assertEquals(expectedEvent, event);
+                    assertEquals(expectedEvent.getStorageFilename(), ((StandardProvenanceEventRecord) event).getStorageFilename());
+                    assertEquals(expectedEvent.getStorageByteOffset(), ((StandardProvenanceEventRecord) event).getStorageByteOffset());
+                    assertEquals(expectedEvent.getAttributes(), event.getAttributes());
+                }
+            }
+
+            // every batch but the first continued from where the previous one ended
+            assertEquals((EVENT_COUNT + 14) / 15 - 1, cache.getCursorHits());
+            final long misses = cache.getBlockMisses();
+            assertTrue(misses > 1);
+
+            // reading the same region again is served entirely by the cache
+            final List<ProvenanceEventRecord> events = new ArrayList<>();
+            assertTrue(cache.readEvents(eventFile, 150L, 20, events));
+            assertEquals(20, events.size());
+            assertEquals(150L, events.get(0).getEventId());
+            assertEquals(misses, cache.getBlockMisses());
+            assertTrue(cache.getBlockHits() > 0);
+        }
+    }
+
+    @Test
+    public void testIterateOverStoredRecords() throws IOException {
+        final File eventFile = new File(storageDir, "0.prov.gz");
+        mergeWithCodec(eventFile, "gzip");
+
+        final List<StandardProvenanceEventRecord> expected = readAll(eventFile);
+        try (final EventFileBlockCache cache = new EventFileBlockCache(1024L * 1024L, Integer.MAX_VALUE)) {
+            final EventFileBlockCache.RecordIterator records = cache.iterate(eventFile, 150L);
+            assertNotNull(records);
+
+            // the iterator starts with the block that holds the event, so it may have to skip over a few events first
+            long eventId = -1L;
+            while (eventId < 150L) {
+                assertTrue(records.next());
+                eventId = records.getEventId();
+            }
+            assertEquals(150L, eventId);
+
+            for (int i = 150; i < EVENT_COUNT; i++) {
+                final ByteBuffer serialized = records.getSerializedRecord();
+                assertTrue(serialized.isReadOnly());
+                final ProvenanceEventRecord forwarded = ProvenanceEventCursor.deserialize(serialized);
+                assertEquals(i, forwarded.getEventId());
+                assertEquals(expected.get(i).getEventTime(), forwarded.getEventTime());
+                assertEquals(expected.get(i).getAttributes(), forwarded.getAttributes());
+
+                final StandardProvenanceEventRecord event = records.getEvent();
+                assertEquals(expected.get(i), event);
+                assertEquals(expected.get(i).getStorageByteOffset(), event.getStorageByteOffset());
+
+                if (i + 1 < EVENT_COUNT) {
+                    assertTrue(records.next());
+                    assertEquals(i + 1, records.getEventId());
+                }
+            }
+            assertFalse(records.next());
+            assertFalse(records.next());
+        }
+    }
+
+    @Test
+    public void testDictionaryEncodedRecordsAreNotHandedOutAsStored() throws IOException {
+        final File eventFile = new File(storageDir, "0.prov.gz");
+        mergeWithCodec(eventFile, "gzip", true);
+
+        try (final EventFileBlockCache cache = new EventFileBlockCache(1024L * 1024L, Integer.MAX_VALUE)) {
+            final EventFileBlockCache.RecordIterator records = cache.iterate(eventFile, 0L);
+            for (int i = 0; i < EVENT_COUNT; i++) {
+                assertTrue(records.next());
+                assertEquals(i, records.getEventId());
+                assertNull(records.getSerializedRecord());
+            }
+            assertFalse(records.next());
+        }
+    }
+
+    @Test
+    public void testCacheSizeIsBounded() throws IOException {
+        final File eventFile = new File(storageDir, "0.prov.lz4");
+        mergeWithCodec(eventFile, "lz4");
+
+        final long maxBytes = 4096L;
+        try (final EventFileBlockCache cache = new EventFileBlockCache(maxBytes, Integer.MAX_VALUE)) {
+            final List<ProvenanceEventRecord> events = new ArrayList<>();
+            assertTrue(cache.readEvents(eventFile, 0L, Integer.MAX_VALUE, events));
+            assertEquals(EVENT_COUNT, events.size());
+            for (int i = 0; i < EVENT_COUNT; i++) {
+                assertEquals(i, events.get(i).getEventId());
+            }
+
+            assertTrue(cache.getCachedBytes() > 0L);
+            assertTrue(cache.getCachedBytes() <= maxBytes);
+
+            cache.invalidate(eventFile);
+            assertEquals(0L, cache.getCachedBytes());
+        }
+    }
+
+    @Test
+    public void testBlocksThatDoNotMatchTheirChecksumsAreSkipped() throws IOException {
+        final File eventFile = new File(storageDir, "0.prov.lz4");
+        mergeWithCodec(eventFile, "lz4");
+
+        // damage the third block of the Table of Contents, which follows the prefix and the first block
+        final BlockChecksums checksums = BlockChecksums.read(BlockChecksums.getChecksumFile(eventFile));
+        assertTrue(checksums.getBlockCount() > 4);
+        final long damagedOffset = checksums.getEndOffset(2) + FramedEventFileReader.FRAME_HEADER_LENGTH + 1L;
+        try (final RandomAccessFile file = new RandomAccessFile(eventFile, "rw")) {
+            file.seek(damagedOffset);
+            final int b = file.read();
+            file.seek(damagedOffset);
+            file.write(b ^ 0xFF);
+        }
+
+        try (final EventFileBlockCache cache = new EventFileBlockCache(1024L * 1024L, Integer.MAX_VALUE)) {
+            final List<ProvenanceEventRecord> events = new ArrayList<>();
+            assertTrue(cache.readEvents(eventFile, 0L, Integer.MAX_VALUE, events));
+            assertEquals(1L, cache.getCorruptBlocks());
+            assertEquals(EVENT_COUNT - checksums.getEventCount(3), events.size());
+            assertEquals(EVENT_COUNT - 1, events.get(events.size() - 1).getEventId());
+
+            // the damaged block is not checked again
+            final EventFileBlockCache.RecordIterator records = cache.iterate(eventFile, 0L);
+            int count = 0;
+            while (records.next()) {
+                count++;
+            }
+            assertEquals(events.size(), count);
+            assertEquals(2L, cache.getCorruptBlocks());
+        }
+    }
+
+    @Test
+    public void testDictionaryEncodedFile() throws IOException {
+        final File eventFile = new File(storageDir, "0.prov.gz");
+        mergeWithCodec(eventFile, "gzip", true);
+
+        final List<StandardProvenanceEventRecord> expected = readAll(eventFile);
+        assertEquals(EVENT_COUNT, expected.size());
+
+        try (final EventFileBlockCache cache = new EventFileBlockCache(1024L * 1024L, Integer.MAX_VALUE)) {
+            long nextEventId = 0L;
+            while (nextEventId < EVENT_COUNT) {
+                final List<ProvenanceEventRecord> batch = new ArrayList<>();
+                assertTrue(cache.readEvents(eventFile, nextEventId, 15, batch));
+                assertFalse(batch.isEmpty());
+
+                for (final ProvenanceEventRecord event : batch) {
+                    final StandardProvenanceEventRecord expectedEvent = expected.get((int) event.getEventId());
+                    assertEquals(nextEventId++, event.getEventId());
+                    assertEquals(expectedEvent, event);
+                    assertEquals(expectedEvent.getStorageByteOffset(), ((StandardProvenanceEventRecord) event).getStorageByteOffset());
+                    assertEquals(expectedEvent.getAttributes(), event.getAttributes());
+                }
+            }
+            assertTrue(cache.getBlockMisses() > 1);
+        }
+    }
+
+    @Test
+    public void testUncompressedFile() throws IOException {
+        final File eventFile = new File(storageDir, "0.prov");
+        try (final RecordWriter writer = RecordWriters.newSchemaRecordWriter(eventFile, false, true)) {
+            writer.writeHeader(0L);
+            for (int i = 0; i < EVENT_COUNT; i++) {
+                writer.writeRecord(createEvent(i), i);
+            }
+        }
+
+        final List<StandardProvenanceEventRecord> expected = readAll(eventFile);
+        try (final EventFileBlockCache cache = new EventFileBlockCache(1024L, Integer.MAX_VALUE)) {
+            final List<ProvenanceEventRecord> events = new ArrayList<>();
+            assertTrue(cache.readEvents(eventFile, 100L, 50, events));
+            assertEquals(50, events.size());
+            for (int i = 0; i < events.size(); i++) {
+                assertEquals(expected.get(100 + i).getStorageByteOffset(), ((StandardProvenanceEventRecord) events.get(i)).getStorageByteOffset());
+            }
+
+            // the mapped file is not copied into the cache
+            assertEquals(0L, cache.getCachedBytes());
+        }
+    }
+
+    @Test
+    public void testUnsupportedFilesAreLeftToTheRecordReaders() throws IOException {
+        // without a Table of Contents, the blocks of a compressed file cannot be found
+        final File eventFile = new File(storageDir, "0.prov.gz");
+        try (final RecordWriter writer = RecordWriters.newSchemaRecordWriter(eventFile, true, false)) {
+            writer.writeHeader(0L);
+            writer.writeRecord(createEvent(0), 0L);
+        }
+
+        try (final EventFileBlockCache cache = new EventFileBlockCache(1024L, Integer.MAX_VALUE)) {
+            final List<ProvenanceEventRecord> events = new ArrayList<>();
+            assertFalse(cache.readEvents(eventFile, 0L, 10, events));
+            assertFalse(cache.readEvents(new File(storageDir, "1.prov.gz"), 0L, 10, events));
+            assertTrue(events.isEmpty());
+        }
+    }
+
+    private void mergeWithCodec(final File mergedFile, final String codec) throws IOException {
+        mergeWithCodec(mergedFile, codec, false);
+    }
+
+    private void mergeWithCodec(final File mergedFile, final String codec, final boolean dictionaryEncoding) throws IOException {
+        final File journal = new File(storageDir, "0.journal.0");
+        try (final RecordWriter writer = RecordWriters.newSchemaRecordWriter(journal, false, false)) {
+            writer.writeHeader(0L);
+            for (int i = 0; i < EVENT_COUNT; i++) {
+                writer.writeRecord(createEvent(i), i);
+            }
+        }
+
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        try (final RecordReader reader = MiNiFiRecordReaders.newRecordReader(journal, null, Integer.MAX_VALUE)) {
+            final JournalMerger merger = new JournalMerger(executor, executor, 1, 1024, dictionaryEncoding);
+            merger.merge(Collections.singletonList(reader), mergedFile, EventFileCodecs.forName(codec), null);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private List<StandardProvenanceEventRecord> readAll(final File eventFile) throws IOException {
+        final List<StandardProvenanceEventRecord> events = new ArrayList<>();
+        try (final RecordReader reader = MiNiFiRecordReaders.newRecordReader(eventFile, null, Integer.MAX_VALUE)) {
+            StandardProvenanceEventRecord event;
+            while ((event = reader.nextRecord()) != null) {
+                events.add(event);
+            }
+        }
+        return events;
+    }
+
+    private ProvenanceEventRecord createEvent(final int index) {
+        final Map<String, String> attributes = new HashMap<>();
+        attributes.put("uuid", UUID.randomUUID().toString());
+        attributes.put("index", String.valueOf(index));
+        return TestUtil.createEvent(index, "1234", ProvenanceEventType.RECEIVE, System.currentTimeMillis(), attributes);
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestEventFileIndex {
+
+    @Test
+    public void testOlderIndicesAreUnaffectedByUpdates() {
+        EventFileIndex index = EventFileIndex.EMPTY;
+        for (int i = 0; i < 5; i++) {
+            index = index.add(i * 100, path(i * 100));
+        }
+
+        final EventFileIndex fiveFiles = index;
+        final EventFileIndex sixFiles = fiveFiles.add(500, path(500));
+        // a second append to the same index must not overwrite the first
+        final EventFileIndex otherSixFiles = fiveFiles.add(600, path(600));
+        final EventFileIndex truncated = sixFiles.remove(p -> p.equals(path(0)) || p.equals(path(100)));
+
+        assertEquals(Arrays.asList(path(0), path(100), path(200), path(300), path(400)), fiveFiles.getPaths());
+        assertEquals(Arrays.asList(path(0), path(100), path(200), path(300), path(400), path(500)), sixFiles.getPaths());
+        assertEquals(Arrays.asList(path(0), path(100), path(200), path(300), path(400), path(600)), otherSixFiles.getPaths());
+        assertEquals(Arrays.asList(path(200), path(300), path(400), path(500)), truncated.getPaths());
+        assertEquals(200L, truncated.getStartId(0));
+        assertEquals(Arrays.asList(path(200), path(300), path(400), path(500), path(700)), truncated.add(700, path(700)).getPaths());
+        assertEquals(6, sixFiles.size());
+    }
+
+    @Test
+    public void testFilesAreKeptInOrder() {
+        // files from different storage directories may finish merging out of order
+        final EventFileIndex index = EventFileIndex.EMPTY.add(300, path(300)).add(100, path(100)).add(200, path(200)).add(0, path(0));
+        assertEquals(Arrays.asList(path(0), path(100), path(200), path(300)), index.getPaths());
+
+        final EventFileIndex replaced = index.add(200, Paths.get("200.prov.gz"));
+        assertEquals(4, replaced.size());
+        assertEquals(Paths.get("200.prov.gz"), replaced.getPath(2));
+
+        final EventFileIndex middleRemoved = index.remove(p -> p.equals(path(100)));
+        assertEquals(Arrays.asList(path(0), path(200), path(300)), middleRemoved.getPaths());
+        assertSame(index, index.remove(p -> false));
+        assertTrue(index.remove(p -> true).isEmpty());
+    }
+
+    @Test
+    public void testGetPathsForIdMatchesLinearScan() {
+        final Random random = new Random(7L);
+        for (int iteration = 0; iteration < 200; iteration++) {
+            final SortedMap<Long, Path> map = new TreeMap<>();
+            final int fileCount = random.nextInt(10);
+            long startId = random.nextInt(5);
+            for (int i = 0; i < fileCount; i++) {
+                map.put(startId, path(startId));
+                startId += 1 + random.nextInt(20);
+            }
+
+            final EventFileIndex index = EventFileIndex.of(map);
+            for (long id = 0; id < startId + 5; id++) {
+                assertEquals("id " + id + " in " + map, scan(map, id), index.getPathsForId(id));
+            }
+        }
+    }
+
+    @Test
+    public void testGetPathsForRange() {
+        final EventFileIndex index = EventFileIndex.EMPTY.add(100, path(100)).add(200, path(200)).add(300, path(300));
+
+        assertEquals(Collections.emptyList(), index.getPathsForRange(0, 99));
+        assertEquals(Collections.singletonList(path(100)), index.getPathsForRange(0, 100));
+        assertEquals(Collections.singletonList(path(100)), index.getPathsForRange(150, 199));
+        assertEquals(Arrays.asList(path(100), path(200)), index.getPathsForRange(150, 250));
+        assertEquals(Arrays.asList(path(200), path(300)), index.getPathsForRange(200, Long.MAX_VALUE));
+        assertEquals(Collections.singletonList(path(300)), index.getPathsForRange(1000, 2000));
+        assertEquals(Collections.emptyList(), index.getPathsForRange(250, 200));
+    }
+
+    /**
+     * The lookup that the repository performed before the index was introduced
+     */
+    private static List<Path> scan(final SortedMap<Long, Path> map, final long id) {
+        final List<Path> paths = new ArrayList<>();
+        final Iterator<Map.Entry<Long, Path>> itr = map.entrySet().iterator();
+        if (!itr.hasNext()) {
+            return paths;
+        }
+
+        Map.Entry<Long, Path> lastEntry = itr.next();
+        while (itr.hasNext()) {
+            final Map.Entry<Long, Path> entry = itr.next();
+            if (entry.getKey() >= id) {
+                paths.add(lastEntry.getValue());
+                paths.add(entry.getValue());
+                while (itr.hasNext()) {
+                    paths.add(itr.next().getValue());
+                }
+                return paths;
+            }
+            lastEntry = entry;
+        }
+
+        paths.add(lastEntry.getValue());
+        return paths;
+    }
+
+    private static Path path(final long startId) {
+        return Paths.get(startId + ".prov");
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestEventFileLedger {
+
+    private final File dir1 = new File("target/storage/ledger-1");
+    private final File dir2 = new File("target/storage/ledger-2");
+
+    @Test
+    public void testAccounting() {
+        final EventFileLedger ledger = new EventFileLedger();
+        ledger.add(0L, file(dir1, 0L), 100L, 1000L);
+        ledger.add(10L, file(dir2, 10L), 200L, 2000L);
+        ledger.add(20L, file(dir1, 20L), 300L, 3000L);
+
+        assertEquals(600L, ledger.getTotalBytes());
+        assertEquals(3, ledger.getFileCount());
+        assertEquals(400L, ledger.getBytes(dir1));
+        assertEquals(200L, ledger.getBytes(dir2));
+        assertEquals(1000L, ledger.getOldestTimestamp(dir1));
+        assertEquals(2000L, ledger.getOldestTimestamp(dir2));
+
+        // replacing a file accounts only for the new one
+        ledger.add(20L, file(dir1, 20L), 350L, 3500L);
+        assertEquals(650L, ledger.getTotalBytes());
+        assertEquals(3, ledger.getFileCount());
+
+        assertTrue(ledger.remove(file(dir1, 0L)));
+        assertFalse(ledger.remove(file(dir1, 0L)));
+        assertFalse(ledger.remove(file(dir2, 20L)));
+        assertEquals(550L, ledger.getTotalBytes());
+        assertEquals(350L, ledger.getBytes(dir1));
+        assertEquals(3500L, ledger.getOldestTimestamp(dir1));
+        assertEquals(0L, ledger.getOldestTimestamp(new File("target/storage/ledger-3")));
+    }
+
+    @Test
+    public void testExpiredFilesAreSelected() {
+        final EventFileLedger ledger = new EventFileLedger();
+        ledger.add(0L, file(dir1, 0L), 100L, 1000L);
+        ledger.add(10L, file(dir2, 10L), 100L, 2000L);
+        ledger.add(20L, file(dir1, 20L), 100L, 3000L);
+        ledger.add(30L, file(dir2, 30L), 100L, 4000L);
+
+        assertEquals(Collections.emptyList(), ledger.selectFilesToPurge(500L, 10000L));
+        assertEquals(Arrays.asList(file(dir1, 0L), file(dir2, 10L), file(dir1, 20L)), ledger.selectFilesToPurge(3500L, 10000L));
+
+        // selecting does not remove the files, so that those that fail to be aged off are selected again
+        assertEquals(4, ledger.getFileCount());
+        ledger.remove(file(dir1, 0L));
+        assertEquals(Arrays.asList(file(dir2, 10L), file(dir1, 20L)), ledger.selectFilesToPurge(3500L, 10000L));
+    }
+
+    @Test
+    public void testOldestFilesAreSelectedWhenOverCapacity() {
+        final EventFileLedger ledger = new EventFileLedger();
+        ledger.add(0L, file(dir1, 0L), 100L, 1000L);
+        ledger.add(10L, file(dir2, 10L), 100L, 2000L);
+        ledger.add(20L, file(dir1, 20L), 100L, 3000L);
+        ledger.add(30L, file(dir2, 30L), 100L, 4000L);
+
+        // under 90% of capacity, nothing is selected
+        assertEquals(Collections.emptyList(), ledger.selectFilesToPurge(0L, 500L));
+
+        // over 90% of capacity, the oldest files across all directories are selected until under capacity
+        assertEquals(Collections.singletonList(file(dir1, 0L)), ledger.selectFilesToPurge(0L, 400L));
+        assertEquals(Arrays.asList(file(dir1, 0L), file(dir2, 10L), file(dir1, 20L)), ledger.selectFilesToPurge(0L, 150L));
+
+        // expired files count towards reducing the size of the repository
+        assertEquals(Arrays.asList(file(dir1, 0L), file(dir2, 10L)), ledger.selectFilesToPurge(1500L, 250L));
+        assertEquals(Arrays.asList(file(dir1, 0L), file(dir2, 10L), file(dir1, 20L), file(dir2, 30L)), ledger.selectFilesToPurge(0L, 0L));
+    }
+
+    @Test
+    public void testFilesOfComponentsOverQuotaAreSelectedFirst() {
+        final EventFileLedger ledger = new EventFileLedger(2);
+        ledger.add(0L, file(dir1, 0L), 100L, 1000L, null);
+        ledger.add(10L, file(dir2, 10L), 100L, 2000L, new long[] {80L, 0L});
+        ledger.add(20L, file(dir1, 20L), 100L, 3000L, new long[] {60L, 40L});
+        ledger.add(30L, file(dir2, 30L), 100L, 4000L, new long[] {90L, 0L});
+
+        assertEquals(230L, ledger.getQuotaBytes(0));
+        assertEquals(40L, ledger.getQuotaBytes(1));
+
+        // within their quotas, the files are only aged off by time and capacity
+        assertEquals(Collections.emptyList(), ledger.selectFilesToPurge(0L, 10000L, new long[] {300L, 100L}));
+
+        // the oldest files charged against the quota are selected until it is no longer exceeded, skipping the files of other components
+        assertEquals(Collections.singletonList(file(dir2, 10L)), ledger.selectFilesToPurge(0L, 10000L, new long[] {200L, 100L}));
+        assertEquals(Arrays.asList(file(dir2, 10L), file(dir1, 20L)), ledger.selectFilesToPurge(0L, 10000L, new long[] {100L, 100L}));
+
+        // expired files are discharged first, and files selected for a quota count towards the capacity
+        assertEquals(Arrays.asList(file(dir1, 0L), file(dir2, 10L)), ledger.selectFilesToPurge(2500L, 10000L, new long[] {200L, 100L}));
+        assertEquals(Collections.singletonList(file(dir2, 10L)), ledger.selectFilesToPurge(0L, 350L, new long[] {200L, 100L}));
+        assertEquals(Arrays.asList(file(dir1, 0L), file(dir2, 10L), file(dir1, 20L)), ledger.selectFilesToPurge(0L, 200L, new long[] {200L, 100L}));
+
+        // a file selected for one quota discharges the others as well
+        assertEquals(Collections.singletonList(file(dir1, 20L)), ledger.selectFilesToPurge(0L, 10000L, new long[] {1000L, 0L}));
+
+        ledger.remove(file(dir1, 20L));
+        assertEquals(170L, ledger.getQuotaBytes(0));
+        assertEquals(0L, ledger.getQuotaBytes(1));
+
+        // replacing a file recharges the quotas
+        ledger.add(30L, file(dir2, 30L), 50L, 4000L, new long[] {45L, 5L});
+        assertEquals(125L, ledger.getQuotaBytes(0));
+        assertEquals(5L, ledger.getQuotaBytes(1));
+    }
+
+    private static File file(final File dir, final long firstEventId) {
+        return new File(dir, firstEventId + ".prov");
+    }
+}
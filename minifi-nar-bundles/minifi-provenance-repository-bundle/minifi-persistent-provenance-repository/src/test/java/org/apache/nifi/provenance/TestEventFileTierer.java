@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import org.apache.nifi.provenance.compression.ZstdEventFileCodec;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestEventFileTierer {
+
+    private File storageDir;
+    private File tieringDir;
+
+    @Before
+    public void createStorageDir() {
+        storageDir = new File("target/storage/" + UUID.randomUUID().toString());
+        tieringDir = new File(storageDir, EventFileTierer.TIERING_DIRECTORY);
+        assertTrue(new File(storageDir, "toc").mkdirs());
+        assertTrue(new File(tieringDir, "toc").mkdirs());
+    }
+
+    @Test
+    public void testTargetNameFollowsAge() {
+        final long hour = TimeUnit.HOURS.toMillis(1L);
+        final EventFileTierer tierer = new EventFileTierer(null, new ZstdEventFileCodec(), hour, 2 * hour, Collections.<String>emptySet(),
+            new IoThrottle(0L), 65536);
+
+        assertNull(tierer.getTargetName(new File(storageDir, "5.prov.gz"), 0L, hour - 1));
+        assertEquals("5.archived.prov.zst", tierer.getTargetName(new File(storageDir, "5.prov.gz"), 0L, hour));
+        assertNull(tierer.getTargetName(new File(storageDir, "5.archived.prov.zst"), 0L, hour));
+        assertEquals("5.compact.prov.zst", tierer.getTargetName(new File(storageDir, "5.archived.prov.zst"), 0L, 2 * hour));
+        assertEquals("5.compact.prov.zst", tierer.getTargetName(new File(storageDir, "5.prov"), 0L, 3 * hour));
+        assertNull(tierer.getTargetName(new File(storageDir, "5.compact.prov.zst"), 0L, 3 * hour));
+    }
+
+    @Test
+    public void testRecoverRollsBackSwapThatHasNotStarted() throws IOException {
+        write(new File(storageDir, "5.prov"), "original");
+        write(new File(storageDir, "toc/5.toc"), "original toc");
+        write(new File(tieringDir, "5.compact.prov.zst"), "staged");
+        write(new File(tieringDir, "toc/5.toc"), "staged toc");
+        write(new File(tieringDir, "5.swap"), "5.prov\n5.compact.prov.zst\n");
+
+        EventFileTierer.recover(storageDir);
+
+        assertEquals("original", read(new File(storageDir, "5.prov")));
+        assertEquals("original toc", read(new File(storageDir, "toc/5.toc")));
+        assertFalse(new File(storageDir, "5.compact.prov.zst").exists());
+        assertEquals(0, tieringDir.list().length);
+    }
+
+    @Test
+    public void testRecoverCompletesSwapOnceTocIsMoved() throws IOException {
+        write(new File(storageDir, "5.prov"), "original");
+        write(new File(storageDir, "toc/5.toc"), "staged toc");
+        write(new File(tieringDir, "5.compact.prov.zst"), "staged");
+        write(new File(tieringDir, "toc/5.tidx"), "staged time index");
+        write(new File(tieringDir, "5.swap"), "5.prov\n5.compact.prov.zst\n");
+
+        EventFileTierer.recover(storageDir);
+
+        assertFalse(new File(storageDir, "5.prov").exists());
+        assertEquals("staged", read(new File(storageDir, "5.compact.prov.zst")));
+        assertEquals("staged toc", read(new File(storageDir, "toc/5.toc")));
+        assertEquals("staged time index", read(new File(storageDir, "toc/5.tidx")));
+        assertEquals(0, tieringDir.list().length);
+    }
+
+    private static void write(final File file, final String content) throws IOException {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(final File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import org.apache.nifi.provenance.EventIndexFile.Field;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.UUID;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestEventIndex {
+
+    private File storageDir;
+
+    @Before
+    public void createStorageDir() {
+        storageDir = new File("target/storage/" + UUID.randomUUID().toString());
+        assertTrue(storageDir.mkdirs());
+    }
+
+    @Test
+    public void testWriteAndLookup() throws IOException {
+        final EventIndex eventIndex = new EventIndex(1024L * 1024L, 1024L * 1024L);
+        final File eventFile = new File(storageDir, "100.prov.gz");
+        final EventIndexBuilder builder = eventIndex.newBuilder();
+
+        // events are added in reverse order, as the postings must be sorted when written
+        for (long id = 109; id >= 100; id--) {
+            final ProvenanceEventType type = id % 2 == 0 ? ProvenanceEventType.RECEIVE : ProvenanceEventType.SEND;
+            builder.add(id, EventIndexBuilder.getTerms(createEvent("ff-" + (id % 3), "component-" + (id % 2), type, id * 60000L)));
+        }
+        assertTrue(eventIndex.getHeapBytes() > 0L);
+        eventIndex.write(builder, eventFile);
+        builder.release();
+        assertEquals(0L, eventIndex.getHeapBytes());
+
+        final File indexFile = EventIndex.getIndexFile(eventFile);
+        assertEquals(new File(new File(storageDir, EventIndex.INDEX_DIRECTORY), "100.idx").getAbsoluteFile(), indexFile);
+        assertEquals(indexFile.length(), eventIndex.getStorageBytes());
+
+        final EventIndexFile file = eventIndex.get(eventFile);
+        assertArrayEquals(new long[] {102, 105, 108}, file.getEventIds(Field.FLOWFILE_UUID, EventIndexFile.keyOf("ff-0")));
+        assertArrayEquals(new long[] {101, 103, 105, 107, 109}, file.getEventIds(Field.COMPONENT_ID, EventIndexFile.keyOf("component-1")));
+        assertArrayEquals(new long[] {100, 102, 104, 106, 108}, file.getEventIds(Field.EVENT_TYPE, ProvenanceEventType.RECEIVE.ordinal()));
+        assertArrayEquals(new long[] {103, 104, 105}, file.getEventIds(Field.TIME_BUCKET, 103L, 105L));
+        assertArrayEquals(new long[0], file.getEventIds(Field.FLOWFILE_UUID, EventIndexFile.keyOf("ff-3")));
+
+        // the index survives a restart, but not the removal of its event file
+        final EventIndex recovered = new EventIndex(1024L * 1024L, 1024L * 1024L);
+        recovered.recover(Collections.singletonList(storageDir), new HashSet<>(Arrays.asList(100L)));
+        assertEquals(1, recovered.getIndexedFileCount());
+        recovered.remove(eventFile);
+        assertEquals(0, recovered.getIndexedFileCount());
+        assertFalse(indexFile.exists());
+        assertNull(recovered.get(eventFile));
+    }
+
+    @Test
+    public void testBuilderIsAbandonedWhenOutOfHeap() {
+        final EventIndex eventIndex = new EventIndex(1024L * 1024L, 4096L);
+        final EventIndexBuilder builder = eventIndex.newBuilder();
+        for (long id = 0; id < 1000; id++) {
+            builder.add(id, EventIndexBuilder.getTerms(createEvent("ff-" + id, "component", ProvenanceEventType.RECEIVE, id)));
+        }
+
+        assertTrue(builder.isAbandoned());
+        assertEquals(0L, eventIndex.getHeapBytes());
+    }
+
+    @Test
+    public void testOldestFilesAreDeletedWhenOverStorageLimit() throws IOException {
+        final EventIndex eventIndex = new EventIndex(1000L, 1024L * 1024L);
+        for (long firstId = 0; firstId < 30; firstId += 10) {
+            final EventIndexBuilder builder = eventIndex.newBuilder();
+            for (long id = firstId; id < firstId + 10; id++) {
+                builder.add(id, EventIndexBuilder.getTerms(createEvent("ff-" + id, "component", ProvenanceEventType.RECEIVE, id)));
+            }
+            eventIndex.write(builder, new File(storageDir, firstId + ".prov"));
+            builder.release();
+        }
+
+        // each file holds 40 postings of 16 bytes, so only the newest one fits
+        assertEquals(1, eventIndex.getIndexedFileCount());
+        assertTrue(eventIndex.getStorageBytes() <= 1000L);
+        assertNull(eventIndex.get(new File(storageDir, "0.prov")));
+        assertNull(eventIndex.get(new File(storageDir, "10.prov")));
+        assertEquals(10, eventIndex.get(new File(storageDir, "20.prov")).getEventIds(Field.COMPONENT_ID, EventIndexFile.keyOf("component")).length);
+    }
+
+    private static ProvenanceEventRecord createEvent(final String uuid, final String componentId, final ProvenanceEventType type, final long eventTime) {
+        return TestUtil.createEvent(3L, componentId, type, eventTime, Collections.singletonMap("uuid", uuid));
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestEventTimeIndex {
+
+    private File storageDir;
+
+    @Before
+    public void createStorageDir() {
+        storageDir = new File("target/storage/" + UUID.randomUUID().toString());
+        assertTrue(new File(storageDir, "toc").mkdirs());
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        final EventTimeIndex.Builder builder = new EventTimeIndex.Builder();
+        // block times overlap, as events are not registered in the order in which they occurred
+        builder.addBlock(100L, 1000L, 2000L);
+        builder.addBlock(150L, 1500L, 1800L);
+        for (int i = 0; i < 20; i++) {
+            builder.addBlock(200L + i * 50L, 3000L + i * 100L, 3099L + i * 100L);
+        }
+
+        final File timeIndexFile = EventTimeIndex.getTimeIndexFile(new File(storageDir, "100.prov.gz"));
+        assertEquals(new File(new File(storageDir, "toc"), "100.tidx"), timeIndexFile);
+        builder.build().write(timeIndexFile);
+
+        final EventTimeIndex timeIndex = EventTimeIndex.read(timeIndexFile);
+        assertEquals(22, timeIndex.getBlockCount());
+        assertEquals(1000L, timeIndex.getMinEventTime());
+        assertEquals(4999L, timeIndex.getMaxEventTime());
+
+        assertEquals(100L, timeIndex.getFirstEventIdSince(0L));
+        assertEquals(100L, timeIndex.getFirstEventIdSince(1700L));
+        assertEquals(200L, timeIndex.getFirstEventIdSince(2500L));
+        assertEquals(350L, timeIndex.getFirstEventIdSince(3350L));
+        assertEquals(1150L, timeIndex.getFirstEventIdSince(4999L));
+        assertEquals(-1L, timeIndex.getFirstEventIdSince(5000L));
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedFileRejected() throws IOException {
+        final EventTimeIndex.Builder builder = new EventTimeIndex.Builder();
+        builder.addBlock(0L, 1000L, 2000L);
+        final File timeIndexFile = EventTimeIndex.getTimeIndexFile(new File(storageDir, "0.prov"));
+        builder.build().write(timeIndexFile);
+
+        try (final FileOutputStream out = new FileOutputStream(timeIndexFile, true)) {
+            out.getChannel().truncate(timeIndexFile.length() - 1);
+        }
+        EventTimeIndex.read(timeIndexFile);
+    }
+}
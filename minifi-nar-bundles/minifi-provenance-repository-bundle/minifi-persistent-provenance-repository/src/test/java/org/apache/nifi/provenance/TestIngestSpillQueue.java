@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestIngestSpillQueue {
+
+    private File spillFile;
+
+    @Before
+    public void createSpillFile() {
+        spillFile = new File("target/storage/" + UUID.randomUUID().toString() + "/spill/ingest.spill");
+    }
+
+    @Test
+    public void testEventsArePolledInOrder() throws IOException {
+        try (final IngestSpillQueue queue = new IngestSpillQueue(spillFile, 1024L * 1024L, 65536)) {
+            assertTrue(queue.isEmpty());
+            assertTrue(queue.append(createEvents(0, 3)));
+            assertTrue(queue.append(createEvents(3, 2)));
+            assertFalse(queue.isEmpty());
+
+            final List<ProvenanceEventRecord> first = queue.poll(4);
+            assertEquals(4, first.size());
+            for (int i = 0; i < 4; i++) {
+                assertEquals("component-" + i, first.get(i).getComponentId());
+            }
+
+            final List<ProvenanceEventRecord> second = queue.poll(4);
+            assertEquals(1, second.size());
+            assertEquals("component-4", second.get(0).getComponentId());
+
+            // the file is truncated once it has been drained
+            assertTrue(queue.isEmpty());
+            assertTrue(queue.poll(4).isEmpty());
+            assertEquals(0L, spillFile.length());
+        }
+    }
+
+    @Test
+    public void testAppendIsRefusedBeyondMaxSize() throws IOException {
+        try (final IngestSpillQueue queue = new IngestSpillQueue(spillFile, 1024L, 65536)) {
+            int appended = 0;
+            while (queue.append(createEvents(appended, 1))) {
+                appended++;
+            }
+            assertTrue(appended > 0);
+            assertTrue(queue.getSize() <= 1024L);
+            assertEquals(appended, queue.poll(Integer.MAX_VALUE).size());
+
+            // once drained, there is room again
+            assertTrue(queue.append(createEvents(0, 1)));
+        }
+    }
+
+    @Test
+    public void testEventsSurviveReopenAndPartialRecordIsIgnored() throws IOException {
+        try (final IngestSpillQueue queue = new IngestSpillQueue(spillFile, 1024L * 1024L, 65536)) {
+            assertTrue(queue.append(createEvents(0, 3)));
+        }
+
+        // a record that was only partially written when the process died
+        try (final OutputStream out = new FileOutputStream(spillFile, true)) {
+            out.write(new byte[] {0, 0, 1, 0, 42});
+        }
+
+        try (final IngestSpillQueue queue = new IngestSpillQueue(spillFile, 1024L * 1024L, 65536)) {
+            assertFalse(queue.isEmpty());
+            assertEquals(3, queue.poll(2).size() + queue.poll(2).size());
+            assertTrue(queue.isEmpty());
+        }
+    }
+
+    private static List<ProvenanceEventRecord> createEvents(final int firstIndex, final int count) {
+        final Map<String, String> attributes = new HashMap<>();
+        attributes.put("uuid", UUID.randomUUID().toString());
+
+        final List<ProvenanceEventRecord> events = new ArrayList<>(count);
+        for (int i = firstIndex; i < firstIndex + count; i++) {
+            events.add(TestUtil.createEvent(i, "component-" + i, ProvenanceEventType.RECEIVE, System.currentTimeMillis(), attributes));
+        }
+        return Collections.unmodifiableList(events);
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+public class TestIoThrottle {
+
+    @Test
+    public void testUnlimitedThrottleNeverBlocks() throws InterruptedException {
+        final IoThrottle throttle = new IoThrottle(0L);
+        final long start = System.nanoTime();
+        for (int i = 0; i < 1000; i++) {
+            throttle.acquire(1024L * 1024L);
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000L);
+    }
+
+    @Test
+    public void testThrottleLimitsRate() throws InterruptedException {
+        final IoThrottle throttle = new IoThrottle(1000L);
+
+        // the first second of budget may be used as a burst, after which each 500 bytes takes half a second
+        final long start = System.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            throttle.acquire(500L);
+        }
+        final long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("took " + millis + " millis", millis >= 400L);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestJournalCountPolicy {
+
+    private static void recordAttempts(final JournalCountPolicy policy, final int attempts, final int misses) {
+        for (int i = 0; i < attempts; i++) {
+            policy.recordLockAttempt(i >= misses);
+        }
+    }
+
+    @Test
+    public void testFixedCountIsNeverChanged() {
+        final JournalCountPolicy policy = new JournalCountPolicy(16, 16, 16, 1024L);
+        assertFalse(policy.isAdaptive());
+
+        recordAttempts(policy, 1000, 500);
+        assertEquals(16, policy.rollover(0L));
+        assertEquals(16, policy.rollover(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testInitialCountIsBounded() {
+        assertEquals(8, new JournalCountPolicy(16, 2, 8, 1024L).getJournalCount());
+        assertEquals(2, new JournalCountPolicy(1, 2, 8, 1024L).getJournalCount());
+    }
+
+    @Test
+    public void testContentionGrowsCountUpToMax() {
+        final JournalCountPolicy policy = new JournalCountPolicy(4, 1, 12, 1024L);
+        assertTrue(policy.isAdaptive());
+
+        recordAttempts(policy, 1000, 100);
+        assertEquals(8, policy.rollover(1024L * 1024L));
+
+        recordAttempts(policy, 1000, 100);
+        assertEquals(12, policy.rollover(1024L * 1024L));
+    }
+
+    @Test
+    public void testFewAttemptsDoNotGrowCount() {
+        final JournalCountPolicy policy = new JournalCountPolicy(4, 1, 16, 1024L);
+
+        recordAttempts(policy, JournalCountPolicy.MIN_LOCK_ATTEMPTS - 1, 50);
+        assertEquals(4, policy.rollover(1024L * 1024L));
+    }
+
+    @Test
+    public void testMostlyEmptyJournalsShrinkCountDownToMin() {
+        final JournalCountPolicy policy = new JournalCountPolicy(16, 2, 32, 1024L);
+
+        recordAttempts(policy, 1000, 0);
+        assertEquals(8, policy.rollover(100L));
+        assertEquals(4, policy.rollover(100L));
+        assertEquals(2, policy.rollover(100L));
+        assertEquals(2, policy.rollover(0L));
+    }
+
+    @Test
+    public void testBusyJournalsWithoutContentionKeepCount() {
+        final JournalCountPolicy policy = new JournalCountPolicy(8, 1, 32, 1024L);
+
+        // neither contended enough to grow, nor empty enough to shrink
+        recordAttempts(policy, 1000, 20);
+        assertEquals(8, policy.rollover(8L * 1024L));
+
+        recordAttempts(policy, 1000, 0);
+        assertEquals(8, policy.rollover(8L * 1024L));
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import org.apache.nifi.util.file.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestJournalMergeQueue {
+
+    private File dir;
+    private File queueFile;
+
+    @Before
+    public void setup() {
+        dir = new File("target/storage/merge-queue-" + UUID.randomUUID().toString());
+        queueFile = new File(dir, "merges/merge.queue");
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        FileUtils.deleteFile(dir, true);
+    }
+
+    private List<File> createJournals(final long generation, final int count) throws IOException {
+        final File[] journals = new File[count];
+        for (int i = 0; i < count; i++) {
+            journals[i] = new File(dir, "journals/" + generation + ".journal." + i);
+            journals[i].getParentFile().mkdirs();
+            new FileOutputStream(journals[i]).close();
+        }
+        return Arrays.asList(journals);
+    }
+
+    @Test
+    public void testRecoverWithoutFile() throws IOException {
+        try (final JournalMergeQueue queue = new JournalMergeQueue(queueFile)) {
+            assertNull(queue.recover());
+            assertTrue(queueFile.exists());
+        }
+
+        // the queue now exists, even though it is empty
+        try (final JournalMergeQueue queue = new JournalMergeQueue(queueFile)) {
+            assertEquals(Collections.emptyMap(), queue.recover());
+        }
+    }
+
+    @Test
+    public void testAddedSetsAreRecoveredUntilRemoved() throws IOException {
+        final List<File> first = createJournals(0L, 2);
+        final List<File> second = createJournals(10L, 2);
+        final List<File> third = createJournals(20L, 1);
+
+        try (final JournalMergeQueue queue = new JournalMergeQueue(queueFile)) {
+            queue.recover();
+            queue.add(20L, third);
+            queue.add(0L, first);
+            queue.add(10L, second);
+            queue.remove(10L);
+        }
+
+        try (final JournalMergeQueue queue = new JournalMergeQueue(queueFile)) {
+            final SortedMap<Long, List<File>> recovered = queue.recover();
+            assertEquals(Arrays.asList(0L, 20L), Arrays.asList(recovered.keySet().toArray()));
+            assertEquals(first, recovered.get(0L));
+            assertEquals(third, recovered.get(20L));
+
+            queue.remove(0L);
+        }
+
+        try (final JournalMergeQueue queue = new JournalMergeQueue(queueFile)) {
+            final SortedMap<Long, List<File>> recovered = queue.recover();
+            assertEquals(Collections.singletonMap(20L, third), recovered);
+        }
+    }
+
+    @Test
+    public void testMissingJournalsAreDropped() throws IOException {
+        final List<File> first = createJournals(0L, 2);
+        final List<File> second = createJournals(10L, 2);
+
+        try (final JournalMergeQueue queue = new JournalMergeQueue(queueFile)) {
+            queue.recover();
+            queue.add(0L, first);
+            queue.add(10L, second);
+        }
+
+        assertTrue(first.get(0).delete());
+        assertTrue(second.get(0).delete());
+        assertTrue(second.get(1).delete());
+
+        try (final JournalMergeQueue queue = new JournalMergeQueue(queueFile)) {
+            final SortedMap<Long, List<File>> recovered = queue.recover();
+            assertEquals(Collections.singletonMap(0L, Collections.singletonList(first.get(1))), recovered);
+        }
+    }
+
+    @Test
+    public void testPartiallyWrittenRecordIsIgnored() throws IOException {
+        final List<File> first = createJournals(0L, 2);
+        final List<File> second = createJournals(10L, 2);
+
+        try (final JournalMergeQueue queue = new JournalMergeQueue(queueFile)) {
+            queue.recover();
+            queue.add(0L, first);
+            queue.add(10L, second);
+        }
+
+        try (final RandomAccessFile raf = new RandomAccessFile(queueFile, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+
+        try (final JournalMergeQueue queue = new JournalMergeQueue(queueFile)) {
+            final SortedMap<Long, List<File>> recovered = queue.recover();
+            assertEquals(Collections.singletonMap(0L, first), recovered);
+
+            // the torn record has been compacted away, so later records are readable
+            queue.add(10L, second);
+        }
+
+        try (final JournalMergeQueue queue = new JournalMergeQueue(queueFile)) {
+            assertEquals(2, queue.recover().size());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testAddBeforeRecoverFails() throws IOException {
+        try (final JournalMergeQueue queue = new JournalMergeQueue(queueFile)) {
+            queue.add(0L, createJournals(0L, 1));
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import org.apache.nifi.util.file.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestJournalMergeScheduler {
+
+    private File dir;
+    private JournalMergeQueue queue;
+    private ScheduledExecutorService executor;
+
+    @Before
+    public void setup() throws IOException {
+        dir = new File("target/storage/merge-scheduler-" + UUID.randomUUID().toString());
+        queue = new JournalMergeQueue(new File(dir, "merges/merge.queue"));
+        queue.recover();
+        executor = new ScheduledThreadPoolExecutor(4);
+    }
+
+    @After
+    public void cleanup() throws IOException, InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+        queue.close();
+        FileUtils.deleteFile(dir, true);
+    }
+
+    private List<File> addJournals(final long generation) throws IOException {
+        final File journal = new File(dir, "journals/" + generation + ".journal.0");
+        journal.getParentFile().mkdirs();
+        new FileOutputStream(journal).close();
+
+        final List<File> journals = Collections.singletonList(journal);
+        queue.add(generation, journals);
+        return journals;
+    }
+
+    @Test(timeout = 10000)
+    public void testOldestGenerationRunsFirst() throws IOException, InterruptedException {
+        final JournalMergeScheduler scheduler = new JournalMergeScheduler(executor, queue, 1, 10L, 100L, TimeUnit.MILLISECONDS);
+        final List<Long> merged = Collections.synchronizedList(new ArrayList<Long>());
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(4);
+
+        // the first merge holds the only slot while the others are queued out of order
+        scheduler.submit(5L, addJournals(5L), journals -> {
+            blocker.await();
+            merged.add(5L);
+            done.countDown();
+        });
+        for (final long generation : new long[] {30L, 10L, 20L}) {
+            scheduler.submit(generation, addJournals(generation), journals -> {
+                merged.add(generation);
+                done.countDown();
+            });
+        }
+
+        assertEquals(1, scheduler.getMergeCount(JournalMergeScheduler.State.RUNNING));
+        assertEquals(3, scheduler.getMergeCount(JournalMergeScheduler.State.QUEUED));
+
+        blocker.countDown();
+        done.await();
+
+        assertEquals(Arrays.asList(5L, 10L, 20L, 30L), merged);
+        waitForEmpty(scheduler);
+
+        // let the last merge record its removal from the queue
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        scheduler.shutdown();
+
+        queue.close();
+        assertEquals(0, queue.recover().size());
+    }
+
+    @Test(timeout = 10000)
+    public void testConcurrentMergesAreBounded() throws IOException, InterruptedException {
+        final JournalMergeScheduler scheduler = new JournalMergeScheduler(executor, queue, 2, 10L, 100L, TimeUnit.MILLISECONDS);
+        final AtomicInteger running = new AtomicInteger(0);
+        final AtomicInteger maxRunning = new AtomicInteger(0);
+        final CountDownLatch done = new CountDownLatch(8);
+
+        for (long generation = 0; generation < 8; generation++) {
+            scheduler.submit(generation, addJournals(generation), journals -> {
+                final int nowRunning = running.incrementAndGet();
+                maxRunning.accumulateAndGet(nowRunning, Math::max);
+                Thread.sleep(20L);
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+
+        done.await();
+        assertEquals(2, maxRunning.get());
+        scheduler.shutdown();
+    }
+
+    @Test(timeout = 10000)
+    public void testFailedMergeIsRetriedWithBackoff() throws IOException, InterruptedException {
+        final JournalMergeScheduler scheduler = new JournalMergeScheduler(executor, queue, 1, 50L, 1000L, TimeUnit.MILLISECONDS);
+        final List<Long> attemptTimes = Collections.synchronizedList(new ArrayList<Long>());
+        final CountDownLatch done = new CountDownLatch(1);
+
+        scheduler.submit(0L, addJournals(0L), journals -> {
+            attemptTimes.add(System.nanoTime());
+            if (attemptTimes.size() < 3) {
+                throw new IOException("Intentional failure for unit test");
+            }
+            done.countDown();
+        });
+
+        done.await();
+        waitForEmpty(scheduler);
+        assertEquals(3, attemptTimes.size());
+        assertEquals(2L, scheduler.getFailedAttempts());
+
+        // the second retry waits twice as long as the first
+        final long firstDelay = TimeUnit.NANOSECONDS.toMillis(attemptTimes.get(1) - attemptTimes.get(0));
+        final long secondDelay = TimeUnit.NANOSECONDS.toMillis(attemptTimes.get(2) - attemptTimes.get(1));
+        assertTrue("First retry after " + firstDelay + " millis", firstDelay >= 50L);
+        assertTrue("Second retry after " + secondDelay + " millis", secondDelay >= 100L);
+        scheduler.shutdown();
+    }
+
+    @Test(timeout = 10000)
+    public void testFailingMergeIsReported() throws IOException, InterruptedException {
+        final JournalMergeScheduler scheduler = new JournalMergeScheduler(executor, queue, 1, 1L, 1L, TimeUnit.HOURS);
+        final CountDownLatch attempted = new CountDownLatch(1);
+
+        scheduler.submit(0L, addJournals(0L), journals -> {
+            attempted.countDown();
+            throw new IOException("Intentional failure for unit test");
+        });
+        attempted.await();
+
+        while (scheduler.getMergeCount(JournalMergeScheduler.State.BACKING_OFF) == 0) {
+            Thread.sleep(10L);
+        }
+
+        final List<JournalMergeScheduler.MergeStatus> statuses = scheduler.getMergeStatus();
+        assertEquals(1, statuses.size());
+        final JournalMergeScheduler.MergeStatus status = statuses.get(0);
+        assertEquals(0L, status.getGeneration());
+        assertEquals(1, status.getJournalCount());
+        assertEquals(1, status.getAttempts());
+        assertTrue(status.getLastFailure().contains("Intentional failure"));
+        assertTrue(status.getRetryMillis() > 0L);
+        scheduler.shutdown();
+
+        // the merge never succeeded, so it is still queued
+        queue.close();
+        assertEquals(1, queue.recover().size());
+    }
+
+    @Test
+    public void testNothingRunsAfterShutdown() throws IOException {
+        final JournalMergeScheduler scheduler = new JournalMergeScheduler(executor, queue, 1, 10L, 100L, TimeUnit.MILLISECONDS);
+        scheduler.shutdown();
+
+        final AtomicInteger merges = new AtomicInteger(0);
+        scheduler.submit(0L, addJournals(0L), journals -> merges.incrementAndGet());
+        assertEquals(0, merges.get());
+        assertEquals(Collections.emptyList(), scheduler.getMergeStatus());
+    }
+
+    private static void waitForEmpty(final JournalMergeScheduler scheduler) throws InterruptedException {
+        while (!scheduler.getMergeStatus().isEmpty()) {
+            Thread.sleep(10L);
+        }
+    }
+}
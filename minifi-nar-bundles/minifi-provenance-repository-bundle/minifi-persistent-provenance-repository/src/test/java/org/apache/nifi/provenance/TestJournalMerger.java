@@ -0,0 +1,354 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import org.apache.nifi.provenance.compression.EventFileCodec;
+import org.apache.nifi.provenance.compression.EventFileCodecs;
+import org.apache.nifi.provenance.compression.GzipEventFileCodec;
+import org.apache.nifi.provenance.serialization.RecordReader;
+import org.apache.nifi.provenance.serialization.RecordReaders;
+import org.apache.nifi.provenance.serialization.RecordWriter;
+import org.apache.nifi.provenance.serialization.RecordWriters;
+import org.apache.nifi.provenance.toc.StandardTocReader;
+import org.apache.nifi.provenance.toc.TocReader;
+import org.apache.nifi.provenance.toc.TocUtil;
+import org.apache.nifi.util.file.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.apache.nifi.provenance.TestUtil.createFlowFile;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestJournalMerger {
+
+    private static final int JOURNAL_COUNT = 3;
+    private static final int EVENT_COUNT = 300;
+
+    private File storageDir;
+    private ExecutorService readAheadExecutor;
+    private ExecutorService compressionExecutor;
+
+    @Before
+    public void setup() {
+        storageDir = new File("target/storage/" + UUID.randomUUID().toString());
+        storageDir.mkdirs();
+        readAheadExecutor = Executors.newCachedThreadPool();
+        compressionExecutor = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        readAheadExecutor.shutdownNow();
+        compressionExecutor.shutdownNow();
+        FileUtils.deleteFile(storageDir, true);
+    }
+
+    @Test
+    public void testMergeInterleavedJournalsIntoManyBlocks() throws IOException {
+        final File mergedFile = new File(storageDir, "0.prov.gz");
+        assertEquals(EVENT_COUNT, merge(writeInterleavedJournals(EVENT_COUNT), mergedFile, new GzipEventFileCodec(), 1024));
+
+        // all of the events are read back in order by the standard readers
+        try (final RecordReader reader = RecordReaders.newRecordReader(mergedFile, null, Integer.MAX_VALUE)) {
+            for (int i = 0; i < EVENT_COUNT; i++) {
+                final ProvenanceEventRecord record = reader.nextRecord();
+                assertNotNull(record);
+                assertEquals(i, record.getEventId());
+                assertEquals("1234", record.getComponentId());
+            }
+            assertNull(reader.nextRecord());
+        }
+
+        // and each block is able to be found through the Table of Contents
+        try (final TocReader tocReader = new StandardTocReader(TocUtil.getTocFile(mergedFile));
+            final RecordReader reader = RecordReaders.newRecordReader(mergedFile, Collections.<Path>emptyList(), Integer.MAX_VALUE)) {
+            assertSkipToBlock(tocReader, reader);
+        }
+    }
+
+    @Test
+    public void testMergeWithLz4() throws IOException {
+        assertMergedWithFramedCodec(EventFileCodecs.forName("lz4"));
+    }
+
+    @Test
+    public void testMergeWithZstd() throws IOException {
+        assertMergedWithFramedCodec(EventFileCodecs.forName("zstd"));
+    }
+
+    @Test
+    public void testMergeWithDictionaryEncoding() throws IOException {
+        assertMergedWithFramedCodec(null, true);
+        assertMergedWithFramedCodec(new GzipEventFileCodec(), true);
+        assertMergedWithFramedCodec(EventFileCodecs.forName("lz4"), true);
+    }
+
+    @Test
+    public void testDictionaryEncodingPreservesAllFields() throws IOException {
+        final File journal = new File(storageDir, "0.journal.0");
+        try (final RecordWriter writer = RecordWriters.newSchemaRecordWriter(journal, false, false)) {
+            writer.writeHeader(0L);
+            for (int eventId = 0; eventId < EVENT_COUNT; eventId++) {
+                writer.writeRecord(createDetailedEvent(eventId), eventId);
+            }
+        }
+
+        final File plainFile = new File(storageDir, "0.prov");
+        final File dictionaryFile = new File(storageDir, "1.prov");
+        assertEquals(EVENT_COUNT, merge(Collections.singletonList(journal), plainFile, null, 1024, false));
+        assertEquals(EVENT_COUNT, merge(Collections.singletonList(journal), dictionaryFile, null, 1024, true));
+
+        // the repeated attribute keys and values are written once per block
+        assertTrue(dictionaryFile.length() + " >= " + plainFile.length(), dictionaryFile.length() < plainFile.length() / 2);
+
+        try (final RecordReader plainReader = RecordReaders.newRecordReader(plainFile, null, 20);
+            final RecordReader dictionaryReader = MiNiFiRecordReaders.newRecordReader(dictionaryFile, null, 20)) {
+            for (int i = 0; i < EVENT_COUNT; i++) {
+                final StandardProvenanceEventRecord expected = plainReader.nextRecord();
+                final StandardProvenanceEventRecord actual = dictionaryReader.nextRecord();
+                assertEquals(expected, actual);
+                assertEquals(expected.getEventType(), actual.getEventType());
+                assertEquals(expected.getEventTime(), actual.getEventTime());
+                assertEquals(expected.getFlowFileEntryDate(), actual.getFlowFileEntryDate());
+                assertEquals(expected.getLineageStartDate(), actual.getLineageStartDate());
+                assertEquals(expected.getEventDuration(), actual.getEventDuration());
+                assertEquals(expected.getComponentType(), actual.getComponentType());
+                assertEquals(expected.getFlowFileUuid(), actual.getFlowFileUuid());
+                assertEquals(expected.getDetails(), actual.getDetails());
+                assertEquals(expected.getTransitUri(), actual.getTransitUri());
+                assertEquals(expected.getRelationship(), actual.getRelationship());
+                assertEquals(expected.getSourceQueueIdentifier(), actual.getSourceQueueIdentifier());
+                assertEquals(expected.getParentUuids(), actual.getParentUuids());
+                assertEquals(expected.getChildUuids(), actual.getChildUuids());
+                assertEquals(expected.getPreviousAttributes(), actual.getPreviousAttributes());
+                assertEquals(expected.getUpdatedAttributes(), actual.getUpdatedAttributes());
+                assertEquals(expected.getAttributes(), actual.getAttributes());
+                assertEquals(expected.getContentClaimIdentifier(), actual.getContentClaimIdentifier());
+                assertEquals(expected.getContentClaimOffset(), actual.getContentClaimOffset());
+                assertEquals(expected.getFileSize(), actual.getFileSize());
+                assertEquals(expected.getPreviousContentClaimIdentifier(), actual.getPreviousContentClaimIdentifier());
+                assertEquals(expected.getPreviousContentClaimOffset(), actual.getPreviousContentClaimOffset());
+                assertEquals(expected.getPreviousFileSize(), actual.getPreviousFileSize());
+            }
+            assertNull(dictionaryReader.nextRecord());
+        }
+    }
+
+    @Test
+    public void testFailedMergeLeavesNoFilesBehind() throws IOException {
+        final List<File> journals = writeInterleavedJournals(EVENT_COUNT);
+        final File firstDir = new File(storageDir, "first");
+        final File secondDir = new File(storageDir, "second");
+        assertTrue(firstDir.mkdirs());
+        assertTrue(secondDir.mkdirs());
+
+        // the first attempt fails once the merged file, its Table of Contents, checksums and time index have been written,
+        // as a directory stands where its component usage is to be written
+        final File firstAttempt = new File(firstDir, "0.prov.gz");
+        assertTrue(ComponentUsage.getUsageFile(firstAttempt).mkdirs());
+        try {
+            merge(journals, firstAttempt, new GzipEventFileCodec(), 1024);
+            fail("Expected the merge to fail");
+        } catch (final IOException expected) {
+        }
+        assertEquals(0, countFiles(firstDir));
+
+        // so that only the files of the attempt that succeeded are left
+        final File secondAttempt = new File(secondDir, "0.prov.gz");
+        assertEquals(EVENT_COUNT, merge(journals, secondAttempt, new GzipEventFileCodec(), 1024));
+        assertEquals(0, countFiles(firstDir));
+        assertTrue(secondAttempt.exists());
+        assertTrue(TocUtil.getTocFile(secondAttempt).exists());
+        assertTrue(BlockChecksums.getChecksumFile(secondAttempt).exists());
+        assertTrue(EventTimeIndex.getTimeIndexFile(secondAttempt).exists());
+        assertTrue(ComponentUsage.getUsageFile(secondAttempt).exists());
+        assertEquals(5, countFiles(secondDir));
+    }
+
+    private int countFiles(final File directory) {
+        int count = 0;
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                count += file.isDirectory() ? countFiles(file) : 1;
+            }
+        }
+        return count;
+    }
+
+    private void assertMergedWithFramedCodec(final EventFileCodec codec) throws IOException {
+        assertMergedWithFramedCodec(codec, false);
+    }
+
+    private void assertMergedWithFramedCodec(final EventFileCodec codec, final boolean dictionaryEncoding) throws IOException {
+        // the journals are named as the merged file is, so make sure that no Table of Contents of a previous merge is left behind
+        FileUtils.deleteFile(storageDir, true);
+        storageDir.mkdirs();
+        final File mergedFile = new File(storageDir, "0.prov" + (codec == null ? "" : codec.getFileExtension()));
+        assertEquals(EVENT_COUNT, merge(writeInterleavedJournals(EVENT_COUNT), mergedFile, codec, 1024, dictionaryEncoding));
+
+        // the codec is detected from the file itself
+        try (final RecordReader reader = MiNiFiRecordReaders.newRecordReader(mergedFile, null, Integer.MAX_VALUE)) {
+            assertTrue(reader instanceof FramedEventFileReader);
+            long previousOffset = -1L;
+            for (int i = 0; i < EVENT_COUNT; i++) {
+                final StandardProvenanceEventRecord record = reader.nextRecord();
+                assertNotNull(record);
+                assertEquals(i, record.getEventId());
+                assertEquals("1234", record.getComponentId());
+                assertEquals(mergedFile.getName(), record.getStorageFilename());
+                assertTrue(record.getStorageByteOffset() > previousOffset);
+                previousOffset = record.getStorageByteOffset();
+            }
+            assertNull(reader.nextRecord());
+        }
+
+        try (final RecordReader reader = MiNiFiRecordReaders.newRecordReader(mergedFile, null, Integer.MAX_VALUE)) {
+            assertSkipToBlock(reader.getTocReader(), reader);
+            assertEquals(reader.getTocReader().getBlockIndexForEventId(250L).intValue(), reader.getBlockIndex());
+            assertEquals(EVENT_COUNT - 1, reader.getMaxEventId());
+        }
+
+        // the event is found by its storage offset, as it is when the repository looks up an event
+        try (final RecordReader reader = MiNiFiRecordReaders.newRecordReader(mergedFile, null, Integer.MAX_VALUE)) {
+            long offset = -1L;
+            for (int i = 0; i <= 123; i++) {
+                offset = reader.nextRecord().getStorageByteOffset();
+            }
+
+            try (final RecordReader seekingReader = MiNiFiRecordReaders.newRecordReader(new File(storageDir, "0.prov"),
+                Collections.singletonList(mergedFile.toPath()), Integer.MAX_VALUE)) {
+                seekingReader.skipTo(offset);
+                assertEquals(123L, seekingReader.nextRecord().getEventId());
+            }
+        }
+    }
+
+    private void assertSkipToBlock(final TocReader tocReader, final RecordReader reader) throws IOException {
+        final Integer blockIndex = tocReader.getBlockIndexForEventId(250L);
+        assertNotNull(blockIndex);
+        assertTrue(blockIndex > 0);
+
+        reader.skipToBlock(blockIndex);
+        final ProvenanceEventRecord firstInBlock = reader.nextRecord();
+        assertTrue(firstInBlock.getEventId() > 0L && firstInBlock.getEventId() <= 250L);
+    }
+
+    private int merge(final List<File> journals, final File mergedFile, final EventFileCodec codec, final int blockSize) throws IOException {
+        return merge(journals, mergedFile, codec, blockSize, false);
+    }
+
+    private int merge(final List<File> journals, final File mergedFile, final EventFileCodec codec, final int blockSize,
+                      final boolean dictionaryEncoding) throws IOException {
+        final List<RecordReader> readers = new ArrayList<>();
+        try {
+            for (final File journal : journals) {
+                readers.add(RecordReaders.newRecordReader(journal, null, Integer.MAX_VALUE));
+            }
+
+            final JournalMerger merger = new JournalMerger(readAheadExecutor, compressionExecutor, 2, blockSize, dictionaryEncoding);
+            return merger.merge(readers, mergedFile, codec, null);
+        } finally {
+            for (final RecordReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    private ProvenanceEventRecord createDetailedEvent(final int eventId) {
+        final Map<String, String> previousAttributes = new HashMap<>();
+        previousAttributes.put("uuid", UUID.randomUUID().toString());
+        previousAttributes.put("filename", "file-" + (eventId % 7));
+        previousAttributes.put("path", "./");
+        previousAttributes.put("mime.type", "application/json");
+        previousAttributes.put("description", "a value that is longer than the maximum number of attribute characters");
+
+        final StandardProvenanceEventRecord.Builder builder = new StandardProvenanceEventRecord.Builder();
+        builder.setEventTime(System.currentTimeMillis());
+        builder.setEventType(eventId % 2 == 0 ? ProvenanceEventType.FORK : ProvenanceEventType.CONTENT_MODIFIED);
+        builder.fromFlowFile(createFlowFile(eventId, 3000L + eventId, previousAttributes));
+        builder.setFlowFileEntryDate(1000L + eventId);
+        builder.setLineageStartDate(500L);
+        builder.setEventDuration(eventId % 2 == 0 ? -1L : eventId);
+        builder.setComponentId("component-" + (eventId % 3));
+        builder.setComponentType("dummy processor");
+        builder.setDetails(eventId % 5 == 0 ? null : "details " + (eventId % 4));
+        builder.setRelationship("success");
+        builder.setSourceQueueIdentifier("queue-1");
+        if (eventId % 2 == 0) {
+            builder.addChildUuid(UUID.randomUUID().toString());
+            builder.addChildUuid(UUID.randomUUID().toString());
+        }
+
+        final Map<String, String> updatedAttributes = new HashMap<>(previousAttributes);
+        updatedAttributes.put("filename", "file-" + eventId);
+        updatedAttributes.put("mime.type", "text/plain");
+        builder.setAttributes(previousAttributes, updatedAttributes);
+        builder.setPreviousContentClaim("default", "1", "claim-" + (eventId / 10), (long) eventId, 100L);
+        builder.setCurrentContentClaim("default", "1", "claim-" + (eventId / 10 + 1), (long) eventId * 2, 200L + eventId);
+        return builder.build();
+    }
+
+    private List<File> writeInterleavedJournals(final int eventCount) throws IOException {
+        final Map<String, String> attributes = new HashMap<>();
+        final ProvenanceEventBuilder builder = new StandardProvenanceEventRecord.Builder();
+        builder.setEventTime(System.currentTimeMillis());
+        builder.setEventType(ProvenanceEventType.RECEIVE);
+        builder.setTransitUri("nifi://unit-test");
+        builder.setComponentId("1234");
+        builder.setComponentType("dummy processor");
+
+        final List<File> journals = new ArrayList<>();
+        final List<RecordWriter> writers = new ArrayList<>();
+        for (int i = 0; i < JOURNAL_COUNT; i++) {
+            final File journal = new File(storageDir, "0.journal." + i);
+            final RecordWriter writer = RecordWriters.newSchemaRecordWriter(journal, false, false);
+            writer.writeHeader(i);
+            journals.add(journal);
+            writers.add(writer);
+        }
+
+        // give each event its own FlowFile so that the codecs are not compressing the same record over and over
+        for (int eventId = 0; eventId < eventCount; eventId++) {
+            attributes.put("uuid", UUID.randomUUID().toString());
+            builder.fromFlowFile(createFlowFile(eventId, 3000L + eventId, attributes));
+            writers.get(eventId % JOURNAL_COUNT).writeRecord(builder.build(), eventId);
+        }
+        for (final RecordWriter writer : writers) {
+            writer.close();
+        }
+
+        return journals;
+    }
+}
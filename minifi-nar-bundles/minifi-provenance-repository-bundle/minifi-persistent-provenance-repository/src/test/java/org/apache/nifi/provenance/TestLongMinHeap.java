@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestLongMinHeap {
+
+    @Test
+    public void testPollReturnsInKeyOrder() {
+        final Random random = new Random(42L);
+        final long[] expected = new long[1000];
+        final LongMinHeap heap = new LongMinHeap(2);
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = random.nextInt(500);
+            heap.add(expected[i], i);
+        }
+        Arrays.sort(expected);
+
+        for (final long key : expected) {
+            assertEquals(key, heap.peekKey());
+            heap.poll();
+        }
+        assertTrue(heap.isEmpty());
+    }
+
+    @Test
+    public void testReplaceMinKeyMergesSortedRuns() {
+        // three "journals" of interleaved ids, as the journal writers produce them
+        final long[][] runs = new long[][] {{0, 3, 6, 9}, {1, 4, 7}, {2, 5, 8, 10, 11}};
+        final int[] positions = new int[runs.length];
+        final LongMinHeap heap = new LongMinHeap(runs.length);
+        for (int i = 0; i < runs.length; i++) {
+            heap.add(runs[i][0], i);
+        }
+
+        long expected = 0;
+        while (!heap.isEmpty()) {
+            assertEquals(expected++, heap.peekKey());
+            final int run = heap.peekValue();
+            if (++positions[run] < runs[run].length) {
+                heap.replaceMinKey(runs[run][positions[run]]);
+            } else {
+                assertEquals(run, heap.poll());
+            }
+        }
+        assertEquals(12, expected);
+    }
+}
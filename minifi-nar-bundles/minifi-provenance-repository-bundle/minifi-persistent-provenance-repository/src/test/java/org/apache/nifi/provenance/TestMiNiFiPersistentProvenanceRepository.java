@@ -19,10 +19,18 @@ package org.apache.nifi.provenance;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.nifi.events.EventReporter;
 import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.minifi.provenance.ProvenanceRepositoryMetrics;
 import org.apache.nifi.provenance.MiNiFiPersistentProvenanceRepository.MethodNotSupportedException;
+import org.apache.nifi.provenance.lineage.ComputeLineageResult;
+import org.apache.nifi.provenance.lineage.ComputeLineageSubmission;
+import org.apache.nifi.provenance.search.Query;
+import org.apache.nifi.provenance.search.QueryResult;
+import org.apache.nifi.provenance.search.QuerySubmission;
+import org.apache.nifi.provenance.search.SearchTerms;
 import org.apache.nifi.provenance.serialization.RecordReader;
 import org.apache.nifi.provenance.serialization.RecordReaders;
 import org.apache.nifi.provenance.serialization.RecordWriter;
+import org.apache.nifi.provenance.toc.TocUtil;
 import org.apache.nifi.reporting.Severity;
 import org.apache.nifi.stream.io.DataOutputStream;
 import org.apache.nifi.util.file.FileUtils;
@@ -34,25 +42,39 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TestName;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.channels.Channels;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.GZIPOutputStream;
 
 import static org.apache.nifi.provenance.TestUtil.createFlowFile;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 
@@ -186,6 +208,233 @@ public class TestMiNiFiPersistentProvenanceRepository {
         }
     }
 
+    @Test
+    public void testCursorStreamsEvents() throws IOException, InterruptedException {
+        final RepositoryConfiguration config = createConfiguration();
+        config.setMaxEventFileCapacity(1L);
+        repo = new MiNiFiPersistentProvenanceRepository(config, DEFAULT_ROLLOVER_MILLIS);
+        repo.initialize(getEventReporter(), null, null);
+
+        final Map<String, String> attributes = new HashMap<>();
+        attributes.put("abc", "xyz");
+        attributes.put("uuid", UUID.randomUUID().toString());
+
+        final ProvenanceEventBuilder builder = new StandardProvenanceEventRecord.Builder();
+        builder.setEventTime(System.currentTimeMillis());
+        builder.setEventType(ProvenanceEventType.RECEIVE);
+        builder.setTransitUri("nifi://unit-test");
+        builder.fromFlowFile(createFlowFile(3L, 3000L, attributes));
+        builder.setComponentId("1234");
+        builder.setComponentType("dummy processor");
+        final ProvenanceEventRecord record = builder.build();
+
+        for (int i = 0; i < 50; i++) {
+            repo.registerEvent(record);
+        }
+        repo.waitForRollover();
+
+        try (final ProvenanceEventCursor cursor = repo.openCursor(10L)) {
+            for (int i = 10; i < 50; i++) {
+                assertTrue(cursor.next());
+                assertEquals(i, cursor.getEventId());
+                assertEquals(i, cursor.getEvent().getEventId());
+
+                final ProvenanceEventRecord forwarded = ProvenanceEventCursor.deserialize(cursor.getSerializedEvent());
+                assertEquals(i, forwarded.getEventId());
+                assertEquals("nifi://unit-test", forwarded.getTransitUri());
+                assertEquals(attributes, forwarded.getAttributes());
+            }
+            Assert.assertFalse(cursor.next());
+
+            // the cursor picks up events that are registered after it ran out
+            for (int i = 0; i < 5; i++) {
+                repo.registerEvent(record);
+            }
+            repo.waitForRollover();
+            for (int i = 50; i < 55; i++) {
+                assertTrue(cursor.next());
+                assertEquals(i, cursor.getEventId());
+            }
+            Assert.assertFalse(cursor.next());
+        }
+    }
+
+
+    @Test(timeout = 60000)
+    public void testEventsAreAcceptedWhileJournalsAreRecovered() throws IOException, InterruptedException {
+        final RepositoryConfiguration config = createConfiguration();
+        repo = new MiNiFiPersistentProvenanceRepository(config, DEFAULT_ROLLOVER_MILLIS);
+        repo.initialize(getEventReporter(), null, null);
+
+        final Map<String, String> attributes = new HashMap<>();
+        attributes.put("uuid", UUID.randomUUID().toString());
+
+        final ProvenanceEventBuilder builder = new StandardProvenanceEventRecord.Builder();
+        builder.setEventTime(System.currentTimeMillis());
+        builder.setEventType(ProvenanceEventType.RECEIVE);
+        builder.setTransitUri("nifi://unit-test");
+        builder.fromFlowFile(createFlowFile(3L, 3000L, attributes));
+        builder.setComponentId("1234");
+        builder.setComponentType("dummy processor");
+        final ProvenanceEventRecord record = builder.build();
+
+        for (int i = 0; i < 10; i++) {
+            repo.registerEvent(record);
+        }
+
+        // closing without rolling over leaves the journals behind, as an unclean shutdown would
+        repo.close();
+
+        final CountDownLatch mergeLatch = new CountDownLatch(1);
+        repo = new MiNiFiPersistentProvenanceRepository(config, DEFAULT_ROLLOVER_MILLIS) {
+            @Override
+            File mergeJournals(final List<File> journalFiles, final File suggestedMergeFile, final EventReporter eventReporter) throws IOException {
+                try {
+                    mergeLatch.await();
+                } catch (final InterruptedException ie) {
+                    throw new IOException(ie);
+                }
+                return super.mergeJournals(journalFiles, suggestedMergeFile, eventReporter);
+            }
+        };
+        repo.initialize(getEventReporter(), null, null);
+
+        // new events do not wait for the old journals to be merged, and do not reuse their IDs
+        repo.registerEvent(record);
+        assertEquals(10, repo.getMaxEventId().intValue());
+
+        mergeLatch.countDown();
+        final List<ProvenanceEventRecord> recoveredRecords = repo.getEvents(0L, 20);
+        assertEquals(10, recoveredRecords.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, recoveredRecords.get(i).getEventId());
+        }
+    }
+
+    @Test
+    public void testJournalsAreMergedFromJournalDirectories() throws IOException, InterruptedException {
+        final MiNiFiRepositoryConfiguration config = MiNiFiRepositoryConfiguration.of(createConfiguration());
+        final File storageDirectory = config.getStorageDirectories().get(0);
+        final File journalDirectory = new File(storageDirectory, "fast");
+        config.addJournalDirectory(journalDirectory);
+        config.setJournalCount(2);
+
+        repo = new MiNiFiPersistentProvenanceRepository(config, DEFAULT_ROLLOVER_MILLIS);
+        repo.initialize(getEventReporter(), null, null);
+
+        final ProvenanceEventBuilder builder = createEventBuilder();
+        for (int i = 0; i < 10; i++) {
+            repo.registerEvent(builder.build());
+        }
+
+        // the journals are written to their own directory only
+        assertTrue(new File(journalDirectory, "journals/0.journal.0").exists());
+        assertTrue(new File(journalDirectory, "journals/0.journal.1").exists());
+        assertFalse(new File(storageDirectory, "journals").exists());
+        repo.close();
+
+        // journals left behind are merged into the storage directory on recovery
+        repo = new MiNiFiPersistentProvenanceRepository(config, DEFAULT_ROLLOVER_MILLIS);
+        repo.initialize(getEventReporter(), null, null);
+        assertEquals(10, repo.getEvents(0L, 20).size());
+        assertTrue(new File(storageDirectory, "0.prov.gz").exists());
+        assertFalse(new File(journalDirectory, "journals/0.journal.0").exists());
+
+        for (int i = 0; i < 10; i++) {
+            repo.registerEvent(builder.build());
+        }
+        repo.waitForRollover();
+
+        final List<ProvenanceEventRecord> events = repo.getEvents(0L, 30);
+        assertEquals(20, events.size());
+        assertEquals(19L, events.get(19).getEventId());
+        assertTrue(new File(storageDirectory, "10.prov.gz").exists());
+        assertEquals(0, new File(journalDirectory, "journals").listFiles(pathname -> pathname.getName().startsWith("10.journal")).length);
+    }
+
+    @Test
+    public void testFilesOfComponentOverQuotaAreAgedOffFirst() throws IOException, InterruptedException {
+        final MiNiFiRepositoryConfiguration config = MiNiFiRepositoryConfiguration.of(createConfiguration());
+        config.addComponentQuota("tail", Collections.singleton("tail-file"), 1L);
+        repo = new MiNiFiPersistentProvenanceRepository(config, DEFAULT_ROLLOVER_MILLIS);
+        repo.initialize(getEventReporter(), null, null);
+
+        final ProvenanceEventBuilder builder = createEventBuilder();
+        builder.setComponentId("tail-file");
+        for (int i = 0; i < 10; i++) {
+            repo.registerEvent(builder.build());
+        }
+        repo.waitForRollover();
+
+        builder.setComponentId("1234");
+        for (int i = 0; i < 10; i++) {
+            repo.registerEvent(builder.build());
+        }
+        repo.waitForRollover();
+        repo.close();
+
+        // the usage of each file is kept alongside it, so the quota is charged again on recovery
+        repo = new MiNiFiPersistentProvenanceRepository(config, DEFAULT_ROLLOVER_MILLIS);
+        repo.initialize(getEventReporter(), null, null);
+        final File storageDirectory = config.getStorageDirectories().get(0);
+        assertTrue(new File(storageDirectory, "toc/0.usage").exists());
+        assertEquals(new File(storageDirectory, "0.prov.gz").length(), (long) repo.getComponentQuotaUsage().get("tail"));
+
+        // only the file holding the events of the component over its quota is aged off
+        repo.purgeOldEvents();
+        final List<ProvenanceEventRecord> events = repo.getEvents(0L, 30);
+        assertEquals(10, events.size());
+        assertEquals(10L, events.get(0).getEventId());
+        assertEquals(0L, (long) repo.getComponentQuotaUsage().get("tail"));
+        assertFalse(new File(storageDirectory, "toc/0.usage").exists());
+    }
+
+    @Test
+    public void testTornJournalIsTruncatedOnRecovery() throws IOException, InterruptedException {
+        final RepositoryConfiguration config = createConfiguration();
+        config.setJournalCount(1);
+        repo = new MiNiFiPersistentProvenanceRepository(config, DEFAULT_ROLLOVER_MILLIS);
+        repo.initialize(getEventReporter(), null, null);
+
+        // large enough events that the journal is written in several blocks
+        final ProvenanceEventBuilder builder = createEventBuilder();
+        final Map<String, String> attributes = new HashMap<>();
+        attributes.put("uuid", UUID.randomUUID().toString());
+        attributes.put("payload", new String(new char[10000]));
+        builder.fromFlowFile(createFlowFile(3L, 3000L, attributes));
+        for (int i = 0; i < 20; i++) {
+            repo.registerEvent(builder.build());
+        }
+        repo.close();
+
+        // damage the third block of the journal, as a crash of the operating system may
+        final File journalFile = new File(config.getStorageDirectories().get(0), "journals/0.journal.0");
+        final BlockChecksums checksums = BlockChecksums.read(BlockChecksums.getChecksumFile(journalFile));
+        assertTrue(checksums.getBlockCount() > 2);
+        try (final RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+            final byte[] garbage = new byte[100];
+            Arrays.fill(garbage, (byte) 0xFF);
+            file.seek(checksums.getEndOffset(1) + 10L);
+            file.write(garbage);
+        }
+        final int keptEvents = checksums.getEventCount(0) + checksums.getEventCount(1);
+
+        repo = new MiNiFiPersistentProvenanceRepository(config, DEFAULT_ROLLOVER_MILLIS);
+        repo.initialize(getEventReporter(), null, null);
+
+        final List<ProvenanceEventRecord> recoveredRecords = repo.getEvents(0L, 100);
+        assertEquals(keptEvents, recoveredRecords.size());
+        for (int i = 0; i < keptEvents; i++) {
+            assertEquals(i, recoveredRecords.get(i).getEventId());
+        }
+
+        boolean reported = false;
+        for (final ReportedEvent event : reportedEvents) {
+            reported |= event.getSeverity() == Severity.WARNING && event.getMessage().contains("Kept " + keptEvents + " events")
+                && event.getMessage().contains("discarded " + (20 - keptEvents) + " events");
+        }
+        assertTrue(reported);
+    }
 
     @Test
     public void testCompressOnRollover() throws IOException, InterruptedException, ParseException {
@@ -221,6 +470,311 @@ public class TestMiNiFiPersistentProvenanceRepository {
         assertTrue(compressedLogFile.exists());
     }
 
+    @Test
+    public void testMetricsReported() throws IOException, InterruptedException {
+        final RepositoryConfiguration config = createConfiguration();
+        config.setMaxEventFileLife(500, TimeUnit.MILLISECONDS);
+        config.setCompressOnRollover(true);
+        repo = new MiNiFiPersistentProvenanceRepository(config, DEFAULT_ROLLOVER_MILLIS);
+        repo.initialize(getEventReporter(), null, null);
+
+        final Map<String, String> attributes = new HashMap<>();
+        attributes.put("abc", "xyz");
+        attributes.put("uuid", UUID.randomUUID().toString());
+
+        final ProvenanceEventBuilder builder = new StandardProvenanceEventRecord.Builder();
+        builder.setEventTime(System.currentTimeMillis());
+        builder.setEventType(ProvenanceEventType.RECEIVE);
+        builder.setTransitUri("nifi://unit-test");
+        builder.fromFlowFile(createFlowFile(3L, 3000L, attributes));
+        builder.setComponentId("1234");
+        builder.setComponentType("dummy processor");
+        final ProvenanceEventRecord record = builder.build();
+
+        for (int i = 0; i < 100; i++) {
+            repo.registerEvent(record);
+        }
+        repo.waitForRollover();
+
+        final ProvenanceRepositoryMetrics metrics = repo.getMetrics();
+        assertEquals(100L, metrics.getEventsWritten());
+        assertTrue(metrics.getBytesWritten() > 0L);
+        assertTrue(metrics.getPersistLatencyMaxMicros() >= metrics.getPersistLatency99thPercentileMicros());
+        assertEquals(0, metrics.getDirtyWriterCount());
+
+        assertEquals(1L, metrics.getMergeCount());
+        assertEquals(1, metrics.getEventFileCount());
+        assertTrue(metrics.getRepositorySize() > 0L);
+        assertTrue(metrics.getMergeBytesPerSecond() > 0D);
+        // the same event repeated compresses well
+        assertTrue(metrics.getCompressionRatio() > 1D);
+    }
+
+    @Test
+    public void testGetEventsSince() throws IOException, InterruptedException {
+        final RepositoryConfiguration config = createConfiguration();
+        config.setMaxEventFileLife(500, TimeUnit.MILLISECONDS);
+        config.setCompressOnRollover(true);
+        repo = new MiNiFiPersistentProvenanceRepository(config, DEFAULT_ROLLOVER_MILLIS);
+        repo.initialize(getEventReporter(), null, null);
+
+        final Map<String, String> attributes = new HashMap<>();
+        attributes.put("uuid", UUID.randomUUID().toString());
+
+        final ProvenanceEventBuilder builder = new StandardProvenanceEventRecord.Builder();
+        builder.setEventType(ProvenanceEventType.RECEIVE);
+        builder.setTransitUri("nifi://unit-test");
+        builder.fromFlowFile(createFlowFile(3L, 3000L, attributes));
+        builder.setComponentId("1234");
+        builder.setComponentType("dummy processor");
+
+        // two event files, the first holding events that occurred well before those of the second
+        for (final long baseTime : new long[] {1000L, 5000L}) {
+            for (int i = 0; i < 10; i++) {
+                builder.setEventTime(baseTime + i);
+                repo.registerEvent(builder.build());
+            }
+            repo.waitForRollover();
+        }
+
+        assertEquals(2, repo.getAllLogFiles().size());
+        for (final Path eventFile : repo.getAllLogFiles()) {
+            assertTrue(EventTimeIndex.getTimeIndexFile(eventFile.toFile()).exists());
+        }
+
+        List<ProvenanceEventRecord> events = repo.getEventsSince(5005L, 100);
+        assertEquals(5, events.size());
+        assertEquals(15L, events.get(0).getEventId());
+        assertEquals(5005L, events.get(0).getEventTime());
+
+        events = repo.getEventsSince(1008L, 3);
+        assertEquals(3, events.size());
+        assertEquals(8L, events.get(0).getEventId());
+        assertEquals(10L, events.get(2).getEventId());
+
+        assertTrue(repo.getEventsSince(6000L, 100).isEmpty());
+
+        // the time indices are recovered along with the event files
+        repo.close();
+        repo = new MiNiFiPersistentProvenanceRepository(config, DEFAULT_ROLLOVER_MILLIS);
+        repo.initialize(getEventReporter(), null, null);
+        events = repo.getEventsSince(5000L, 100);
+        assertEquals(10, events.size());
+        assertEquals(10L, events.get(0).getEventId());
+    }
+
+    @Test
+    public void testTierAgingEventFiles() throws IOException, InterruptedException {
+        final MiNiFiRepositoryConfiguration config = MiNiFiRepositoryConfiguration.of(createConfiguration());
+        config.setMaxEventFileLife(500, TimeUnit.MILLISECONDS);
+        config.setTieringCompactAfter(0L, TimeUnit.MILLISECONDS);
+        config.setTieringRetainedAttributes(Collections.singleton("filename"));
+        config.setTieringMaxIoRate(0L);
+        repo = new MiNiFiPersistentProvenanceRepository(config, DEFAULT_ROLLOVER_MILLIS);
+        repo.initialize(getEventReporter(), null, null);
+
+        final String uuid = UUID.randomUUID().toString();
+        final Map<String, String> attributes = new HashMap<>();
+        attributes.put("uuid", uuid);
+        attributes.put("filename", "data.txt");
+        attributes.put("secret", "do not keep");
+
+        final ProvenanceEventBuilder builder = new StandardProvenanceEventRecord.Builder();
+        builder.setEventTime(System.currentTimeMillis());
+        builder.setEventType(ProvenanceEventType.RECEIVE);
+        builder.setTransitUri("nifi://unit-test");
+        builder.fromFlowFile(createFlowFile(3L, 3000L, attributes));
+        builder.setComponentId("1234");
+        builder.setComponentType("dummy processor");
+        for (int i = 0; i < 10; i++) {
+            repo.registerEvent(builder.build());
+        }
+        repo.waitForRollover();
+
+        // the file is rewritten in the background, keeping its name apart from the tier that it has reached
+        Thread.sleep(10L);
+        repo.tierEventFiles();
+        final long deadline = System.currentTimeMillis() + 10000L;
+        while (!repo.getAllLogFiles().iterator().next().toFile().getName().equals("0.compact.prov.zst") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50L);
+        }
+
+        final File tieredFile = repo.getAllLogFiles().iterator().next().toFile();
+        assertEquals("0.compact.prov.zst", tieredFile.getName());
+        assertTrue(EventTimeIndex.getTimeIndexFile(tieredFile).exists());
+        assertEquals(1, tieredFile.getParentFile().listFiles((dir, name) -> name.contains(".prov")).length);
+
+        final List<ProvenanceEventRecord> events = repo.getEvents(0L, 100);
+        assertEquals(10, events.size());
+        for (int i = 0; i < 10; i++) {
+            final ProvenanceEventRecord event = events.get(i);
+            assertEquals(i, event.getEventId());
+            assertEquals(uuid, event.getAttributes().get("uuid"));
+            assertEquals("data.txt", event.getAttributes().get("filename"));
+            assertNull(event.getAttributes().get("secret"));
+        }
+
+        // nothing is rewritten twice, and the rewritten file is recovered as any other
+        repo.tierEventFiles();
+        repo.close();
+        repo = new MiNiFiPersistentProvenanceRepository(config, DEFAULT_ROLLOVER_MILLIS);
+        repo.initialize(getEventReporter(), null, null);
+        assertEquals(10, repo.getEvents(0L, 100).size());
+        assertEquals(9L, repo.getMaxEventId().longValue());
+    }
+
+    @Test
+    public void testCompressOnRolloverWithLz4() throws IOException, InterruptedException {
+        final MiNiFiRepositoryConfiguration config = MiNiFiRepositoryConfiguration.of(createConfiguration());
+        config.setMaxEventFileLife(500, TimeUnit.MILLISECONDS);
+        config.setCompressionCodec("lz4");
+        repo = new MiNiFiPersistentProvenanceRepository(config, DEFAULT_ROLLOVER_MILLIS);
+        repo.initialize(getEventReporter(), null, null);
+
+        final Map<String, String> attributes = new HashMap<>();
+        attributes.put("abc", "xyz");
+        attributes.put("uuid", UUID.randomUUID().toString());
+
+        final ProvenanceEventBuilder builder = new StandardProvenanceEventRecord.Builder();
+        builder.setEventTime(System.currentTimeMillis());
+        builder.setEventType(ProvenanceEventType.RECEIVE);
+        builder.setTransitUri("nifi://unit-test");
+        builder.fromFlowFile(createFlowFile(3L, 3000L, attributes));
+        builder.setComponentId("1234");
+        builder.setComponentType("dummy processor");
+
+        for (int i = 0; i < 10; i++) {
+            repo.registerEvent(builder.build());
+        }
+
+        repo.waitForRollover();
+        final File storageDir = config.getStorageDirectories().get(0);
+        assertTrue(new File(storageDir, "0.prov.lz4").exists());
+        assertEquals(10, repo.getEvents(0L, 12).size());
+
+        repo.close();
+        Thread.sleep(500L);
+
+        // the codec is detected from the file, so the events are recovered even though the repository now uses the default codec
+        config.setCompressionCodec(MiNiFiRepositoryConfiguration.DEFAULT_COMPRESSION_CODEC);
+        repo = new MiNiFiPersistentProvenanceRepository(config, DEFAULT_ROLLOVER_MILLIS);
+        repo.initialize(getEventReporter(), null, null);
+        assertEquals(9, repo.getMaxEventId().intValue());
+
+        final List<ProvenanceEventRecord> recoveredRecords = repo.getEvents(0L, 12);
+        assertEquals(10, recoveredRecords.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, recoveredRecords.get(i).getEventId());
+            assertEquals(attributes, recoveredRecords.get(i).getAttributes());
+        }
+    }
+
+    @Test
+    public void testExportRawEventBlocks() throws IOException, InterruptedException {
+        final MiNiFiRepositoryConfiguration config = MiNiFiRepositoryConfiguration.of(createConfiguration());
+        config.setMaxEventFileLife(500, TimeUnit.MILLISECONDS);
+        verifyRawEventBlocks(config);
+    }
+
+    @Test
+    public void testExportRawEventBlocksOfStandardGzipFiles() throws IOException, InterruptedException {
+        final MiNiFiRepositoryConfiguration config = MiNiFiRepositoryConfiguration.of(createConfiguration());
+        config.setMaxEventFileLife(500, TimeUnit.MILLISECONDS);
+        config.setDictionaryEncodingEnabled(false);
+        verifyRawEventBlocks(config);
+    }
+
+    private void verifyRawEventBlocks(final MiNiFiRepositoryConfiguration config) throws IOException, InterruptedException {
+        repo = new MiNiFiPersistentProvenanceRepository(config, DEFAULT_ROLLOVER_MILLIS);
+        repo.initialize(getEventReporter(), null, null);
+
+        // large enough events that each file holds more than one block
+        final ProvenanceEventBuilder builder = createEventBuilder();
+        final char[] payload = new char[60000];
+        for (int rollover = 0; rollover < 2; rollover++) {
+            for (int i = 0; i < 25; i++) {
+                Arrays.fill(payload, (char) ('A' + rollover * 25 + i));
+                final Map<String, String> attributes = new HashMap<>();
+                attributes.put("uuid", UUID.randomUUID().toString());
+                attributes.put("payload", new String(payload));
+                builder.fromFlowFile(createFlowFile(3L, 3000L, attributes));
+                repo.registerEvent(builder.build());
+            }
+            repo.waitForRollover();
+        }
+
+        // ship every block along with the head of its file, as a forwarder would, and decode it on the other end
+        final List<RawEventBlock> blocks = repo.getRawEventBlocks(0L, 100);
+        assertTrue(blocks.size() > 2);
+        final List<Long> eventIds = new ArrayList<>();
+        long nextEventId = 0L;
+        for (final RawEventBlock block : blocks) {
+            assertEquals(nextEventId, block.getFirstEventId());
+            nextEventId = block.getLastEventId() + 1L;
+
+            final ByteArrayOutputStream head = new ByteArrayOutputStream();
+            assertEquals(block.getFileHeadLength(), block.transferFileHeadTo(Channels.newChannel(head)));
+            final ByteArrayOutputStream data = new ByteArrayOutputStream();
+            assertEquals(block.getLength(), block.transferTo(Channels.newChannel(data)));
+            final Crc32c crc = new Crc32c();
+            crc.update(data.toByteArray());
+            assertEquals(block.getChecksum(), crc.getValue());
+
+            final byte[] blockBytes = block.getBlockIndex() == 0 ? null : data.toByteArray();
+            for (final ProvenanceEventRecord event : RawEventBlock.decode(block.getFilename(), head.toByteArray(), blockBytes, block.getFirstEventId(), 65536)) {
+                assertTrue(event.getEventId() >= block.getFirstEventId() && event.getEventId() <= block.getLastEventId());
+                assertEquals(60000, event.getAttributes().get("payload").length());
+                eventIds.add(event.getEventId());
+            }
+        }
+        assertEquals(50L, nextEventId);
+        assertEquals(50, eventIds.size());
+        for (int i = 0; i < 50; i++) {
+            assertEquals(i, eventIds.get(i).longValue());
+        }
+
+        // a forwarder resumes after the last event of the last block that it shipped
+        final List<RawEventBlock> remaining = repo.getRawEventBlocks(35L, 100);
+        assertTrue(remaining.get(0).getFirstEventId() <= 35L && remaining.get(0).getLastEventId() >= 35L);
+        assertTrue(repo.getRawEventBlocks(50L, 100).isEmpty());
+    }
+
+    @Test
+    public void testExportRawEventBlocksBeforeTornTableOfContentsEntry() throws IOException, InterruptedException {
+        final MiNiFiRepositoryConfiguration config = MiNiFiRepositoryConfiguration.of(createConfiguration());
+        config.setMaxEventFileLife(500, TimeUnit.MILLISECONDS);
+        repo = new MiNiFiPersistentProvenanceRepository(config, DEFAULT_ROLLOVER_MILLIS);
+        repo.initialize(getEventReporter(), null, null);
+
+        final ProvenanceEventBuilder builder = createEventBuilder();
+        final char[] payload = new char[60000];
+        for (int i = 0; i < 25; i++) {
+            Arrays.fill(payload, (char) ('A' + i));
+            final Map<String, String> attributes = new HashMap<>();
+            attributes.put("uuid", UUID.randomUUID().toString());
+            attributes.put("payload", new String(payload));
+            builder.fromFlowFile(createFlowFile(3L, 3000L, attributes));
+            repo.registerEvent(builder.build());
+        }
+        repo.waitForRollover();
+
+        final List<RawEventBlock> blocks = repo.getRawEventBlocks(0L, 100);
+        assertTrue(blocks.size() > 2);
+
+        // cut the last entry of the Table of Contents short, as a crash while it was being written would have
+        final File tocFile = TocUtil.getTocFile(repo.getAllLogFiles().iterator().next().toFile());
+        try (final RandomAccessFile file = new RandomAccessFile(tocFile, "rw")) {
+            file.setLength(file.length() - 4L);
+        }
+
+        // the blocks before the torn entry are still exported, and the last of them ends where the torn entry says
+        final List<RawEventBlock> intact = repo.getRawEventBlocks(0L, 100);
+        assertEquals(blocks.size() - 1, intact.size());
+        final RawEventBlock lastIntact = intact.get(intact.size() - 1);
+        assertEquals(blocks.get(blocks.size() - 2).getLength(), lastIntact.getLength());
+        assertEquals(blocks.get(blocks.size() - 2).getChecksum(), lastIntact.getChecksum());
+    }
+
     @Test(expected = MethodNotSupportedException.class)
     public void testLineageRequestNotSupported() throws IOException, InterruptedException, ParseException {
         final RepositoryConfiguration config = createConfiguration();
@@ -243,6 +797,230 @@ public class TestMiNiFiPersistentProvenanceRepository {
     }
 
 
+    @Test
+    public void testEventsAreFilteredByAdmissionPolicy() throws IOException, InterruptedException {
+        final MiNiFiRepositoryConfiguration config = MiNiFiRepositoryConfiguration.of(createConfiguration());
+        config.setMaxEventFileLife(500, TimeUnit.MILLISECONDS);
+        config.setAdmissionDeniedEventTypes(Collections.singleton(ProvenanceEventType.ATTRIBUTES_MODIFIED));
+        config.setAdmissionAllowedComponentIds(Collections.singleton("1234"));
+        repo = new MiNiFiPersistentProvenanceRepository(config, DEFAULT_ROLLOVER_MILLIS);
+        repo.initialize(getEventReporter(), null, null);
+
+        final Map<String, String> attributes = new HashMap<>();
+        attributes.put("uuid", UUID.randomUUID().toString());
+
+        final ProvenanceEventBuilder builder = new StandardProvenanceEventRecord.Builder();
+        builder.setEventTime(System.currentTimeMillis());
+        builder.setEventType(ProvenanceEventType.RECEIVE);
+        builder.setTransitUri("nifi://unit-test");
+        builder.fromFlowFile(createFlowFile(3L, 3000L, attributes));
+        builder.setComponentId("1234");
+        builder.setComponentType("dummy processor");
+        for (int i = 0; i < 10; i++) {
+            repo.registerEvent(builder.build());
+        }
+
+        builder.setEventType(ProvenanceEventType.ATTRIBUTES_MODIFIED);
+        for (int i = 0; i < 5; i++) {
+            repo.registerEvent(builder.build());
+        }
+
+        builder.setEventType(ProvenanceEventType.SEND);
+        builder.setComponentId("5678");
+        for (int i = 0; i < 3; i++) {
+            repo.registerEvent(builder.build());
+        }
+
+        repo.waitForRollover();
+
+        // filtered events are not assigned ids
+        final List<ProvenanceEventRecord> events = repo.getEvents(0L, 100);
+        assertEquals(10, events.size());
+        assertEquals(9L, events.get(9).getEventId());
+        assertEquals(10L, repo.getAdmissionPolicy().getEventsAdmitted());
+        assertEquals(5L, repo.getAdmissionPolicy().getEventsFilteredByType());
+        assertEquals(3L, repo.getAdmissionPolicy().getEventsFilteredByComponent());
+    }
+
+    @Test
+    public void testAsyncRegisterEvents() throws IOException, InterruptedException {
+        final MiNiFiRepositoryConfiguration config = MiNiFiRepositoryConfiguration.of(createConfiguration());
+        config.setMaxEventFileLife(500, TimeUnit.MILLISECONDS);
+        config.setIngestAsync(true);
+        config.setIngestOverloadPolicy(IngestOverloadPolicy.SPILL.getName());
+        repo = new MiNiFiPersistentProvenanceRepository(config, DEFAULT_ROLLOVER_MILLIS);
+        repo.initialize(getEventReporter(), null, null);
+
+        final ProvenanceEventBuilder builder = createEventBuilder();
+        for (int i = 0; i < 10; i++) {
+            repo.registerEvent(builder.build());
+        }
+
+        // the events have only been handed off, so wait for the writer threads to catch up before rolling over
+        final long deadline = System.currentTimeMillis() + 10000L;
+        while (repo.getMetrics().getEventsWritten() + repo.getMetrics().getEventsDropped() < 10L && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        repo.waitForRollover();
+
+        final ProvenanceRepositoryMetrics metrics = repo.getMetrics();
+        assertEquals(0L, metrics.getEventsDropped());
+        assertEquals(10, repo.getEvents(0L, 100).size());
+    }
+
+    @Test
+    public void testSpilledEventsAreWrittenOnRestart() throws IOException, InterruptedException {
+        final MiNiFiRepositoryConfiguration config = MiNiFiRepositoryConfiguration.of(createConfiguration());
+        config.setMaxEventFileLife(500, TimeUnit.MILLISECONDS);
+
+        // as left behind by a repository that was shut down while it was spilling
+        final File spillFile = new File(config.getStorageDirectories().iterator().next(), "spill/ingest.spill");
+        final ProvenanceEventBuilder builder = createEventBuilder();
+        try (final IngestSpillQueue spilled = new IngestSpillQueue(spillFile, Long.MAX_VALUE, config.getMaxAttributeChars())) {
+            final List<ProvenanceEventRecord> events = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                events.add(builder.build());
+            }
+            assertTrue(spilled.append(events));
+        }
+
+        repo = new MiNiFiPersistentProvenanceRepository(config, DEFAULT_ROLLOVER_MILLIS);
+        repo.initialize(getEventReporter(), null, null);
+        assertFalse(spillFile.exists());
+
+        repo.registerEvent(builder.build());
+        repo.waitForRollover();
+
+        final List<ProvenanceEventRecord> events = repo.getEvents(0L, 100);
+        assertEquals(6, events.size());
+        assertEquals(5L, events.get(5).getEventId());
+    }
+
+    private static ProvenanceEventBuilder createEventBuilder() {
+        final Map<String, String> attributes = new HashMap<>();
+        attributes.put("uuid", UUID.randomUUID().toString());
+
+        final ProvenanceEventBuilder builder = new StandardProvenanceEventRecord.Builder();
+        builder.setEventTime(System.currentTimeMillis());
+        builder.setEventType(ProvenanceEventType.RECEIVE);
+        builder.setTransitUri("nifi://unit-test");
+        builder.fromFlowFile(createFlowFile(3L, 3000L, attributes));
+        builder.setComponentId("1234");
+        builder.setComponentType("dummy processor");
+        return builder;
+    }
+
+    @Test
+    public void testQueryAndLineageWithIndex() throws IOException, InterruptedException {
+        final MiNiFiRepositoryConfiguration config = MiNiFiRepositoryConfiguration.of(createConfiguration());
+        config.setMaxEventFileLife(500, TimeUnit.MILLISECONDS);
+        config.setQueryIndexEnabled(true);
+        repo = new MiNiFiPersistentProvenanceRepository(config, DEFAULT_ROLLOVER_MILLIS);
+        repo.initialize(getEventReporter(), null, null);
+
+        final String parentUuid = "00000000-0000-0000-0000-000000000001";
+        final String otherUuid = "00000000-0000-0000-0000-000000000002";
+        final String childUuid = "00000000-0000-0000-0000-000000000003";
+        final Map<String, String> attributes = new HashMap<>();
+        attributes.put("uuid", parentUuid);
+
+        final ProvenanceEventBuilder builder = new StandardProvenanceEventRecord.Builder();
+        builder.setEventTime(System.currentTimeMillis());
+        builder.setEventType(ProvenanceEventType.RECEIVE);
+        builder.setTransitUri("nifi://unit-test");
+        builder.fromFlowFile(createFlowFile(3L, 3000L, attributes));
+        builder.setComponentId("1234");
+        builder.setComponentType("dummy processor");
+        repo.registerEvent(builder.build());
+        builder.setEventType(ProvenanceEventType.ATTRIBUTES_MODIFIED);
+        for (int i = 1; i < 10; i++) {
+            repo.registerEvent(builder.build());
+        }
+
+        final Map<String, String> otherAttributes = new HashMap<>();
+        otherAttributes.put("uuid", otherUuid);
+        builder.setEventType(ProvenanceEventType.DROP);
+        builder.setComponentId("5678");
+        builder.fromFlowFile(createFlowFile(4L, 3000L, otherAttributes));
+        for (int i = 0; i < 5; i++) {
+            repo.registerEvent(builder.build());
+        }
+
+        final Map<String, String> childAttributes = new HashMap<>();
+        childAttributes.put("uuid", childUuid);
+        builder.setEventType(ProvenanceEventType.FORK);
+        builder.setComponentId("1234");
+        builder.fromFlowFile(createFlowFile(3L, 3000L, attributes));
+        builder.addParentFlowFile(createFlowFile(3L, 3000L, attributes));
+        builder.addChildFlowFile(createFlowFile(5L, 3000L, childAttributes));
+        repo.registerEvent(builder.build());
+
+        repo.waitForRollover();
+        final File indexDir = new File(config.getStorageDirectories().get(0), EventIndex.INDEX_DIRECTORY);
+        assertEquals(1, indexDir.listFiles().length);
+
+        final Query byComponent = new Query(UUID.randomUUID().toString());
+        byComponent.addSearchTerm(SearchTerms.newSearchTerm(SearchableFields.ComponentID, "5678"));
+        byComponent.setMaxResults(100);
+        final QueryResult componentResult = waitForQuery(repo.submitQuery(byComponent, null));
+        assertNull(componentResult.getError());
+        assertEquals(5, componentResult.getMatchingEvents().size());
+        for (final ProvenanceEventRecord event : componentResult.getMatchingEvents()) {
+            assertEquals(ProvenanceEventType.DROP, event.getEventType());
+        }
+
+        // parents and children count as references to a FlowFile, and the most recent events come first
+        final Query byUuid = new Query(UUID.randomUUID().toString());
+        byUuid.addSearchTerm(SearchTerms.newSearchTerm(SearchableFields.FlowFileUUID, childUuid));
+        byUuid.setMaxResults(100);
+        final QueryResult uuidResult = waitForQuery(repo.submitQuery(byUuid, null));
+        assertEquals(1, uuidResult.getMatchingEvents().size());
+        final long forkEventId = uuidResult.getMatchingEvents().get(0).getEventId();
+        assertEquals(15L, forkEventId);
+
+        final Query byUuidAndType = new Query(UUID.randomUUID().toString());
+        byUuidAndType.addSearchTerm(SearchTerms.newSearchTerm(SearchableFields.FlowFileUUID, parentUuid));
+        byUuidAndType.addSearchTerm(SearchTerms.newSearchTerm(SearchableFields.EventType, "attributes_modified"));
+        byUuidAndType.setMaxResults(3);
+        final QueryResult limitedResult = waitForQuery(repo.submitQuery(byUuidAndType, null));
+        assertEquals(3, limitedResult.getMatchingEvents().size());
+        assertEquals(9L, limitedResult.getMatchingEvents().get(0).getEventId());
+
+        final Query byAttribute = new Query(UUID.randomUUID().toString());
+        byAttribute.addSearchTerm(SearchTerms.newSearchTerm(SearchableFields.newSearchableAttribute("abc"), "xyz"));
+        assertNotNull(waitForQuery(repo.submitQuery(byAttribute, null)).getError());
+
+        final ComputeLineageResult lineage = waitForLineage(repo.submitLineageComputation(parentUuid, null));
+        assertNull(lineage.getError());
+        assertTrue(lineage.getNodes().size() > 0);
+
+        final ComputeLineageResult children = waitForLineage(repo.submitExpandChildren(forkEventId, null));
+        assertNull(children.getError());
+
+        // only events that create or join FlowFiles can be expanded
+        assertNotNull(waitForLineage(repo.submitExpandParents(0L, null)).getError());
+        assertNotNull(waitForLineage(repo.submitLineageComputation(1000L, null)).getError());
+    }
+
+    private static QueryResult waitForQuery(final QuerySubmission submission) throws InterruptedException {
+        final QueryResult result = submission.getResult();
+        for (int i = 0; i < 100 && !result.isFinished(); i++) {
+            Thread.sleep(50L);
+        }
+        assertTrue(result.isFinished());
+        return result;
+    }
+
+    private static ComputeLineageResult waitForLineage(final ComputeLineageSubmission submission) throws InterruptedException {
+        final ComputeLineageResult result = submission.getResult();
+        for (int i = 0; i < 100 && !result.isFinished(); i++) {
+            Thread.sleep(50L);
+        }
+        assertTrue(result.isFinished());
+        return result;
+    }
+
+
     @Test
     public void testCorrectProvenanceEventIdOnRestore() throws IOException {
         final RepositoryConfiguration config = createConfiguration();
@@ -406,6 +1184,8 @@ public class TestMiNiFiPersistentProvenanceRepository {
 
         final int threadMillis = (int) TimeUnit.NANOSECONDS.toMillis(threadNanos.get());
         assertTrue(threadMillis > 1200); // use 1200 to account for the fact that the timing is not exact
+        assertEquals(1L, repo.getBackpressureHistogram().getCount());
+        assertTrue(repo.getBackpressureHistogram().getSum() > 1200L);
 
         builder.fromFlowFile(createFlowFile(15, 3000L, attributes));
         attributes.put("uuid", "00000000-0000-0000-0000-00000000000" + 15);
@@ -444,6 +1224,9 @@ public class TestMiNiFiPersistentProvenanceRepository {
 
         repo.waitForRollover();
 
+        // the merged journals are no longer counted; only those of the current writers remain
+        assertEquals(config.getJournalCount(), repo.getJournalCount());
+
         final File storageDir = config.getStorageDirectories().get(0);
         long counter = 0;
         for (final File file : storageDir.listFiles()) {
@@ -492,6 +1275,118 @@ public class TestMiNiFiPersistentProvenanceRepository {
         assertEquals("12345678901234567890123456789012345678901234567890", retrieved.getAttributes().get("75chars"));
     }
 
+    @Test(timeout = 60000)
+    public void testGroupCommitWhenAlwaysSync() throws IOException, InterruptedException {
+        final MiNiFiRepositoryConfiguration config = MiNiFiRepositoryConfiguration.of(createConfiguration());
+        this.config = config;
+        config.setAlwaysSync(true);
+        config.setGroupCommitWindow(5L, TimeUnit.MILLISECONDS);
+        config.setMaxEventFileLife(3, TimeUnit.SECONDS);
+        repo = new MiNiFiPersistentProvenanceRepository(config, DEFAULT_ROLLOVER_MILLIS);
+        repo.initialize(getEventReporter(), null, null);
+
+        final Map<String, String> attributes = new HashMap<>();
+        attributes.put("uuid", UUID.randomUUID().toString());
+
+        final ProvenanceEventBuilder builder = new StandardProvenanceEventRecord.Builder();
+        builder.setEventTime(System.currentTimeMillis());
+        builder.setEventType(ProvenanceEventType.RECEIVE);
+        builder.setTransitUri("nifi://unit-test");
+        builder.fromFlowFile(createFlowFile(3L, 3000L, attributes));
+        builder.setComponentId("1234");
+        builder.setComponentType("dummy processor");
+        final ProvenanceEventRecord record = builder.build();
+
+        final int threadCount = 8;
+        final int eventsPerThread = 50;
+        final ExecutorService exec = Executors.newFixedThreadPool(threadCount);
+        for (int i = 0; i < threadCount; i++) {
+            exec.submit(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < eventsPerThread; j++) {
+                        repo.registerEvent(record);
+                    }
+                }
+            });
+        }
+        exec.shutdown();
+        assertTrue(exec.awaitTermination(30, TimeUnit.SECONDS));
+
+        // every event is acknowledged only once it has been synced, and each sync covers at least one event
+        final Histogram batchSizes = repo.getGroupCommitBatchSizeHistogram();
+        assertEquals(threadCount * eventsPerThread, batchSizes.getSum());
+        assertTrue(batchSizes.getCount() <= threadCount * eventsPerThread);
+        assertEquals(batchSizes.getCount(), repo.getJournalSyncHistogram().getCount());
+
+        final ProvenanceRepositoryMetrics metrics = repo.getMetrics();
+        assertEquals(batchSizes.getMax(), metrics.getGroupCommitMaxBatchSize());
+        assertEquals(batchSizes.getMean(), metrics.getGroupCommitAverageBatchSize(), 0D);
+        assertEquals(repo.getJournalSyncHistogram().getMax(), metrics.getJournalSyncMaxMicros());
+
+        repo.waitForRollover();
+        assertEquals(threadCount * eventsPerThread, repo.getEvents(0L, threadCount * eventsPerThread + 10).size());
+    }
+
+
+    @Test(timeout = 60000)
+    public void testEventsThatCannotBeWrittenToAJournalAreNotAcknowledged() throws Exception {
+        final MiNiFiRepositoryConfiguration config = MiNiFiRepositoryConfiguration.of(createConfiguration());
+        this.config = config;
+        config.setIngestWriterThreads(2);
+        config.setMaxEventFileLife(3, TimeUnit.SECONDS);
+
+        final AtomicBoolean failWrites = new AtomicBoolean(true);
+        repo = new MiNiFiPersistentProvenanceRepository(config, DEFAULT_ROLLOVER_MILLIS) {
+            @Override
+            protected RecordWriter[] createWriters(RepositoryConfiguration config, long initialRecordId) throws IOException {
+                final RecordWriter[] writers = super.createWriters(config, initialRecordId);
+                for (int i = 0; i < writers.length; i++) {
+                    writers[i] = createFailingWriter(writers[i], failWrites);
+                }
+                return writers;
+            }
+        };
+        repo.initialize(getEventReporter(), null, null);
+
+        final ProvenanceEventRecord event = createEventBuilder().build();
+        try {
+            repo.submitEvents(Collections.singletonList(event)).get(10, TimeUnit.SECONDS);
+            Assert.fail("Expected the events to fail to be persisted");
+        } catch (final ExecutionException ee) {
+            assertTrue(ee.getCause() instanceof IOException);
+        }
+
+        try {
+            repo.registerEvent(event);
+            Assert.fail("Expected the events to fail to be persisted");
+        } catch (final IllegalStateException ise) {
+            assertTrue(ise.getCause() instanceof IOException);
+        }
+
+        // once the journals can be written again, the events are acknowledged
+        failWrites.set(false);
+        repo.submitEvents(Collections.singletonList(event)).get(10, TimeUnit.SECONDS);
+        repo.waitForRollover();
+        assertEquals(1, repo.getEvents(0L, 10).size());
+    }
+
+    private static RecordWriter createFailingWriter(final RecordWriter writer, final AtomicBoolean failWrites) {
+        return (RecordWriter) Proxy.newProxyInstance(RecordWriter.class.getClassLoader(), new Class<?>[] {RecordWriter.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                if (method.getName().equals("writeRecord") && failWrites.get()) {
+                    throw new IOException("Unit test causing failure to write to journal");
+                }
+
+                try {
+                    return method.invoke(writer, args);
+                } catch (final InvocationTargetException ite) {
+                    throw ite.getCause();
+                }
+            }
+        });
+    }
 
     @Test
     public void testFailureToCreateWriterDoesNotPreventSubsequentRollover() throws IOException, InterruptedException {
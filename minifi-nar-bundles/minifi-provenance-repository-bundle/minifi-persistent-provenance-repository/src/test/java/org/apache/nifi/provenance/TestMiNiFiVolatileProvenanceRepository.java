@@ -0,0 +1,224 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import org.apache.nifi.events.EventReporter;
+import org.apache.nifi.util.file.FileUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class TestMiNiFiVolatileProvenanceRepository {
+
+    private final File spillDir = new File("target/volatile-provenance-" + UUID.randomUUID());
+    private MiNiFiVolatileProvenanceRepository repo;
+
+    @After
+    public void closeRepo() throws IOException {
+        if (repo != null) {
+            repo.close();
+        }
+        if (spillDir.exists()) {
+            FileUtils.deleteFile(spillDir, true);
+        }
+    }
+
+    @Test
+    public void testEventsRoundTrip() throws IOException {
+        repo = new MiNiFiVolatileProvenanceRepository(1024 * 1024, 64 * 1024, null, 0L, 65536, ProvenanceAdmissionPolicy.admitAll());
+        repo.initialize(mock(EventReporter.class), null, null);
+        assertNull(repo.getMaxEventId());
+
+        final List<ProvenanceEventRecord> registered = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            final ProvenanceEventRecord event = createEvent(i);
+            registered.add(event);
+            repo.registerEvent(event);
+        }
+
+        assertEquals(Long.valueOf(99L), repo.getMaxEventId());
+        final List<ProvenanceEventRecord> events = repo.getEvents(0L, 1000);
+        assertEquals(100, events.size());
+        for (int i = 0; i < events.size(); i++) {
+            final ProvenanceEventRecord expected = registered.get(i);
+            final ProvenanceEventRecord actual = events.get(i);
+            assertEquals(i, actual.getEventId());
+            assertEquals(expected.getEventType(), actual.getEventType());
+            assertEquals(expected.getFlowFileUuid(), actual.getFlowFileUuid());
+            assertEquals(expected.getComponentId(), actual.getComponentId());
+            assertEquals(expected.getTransitUri(), actual.getTransitUri());
+            assertEquals(expected.getAttributes(), actual.getAttributes());
+        }
+
+        assertEquals(10, repo.getEvents(90L, 50).size());
+        assertEquals(42L, repo.getEvent(42L).getEventId());
+        assertNull(repo.getEvent(100L));
+
+        // only the segments that have been written to are allocated
+        assertEquals(64 * 1024, repo.getAllocatedBytes());
+    }
+
+    @Test
+    public void testCursorStreamsEvents() throws IOException {
+        repo = new MiNiFiVolatileProvenanceRepository(1024 * 1024, 64 * 1024, null, 0L, 65536, ProvenanceAdmissionPolicy.admitAll());
+        repo.initialize(mock(EventReporter.class), null, null);
+
+        for (int i = 0; i < 20; i++) {
+            repo.registerEvent(createEvent(i));
+        }
+
+        try (final ProvenanceEventCursor cursor = repo.openCursor(5L)) {
+            for (int i = 5; i < 20; i++) {
+                assertTrue(cursor.next());
+                assertEquals(i, cursor.getEventId());
+                assertEquals(String.valueOf(i), cursor.getEvent().getAttributes().get("index"));
+
+                final ProvenanceEventRecord forwarded = ProvenanceEventCursor.deserialize(cursor.getSerializedEvent());
+                assertEquals(i, forwarded.getEventId());
+                assertEquals(String.valueOf(i), forwarded.getAttributes().get("index"));
+            }
+            assertFalse(cursor.next());
+
+            // the cursor picks up events that are registered after it ran out
+            repo.registerEvent(createEvent(20));
+            assertTrue(cursor.next());
+            assertEquals(20L, cursor.getEventId());
+            assertFalse(cursor.next());
+        }
+    }
+
+    @Test
+    public void testOldestEventsEvicted() throws IOException {
+        final int capacity = 64 * 1024;
+        repo = new MiNiFiVolatileProvenanceRepository(capacity, 4096, null, 0L, 65536, ProvenanceAdmissionPolicy.admitAll());
+        repo.initialize(mock(EventReporter.class), null, null);
+
+        for (int i = 0; i < 10000; i++) {
+            repo.registerEvent(createEvent(i));
+        }
+
+        final List<ProvenanceEventRecord> events = repo.getEvents(0L, 100000);
+        assertTrue(events.size() > 0 && events.size() < 10000);
+        assertEquals(capacity, repo.getAllocatedBytes());
+
+        // the events that remain are the newest ones, without gaps
+        final long firstId = events.get(0).getEventId();
+        for (int i = 0; i < events.size(); i++) {
+            assertEquals(firstId + i, events.get(i).getEventId());
+        }
+        assertEquals(9999L, events.get(events.size() - 1).getEventId());
+        assertEquals(Long.valueOf(9999L), repo.getMaxEventId());
+        assertNull(repo.getEvent(0L));
+    }
+
+    @Test
+    public void testConcurrentWriters() throws Exception {
+        repo = new MiNiFiVolatileProvenanceRepository(16 * 1024 * 1024, 1024 * 1024, null, 0L, 65536, ProvenanceAdmissionPolicy.admitAll());
+        repo.initialize(mock(EventReporter.class), null, null);
+
+        final int threads = 8;
+        final int eventsPerThread = 2000;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < eventsPerThread; i++) {
+                        repo.registerEvent(createEvent(i));
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+        final List<ProvenanceEventRecord> events = repo.getEvents(0L, threads * eventsPerThread * 2);
+        assertEquals(threads * eventsPerThread, events.size());
+        final Set<Long> ids = new HashSet<>();
+        for (final ProvenanceEventRecord event : events) {
+            ids.add(event.getEventId());
+        }
+        assertEquals(threads * eventsPerThread, ids.size());
+    }
+
+    @Test
+    public void testEvictedEventsAreServedFromSpillFile() throws IOException {
+        final File spillFile = new File(spillDir, "provenance.spill");
+        repo = new MiNiFiVolatileProvenanceRepository(64 * 1024, 4096, spillFile, 16 * 1024 * 1024, 65536, ProvenanceAdmissionPolicy.admitAll());
+
+        // spill after every few events rather than relying on the spill thread, which is started by initialize
+        for (int i = 0; i < 5000; i++) {
+            repo.registerEvent(createEvent(i));
+            if (i % 50 == 0) {
+                repo.spill();
+            }
+        }
+
+        assertTrue(spillFile.length() > 0L);
+        final List<ProvenanceEventRecord> events = repo.getEvents(0L, 10000);
+        assertEquals(5000, events.size());
+        for (int i = 0; i < events.size(); i++) {
+            assertEquals(i, events.get(i).getEventId());
+        }
+        assertEquals(0L, repo.getEvent(0L).getEventId());
+    }
+
+    @Test
+    public void testAdmissionPolicyApplied() throws IOException {
+        final ProvenanceAdmissionPolicy policy = new ProvenanceAdmissionPolicy(Collections.singleton(ProvenanceEventType.RECEIVE),
+            Collections.<ProvenanceEventType>emptySet(), Collections.<String>emptySet(), Collections.<String>emptySet(), 100D);
+        repo = new MiNiFiVolatileProvenanceRepository(1024 * 1024, 64 * 1024, null, 0L, 65536, policy);
+        repo.initialize(mock(EventReporter.class), null, null);
+
+        for (int i = 0; i < 10; i++) {
+            repo.registerEvent(createEvent(i));
+        }
+
+        final List<ProvenanceEventRecord> events = repo.getEvents(0L, 100);
+        assertEquals(5, events.size());
+        for (final ProvenanceEventRecord event : events) {
+            assertEquals(ProvenanceEventType.RECEIVE, event.getEventType());
+        }
+    }
+
+    private static ProvenanceEventRecord createEvent(final int index) {
+        final Map<String, String> attributes = new HashMap<>();
+        attributes.put("abc", "xyz");
+        attributes.put("uuid", UUID.randomUUID().toString());
+        attributes.put("index", String.valueOf(index));
+        return TestUtil.createEvent(index, "1234", index % 2 == 0 ? ProvenanceEventType.RECEIVE : ProvenanceEventType.SEND, System.currentTimeMillis(), attributes);
+    }
+}
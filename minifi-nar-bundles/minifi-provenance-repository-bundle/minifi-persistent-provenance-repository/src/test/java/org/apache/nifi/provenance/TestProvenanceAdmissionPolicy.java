@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestProvenanceAdmissionPolicy {
+
+    @Test
+    public void testAdmitAll() {
+        final ProvenanceAdmissionPolicy policy = ProvenanceAdmissionPolicy.admitAll();
+        assertTrue(policy.isAdmitAll());
+        assertTrue(policy.admit(createEvent(UUID.randomUUID().toString(), "1234", ProvenanceEventType.ATTRIBUTES_MODIFIED)));
+        assertEquals(1L, policy.getEventsAdmitted());
+        assertEquals(0L, policy.getEventsFiltered());
+    }
+
+    @Test
+    public void testFilterByTypeAndComponent() {
+        final ProvenanceAdmissionPolicy policy = new ProvenanceAdmissionPolicy(
+            Arrays.asList(ProvenanceEventType.RECEIVE, ProvenanceEventType.SEND, ProvenanceEventType.DROP), Collections.singleton(ProvenanceEventType.DROP),
+            Arrays.asList("1234", "5678"), Collections.singleton("5678"), 100D);
+        assertFalse(policy.isAdmitAll());
+
+        final String uuid = UUID.randomUUID().toString();
+        assertTrue(policy.admit(createEvent(uuid, "1234", ProvenanceEventType.RECEIVE)));
+        assertTrue(policy.admit(createEvent(uuid, "1234", ProvenanceEventType.SEND)));
+
+        // denied types win over allowed types, and types that are not allowed are filtered
+        assertFalse(policy.admit(createEvent(uuid, "1234", ProvenanceEventType.DROP)));
+        assertFalse(policy.admit(createEvent(uuid, "1234", ProvenanceEventType.CONTENT_MODIFIED)));
+
+        // likewise for components
+        assertFalse(policy.admit(createEvent(uuid, "5678", ProvenanceEventType.RECEIVE)));
+        assertFalse(policy.admit(createEvent(uuid, "9999", ProvenanceEventType.RECEIVE)));
+
+        assertEquals(2L, policy.getEventsAdmitted());
+        assertEquals(2L, policy.getEventsFilteredByType());
+        assertEquals(2L, policy.getEventsFilteredByComponent());
+        assertEquals(0L, policy.getEventsFilteredBySampling());
+        assertEquals(4L, policy.getEventsFiltered());
+    }
+
+    @Test
+    public void testSamplingIsDeterministicPerFlowFile() {
+        final ProvenanceAdmissionPolicy policy = new ProvenanceAdmissionPolicy(Collections.<ProvenanceEventType>emptySet(),
+            Collections.<ProvenanceEventType>emptySet(), Collections.<String>emptySet(), Collections.<String>emptySet(), 25D);
+
+        int admittedFlowFiles = 0;
+        for (int i = 0; i < 10000; i++) {
+            final String uuid = UUID.randomUUID().toString();
+            final boolean admitted = policy.admit(createEvent(uuid, "1234", ProvenanceEventType.RECEIVE));
+            assertEquals(admitted, policy.admit(createEvent(uuid, "1234", ProvenanceEventType.SEND)));
+            if (admitted) {
+                admittedFlowFiles++;
+            }
+        }
+
+        assertTrue("Sampled " + admittedFlowFiles + " FlowFiles", admittedFlowFiles > 2000 && admittedFlowFiles < 3000);
+        assertEquals(2L * admittedFlowFiles, policy.getEventsAdmitted());
+        assertEquals(2L * (10000 - admittedFlowFiles), policy.getEventsFilteredBySampling());
+    }
+
+    private static ProvenanceEventRecord createEvent(final String uuid, final String componentId, final ProvenanceEventType type) {
+        return TestUtil.createEvent(3L, componentId, type, System.currentTimeMillis(), Collections.singletonMap("uuid", uuid));
+    }
+}
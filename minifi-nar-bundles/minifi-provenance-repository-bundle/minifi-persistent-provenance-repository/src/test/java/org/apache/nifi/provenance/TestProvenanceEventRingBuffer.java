@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestProvenanceEventRingBuffer {
+
+    @Test
+    public void testCapacityRoundedToPowerOfTwo() {
+        assertEquals(8, new ProvenanceEventRingBuffer<String>(5).getCapacity());
+        assertEquals(2, new ProvenanceEventRingBuffer<String>(1).getCapacity());
+    }
+
+    @Test
+    public void testOfferAndPollInOrder() {
+        final ProvenanceEventRingBuffer<Integer> ring = new ProvenanceEventRingBuffer<>(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ring.offer(i));
+        }
+        assertFalse(ring.offer(4));
+        assertEquals(4, ring.size());
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals(Integer.valueOf(i), ring.poll());
+        }
+        assertNull(ring.poll());
+        assertTrue(ring.isEmpty());
+    }
+
+    @Test
+    public void testSlotClaimedButNotPublishedIsNotDrainable() throws Exception {
+        final ProvenanceEventRingBuffer<Integer> ring = new ProvenanceEventRingBuffer<>(4);
+
+        // claim a slot the way a producer does, without getting to publish its entry
+        final Field producerCursor = ProvenanceEventRingBuffer.class.getDeclaredField("producerCursor");
+        producerCursor.setAccessible(true);
+        ((AtomicLong) producerCursor.get(ring)).incrementAndGet();
+
+        // the slot counts towards the size of the ring, but consumers have nothing to drain until it is published
+        assertEquals(1, ring.size());
+        assertTrue(ring.isEmpty());
+        assertFalse(ring.awaitNotEmpty(10L, TimeUnit.MILLISECONDS));
+        assertEquals(0, ring.drainTo(new ArrayList<Integer>(), 10));
+    }
+
+    @Test
+    public void testDrainToWrapsAround() {
+        final ProvenanceEventRingBuffer<Integer> ring = new ProvenanceEventRingBuffer<>(4);
+        final List<Integer> drained = new ArrayList<>();
+        int next = 0;
+        for (int lap = 0; lap < 5; lap++) {
+            for (int i = 0; i < 3; i++) {
+                assertTrue(ring.offer(next++));
+            }
+            assertEquals(2, ring.drainTo(drained, 2));
+            assertEquals(1, ring.drainTo(drained, 10));
+            assertEquals(0, ring.drainTo(drained, 10));
+        }
+
+        assertEquals(15, drained.size());
+        for (int i = 0; i < drained.size(); i++) {
+            assertEquals(Integer.valueOf(i), drained.get(i));
+        }
+    }
+
+    @Test
+    public void testOfferWithTimeoutWhenFull() throws InterruptedException {
+        final ProvenanceEventRingBuffer<Integer> ring = new ProvenanceEventRingBuffer<>(2);
+        assertTrue(ring.offer(0));
+        assertTrue(ring.offer(1));
+
+        final long start = System.nanoTime();
+        assertFalse(ring.offer(2, 50L, TimeUnit.MILLISECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(40L));
+    }
+
+    @Test(timeout = 30000)
+    public void testMultipleProducersAndConsumers() throws InterruptedException {
+        final ProvenanceEventRingBuffer<Integer> ring = new ProvenanceEventRingBuffer<>(16);
+        final int producerCount = 4;
+        final int perProducer = 10000;
+        final Set<Integer> seen = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+        final AtomicInteger consumed = new AtomicInteger(0);
+
+        final List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producerCount; p++) {
+            final int producerIndex = p;
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < perProducer; i++) {
+                            while (!ring.offer(producerIndex * perProducer + i, 1L, TimeUnit.SECONDS)) {
+                            }
+                        }
+                    } catch (final InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }));
+        }
+
+        for (int c = 0; c < 2; c++) {
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    final List<Integer> batch = new ArrayList<>();
+                    try {
+                        while (consumed.get() < producerCount * perProducer) {
+                            if (ring.drainTo(batch, 8) == 0) {
+                                ring.awaitNotEmpty(10L, TimeUnit.MILLISECONDS);
+                                continue;
+                            }
+                            for (final Integer value : batch) {
+                                seen.add(value);
+                            }
+                            consumed.addAndGet(batch.size());
+                            batch.clear();
+                        }
+                    } catch (final InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }));
+        }
+
+        for (final Thread thread : threads) {
+            thread.start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(producerCount * perProducer, consumed.get());
+        assertEquals(producerCount * perProducer, seen.size());
+    }
+}
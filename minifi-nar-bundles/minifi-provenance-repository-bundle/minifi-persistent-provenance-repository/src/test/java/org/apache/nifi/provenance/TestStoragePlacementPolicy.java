@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestStoragePlacementPolicy {
+
+    private final File fast = new File("target/placement/fast");
+    private final File slow = new File("target/placement/slow");
+    private final List<File> directories = Arrays.asList(fast, slow);
+
+    @Test
+    public void testRoundRobinIgnoresThroughput() {
+        final StoragePlacementPolicy policy = new StoragePlacementPolicy(directories, StoragePlacementPolicy.Strategy.ROUND_ROBIN, 0L);
+        recordThroughput(policy, fast, 100);
+        recordThroughput(policy, slow, 1);
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i % 2 == 0 ? fast : slow, policy.nextDirectory());
+        }
+    }
+
+    @Test
+    public void testBalancedFavorsFasterDirectory() {
+        final StoragePlacementPolicy policy = new StoragePlacementPolicy(directories, StoragePlacementPolicy.Strategy.BALANCED, 0L);
+        recordThroughput(policy, fast, 90);
+        recordThroughput(policy, slow, 10);
+
+        final Map<File, Integer> placements = countPlacements(policy, 100);
+        assertEquals(Integer.valueOf(90), placements.get(fast));
+        assertEquals(Integer.valueOf(10), placements.get(slow));
+        assertEquals(90L, policy.getStorageDirectoryStats().get(0).getPlacementCount());
+    }
+
+    @Test
+    public void testUnmeasuredDirectoryWeightedAsFastest() {
+        final StoragePlacementPolicy policy = new StoragePlacementPolicy(directories, StoragePlacementPolicy.Strategy.BALANCED, 0L);
+        recordThroughput(policy, fast, 50);
+
+        final Map<File, Integer> placements = countPlacements(policy, 100);
+        assertEquals(Integer.valueOf(50), placements.get(fast));
+        assertEquals(Integer.valueOf(50), placements.get(slow));
+    }
+
+    @Test
+    public void testFailureHalvesThroughput() {
+        final StoragePlacementPolicy policy = new StoragePlacementPolicy(directories, StoragePlacementPolicy.Strategy.BALANCED, 0L);
+        recordThroughput(policy, fast, 10);
+        recordThroughput(policy, slow, 10);
+
+        final StoragePlacementPolicy.StorageDirectoryStats slowStats = policy.getStorageDirectoryStats().get(1);
+        final double throughput = slowStats.getThroughput();
+        policy.recordFailure(new File(new File(slow, "journals"), "0.journal.1"));
+        assertEquals(throughput / 2D, slowStats.getThroughput(), 0.001D);
+        assertEquals(1L, slowStats.getFailureCount());
+
+        final Map<File, Integer> placements = countPlacements(policy, 90);
+        assertEquals(Integer.valueOf(60), placements.get(fast));
+        assertEquals(Integer.valueOf(30), placements.get(slow));
+    }
+
+    @Test
+    public void testFullDirectoriesFallBackToMostUsableSpace() {
+        final StoragePlacementPolicy policy = new StoragePlacementPolicy(directories, StoragePlacementPolicy.Strategy.BALANCED, Long.MAX_VALUE);
+        final File expected = fast.getUsableSpace() >= slow.getUsableSpace() ? fast : slow;
+        for (int i = 0; i < 10; i++) {
+            assertEquals(expected, policy.nextDirectory());
+        }
+    }
+
+    @Test
+    public void testWritesOutsideStorageDirectoriesIgnored() {
+        final StoragePlacementPolicy policy = new StoragePlacementPolicy(directories, StoragePlacementPolicy.Strategy.BALANCED, 0L);
+        policy.recordWrite(new File("target/elsewhere/1.prov"), 1024L, 1000L);
+        policy.recordWrite(new File(fast, "1.prov"), 1024L, 1000L);
+
+        final StoragePlacementPolicy.StorageDirectoryStats fastStats = policy.getStorageDirectoryStats().get(0);
+        assertEquals(1024L, fastStats.getBytesWritten());
+        assertEquals(1L, fastStats.getWriteCount());
+        assertEquals(0L, policy.getStorageDirectoryStats().get(1).getBytesWritten());
+        assertTrue(fastStats.getThroughput() == 0D);
+    }
+
+    private static void recordThroughput(final StoragePlacementPolicy policy, final File directory, final int megabytesPerSecond) {
+        final long nanos = TimeUnit.SECONDS.toNanos(1L) / megabytesPerSecond;
+        policy.recordWrite(new File(new File(directory, "journals"), "0.journal.0"), StoragePlacementPolicy.SAMPLE_BYTES, nanos);
+    }
+
+    private static Map<File, Integer> countPlacements(final StoragePlacementPolicy policy, final int count) {
+        final Map<File, Integer> placements = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            final File directory = policy.nextDirectory();
+            placements.put(directory, placements.containsKey(directory) ? placements.get(directory) + 1 : 1);
+        }
+        return placements;
+    }
+}
@@ -22,6 +22,22 @@ import java.util.Map;
 import org.apache.nifi.flowfile.FlowFile;
 
 public class TestUtil {
+    /**
+     * Creates an event of the given type for a FlowFile of 3000 bytes with the given attributes, as recorded by a
+     * "dummy processor" receiving from "nifi://unit-test"
+     */
+    public static ProvenanceEventRecord createEvent(final long flowFileId, final String componentId, final ProvenanceEventType type, final long eventTime,
+                                                    final Map<String, String> attributes) {
+        final ProvenanceEventBuilder builder = new StandardProvenanceEventRecord.Builder();
+        builder.setEventTime(eventTime);
+        builder.setEventType(type);
+        builder.setTransitUri("nifi://unit-test");
+        builder.fromFlowFile(createFlowFile(flowFileId, 3000L, attributes));
+        builder.setComponentId(componentId);
+        builder.setComponentType("dummy processor");
+        return builder.build();
+    }
+
     public static FlowFile createFlowFile(final long id, final long fileSize, final Map<String, String> attributes) {
         final Map<String, String> attrCopy = new HashMap<>(attributes);
 
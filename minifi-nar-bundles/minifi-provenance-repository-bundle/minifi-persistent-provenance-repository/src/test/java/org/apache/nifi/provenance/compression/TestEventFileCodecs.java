@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance.compression;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestEventFileCodecs {
+
+    @Test
+    public void testCodecsAreDiscovered() {
+        assertEquals(new HashSet<>(Arrays.asList("gzip", "lz4", "zstd")), EventFileCodecs.getNames());
+
+        final Set<Byte> ids = new HashSet<>();
+        for (final EventFileCodec codec : EventFileCodecs.getAvailableCodecs()) {
+            assertTrue("Duplicate codec id " + codec.getId(), ids.add(codec.getId()));
+            assertSame(codec, EventFileCodecs.forId(codec.getId()));
+            assertSame(codec, EventFileCodecs.forName(codec.getName().toUpperCase()));
+        }
+        assertNull(EventFileCodecs.forId((byte) 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownCodecName() {
+        EventFileCodecs.forName("snappy");
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            sb.append("event-").append(i).append(" attribute=value-").append(i % 17).append('\n');
+        }
+        final byte[] uncompressed = sb.toString().getBytes(StandardCharsets.UTF_8);
+        final byte[] padded = new byte[uncompressed.length + 10];
+        System.arraycopy(uncompressed, 0, padded, 5, uncompressed.length);
+
+        for (final EventFileCodec codec : EventFileCodecs.getAvailableCodecs()) {
+            final byte[] compressed = codec.compress(padded, 5, uncompressed.length);
+            assertTrue(codec.getName() + " did not compress the data", compressed.length < uncompressed.length);
+
+            final byte[] framed = new byte[compressed.length + 3];
+            System.arraycopy(compressed, 0, framed, 3, compressed.length);
+            assertArrayEquals(codec.getName(), uncompressed, codec.decompress(framed, 3, compressed.length, uncompressed.length));
+
+            assertEquals(0, codec.decompress(codec.compress(new byte[0], 0, 0), 0, codec.compress(new byte[0], 0, 0).length, 0).length);
+        }
+    }
+
+    @Test
+    public void testArchivalCodecsAreReadByStandardCodecs() throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            sb.append("event-").append(i).append(" attribute=value-").append(i % 17).append('\n');
+        }
+        final byte[] uncompressed = sb.toString().getBytes(StandardCharsets.UTF_8);
+
+        for (final EventFileCodec codec : EventFileCodecs.getAvailableCodecs()) {
+            final EventFileCodec archivalCodec = codec.getArchivalCodec();
+            assertEquals(codec.getId(), archivalCodec.getId());
+            assertEquals(codec.getFileExtension(), archivalCodec.getFileExtension());
+
+            final byte[] compressed = archivalCodec.compress(uncompressed, 0, uncompressed.length);
+            final int standardLength = codec.compress(uncompressed, 0, uncompressed.length).length;
+            assertTrue(codec.getName() + " archival codec compressed to " + compressed.length + " bytes rather than " + standardLength,
+                compressed.length <= standardLength);
+            assertArrayEquals(codec.getName(), uncompressed, codec.decompress(compressed, 0, compressed.length, uncompressed.length));
+        }
+    }
+
+    @Test
+    public void testCorruptDataIsRejected() throws IOException {
+        final byte[] uncompressed = "abcdefghijabcdefghijabcdefghij".getBytes(StandardCharsets.UTF_8);
+        for (final EventFileCodec codec : EventFileCodecs.getAvailableCodecs()) {
+            final byte[] compressed = codec.compress(uncompressed, 0, uncompressed.length);
+            try {
+                codec.decompress(compressed, 0, compressed.length, uncompressed.length + 5);
+            } catch (final IOException expected) {
+                continue;
+            }
+            throw new AssertionError(codec.getName() + " did not detect that the uncompressed length was wrong");
+        }
+    }
+}